@@ -15,8 +15,43 @@ public class ANSITerminal extends SocketStream
     public static final byte ASCII_ESCAPE = 27;
     protected static final String TERMEMUL_NAME = "ANSI";
 
+    public static final int RESYNC_TIMEOUT = 3000;    // milliseconds.
+    public static final int LEN_REPORT = 16;          // ESC[rrr;cccR, plus.
+    public static final int LEN_SGR = 16;             // ESC[1;3f;4bm, plus.
+
+        // ESC[6n asks for a position report: ESC[row;colR.
+        // ESC[K clears to the end of the line.
+    protected static final byte[] CLEAR_EOL = {
+        ASCII_ESCAPE, '[', 'K'
+    };
+
+    protected static final byte[] QUERY_POS = {
+        ASCII_ESCAPE, '[', '6', 'n'
+    };
+
+        // save, go as far as we can, report, restore, report:
+        //  the first report is the screen size, the second the position.
+    protected static final byte[] QUERY_SIZE_AND_POS = {
+        ASCII_ESCAPE, '[', 's', ASCII_ESCAPE, '[', '9', '9', '9', ';', '9',
+        '9', '9', 'H', ASCII_ESCAPE, '[', '6', 'n', ASCII_ESCAPE, '[', 'u',
+        ASCII_ESCAPE, '[', '6', 'n'
+    };
+
+        // '0' through '7'.
+    protected static final byte[] DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7'
+    };
+
+        // Every color, from a reset: ESC[0;1;3f;4bm, or ESC[0;3f;4bm
+        //  without intensity. Index is (intensity * 64) + (fore * 8) + back.
+    protected static final byte[][] SGR_RESET = buildResets();
+
         // Instance variables...
-    protected int currentBackColor;
+    protected CursorTracker cursor;
+    protected int curFore = -1;         // client's colors; -1 == unknown.
+    protected int curBack = -1;
+    protected int curBold = -1;
+    protected byte[] sgr = new byte[LEN_SGR];   // for building ESC[...m.
 
     public static boolean detectTerminal(InputStream _in, OutputStream _out)
                             throws LostCarrierException
@@ -30,12 +65,13 @@ public class ANSITerminal extends SocketStream
     {
         int i;
         boolean getOut = false;
-        byte[] detectSequence = new byte[3];
+        byte[] detectSequence = new byte[4];
         byte sentBack = 0;
 
-        detectSequence[0] = ASCII_ESCAPE;
+        detectSequence[0] = ASCII_ESCAPE;     // ESC[6n: "where's the cursor?"
         detectSequence[1] = (byte) '[';
-        detectSequence[2] = (byte) 'R';
+        detectSequence[2] = (byte) '6';
+        detectSequence[3] = (byte) 'n';
 
         try
         {
@@ -53,6 +89,12 @@ public class ANSITerminal extends SocketStream
                 } // if
             } // for
 
+            if (getOut)     // throw out the rest of the position report.
+            {
+                JBBS.nap(250);
+                _in.skip(_in.available());
+            } // if
+
         } // try
 
         catch (IOException e)
@@ -64,6 +106,39 @@ public class ANSITerminal extends SocketStream
     } // detectTerminal
 
 
+        /**
+         *  Build the SGR_RESET table.
+         */
+    protected static byte[][] buildResets()
+    {
+        byte[][] retVal = new byte[128][];
+        String seq;
+        int i;
+
+        for (i = 0; i < retVal.length; i++)
+        {
+            seq = ((char) ASCII_ESCAPE) + "[0;" + ((i >= 64) ? "1;" : "") +
+                  "3" + ((i / 8) % 8) + ";4" + (i % 8) + "m";
+            retVal[i] = seq.getBytes();
+        } // for
+
+        return(retVal);
+    } // buildResets
+
+
+        /**
+         *  Get the bytes that set a color from any state, white on black
+         *   otherwise. The array is shared; don't change it.
+         *
+         *   @param color One of the TERMCOLOR_* constants.
+         */
+    public static byte[] colorSequence(int color)
+    {
+        return(SGR_RESET[(color / INTENSITY_COLORS) * 64 +
+                         (color % INTENSITY_COLORS) * 8]);
+    } // colorSequence
+
+
     public ANSITerminal(Socket s) throws LostCarrierException
     /**
      *  Don't actually create an instance of ANSITerminal unless the
@@ -76,6 +151,11 @@ public class ANSITerminal extends SocketStream
      */
     {
         super(s);
+        cursor = new CursorTracker(out);
+        out = cursor;
+        sgr[0] = ASCII_ESCAPE;
+        sgr[1] = (byte) '[';
+        watchScreenSize();
         setForeColor(TERMCOLOR_WHITE);
         setBackColor(TERMCOLOR_BLACK);
         clearTerminal();
@@ -106,184 +186,259 @@ public class ANSITerminal extends SocketStream
         return(true);
     } // doesPositioning
 
-    public void setBackColor(int newColor) throws LostCarrierException
+        /**
+         *  Change colors. The client's colors are tracked, and only the
+         *   difference is sent, as one ESC[...m; if nothing changed,
+         *   nothing is sent. Turning intensity off takes a reset (ESC[0m)
+         *   on most clients, after which everything that isn't the
+         *   default has to be sent again.
+         *
+         *   @param fore Foreground, one of the TERMCOLOR_* constants.
+         *   @param back Background; intensity is ignored.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public void setColors(int fore, int back) throws LostCarrierException
     {
-        byte[] colorSequence = new byte[5];  // ANSI sequence to be sent.
+        int bold;
+        int len = 2;            // sgr[0] and sgr[1] are always ESC[.
 
-        colorSequence[0] = ASCII_ESCAPE;     // ANSI escape sequence...
-        colorSequence[1] = (byte) '[';
-        colorSequence[2] = (byte) '4';       // signify backcolor change...
+        if ((fore < TERMCOLOR_BLACK) || (fore > TERMCOLOR_HIWHITE) ||
+            (back < TERMCOLOR_BLACK) || (back > TERMCOLOR_HIWHITE))
+        {
+            return;     // bogus color.
+        } // if
 
-        switch (newColor)
+        checkDeliveries();
+        bold = fore / INTENSITY_COLORS;
+        fore %= INTENSITY_COLORS;
+        back %= INTENSITY_COLORS;
+
+        if ((curFore == fore) && (curBack == back) && (curBold == bold))
+            return;     // already there.
+
+        if ((curFore == -1) || ((curBold == 1) && (bold == 0)))
         {
-            case TERMCOLOR_BLACK:
-            case TERMCOLOR_HIBLACK:
-                colorSequence[3] = (byte) '0';
-                break;
-
-            case TERMCOLOR_RED:
-            case TERMCOLOR_HIRED:
-                colorSequence[3] = (byte) '1';
-                break;
-
-            case TERMCOLOR_GREEN:
-            case TERMCOLOR_HIGREEN:
-                colorSequence[3] = (byte) '2';
-                break;
-
-            case TERMCOLOR_YELLOW:
-            case TERMCOLOR_HIYELLOW:
-                colorSequence[3] = (byte) '3';
-                break;
-
-            case TERMCOLOR_BLUE:
-            case TERMCOLOR_HIBLUE:
-                colorSequence[3] = (byte) '4';
-                break;
-
-            case TERMCOLOR_MAGENTA:
-            case TERMCOLOR_HIMAGENTA:
-                colorSequence[3] = (byte) '5';
-                break;
-
-            case TERMCOLOR_CYAN:
-            case TERMCOLOR_HICYAN:
-                colorSequence[3] = (byte) '6';
-                break;
-
-            case TERMCOLOR_WHITE:
-            case TERMCOLOR_HIWHITE:
-                colorSequence[3] = (byte) '7';
-                break;
-
-            default:        // bogus color.
-                return;
-        } // switch
+            send(SGR_RESET[(bold * 64) + (fore * 8) + back]);
+        } // if
 
-        colorSequence[4] = (byte) 'm';     // signifies color change request.
+        else
+        {
+            if (bold != curBold)
+            {
+                sgr[len++] = (byte) '1';
+                sgr[len++] = (byte) ';';
+            } // if
 
-        send(colorSequence);
-        currentBackColor = newColor;
-    } // setBackColor
+            if (fore != curFore)
+            {
+                sgr[len++] = (byte) '3';
+                sgr[len++] = DIGITS[fore];
+                sgr[len++] = (byte) ';';
+            } // if
 
-    
-    public void setForeColor(int newColor) throws LostCarrierException
-    {
-        byte[] colorSequence = new byte[7];  // ANSI sequence to be sent.
+            if (back != curBack)
+            {
+                sgr[len++] = (byte) '4';
+                sgr[len++] = DIGITS[back];
+                sgr[len++] = (byte) ';';
+            } // if
 
-        colorSequence[0] = ASCII_ESCAPE;
-        colorSequence[1] = (byte) '[';
+            sgr[len - 1] = (byte) 'm';      // replaces the last ';'.
+            send(sgr, len);
+        } // else
 
-        if (newColor >= INTENSITY_COLORS)
-            colorSequence[2] = (byte) '1';   // signify intensity attribute.
-        else
-            colorSequence[2] = (byte) '0';   // signify attribute reset.
-            
-        colorSequence[3] = (byte) ';';
-        colorSequence[4] = (byte) '3';       // '3' == signifies fore color.
+        curFore = fore;
+        curBack = back;
+        curBold = bold;
+    } // setColors
 
-        switch (newColor)
-        {
-            case TERMCOLOR_BLACK:
-            case TERMCOLOR_HIBLACK:
-                colorSequence[5] = (byte) '0';
-                break;
-
-            case TERMCOLOR_RED:
-            case TERMCOLOR_HIRED:
-                colorSequence[5] = (byte) '1';
-                break;
-
-            case TERMCOLOR_GREEN:
-            case TERMCOLOR_HIGREEN:
-                colorSequence[5] = (byte) '2';
-                break;
-
-            case TERMCOLOR_YELLOW:
-            case TERMCOLOR_HIYELLOW:
-                colorSequence[5] = (byte) '3';
-                break;
-
-            case TERMCOLOR_BLUE:
-            case TERMCOLOR_HIBLUE:
-                colorSequence[5] = (byte) '4';
-                break;
-
-            case TERMCOLOR_MAGENTA:
-            case TERMCOLOR_HIMAGENTA:
-                colorSequence[5] = (byte) '5';
-                break;
-
-            case TERMCOLOR_CYAN:
-            case TERMCOLOR_HICYAN:
-                colorSequence[5] = (byte) '6';
-                break;
-
-            case TERMCOLOR_WHITE:
-            case TERMCOLOR_HIWHITE:
-                colorSequence[5] = (byte) '7';
-                break;
-
-            default:        // bogus color.
-                return;
-        } // switch
 
-        colorSequence[6] = (byte) 'm';     // signifies color change.
+    public void setBackColor(int newColor) throws LostCarrierException
+    {
+        checkDeliveries();
+        if (curFore == -1)
+            setColors(TERMCOLOR_WHITE, newColor);
+        else
+            setColors(curFore + (curBold * INTENSITY_COLORS), newColor);
+    } // setBackColor
 
-        send(colorSequence);
 
-            // Sending a "non intensity" command is the same as
-            //  sending a "reset" command, so we lose the background
-            //  color. If the new forecolor is non-intensity, just resend
-            //  the current backcolor...
-        if (newColor < INTENSITY_COLORS)
-            setBackColor(currentBackColor);
+    public void setForeColor(int newColor) throws LostCarrierException
+    {
+        checkDeliveries();
+        if (curBack == -1)
+            setColors(newColor, TERMCOLOR_BLACK);
+        else
+            setColors(newColor, curBack);
     } // setForeColor
 
 
-    protected int intFromByteArray(byte[] conv, int start, int len)
+        /**
+         *  Forget what colors the client has; the next change sends them
+         *   all.
+         */
+    public void forgetColors()
+    {
+        curFore = -1;
+        curBack = -1;
+        curBold = -1;
+    } // forgetColors
+
+
+    public byte[] encode(int color, String str)
     /**
-     *  !!!
+     *  Render str in color, for queueing with deliver(). Since the bytes
+     *   may be shared between many sessions, we can't know what colors
+     *   each of them had going, so this always finishes by resetting to
+     *   white on black.
      */
     {
-        int base;
-        int intFromASCII;
-        int retVal = 0;
+        byte[] text = str.getBytes();
+        byte[] retVal;
+
+        if ((color < TERMCOLOR_BLACK) || (color > TERMCOLOR_HIWHITE))
+            return(text);
+
+        retVal = new byte[text.length + 17];
+
+        retVal[0] = ASCII_ESCAPE;
+        retVal[1] = (byte) '[';
+        retVal[2] = (byte) ((color >= INTENSITY_COLORS) ? '1' : '0');
+        retVal[3] = (byte) ';';
+        retVal[4] = (byte) '3';
+        retVal[5] = (byte) ('0' + (color % INTENSITY_COLORS));
+        retVal[6] = (byte) 'm';
+
+        System.arraycopy(text, 0, retVal, 7, text.length);
+
+        retVal[text.length + 7]  = ASCII_ESCAPE;    // back to white on black.
+        retVal[text.length + 8]  = (byte) '[';
+        retVal[text.length + 9]  = (byte) '0';
+        retVal[text.length + 10] = (byte) ';';
+        retVal[text.length + 11] = (byte) '3';
+        retVal[text.length + 12] = (byte) '7';
+        retVal[text.length + 13] = (byte) ';';
+        retVal[text.length + 14] = (byte) '4';
+        retVal[text.length + 15] = (byte) '0';
+        retVal[text.length + 16] = (byte) 'm';
+
+        return(retVal);
+    } // encode
 
-        len--;
 
-        for (base = 1; len > -1; len--)
+        /**
+         *  Bytes from other sessions go around our cursor model and color
+         *   tracking, so once any have been queued, neither can be
+         *   trusted. Everything that uses them calls this first, on the
+         *   session's own thread.
+         */
+    protected void checkDeliveries()
+    {
+        if (wasDelivered())
         {
-            intFromASCII = conv[start + len] - ((byte) '0');
-            retVal += (intFromASCII * base);
-            base *= 10;
-        } // for
+            cursor.invalidate();
+            forgetColors();
+        } // if
+    } // checkDeliveries
 
-        return(retVal);
-    } // intFromByteArray
+
+        /**
+         *  Holding deliveries means binary data (a file transfer, a door)
+         *   is about to go by; there's no point watching it, and after
+         *   it, we've no idea where the cursor is, or what colors are
+         *   set.
+         */
+    public void holdDeliveries(boolean hold)
+    {
+        super.holdDeliveries(hold);
+        cursor.setTracking(!hold);
+        forgetColors();
+    } // holdDeliveries
 
 
-    protected int[] getPosXY() throws LostCarrierException
+        /**
+         *  Read one ESC[row;colR position report from the client. Other
+         *   bytes in front of it (typeahead) are thrown away.
+         *
+         *   @param rowCol Gets the row and column, in that order.
+         *  @return <em>true</em> if a report arrived in time.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    protected boolean recvPosReport(int[] rowCol) throws LostCarrierException
     {
-        int[] retVal = new int[2];
-        byte[] getPosSequence = new byte[3];    // request position sequence.
-        byte[] reply = new byte[10];            // Client's returned answer.
-        int rIndex = 0;                         // Reply array's index.
+        int ch;
+        int field = -1;         // -1 == looking for ESC, 0 == row, 1 == col.
+        int count = 0;
+
+        rowCol[0] = 0;
+        rowCol[1] = 0;
 
-        getPosSequence[0] = ASCII_ESCAPE;       // set up for request.
-        getPosSequence[1] = (byte) '[';
-        getPosSequence[2] = (byte) 'R';
+        while (count++ < LEN_REPORT * 4)
+        {
+            ch = recv(RESYNC_TIMEOUT);
+            if (ch == -1)
+                return(false);
+
+            if (ch == ASCII_ESCAPE)
+            {
+                field = 0;
+                rowCol[0] = 0;
+                rowCol[1] = 0;
+            } // if
+            else if ((field == 0) && (ch == ';'))
+                field = 1;
+            else if ((field >= 0) && (ch >= '0') && (ch <= '9'))
+                rowCol[field] = (rowCol[field] * 10) + (ch - '0');
+            else if ((field == 1) && (ch == 'R'))
+                return((rowCol[0] > 0) && (rowCol[1] > 0));
+            else if (ch != '[')
+                field = -1;     // not a report; keep looking.
+        } // while
+
+        return(false);
+    } // recvPosReport
+
+
+        /**
+         *  Ask the client where the cursor really is, and set the model
+         *   from the answer. The first time, ask for the screen size too;
+         *   it rides along in the same round trip.
+         *
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    protected void resyncCursor() throws LostCarrierException
+    {
+        int[] rowCol = new int[2];
 
-        send(getPosSequence);      // send request position sequence.
- 
-        do      // get client reply.
+        if (cursor.isSizeKnown())
+            send(QUERY_POS);
+        else
         {
-            reply[rIndex] = recv();
-            rIndex++;
-        } while ((reply[rIndex - 1] != (byte) 'R') && (rIndex < reply.length));
+            send(QUERY_SIZE_AND_POS);
+            if (!recvPosReport(rowCol))
+                return;
+            cursor.setScreenSize(rowCol[1], rowCol[0]);
+        } // else
 
-        retVal[0] = intFromByteArray(reply, 2, 2);  // X position
-        retVal[1] = intFromByteArray(reply, 5, 2);  // Y position
+        if (recvPosReport(rowCol))
+            cursor.setPos(rowCol[1], rowCol[0]);
+    } // resyncCursor
+
+
+        /**
+         *  Where's the cursor? Answered from the model, if it can be
+         *   trusted; if not, from the client, which costs a round trip.
+         */
+    protected int[] getPosXY() throws LostCarrierException
+    {
+        int[] retVal = new int[2];
+
+        checkDeliveries();
+        if (!cursor.isValid())
+            resyncCursor();
+
+        retVal[0] = cursor.getX();
+        retVal[1] = cursor.getY();
 
         return(retVal);
     } // getPosXY
@@ -291,45 +446,45 @@ public class ANSITerminal extends SocketStream
 
     public int getPosX() throws LostCarrierException
     {
-        int[] posXY;
+        checkDeliveries();
+        if (!cursor.isValid())
+            resyncCursor();
 
-        posXY = getPosXY();
-        return(posXY[0]);        
+        return(cursor.getX());
     } // getPosX
 
 
     public int getPosY() throws LostCarrierException
     {
-        int[] posXY;
+        checkDeliveries();
+        if (!cursor.isValid())
+            resyncCursor();
 
-        posXY = getPosXY();
-        return(posXY[1]);
+        return(cursor.getY());
     } // getPosY
 
 
+        /**
+         *  Write iConv into bArray as decimal ASCII digits.
+         *
+         *  @return Number of digits written.
+         */
     protected int intToByteArray(int iConv, byte[] bArray, int start)
-    /**
-     *   !!!
-     */
     {
         int i;
-        int retVal = 1;
+        int retVal = 0;
 
-        if (iConv == 0)    
-            bArray[start] = (byte) '0';
-        else
-        {
-            for (i = 1; i < iConv; i *= 10);   // find decimal places.
+        if (iConv < 0)
+            iConv = 0;
 
-            i /= 10;   // bump it back one decimal place...
+        for (i = 1; i <= iConv / 10; i *= 10);   // find decimal places.
 
-            for (retVal = 0; i >= 1; i /= 10)
-            {
-                bArray[start + retVal] = (byte) ((iConv / i) + (byte) '0');
-                retVal++;
-                iConv %= 10;
-            } // for
-        } // else
+        for ( ; i >= 1; i /= 10)
+        {
+            bArray[start + retVal] = (byte) ((iConv / i) + '0');
+            retVal++;
+            iConv %= i;
+        } // for
 
         return(retVal);
     } // intToByteArray
@@ -337,35 +492,66 @@ public class ANSITerminal extends SocketStream
 
     public void setPosXY(int X, int Y) throws LostCarrierException
     {
-// ```!!! REWRITE !!!
-        byte[] newPosSequence = new byte[8];
-        int seqIndex;
-
-        newPosSequence[0] = ASCII_ESCAPE;
-        newPosSequence[1] = (byte) '[';
-
-        seqIndex = intToByteArray(X, newPosSequence, 2);
+        byte[] newPosSequence = new byte[24];     // ESC[row;colH
+        int seqIndex = 0;
 
-        newPosSequence[3 + seqIndex] = (byte) ';';
+        newPosSequence[seqIndex++] = ASCII_ESCAPE;
+        newPosSequence[seqIndex++] = (byte) '[';
+        seqIndex += intToByteArray(Y, newPosSequence, seqIndex);
+        newPosSequence[seqIndex++] = (byte) ';';
+        seqIndex += intToByteArray(X, newPosSequence, seqIndex);
+        newPosSequence[seqIndex++] = (byte) 'H';
 
-        seqIndex = intToByteArray(Y, newPosSequence, 4 + seqIndex);
-
-        newPosSequence[3] = (byte) 'H';
-        send(newPosSequence);
+        send(newPosSequence, seqIndex);
     } // setPosXY
 
 
     public void clearTerminal() throws LostCarrierException
     {
-        byte clearSequence[] = new byte[3];
+        byte clearSequence[] = new byte[7];
 
-        clearSequence[0] = ASCII_ESCAPE;
-        clearSequence[1] = (byte) '2';
-        clearSequence[2] = (byte) 'J';
+        clearSequence[0] = ASCII_ESCAPE;    // clear screen...
+        clearSequence[1] = (byte) '[';
+        clearSequence[2] = (byte) '2';
+        clearSequence[3] = (byte) 'J';
+        clearSequence[4] = ASCII_ESCAPE;    // ...and home the cursor, since
+        clearSequence[5] = (byte) '[';      //  not every client does that.
+        clearSequence[6] = (byte) 'H';
 
         send(clearSequence);
     } // clearTerminal
 
+
+    public boolean clearToEndOfLine() throws LostCarrierException
+    {
+        send(CLEAR_EOL);
+        return(true);
+    } // clearToEndOfLine
+
+
+    public int getScreenWidth()
+    {
+        return(cursor.getWidth());
+    } // getScreenWidth
+
+
+    public int getScreenHeight()
+    {
+        return(cursor.getHeight());
+    } // getScreenHeight
+
+
+    public void setScreenSize(int width, int height)
+    {
+        cursor.setScreenSize(width, height);
+    } // setScreenSize
+
+
+    public void forgetCursor()
+    {
+        cursor.invalidate();
+    } // forgetCursor
+
 } // ANSITerminal
 
 // end of ANSITerminal.java ...
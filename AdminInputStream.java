@@ -0,0 +1,119 @@
+/**
+ *  InputStream for an admin's socket channel. Channels.newInputStream()
+ *   would do, except that its available() is always zero, so a command
+ *   that asks whether there's input waiting (like "top", to see if Enter
+ *   was hit) would never get a yes.
+ *
+ *  Reads block, like any stream's. available() takes a quick look
+ *   without blocking, and keeps whatever it finds for the next read.
+ *   Only one thread may use one of these at a time; the channel is
+ *   switched out of blocking mode for the look.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+public class AdminInputStream extends InputStream
+{
+        // Constants...
+    public final static int LEN_PEEK = 256;
+
+        // Instance variables...
+    protected SocketChannel channel;
+    protected ByteBuffer peeked = ByteBuffer.allocate(LEN_PEEK);
+    protected boolean eof = false;
+    protected byte[] one = new byte[1];
+
+
+    public AdminInputStream(SocketChannel _channel)
+    {
+        channel = _channel;
+        peeked.flip();          // nothing's been peeked at yet.
+    } // Constructor
+
+
+    public int read() throws IOException
+    {
+        if (read(one, 0, 1) == -1)
+            return(-1);
+
+        return(one[0] & 0xFF);
+    } // read
+
+
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int retVal;
+
+        if (len == 0)
+            return(0);
+
+        if (peeked.hasRemaining())
+        {
+            retVal = Math.min(len, peeked.remaining());
+            peeked.get(b, off, retVal);
+            return(retVal);
+        } // if
+
+        if (eof)
+            return(-1);
+
+        retVal = channel.read(ByteBuffer.wrap(b, off, len));
+        if (retVal == -1)
+            eof = true;
+
+        return(retVal);
+    } // read
+
+
+        /**
+         *  @return Bytes that can be read without waiting. At the end of
+         *          the stream this says 1, so a reader that asks whether
+         *          there's anything goes on to read, and finds out the
+         *          admin's gone.
+         */
+    public int available() throws IOException
+    {
+        int got;
+
+        if (peeked.hasRemaining())
+            return(peeked.remaining());
+
+        if (eof)
+            return(1);
+
+        peeked.clear();
+        channel.configureBlocking(false);
+        try
+        {
+            got = channel.read(peeked);
+        } // try
+        finally
+        {
+            channel.configureBlocking(true);
+            peeked.flip();
+        } // finally
+
+        if (got == -1)
+        {
+            eof = true;
+            return(1);
+        } // if
+
+        return(peeked.remaining());
+    } // available
+
+
+    public void close() throws IOException
+    {
+        channel.close();
+    } // close
+
+} // AdminInputStream
+
+// end of AdminInputStream.java ...
+
@@ -0,0 +1,245 @@
+/**
+ *  Remote administration, for a server that's running headless, or
+ *   whose console is somewhere inconvenient. It listens on a Unix domain
+ *   socket, JBBSConfig.adminSocket, and takes the same commands the
+ *   console does, a line at a time; "quit" hangs up. Anything that can
+ *   talk to a Unix socket will do for a client:
+ *
+ *      socat READLINE UNIX-CONNECT:/path/to/jbbs.admin
+ *      echo "dump" | nc -U /path/to/jbbs.admin
+ *
+ *  There's no password. The socket file is made readable and writable
+ *   by its owner only, and where the system can say who's on the other
+ *   end, anyone but the user the server runs as is hung up on. That's
+ *   why it isn't a TCP port: anybody on the machine can connect to one
+ *   of those, loopback or not.
+ *
+ *  Each admin gets a thread of their own (see AdminSession), so several
+ *   can be connected at once, up to MAX_ADMINS. None of the commands
+ *   take a lock a session needs to send or receive: they look at
+ *   ConnectionManager's session list, SessionStats and the output
+ *   queues' statistics without waiting on anybody, so watching the
+ *   server doesn't slow it down.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.Vector;
+import jdk.net.ExtendedSocketOptions;
+import jdk.net.UnixDomainPrincipal;
+
+public class AdminListener implements Runnable
+{
+        // Constants...
+    public final static int MAX_ADMINS = 8;
+
+        // Instance variables...
+    protected Path path;
+    protected ServerSocketChannel listener;
+    protected Thread listenThread;
+    protected Vector admins = new Vector();     // AdminSessions.
+
+
+        /**
+         *  Start listening.
+         *
+         *   @throw IOException if the socket can't be made, or another
+         *          server is already listening on it.
+         */
+    public AdminListener() throws IOException
+    {
+        UnixDomainSocketAddress address;
+
+        path = Paths.get(JBBSConfig.adminSocket).toAbsolutePath();
+        address = UnixDomainSocketAddress.of(path);
+        removeStale(address);
+
+        listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try
+        {
+            listener.bind(address);
+            ownerOnly(path);
+        } // try
+        catch (IOException e)
+        {
+            listener.close();
+            throw(e);
+        } // catch
+
+        listenThread = new Thread(this, "AdminListener");
+        listenThread.setDaemon(true);
+        listenThread.start();
+    } // Constructor
+
+
+        /**
+         *  A socket file left over from a server that didn't shut down
+         *   cleanly stops us from binding; remove it, if that's what it
+         *   is. Anything that isn't a socket is left alone.
+         */
+    protected static void removeStale(UnixDomainSocketAddress address)
+                                                          throws IOException
+    {
+        Path stale = address.getPath();
+        SocketChannel probe;
+
+        if (!Files.exists(stale, LinkOption.NOFOLLOW_LINKS))
+            return;
+
+        if (!Files.readAttributes(stale, BasicFileAttributes.class,
+                                  LinkOption.NOFOLLOW_LINKS).isOther())
+        {
+            throw(new IOException(stale + " is in the way"));
+        } // if
+
+        try
+        {
+            probe = SocketChannel.open(address);
+        } // try
+        catch (IOException e)   // nobody home; it's ours to take.
+        {
+            Files.delete(stale);
+            return;
+        } // catch
+
+        probe.close();
+        throw(new IOException("another server is listening on " + stale));
+    } // removeStale
+
+
+    protected static void ownerOnly(Path socketPath) throws IOException
+    {
+        try
+        {
+            Files.setPosixFilePermissions(socketPath,
+                                PosixFilePermissions.fromString("rw-------"));
+        } // try
+        catch (UnsupportedOperationException e)
+        {
+            // not a POSIX filesystem; the directory's permissions will do.
+        } // catch
+    } // ownerOnly
+
+
+        /**
+         *  Is the other end running as the same user we are? If the
+         *   system can't say, the socket file's permissions have already
+         *   decided.
+         */
+    protected static boolean trusted(SocketChannel admin)
+    {
+        UnixDomainPrincipal peer;
+
+        try
+        {
+            peer = admin.getOption(ExtendedSocketOptions.SO_PEERCRED);
+        } // try
+        catch (UnsupportedOperationException e)
+        {
+            return(true);
+        } // catch
+        catch (IOException e)
+        {
+            return(false);
+        } // catch
+
+        return(peer.user().getName().equals(
+                                         System.getProperty("user.name")));
+    } // trusted
+
+
+        /**
+         *  Stop listening, and hang up on everybody.
+         */
+    public void close()
+    {
+        Object[] connected;
+        int i;
+
+        try
+        {
+            listener.close();   // accept() throws, and the thread quits.
+            Files.deleteIfExists(path);
+        } // try
+        catch (IOException e)
+        {
+            // don't care...it's going in the trash anyway...
+        } // catch
+
+        synchronized (admins)
+        {
+            connected = admins.toArray();
+        } // synchronized
+
+        for (i = 0; i < connected.length; i++)
+            ((AdminSession) connected[i]).close();
+    } // close
+
+
+        /**
+         *  An AdminSession calls this when its admin is gone.
+         */
+    public void sessionDone(AdminSession session)
+    {
+        admins.removeElement(session);
+    } // sessionDone
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        SocketChannel admin;
+        AdminSession session;
+
+        while (listener.isOpen())
+        {
+            try
+            {
+                admin = listener.accept();
+            } // try
+            catch (IOException e)
+            {
+                if (!listener.isOpen())
+                    return;
+
+                if (JBBSConfig.logIOExceptions)
+                {
+                    JBBSLog.add(JBBSLog.PRIORITY_INFO, "IOException",
+                                e.getMessage(), "AdminListener.run();");
+                } // if
+                continue;
+            } // catch
+
+            if (!trusted(admin))
+            {
+                JBBSLog.add(JBBSLog.PRIORITY_WARNING, "Admin",
+                            "Refused a connection from another user.");
+                AdminSession.hangUp(admin, null);
+            } // if
+
+            else if (admins.size() >= MAX_ADMINS)
+            {
+                AdminSession.hangUp(admin, "Too many admins connected; " +
+                                           "try again later.");
+            } // else if
+
+            else
+            {
+                session = new AdminSession(this, admin);
+                admins.addElement(session);
+                session.start();
+            } // else
+        } // while
+    } // run
+
+} // AdminListener
+
+// end of AdminListener.java ...
+
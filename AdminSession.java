@@ -0,0 +1,145 @@
+/**
+ *  One admin, connected through the AdminListener's socket. Their
+ *   commands go through ConsoleCommands, same as the console's, on a
+ *   thread of their own; output goes back down the socket, a command's
+ *   worth at a time. "quit" (or just hanging up) ends it.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+
+public class AdminSession implements Runnable
+{
+        // Instance variables...
+    protected AdminListener listener;
+    protected SocketChannel channel;
+    protected BufferedReader in;
+    protected PrintStream out;
+    protected Thread adminThread;
+
+
+        /**
+         *  Constructor; start() gets it going.
+         *
+         *   @param _listener Who to tell when the admin's gone.
+         *   @param _channel Admin's connection.
+         */
+    public AdminSession(AdminListener _listener, SocketChannel _channel)
+    {
+        listener = _listener;
+        channel = _channel;
+        in = new BufferedReader(new InputStreamReader(
+                                         new AdminInputStream(channel)));
+        out = new PrintStream(new BufferedOutputStream(
+                                         Channels.newOutputStream(channel)));
+        adminThread = new Thread(this, "AdminSession");
+        adminThread.setDaemon(true);
+    } // Constructor
+
+
+    public void start()
+    {
+        adminThread.start();
+    } // start
+
+
+        /**
+         *  Turn someone away.
+         *
+         *   @param refused Their connection.
+         *   @param why What to tell them first; <em>null</em> says nothing.
+         */
+    public static void hangUp(SocketChannel refused, String why)
+    {
+        try
+        {
+            if (why != null)
+                refused.write(ByteBuffer.wrap((why + "\n").getBytes()));
+        } // try
+        catch (IOException e)
+        {
+            // don't care; they're going anyhow.
+        } // catch
+
+        try
+        {
+            refused.close();
+        } // try
+        catch (IOException e)
+        {
+            // don't care.
+        } // catch
+    } // hangUp
+
+
+        /**
+         *  Hang up on the admin, from any thread. Their thread finds out
+         *   on its next read or write, and cleans up.
+         */
+    public void close()
+    {
+        hangUp(channel, null);
+    } // close
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        String command;
+
+        JBBSLog.add(JBBSLog.PRIORITY_INFO, "Admin", "Admin connected.");
+
+        out.println(JBBS.TITLE + " " + JBBS.versionString() +
+                    " remote admin.");
+        out.println("Type HELP for list of commands, QUIT to hang up.");
+        out.flush();
+
+        try
+        {
+            while ((command = in.readLine()) != null)
+            {
+                command = command.trim();
+                if ((command.equalsIgnoreCase("quit")) ||
+                    (command.equalsIgnoreCase("exit")))
+                {
+                    break;
+                } // if
+
+                if (ConsoleCommands.execute(command, out, in))
+                {
+                    out.println("Shutting down.");
+                    out.flush();
+                    JBBSLog.add(JBBSLog.PRIORITY_WARNING, "Admin",
+                                "Shutdown requested by remote admin.");
+                    JBBS.requestShutdown();
+                    break;
+                } // if
+
+                if (out.checkError())   // flushes, too.
+                    break;
+            } // while
+        } // try
+
+        catch (IOException e)
+        {
+            // hung up, or we're shutting down; either way, we're done.
+        } // catch
+
+        finally
+        {
+            out.flush();
+            close();
+            listener.sessionDone(this);
+            JBBSLog.add(JBBSLog.PRIORITY_INFO, "Admin", "Admin disconnected.");
+        } // finally
+    } // run
+
+} // AdminSession
+
+// end of AdminSession.java ...
+
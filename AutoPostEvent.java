@@ -0,0 +1,27 @@
+/**
+ *  Flight recorder event: reading or writing the autoposts file,
+ *   waiting for its lock included.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import jdk.jfr.*;
+
+@Name("jbbs.AutoPost")
+@Label("AutoPosts Access")
+@Category({ "JBBS", "Storage" })
+@StackTrace(false)
+public class AutoPostEvent extends Event
+{
+    @Label("Write")
+    public boolean write;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+
+} // AutoPostEvent
+
+// end of AutoPostEvent.java ...
+
@@ -19,6 +19,8 @@ public class AutoPosts
     {
         int i;
         String[] postLines = new String[4];
+        AutoPostEvent event;
+        long start;
 
         postLines[0] = "From: " + session.user.getHandle() + "\r\n";
 
@@ -27,7 +29,19 @@ public class AutoPosts
             for (i = 0; i < postLines.length; i++)
                 postLines[i] = session.getSocketStream().recvln(78);
 
+            event = new AutoPostEvent();
+            event.begin();
+            start = System.nanoTime();
             writeAutoPostMutex(postLines);
+            JBBSMetrics.autoPostWrite.recordSince(start);
+
+            if (event.shouldCommit())
+            {
+                event.write = true;
+                for (i = 0; i < postLines.length; i++)
+                    event.bytes += postLines[i].length();
+                event.commit();
+            } // if
         } // if
 
     } // addAutoPost
@@ -136,8 +150,20 @@ public class AutoPosts
     {
         SocketStream io = session.getSocketStream();
         byte[] autoPostBytes;
+        AutoPostEvent event = new AutoPostEvent();
+        long start = System.nanoTime();
 
+        event.begin();
         autoPostBytes = readAutoPostsMutex();
+        JBBSMetrics.autoPostRead.recordSince(start);
+
+        if (event.shouldCommit())
+        {
+            event.write = false;
+            event.bytes = (autoPostBytes == null) ? 0 : autoPostBytes.length;
+            event.commit();
+        } // if
+
         if (autoPostBytes == null)
             io.sendln("Sorry, autoposts not available.");
         else
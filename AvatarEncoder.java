@@ -0,0 +1,136 @@
+/**
+ *  Squeezes AVATAR output: any run of four or more of the same printable
+ *   character goes out as ^Y, the character, and the count; three bytes,
+ *   however long the run (up to 255). ANSI art is mostly runs of spaces
+ *   and block characters, so this adds up.
+ *
+ *  ^V commands and ^Y repeats already in the output are passed through
+ *   untouched, arguments and all. Binary data (file transfers, doors)
+ *   must not be squeezed; turn squeezing off around it.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+
+public class AvatarEncoder extends OutputStream
+{
+        // Constants...
+    public final static int MIN_RUN = 4;        // shorter runs don't pay.
+    public final static int MAX_RUN = 255;      // count is one byte.
+
+        // Instance variables...
+    protected OutputStream sink;
+    protected byte[] squeezed = new byte[OutputQueue.LEN_STAGING];
+    protected boolean squeezing = true;
+    protected boolean gotCommand = false;       // last byte was ^V.
+    protected int passLeft = 0;                 // argument bytes to pass.
+
+
+    public AvatarEncoder(OutputStream _sink)
+    {
+        sink = _sink;
+    } // Constructor
+
+
+        /**
+         *  Turn squeezing off (for binary data) or back on.
+         */
+    public synchronized void setSqueezing(boolean squeeze)
+    {
+        squeezing = squeeze;
+        gotCommand = false;
+        passLeft = 0;
+    } // setSqueezing
+
+
+        // OutputStream implementation...
+
+    public void write(int b) throws IOException
+    {
+        byte[] one = new byte[1];
+
+        one[0] = (byte) b;
+        write(one, 0, 1);
+    } // write (one byte)
+
+
+    public synchronized void write(byte[] b, int off, int len)
+                                                  throws IOException
+    {
+        int end = off + len;
+        int outLen = 0;
+        int run;
+        int ch;
+        int i;
+
+        if (!squeezing)
+        {
+            sink.write(b, off, len);
+            return;
+        } // if
+
+        if (squeezed.length < len)      // output is never longer.
+            squeezed = new byte[len];
+
+        for (i = off; i < end; i += run)
+        {
+            ch = b[i] & 0xFF;
+            run = 1;
+
+            if (passLeft > 0)
+                passLeft--;
+
+            else if (gotCommand)        // ^V's command; 1 and 8 take args.
+            {
+                gotCommand = false;
+                passLeft = (ch == 1) ? 1 : ((ch == 8) ? 2 : 0);
+            } // else if
+
+            else if (ch == CursorTracker.AVT_COMMAND)
+                gotCommand = true;
+
+            else if (ch == CursorTracker.AVT_REPEAT)
+                passLeft = 2;
+
+            else if (ch >= ' ')
+            {
+                while ((i + run < end) && (b[i + run] == b[i]) &&
+                       (run < MAX_RUN))
+                {
+                    run++;
+                } // while
+
+                if (run >= MIN_RUN)
+                {
+                    squeezed[outLen++] = (byte) CursorTracker.AVT_REPEAT;
+                    squeezed[outLen++] = b[i];
+                    squeezed[outLen++] = (byte) run;
+                    continue;
+                } // if
+            } // else if
+
+            System.arraycopy(b, i, squeezed, outLen, run);
+            outLen += run;
+        } // for
+
+        sink.write(squeezed, 0, outLen);
+    } // write (byte array range)
+
+
+    public void flush() throws IOException
+    {
+        sink.flush();
+    } // flush
+
+
+    public void close() throws IOException
+    {
+        sink.close();
+    } // close
+
+} // AvatarEncoder
+
+// end of AvatarEncoder.java ...
+
@@ -0,0 +1,248 @@
+/**
+ *  AVATAR/0 terminal emulation for JBBS. This class derives SocketStream.
+ *
+ *  AVATAR does what ANSI does in fewer bytes: a color change is three
+ *   bytes (^V ^A attribute), a cursor move is four (^V ^H row column),
+ *   and a run of one character is three (^Y character count), which
+ *   AvatarEncoder does to everything we send. It can't tell us where
+ *   the cursor is, though, so positions come from our model alone.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.net.Socket;
+
+public class AvatarTerminal extends SocketStream
+{
+        // Constants...
+    public static final byte ASCII_ENQ = 5;
+    protected static final String TERMEMUL_NAME = "AVATAR";
+    protected static final byte[] DETECT_REPLY = { 'A', 'V', 'T' };  // ^E's.
+
+        // ^L clears the screen, homes the cursor, and sets this color.
+    protected static final int CLEAR_ATTR = TERMCOLOR_CYAN;
+
+    protected static final byte[] CLEAR_SCREEN = { CursorTracker.AVT_CLEAR };
+    protected static final byte[] CLEAR_EOL = { CursorTracker.AVT_COMMAND, 7 };
+
+        // Instance variables...
+    protected CursorTracker cursor;
+    protected AvatarEncoder encoder;
+    protected int curAttr = -1;                 // -1 == don't know.
+    protected byte[] avt = new byte[4];         // for building commands.
+
+
+        /**
+         *  Don't actually create an instance of AvatarTerminal unless
+         *   the client's terminal type or OnlineSession.probeEmulation()
+         *   says it does AVATAR.
+         *
+         *   @param s Socket that connects to client with AVATAR support.
+         *   @throw LostCarrierException on network errors.
+         */
+    public AvatarTerminal(Socket s) throws LostCarrierException
+    {
+        super(s);
+        encoder = new AvatarEncoder(out);
+        cursor = new CursorTracker(encoder, true);
+        out = cursor;
+        avt[0] = CursorTracker.AVT_COMMAND;
+        watchScreenSize();
+        clearTerminal();
+        setColors(TERMCOLOR_WHITE, TERMCOLOR_BLACK);
+    } // Constructor
+
+
+        // Overrides for abstract SocketStream methods...
+
+    public String getTermEmulName()
+    {
+        return(TERMEMUL_NAME);
+    } // getTermEmulName
+
+    public boolean doesForeColor()
+    {
+        return(true);
+    } // doesForeColor
+
+    public boolean doesBackColor()
+    {
+        return(true);
+    } // doesBackColor
+
+    public boolean doesPositioning()
+    {
+        return(true);
+    } // doesPositioning
+
+
+        /**
+         *  Change colors; one attribute byte covers both, so it's one
+         *   command, and none at all if nothing changed.
+         */
+    public void setColors(int fore, int back) throws LostCarrierException
+    {
+        int attr;
+
+        if ((fore < TERMCOLOR_BLACK) || (fore > TERMCOLOR_HIWHITE) ||
+            (back < TERMCOLOR_BLACK) || (back > TERMCOLOR_HIWHITE))
+        {
+            return;     // bogus color.
+        } // if
+
+        checkDeliveries();
+        attr = fore | ((back % INTENSITY_COLORS) << 4);
+        if (attr == curAttr)
+            return;
+
+        avt[1] = 1;
+        avt[2] = (byte) attr;
+        send(avt, 3);
+        curAttr = attr;
+    } // setColors
+
+
+    public void setForeColor(int newColor) throws LostCarrierException
+    {
+        checkDeliveries();
+        setColors(newColor, (curAttr == -1) ? TERMCOLOR_BLACK : curAttr >> 4);
+    } // setForeColor
+
+
+    public void setBackColor(int newColor) throws LostCarrierException
+    {
+        checkDeliveries();
+        setColors((curAttr == -1) ? TERMCOLOR_WHITE : curAttr & 0x0F,
+                  newColor);
+    } // setBackColor
+
+
+    public void forgetColors()
+    {
+        curAttr = -1;
+    } // forgetColors
+
+
+        /**
+         *  Where's the cursor? AVATAR can't say, so this is the model's
+         *   best guess, even when it's not sure.
+         */
+    public int getPosX() throws LostCarrierException
+    {
+        checkDeliveries();
+        return(cursor.getX());
+    } // getPosX
+
+
+    public int getPosY() throws LostCarrierException
+    {
+        checkDeliveries();
+        return(cursor.getY());
+    } // getPosY
+
+
+    public void setPosXY(int X, int Y) throws LostCarrierException
+    {
+        avt[1] = 8;
+        avt[2] = (byte) Y;
+        avt[3] = (byte) X;
+        send(avt, 4);
+    } // setPosXY
+
+
+    public void clearTerminal() throws LostCarrierException
+    {
+        checkDeliveries();      // or a stale one would undo the next line.
+        send(CLEAR_SCREEN);
+        curAttr = CLEAR_ATTR;
+    } // clearTerminal
+
+
+    public boolean clearToEndOfLine() throws LostCarrierException
+    {
+        send(CLEAR_EOL);
+        return(true);
+    } // clearToEndOfLine
+
+
+    public int getScreenWidth()
+    {
+        return(cursor.getWidth());
+    } // getScreenWidth
+
+
+    public int getScreenHeight()
+    {
+        return(cursor.getHeight());
+    } // getScreenHeight
+
+
+    public void setScreenSize(int width, int height)
+    {
+        cursor.setScreenSize(width, height);
+    } // setScreenSize
+
+
+    public void forgetCursor()
+    {
+        cursor.invalidate();
+    } // forgetCursor
+
+
+    public byte[] encode(int color, String str)
+    /**
+     *  Render str in color, for queueing with deliver(). Like ANSI's,
+     *   this finishes by going back to white on black.
+     */
+    {
+        byte[] text = str.getBytes();
+        byte[] retVal;
+
+        if ((color < TERMCOLOR_BLACK) || (color > TERMCOLOR_HIWHITE))
+            return(text);
+
+        retVal = new byte[text.length + 6];
+        retVal[0] = CursorTracker.AVT_COMMAND;
+        retVal[1] = 1;
+        retVal[2] = (byte) color;
+        System.arraycopy(text, 0, retVal, 3, text.length);
+        retVal[text.length + 3] = CursorTracker.AVT_COMMAND;
+        retVal[text.length + 4] = 1;
+        retVal[text.length + 5] = (byte) TERMCOLOR_WHITE;
+
+        return(retVal);
+    } // encode
+
+
+        /**
+         *  Forget the cursor and colors if other sessions' bytes went
+         *   around them; see ANSITerminal.checkDeliveries().
+         */
+    protected void checkDeliveries()
+    {
+        if (wasDelivered())
+        {
+            cursor.invalidate();
+            forgetColors();
+        } // if
+    } // checkDeliveries
+
+
+        /**
+         *  Binary data is about to go by (or just went by); don't squeeze
+         *   it or watch it, and forget what we knew.
+         */
+    public void holdDeliveries(boolean hold)
+    {
+        super.holdDeliveries(hold);
+        encoder.setSqueezing(!hold);
+        cursor.setTracking(!hold);
+        forgetColors();
+    } // holdDeliveries
+
+} // AvatarTerminal
+
+// end of AvatarTerminal.java ...
+
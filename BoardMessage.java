@@ -0,0 +1,116 @@
+/**
+ *  One message posted to a MessageBoard. Instances are built by
+ *   MessageBoard.read(); create one yourself if you want to post.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+public class BoardMessage
+{
+        // Constants...
+    public final static int MAX_SUBJECT = 60;
+    public final static String ADDRESSED_TO_ALL = "All";
+
+        // Instance variables...
+    protected int    number = 0;     // message number on its board.
+    protected int    parent = 0;     // message this replies to; 0 == none.
+    protected int    author = 0;     // author's user record number.
+    protected long   postTime = 0;   // System.currentTimeMillis() at post.
+    protected String handle  = "";   // author's handle when posted.
+    protected String toWhom  = ADDRESSED_TO_ALL;
+    protected String subject = "";
+    protected String body    = "";
+
+
+        /**
+         *  Build a message ready for MessageBoard.post().
+         *
+         *   @param from User writing this message.
+         *   @param to Who the message is addressed to.
+         *   @param subj Subject line. Truncated to MAX_SUBJECT.
+         *   @param text The message text, lines separated by "\r\n".
+         *   @param replyTo Message number this replies to, 0 for a new thread.
+         */
+    public BoardMessage(JBBSUser from, String to, String subj,
+                        String text, int replyTo)
+    {
+        author = from.getNumber();
+        handle = from.getHandle();
+        toWhom = to;
+        setSubject(subj);
+        body = text;
+        parent = replyTo;
+    } // Constructor
+
+
+        /**
+         *  Used by MessageBoard when reading messages back in.
+         */
+    protected BoardMessage()
+    {
+    } // Constructor (void)
+
+
+        // Instance variable gateways...
+
+    public int getNumber()
+    {
+        return(number);
+    } // getNumber
+
+
+    public int getParent()
+    {
+        return(parent);
+    } // getParent
+
+
+    public int getAuthor()
+    {
+        return(author);
+    } // getAuthor
+
+
+    public long getPostTime()
+    {
+        return(postTime);
+    } // getPostTime
+
+
+    public String getHandle()
+    {
+        return(handle);
+    } // getHandle
+
+
+    public String getTo()
+    {
+        return(toWhom);
+    } // getTo
+
+
+    public String getSubject()
+    {
+        return(subject);
+    } // getSubject
+
+
+    public void setSubject(String newStr)
+    {
+        if (newStr.length() > MAX_SUBJECT)    // need to truncate string?
+            subject = newStr.substring(0, MAX_SUBJECT);
+        else
+            subject = newStr;
+    } // setSubject
+
+
+    public String getBody()
+    {
+        return(body);
+    } // getBody
+
+} // BoardMessage
+
+// end of BoardMessage.java ...
+
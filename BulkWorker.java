@@ -0,0 +1,132 @@
+/**
+ *  A small, fixed pool of low priority threads for big batch jobs (QWK
+ *   packets, mostly), so one user's huge job can't eat the processors
+ *   that interactive sessions need. The queue is bounded, too: when it's
+ *   full, submit() says no, and the caller tells the user to come back
+ *   later.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+public class BulkWorker implements Runnable
+{
+        // Constants...
+    public final static int WORKERS = 2;
+    public final static int MAX_QUEUED = 8;
+
+        // Static class variables...
+    protected static Runnable[] jobs = new Runnable[MAX_QUEUED];
+    protected static int head = 0;
+    protected static int count = 0;
+    protected static BulkWorker[] workers = null;
+    protected static int busy = 0;
+
+        // Instance variables...
+    protected Thread workerThread;
+
+
+    protected BulkWorker(int number)
+    {
+        workerThread = new Thread(this, "BulkWorker " + number);
+        workerThread.setDaemon(true);
+        workerThread.setPriority(Thread.NORM_PRIORITY - 2);
+        workerThread.start();
+    } // Constructor
+
+
+        /**
+         *  Queue a job. The pool starts on first use.
+         *
+         *   @param job Job to run on a pool thread.
+         *  @return <em>false</em> if the queue is full; job won't run.
+         */
+    public static synchronized boolean submit(Runnable job)
+    {
+        int i;
+
+        if (workers == null)
+        {
+            workers = new BulkWorker[WORKERS];
+            for (i = 0; i < workers.length; i++)
+                workers[i] = new BulkWorker(i);
+        } // if
+
+        if (count == jobs.length)
+            return(false);
+
+        jobs[(head + count) % jobs.length] = job;
+        count++;
+        BulkWorker.class.notify();
+        return(true);
+    } // submit
+
+
+    public static synchronized int getQueued()
+    {
+        return(count);
+    } // getQueued
+
+
+    public static synchronized int getBusy()
+    {
+        return(busy);
+    } // getBusy
+
+
+    protected static synchronized Runnable nextJob()
+    {
+        Runnable retVal;
+
+        while (count == 0)
+        {
+            try
+            {
+                BulkWorker.class.wait();
+            } // try
+            catch (InterruptedException e)
+            {
+                // don't care.
+            } // catch
+        } // while
+
+        retVal = jobs[head];
+        jobs[head] = null;
+        head = (head + 1) % jobs.length;
+        count--;
+        busy++;
+        return(retVal);
+    } // nextJob
+
+
+    protected static synchronized void jobDone()
+    {
+        busy--;
+    } // jobDone
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        while (true)    // loop until killed.
+        {
+            try
+            {
+                nextJob().run();
+            } // try
+            catch (RuntimeException e)
+            {
+                System.out.println("BulkWorker job failed: " + e);
+            } // catch
+            finally
+            {
+                jobDone();
+            } // finally
+        } // while
+    } // run
+
+} // BulkWorker
+
+// end of BulkWorker.java ...
+
@@ -0,0 +1,71 @@
+/**
+ *  Table-driven 16-bit CRC (CCITT polynomial 0x1021, starting at zero),
+ *   as used by XMODEM and ZMODEM. Works like java.util.zip.CRC32.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+public class CRC16
+{
+        // Static class variables...
+    protected static int[] table = new int[256];
+
+        // Instance variables...
+    protected int crc = 0;
+
+
+    static
+    {
+        int i;
+        int j;
+        int val;
+
+        for (i = 0; i < 256; i++)
+        {
+            val = (i << 8);
+            for (j = 0; j < 8; j++)
+            {
+                if ((val & 0x8000) != 0)
+                    val = (val << 1) ^ 0x1021;
+                else
+                    val <<= 1;
+            } // for
+            table[i] = (val & 0xFFFF);
+        } // for
+    } // static initializer
+
+
+    public void update(int b)
+    {
+        crc = ((crc << 8) ^ table[((crc >>> 8) ^ b) & 0xFF]) & 0xFFFF;
+    } // update (one byte)
+
+
+    public void update(byte[] b, int off, int len)
+    {
+        int c = crc;
+        int i;
+
+        for (i = off; i < off + len; i++)
+            c = ((c << 8) ^ table[((c >>> 8) ^ b[i]) & 0xFF]) & 0xFFFF;
+
+        crc = c;
+    } // update (byte array range)
+
+
+    public int getValue()
+    {
+        return(crc);
+    } // getValue
+
+
+    public void reset()
+    {
+        crc = 0;
+    } // reset
+
+} // CRC16
+
+// end of CRC16.java ...
+
@@ -0,0 +1,237 @@
+/**
+ *  Gets a new caller from a freshly accepted socket to an OnlineSession:
+ *   the TLS handshake or WebSocket upgrade, if the caller came in that
+ *   way, then terminal negotiation. Each caller gets a thread of their
+ *   own for it, so the listeners only ever wait on accept(), and nobody
+ *   slow to connect holds up anybody else.
+ *
+ *  A socket timeout only limits each read, so a caller could dribble in
+ *   a byte at a time and never finish. The whole setup has to be done
+ *   in SETUP_TIMEOUT; a watchdog thread hangs up on anybody who isn't.
+ *   No more than JBBSConfig.maxConnections callers are set up at once;
+ *   past that, new ones are turned away until some finish.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Vector;
+import javax.net.ssl.SSLSocket;
+
+public class CallerSetup implements Runnable
+{
+        // Constants...
+    public final static int TRANSPORT_TELNET    = 0;
+    public final static int TRANSPORT_TLS       = 1;
+    public final static int TRANSPORT_WEBSOCKET = 2;
+
+    public final static int SETUP_TIMEOUT = 30000;     // milliseconds.
+    public final static int WATCH_INTERVAL = 1000;     // milliseconds.
+
+        // Static class variables...
+    protected static Vector setups = new Vector();     // under way.
+    protected static Thread watchThread = null;
+
+        // Instance variables...
+    protected Socket caller;            // null == this is the watchdog.
+    protected int transport;
+    protected long deadline;
+
+
+    protected CallerSetup(Socket _caller, int _transport)
+    {
+        caller = _caller;
+        transport = _transport;
+        deadline = System.currentTimeMillis() + SETUP_TIMEOUT;
+    } // Constructor
+
+
+        /**
+         *  Set up a caller on a thread of their own. Returns right away.
+         *
+         *   @param caller Socket, just accepted.
+         *   @param transport One of the TRANSPORT_* constants.
+         */
+    public static void start(Socket caller, int transport)
+    {
+        CallerSetup setup;
+        Thread setupThread;
+
+        startWatchdog();
+
+        synchronized (setups)
+        {
+            if (setups.size() >= JBBSConfig.maxConnections)
+                setup = null;
+            else
+            {
+                setup = new CallerSetup(caller, transport);
+                setups.addElement(setup);
+            } // else
+        } // synchronized
+
+        if (setup == null)
+        {
+            JBBSMetrics.connectionsRefused.increment();
+            hangUp(caller);
+            return;
+        } // if
+
+        setupThread = new Thread(setup, "CallerSetup");
+        setupThread.setDaemon(true);
+        setupThread.start();
+    } // start
+
+
+    protected static synchronized void startWatchdog()
+    {
+        if (watchThread == null)
+        {
+            watchThread = new Thread(new CallerSetup(null, TRANSPORT_TELNET),
+                                     "CallerSetup watchdog");
+            watchThread.setDaemon(true);
+            watchThread.start();
+        } // if
+    } // startWatchdog
+
+
+    protected static void hangUp(Socket s)
+    {
+        try
+        {
+            s.close();
+        } // try
+        catch (IOException e)
+        {
+            // don't care.
+        } // catch
+    } // hangUp
+
+
+        /**
+         *  Take this caller off the list of setups under way, if the
+         *   watchdog hasn't already.
+         */
+    protected void finish()
+    {
+        synchronized (setups)
+        {
+            setups.removeElement(this);
+        } // synchronized
+    } // finish
+
+
+        /**
+         *  The handshake or upgrade, if any, then the OnlineSession.
+         */
+    protected void setUp()
+    {
+        Socket socket = caller;
+        long start;
+
+        try
+        {
+            switch (transport)
+            {
+                case TRANSPORT_TLS:
+                    caller.setSoTimeout(TLSListener.HANDSHAKE_TIMEOUT);
+                    start = System.nanoTime();
+                    ((SSLSocket) caller).startHandshake();
+                    JBBSMetrics.handshake.recordSince(start);
+                    caller.setSoTimeout(0);
+                    break;
+
+                case TRANSPORT_WEBSOCKET:
+                    caller.setSoTimeout(WebSocketListener.UPGRADE_TIMEOUT);
+                    caller.setTcpNoDelay(true);     // one frame per key.
+                    start = System.nanoTime();
+                    socket = WebSocketListener.upgrade(caller);
+                    JBBSMetrics.handshake.recordSince(start);
+                    socket.setSoTimeout(0);
+                    break;
+            } // switch
+
+            new OnlineSession(new TelnetSocket(socket));
+        } // try
+
+        catch (LostCarrierException e)
+        {
+            // they're gone already; nothing to clean up.
+        } // catch (LostCarrierException)
+
+        catch (IOException e)
+        {
+            if (JBBSConfig.logIOExceptions)
+            {
+                JBBSLog.add(JBBSLog.PRIORITY_INFO, "IOException",
+                            e.getMessage(), "CallerSetup.setUp();");
+            } // if
+
+            hangUp(caller);
+        } // catch (IOException)
+
+        finally
+        {
+            finish();
+        } // finally
+    } // setUp
+
+
+        /**
+         *  Hang up on everybody who's been at it too long. Their setup
+         *   threads find out on their next read, and give up.
+         */
+    protected void watch()
+    {
+        Vector late = new Vector();
+        CallerSetup setup;
+        long now;
+        int i;
+
+        while (true)    // loop until killed.
+        {
+            JBBS.nap(WATCH_INTERVAL);
+            now = System.currentTimeMillis();
+
+            synchronized (setups)
+            {
+                for (i = setups.size() - 1; i >= 0; i--)
+                {
+                    setup = (CallerSetup) setups.elementAt(i);
+                    if (now > setup.deadline)
+                    {
+                        setups.removeElementAt(i);
+                        late.addElement(setup);
+                    } // if
+                } // for
+            } // synchronized
+
+            for (i = 0; i < late.size(); i++)   // closing could be slow.
+            {
+                setup = (CallerSetup) late.elementAt(i);
+                JBBSLog.add(JBBSLog.PRIORITY_INFO, "Caller",
+                            "Hung up on a caller who took too long to " +
+                            "connect.");
+                hangUp(setup.caller);
+            } // for
+            late.removeAllElements();
+        } // while
+    } // watch
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        if (caller == null)
+            watch();
+        else
+            setUp();
+    } // run
+
+} // CallerSetup
+
+// end of CallerSetup.java ...
+
@@ -0,0 +1,305 @@
+/**
+ *  Real-time chat between online sessions, and sysop broadcasts.
+ *
+ *  Each line said in a room becomes a FanOutMessage, which is rendered
+ *   once per terminal emulation, no matter how many people are in the
+ *   room. A room's members are split into shards, one per FanOutWorker
+ *   (and one worker per processor), and each worker hands the message to
+ *   its shard. Nobody who says something ever waits on anybody else's
+ *   connection.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.util.Hashtable;
+
+public class ChatRoom
+{
+        // Constants...
+    public final static String DEFAULT_ROOMNAME = "Lobby";
+    public final static int MAX_ROOMNAME = 20;
+    public final static int MAX_CHATLINE = 200;
+    public final static Object BROADCAST = new Object();  // fan-out source.
+
+        // Static class variables...
+    protected static Hashtable rooms = new Hashtable();
+    protected static FanOutWorker[] workers = null;
+
+        // Instance variables...
+    protected String name;
+    protected volatile OnlineSession[][] shards;  // copied on every change.
+
+
+        /**
+         *  Start the FanOutWorkers, if they aren't already running.
+         *
+         *  @return The workers, one per processor.
+         */
+    protected static synchronized FanOutWorker[] getWorkers()
+    {
+        int i;
+
+        if (workers == null)
+        {
+            i = Runtime.getRuntime().availableProcessors();
+            workers = new FanOutWorker[i];
+            for (i = 0; i < workers.length; i++)
+                workers[i] = new FanOutWorker(i);
+        } // if
+
+        return(workers);
+    } // getWorkers
+
+
+        /**
+         *  Find a room by name, creating it if nobody's in it yet.
+         *
+         *   @param roomName Room to find. Case doesn't matter.
+         *  @return The room.
+         */
+    public static synchronized ChatRoom getRoom(String roomName)
+    {
+        String key = roomName.toLowerCase();
+        ChatRoom retVal = (ChatRoom) rooms.get(key);
+
+        if (retVal == null)
+        {
+            retVal = new ChatRoom(roomName, getWorkers().length);
+            rooms.put(key, retVal);
+        } // if
+
+        return(retVal);
+    } // getRoom
+
+
+    protected ChatRoom(String roomName, int shardCount)
+    {
+        int i;
+
+        name = roomName;
+        shards = new OnlineSession[shardCount][];
+        for (i = 0; i < shardCount; i++)
+            shards[i] = new OnlineSession[0];
+    } // Constructor
+
+
+        /**
+         *  Add a session to this room, in whichever shard is smallest.
+         */
+    public synchronized void join(OnlineSession session)
+    {
+        OnlineSession[][] newShards = new OnlineSession[shards.length][];
+        OnlineSession[] grow;
+        int smallest = 0;
+        int i;
+
+        for (i = 0; i < shards.length; i++)
+        {
+            newShards[i] = shards[i];
+            if (shards[i].length < shards[smallest].length)
+                smallest = i;
+        } // for
+
+        grow = new OnlineSession[shards[smallest].length + 1];
+        System.arraycopy(shards[smallest], 0, grow, 0, grow.length - 1);
+        grow[grow.length - 1] = session;
+        newShards[smallest] = grow;
+
+        shards = newShards;
+    } // join
+
+
+        /**
+         *  Remove a session from this room. Empty rooms go away.
+         */
+    public void leave(OnlineSession session)
+    {
+        OnlineSession[][] newShards;
+        OnlineSession[] shrink;
+        int i;
+        int j;
+
+        synchronized (ChatRoom.class)    // lock order: class, then room.
+        {
+            synchronized (this)
+            {
+                newShards = new OnlineSession[shards.length][];
+                for (i = 0; i < shards.length; i++)
+                {
+                    newShards[i] = shards[i];
+                    for (j = 0; j < shards[i].length; j++)
+                    {
+                        if (shards[i][j] == session)
+                        {
+                            shrink = new OnlineSession[shards[i].length - 1];
+                            System.arraycopy(shards[i], 0, shrink, 0, j);
+                            System.arraycopy(shards[i], j + 1, shrink, j,
+                                             shrink.length - j);
+                            newShards[i] = shrink;
+                        } // if
+                    } // for
+                } // for
+
+                shards = newShards;
+
+                if (getMemberCount() == 0)
+                    rooms.remove(name.toLowerCase());
+            } // synchronized
+        } // synchronized
+    } // leave
+
+
+    public int getMemberCount()
+    {
+        OnlineSession[][] s = shards;
+        int retVal = 0;
+        int i;
+
+        for (i = 0; i < s.length; i++)
+            retVal += s[i].length;
+
+        return(retVal);
+    } // getMemberCount
+
+
+        /**
+         *  Send a message to everyone in this room. Returns as soon as
+         *   the message is queued with the FanOutWorkers.
+         */
+    public void post(FanOutMessage msg)
+    {
+        OnlineSession[][] s = shards;
+        FanOutWorker[] w = getWorkers();
+        int i;
+
+        for (i = 0; i < s.length; i++)
+        {
+            if (s[i].length > 0)
+                w[i].add(this, s[i], msg);
+        } // for
+    } // post
+
+
+        /**
+         *  Send a line to every session online, whether they're chatting
+         *   or not.
+         *
+         *   @param from Who it's from, "SysOp" from the console.
+         *   @param text What to say.
+         */
+    public static void broadcast(String from, String text)
+    {
+        OnlineSession[] everyone = ConnectionManager.getSessions();
+        FanOutWorker[] w = getWorkers();
+        OnlineSession[] slice;
+        FanOutMessage msg;
+        int sliceLen;
+        int start;
+        int i;
+
+        msg = new FanOutMessage(OutputQueue.TYPE_BROADCAST,
+                    new int[] { SocketStream.TERMCOLOR_HIRED,
+                                SocketStream.TERMCOLOR_HIWHITE },
+                    new String[] { "\r\n*** Broadcast from " + from + ": ",
+                                   text });
+
+        sliceLen = (everyone.length + w.length - 1) / w.length;
+        for (i = 0, start = 0; start < everyone.length; i++, start += sliceLen)
+        {
+            slice = new OnlineSession[Math.min(sliceLen,
+                                               everyone.length - start)];
+            System.arraycopy(everyone, start, slice, 0, slice.length);
+            w[i].add(BROADCAST, slice, msg);
+        } // for
+    } // broadcast
+
+
+    protected void say(String from, String text)
+    {
+        post(new FanOutMessage(OutputQueue.TYPE_CHAT,
+                    new int[] { SocketStream.TERMCOLOR_HICYAN,
+                                SocketStream.TERMCOLOR_WHITE },
+                    new String[] { "<" + from + "> ", text }));
+    } // say
+
+
+    protected void announce(String text)
+    {
+        post(new FanOutMessage(OutputQueue.TYPE_CHAT,
+                               new int[] { SocketStream.TERMCOLOR_HIYELLOW },
+                               new String[] { "*** " + text }));
+    } // announce
+
+
+    protected void who(SocketStream io) throws LostCarrierException
+    {
+        OnlineSession[][] s = shards;
+        int i;
+        int j;
+
+        io.sendln("In " + name + ":");
+        for (i = 0; i < s.length; i++)
+        {
+            for (j = 0; j < s[i].length; j++)
+                io.sendln("  " + s[i][j].user.getHandle());
+        } // for
+    } // who
+
+
+        /**
+         *  Call this from whereever, and this class will deal with the
+         *   rest of the details.
+         *
+         *   @param session Session that wants to chat.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public static void doChat(OnlineSession session)
+                               throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        String handle = session.user.getHandle();
+        String roomName;
+        ChatRoom room;
+        String line;
+        boolean getOut = false;
+
+        io.send("Room [" + DEFAULT_ROOMNAME + "] : ");
+        roomName = io.recvln(MAX_ROOMNAME).trim();
+        if (roomName.length() == 0)
+            roomName = DEFAULT_ROOMNAME;
+
+        synchronized (ChatRoom.class)   // don't let it vanish before join.
+        {
+            room = getRoom(roomName);
+            room.join(session);
+        } // synchronized
+
+        try
+        {
+            io.sendln("Type /WHO to see who's here, /QUIT to leave.");
+            room.announce(handle + " has joined " + room.name + ".");
+
+            while (!getOut)
+            {
+                line = io.recvln(MAX_CHATLINE);
+                if (line.equalsIgnoreCase("/quit"))
+                    getOut = true;
+                else if (line.equalsIgnoreCase("/who"))
+                    room.who(io);
+                else if (line.trim().length() > 0)
+                    room.say(handle, line);
+            } // while
+        } // try
+
+        finally
+        {
+            room.leave(session);
+            room.announce(handle + " has left " + room.name + ".");
+        } // finally
+    } // doChat
+
+} // ChatRoom
+
+// end of ChatRoom.java ...
+
@@ -1,6 +1,10 @@
 /**
  *   Class that handles incoming connections. This class will create
  *    sockets to deal with them, and spin threads for them to run in.
+ *    Telnet over TLS and browser callers, if they're configured, come
+ *    in through a TLSListener and a WebSocketListener, which hand their
+ *    callers to CallerSetup the same way. A MetricsListener, if
+ *    there is one, serves JBBSMetrics to local monitoring.
  *
  *      Copyright (c) Lighting and Sound Technologies, 1997.
  *       Written by Ryan C. Gordon.
@@ -11,11 +15,18 @@ import java.net.*;
 
 public class ConnectionManager implements Runnable
 {
+    public final static int ACCEPT_STALL_LIMIT = 30000;  // milliseconds.
+
     protected static ServerSocket incoming = null;
+    protected static TLSListener tlsIncoming = null;
+    protected static WebSocketListener webIncoming = null;
+    protected static MetricsListener metricsIncoming = null;
+    protected static AdminListener adminIncoming = null;
     protected static Thread cmThread;
-    protected static OnlineSession[] sessionList;
+    protected static volatile OnlineSession[] sessionList;  // see below.
     protected static long totalConnected = 0; // total connections.
     protected static int currentConnected = 0; // total current connections.
+    protected static volatile long acceptedAt = 0;   // caller being set up.
 
 
     public static long getTotalConnectionCount()
@@ -30,6 +41,128 @@ public class ConnectionManager implements Runnable
     } // getCurrentConnectionCount
 
 
+        // The session list is copied whenever somebody comes or goes
+        //  (under the class lock), and never changed once it's out
+        //  there. So the lookups below take no lock at all: they work
+        //  on whichever copy was current when they started. Callers
+        //  come and go far less often than the list gets looked at.
+
+    protected static OnlineSession[] currentSlots()
+    {
+        OnlineSession[] retVal = sessionList;
+        return((retVal == null) ? new OnlineSession[0] : retVal);
+    } // currentSlots
+
+
+    public static OnlineSession[] getSessions()
+    /**
+     *  Get a snapshot of everyone online. The array is yours to keep.
+     */
+    {
+        OnlineSession[] slots = currentSlots();
+        OnlineSession[] retVal;
+        int i;
+        int j = 0;
+
+        for (i = 0; i < slots.length; i++)
+        {
+            if (slots[i] != null)
+                j++;
+        } // for
+
+        retVal = new OnlineSession[j];
+        for (i = 0, j = 0; i < slots.length; i++)
+        {
+            if (slots[i] != null)
+                retVal[j++] = slots[i];
+        } // for
+
+        return(retVal);
+    } // getSessions
+
+
+    public static OnlineSession getSessionFor(int userNumber)
+    /**
+     *  Find a user's session.
+     *
+     *     params : userNumber == user's record number.
+     *    returns : user's session if they're logged in, null otherwise.
+     */
+    {
+        OnlineSession[] slots = currentSlots();
+        int i;
+
+        for (i = 0; i < slots.length; i++)
+        {
+            if ((slots[i] != null) && (slots[i].user != null) &&
+                (slots[i].user.getNumber() == userNumber))
+                return(slots[i]);
+        } // for
+
+        return(null);
+    } // getSessionFor
+
+
+    public static OnlineSession getSessionOnNode(int node)
+    /**
+     *  Find the session on a node.
+     *
+     *     params : node == 1-based node number, as getNodeFor() gives.
+     *    returns : the session, null if the node's empty or there's no
+     *              such node.
+     */
+    {
+        OnlineSession[] slots = currentSlots();
+
+        if ((node < 1) || (node > slots.length))
+            return(null);
+
+        return(slots[node - 1]);
+    } // getSessionOnNode
+
+
+    public static int getNodeFor(OnlineSession session)
+    /**
+     *  Find a session's node number, for door drop files and such.
+     *
+     *     params : session == session to look for.
+     *    returns : 1-based slot the session is in, 0 if it isn't online.
+     */
+    {
+        OnlineSession[] slots = currentSlots();
+        int i;
+
+        for (i = 0; i < slots.length; i++)
+        {
+            if (slots[i] == session)
+                return(i + 1);
+        } // for
+
+        return(0);
+    } // getNodeFor
+
+
+    public static boolean isAcceptLoopHealthy()
+    /**
+     *  Is the accept loop still taking callers? Callers are set up
+     *   (terminal negotiation and all) by CallerSetup, on threads of
+     *   their own, so this only stalls if handing them off does.
+     *
+     *    returns : true if it's running, and not stuck on one caller.
+     */
+    {
+        Thread t = cmThread;
+        ServerSocket s = incoming;
+        long since = acceptedAt;
+
+        if ((t == null) || (!t.isAlive()) || (s == null) || (s.isClosed()))
+            return(false);
+
+        return((since == 0) ||
+               (System.currentTimeMillis() - since < ACCEPT_STALL_LIMIT));
+    } // isAcceptLoopHealthy
+
+
     public static boolean saturated()
     {
         return((currentConnected >= JBBSConfig.maxConnections) ? true : false);
@@ -38,19 +171,27 @@ public class ConnectionManager implements Runnable
 
     public static synchronized boolean addSession(OnlineSession addMe)
     {
+        OnlineSession[] slots;
         int i;
 
-        if (saturated())
+        if ((incoming == null) || (saturated()))    // shut down, or full.
+        {
+            JBBSMetrics.connectionsRefused.increment();
             return(false);
+        } // if
 
         totalConnected++;
         currentConnected++;
+        JBBSMetrics.connections.increment();
+        JBBSMetrics.online.increment();
 
         for (i = 0; i < JBBSConfig.maxConnections; i++)
         {
             if (sessionList[i] == null)
             {
-                sessionList[i] = addMe;
+                slots = sessionList.clone();
+                slots[i] = addMe;
+                sessionList = slots;
                 return(true);
             } // if
         } // for
@@ -61,14 +202,18 @@ public class ConnectionManager implements Runnable
 
     public static synchronized void removeSession(OnlineSession removeMe)
     {
+        OnlineSession[] slots;
         int i;
 
         for (i = 0; i < JBBSConfig.maxConnections; i++)
         {
             if (sessionList[i] == removeMe)
             {
-                sessionList[i] = null;
+                slots = sessionList.clone();
+                slots[i] = null;
+                sessionList = slots;
                 currentConnected--;
+                JBBSMetrics.online.decrement();
                 return; 
            } // if
         } // for
@@ -92,11 +237,68 @@ public class ConnectionManager implements Runnable
                                     JBBSConfig.maxConnections);
         cmThread = new Thread(this);
         cmThread.start();
+
+        if (JBBSConfig.tlsPortNum != 0)
+        {
+            try
+            {
+                tlsIncoming = new TLSListener();
+            } // try
+            catch (IOException e)   // plain telnet still works.
+            {
+                System.out.println("Couldn't listen for TLS on port " +
+                                   JBBSConfig.tlsPortNum + " [" +
+                                   e.getMessage() + "]");
+            } // catch
+        } // if
+
+        if (JBBSConfig.webPortNum != 0)
+        {
+            try
+            {
+                webIncoming = new WebSocketListener();
+            } // try
+            catch (IOException e)
+            {
+                System.out.println("Couldn't listen for browsers on port " +
+                                   JBBSConfig.webPortNum + " [" +
+                                   e.getMessage() + "]");
+            } // catch
+        } // if
+
+        if (JBBSConfig.metricsPortNum != 0)
+        {
+            try
+            {
+                metricsIncoming = new MetricsListener();
+            } // try
+            catch (IOException e)
+            {
+                System.out.println("Couldn't listen for metrics on port " +
+                                   JBBSConfig.metricsPortNum + " [" +
+                                   e.getMessage() + "]");
+            } // catch
+        } // if
+
+        if (JBBSConfig.adminSocket.length() > 0)
+        {
+            try
+            {
+                adminIncoming = new AdminListener();
+            } // try
+            catch (IOException e)
+            {
+                System.out.println("Couldn't listen for admins on " +
+                                   JBBSConfig.adminSocket + " [" +
+                                   e.getMessage() + "]");
+            } // catch
+        } // if
     } // Constructor
 
 
     public static synchronized void shutdown()
     {
+        OnlineSession[] slots;
         int i;
 
         cmThread.stop();
@@ -111,17 +313,38 @@ public class ConnectionManager implements Runnable
         } // catch
         incoming = null;
 
-        for (i = 0; i < sessionList.length; i++)
+        if (tlsIncoming != null)
         {
-            if (sessionList[i] != null)
-            {
-                sessionList[i].shutdown();
-                sessionList[i] = null;
-                currentConnected--;
-            } // if
-        } // for
+            tlsIncoming.close();
+            tlsIncoming = null;
+        } // if
+
+        if (webIncoming != null)
+        {
+            webIncoming.close();
+            webIncoming = null;
+        } // if
 
-        sessionList = null;
+        if (metricsIncoming != null)
+        {
+            metricsIncoming.close();
+            metricsIncoming = null;
+        } // if
+
+        if (adminIncoming != null)
+        {
+            adminIncoming.close();
+            adminIncoming = null;
+        } // if
+
+            // Each session's thread frees its own slot on the way out,
+            //  through removeSession(), once we let go of the lock.
+        slots = sessionList;
+        for (i = 0; i < slots.length; i++)
+        {
+            if (slots[i] != null)
+                slots[i].shutdown();
+        } // for
     } // finalize
 
 
@@ -129,6 +352,7 @@ public class ConnectionManager implements Runnable
 
     public void run()
     {
+        Socket caller;
         int i;
 
         while (true)    // loop until killed.
@@ -136,15 +360,18 @@ public class ConnectionManager implements Runnable
             try
             {
                 Thread.yield();
-                new OnlineSession(incoming.accept());
+                caller = incoming.accept();
+                acceptedAt = System.currentTimeMillis();
+                try
+                {
+                    CallerSetup.start(caller, CallerSetup.TRANSPORT_TELNET);
+                } // try
+                finally
+                {
+                    acceptedAt = 0;
+                } // finally
             } // try
 
-            catch (LostCarrierException e)     // !!! why?
-            {
-                System.out.println("LostCarrierException on ServerSocket! [" +
-                                   e.getMessage() + "]");
-            } // catch (LostCarrierException)
-
             catch (IOException e)
             {
                 System.out.println("IOException on ServerSocket! [" +
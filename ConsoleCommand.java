@@ -0,0 +1,33 @@
+/**
+ *  A command for the server's console. Register one with
+ *   ConsoleCommands.register(), and it shows up in "help", and works
+ *   anywhere console commands are taken.
+ *
+ *  Commands can run on more than one thread at once (there may be more
+ *   than one console), so they mustn't keep state of their own between
+ *   calls, and mustn't hold locks sessions need while they print.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+
+public interface ConsoleCommand
+{
+        /**
+         *  Do the command.
+         *
+         *   @param params The rest of the line, trimmed; <em>null</em> if
+         *                 there's nothing.
+         *   @param out Where to print.
+         *   @param in Where answers come from (to "Are you sure?", etc).
+         *  @return <em>true</em> if the server should shut down.
+         *   @throw IOException if in or out fails.
+         */
+    public boolean execute(String params, PrintStream out, BufferedReader in)
+                                                         throws IOException;
+} // ConsoleCommand
+
+// end of ConsoleCommand.java ...
+
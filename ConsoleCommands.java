@@ -0,0 +1,120 @@
+/**
+ *  Every console command, by name. JBBS's console (and anything else
+ *   that takes commands) hands lines to execute(), which finds the
+ *   command and runs it; "help" lists what's registered, in the order
+ *   it was registered. The built-in ones are in ServerCommands.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.util.*;
+
+public class ConsoleCommands
+{
+        // Static class variables...
+    protected static Hashtable commands = new Hashtable();  // name -> cmd.
+    protected static Vector names = new Vector();
+    protected static Vector usages = new Vector();
+    protected static Vector descriptions = new Vector();
+
+
+        /**
+         *  Add a command. One with the same name is replaced.
+         *
+         *   @param name What's typed, like "stats". Case doesn't matter.
+         *   @param usage How it's typed, for "help": "stats [reset]".
+         *   @param description What it does, for "help".
+         *   @param command The command.
+         */
+    public static synchronized void register(String name, String usage,
+                                             String description,
+                                             ConsoleCommand command)
+    {
+        int i;
+
+        name = name.toLowerCase();
+        i = names.indexOf(name);
+        if (i == -1)
+        {
+            names.addElement(name);
+            usages.addElement(usage);
+            descriptions.addElement(description);
+        } // if
+        else
+        {
+            usages.setElementAt(usage, i);
+            descriptions.setElementAt(description, i);
+        } // else
+
+        commands.put(name, command);
+    } // register
+
+
+    public static ConsoleCommand getCommand(String name)
+    {
+        return((ConsoleCommand) commands.get(name.toLowerCase()));
+    } // getCommand
+
+
+        /**
+         *  Run a command line.
+         *
+         *   @param line What was typed.
+         *   @param out Where to print.
+         *   @param in Where answers come from.
+         *  @return <em>true</em> if the server should shut down.
+         *   @throw IOException if in or out fails.
+         */
+    public static boolean execute(String line, PrintStream out,
+                                  BufferedReader in) throws IOException
+    {
+        ConsoleCommand command;
+        String params = null;
+        int splitIndex;
+
+        line = line.trim();
+        if (line.length() == 0)
+            return(false);
+
+        splitIndex = line.indexOf(' ');
+        if (splitIndex != -1)
+        {
+            params = line.substring(splitIndex + 1).trim();
+            line = line.substring(0, splitIndex);
+        } // if
+
+        command = getCommand(line);
+        if (command == null)
+        {
+            out.println("Unknown command.");
+            return(false);
+        } // if
+
+        return(command.execute(params, out, in));
+    } // execute
+
+
+        /**
+         *  List the commands, for "help".
+         *
+         *   @param out Where to print.
+         */
+    public static synchronized void printHelp(PrintStream out)
+    {
+        int i;
+
+        out.println("Available commands...");
+        for (i = 0; i < names.size(); i++)
+        {
+            out.println("  " +
+                JBBS.padString("[" + usages.elementAt(i) + "]", 10) +
+                " -- " + descriptions.elementAt(i));
+        } // for
+    } // printHelp
+
+} // ConsoleCommands
+
+// end of ConsoleCommands.java ...
+
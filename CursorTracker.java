@@ -0,0 +1,503 @@
+/**
+ *  Keeps track of where an ANSI terminal's cursor is, by watching the
+ *   bytes we send it. ANSITerminal puts one of these between itself and
+ *   its OutputQueue, so it can answer "where's the cursor?" without
+ *   asking the client and waiting a network round trip for the answer.
+ *
+ *  The model understands printable characters (with wrap and scroll at
+ *   the screen edges), CR, LF, backspace, tab, and the ANSI sequences
+ *   that move the cursor. Anything it doesn't understand, and anything
+ *   sent around it (fan-out deliveries, file transfers, doors) makes it
+ *   invalid, and the next question goes to the client after all.
+ *
+ *  It can follow AVATAR/0 instead: ^V commands, ^Y repeats, and ^L,
+ *   which clears and homes. AVATAR can't report the cursor, so there,
+ *   the model is all we have.
+ *
+ *  Positions are 1-based, like ANSI's. Until someone tells us the real
+ *   screen size (a resync, or the client itself), we assume 80x24, and
+ *   scrolling off the bottom makes the model invalid, since the client's
+ *   screen might be taller than that.
+ *
+ *  Filling the last column is the other doubtful spot: some clients wrap
+ *   right away, some wait for the next character. Printing more text
+ *   sorts that out; anything else that moves the cursor first doesn't.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+
+public class CursorTracker extends OutputStream
+{
+        // Constants...
+    public final static int DEFAULT_WIDTH = 80;
+    public final static int DEFAULT_HEIGHT = 24;
+    public final static int MAX_PARAMS = 4;
+
+    protected final static int STATE_TEXT   = 0;
+    protected final static int STATE_ESCAPE = 1;    // got ESC.
+    protected final static int STATE_CSI    = 2;    // got ESC [.
+    protected final static int STATE_AVT    = 3;    // got ^V.
+    protected final static int STATE_AVT_ARGS = 4;  // ^V command's args.
+    protected final static int STATE_REPEAT = 5;    // got ^Y.
+
+    public final static int AVT_COMMAND = 0x16;     // ^V
+    public final static int AVT_REPEAT  = 0x19;     // ^Y
+    public final static int AVT_CLEAR   = 0x0C;     // ^L
+
+        // Instance variables...
+    protected OutputStream sink;
+    protected int x = 1;
+    protected int y = 1;
+    protected int savedX = 1;
+    protected int savedY = 1;
+    protected int width = DEFAULT_WIDTH;
+    protected int height = DEFAULT_HEIGHT;
+    protected boolean valid = false;        // nothing known until synced.
+    protected boolean sizeKnown = false;
+    protected boolean tracking = true;
+    protected int state = STATE_TEXT;
+    protected int[] params = new int[MAX_PARAMS];
+    protected int paramCount = 0;
+    protected boolean avatar = false;       // AVATAR, instead of ANSI.
+    protected int avtCommand = 0;
+    protected int argsLeft = 0;
+
+
+    public CursorTracker(OutputStream _sink)
+    {
+        sink = _sink;
+    } // Constructor
+
+
+        /**
+         *  Constructor for a tracker that follows AVATAR/0 codes, instead
+         *   of ANSI.
+         */
+    public CursorTracker(OutputStream _sink, boolean _avatar)
+    {
+        sink = _sink;
+        avatar = _avatar;
+    } // Constructor (AVATAR or ANSI)
+
+
+        // The model...
+
+        /**
+         *  Can getX() and getY() be trusted right now?
+         */
+    public synchronized boolean isValid()
+    {
+        return((valid) && (x <= width));    // x > width: wrap pending.
+    } // isValid
+
+
+        /**
+         *  Forget what we know; the next getPosXY() will ask the client.
+         */
+    public synchronized void invalidate()
+    {
+        valid = false;
+    } // invalidate
+
+
+        /**
+         *  Stop (or restart) watching output. While stopped, the model is
+         *   invalid, and output isn't even looked at; this is for file
+         *   transfers and such, which send lots of bytes that aren't text.
+         */
+    public synchronized void setTracking(boolean track)
+    {
+        tracking = track;
+        valid = false;
+        state = STATE_TEXT;
+    } // setTracking
+
+
+        /**
+         *  Set the position from an answer to a position query.
+         */
+    public synchronized void setPos(int _x, int _y)
+    {
+        x = Math.max(1, Math.min(_x, width));
+        y = Math.max(1, Math.min(_y, height));
+        valid = tracking;
+    } // setPos
+
+
+    public synchronized void setScreenSize(int _width, int _height)
+    {
+        if ((_width > 0) && (_height > 0))
+        {
+            width = _width;
+            height = _height;
+            sizeKnown = true;
+            if ((x > width) || (y > height))
+                valid = false;
+        } // if
+    } // setScreenSize
+
+
+    public synchronized boolean isSizeKnown()
+    {
+        return(sizeKnown);
+    } // isSizeKnown
+
+
+    public synchronized int getX()
+    {
+        return(x);
+    } // getX
+
+
+    public synchronized int getY()
+    {
+        return(y);
+    } // getY
+
+
+    public synchronized int getWidth()
+    {
+        return(width);
+    } // getWidth
+
+
+    public synchronized int getHeight()
+    {
+        return(height);
+    } // getHeight
+
+
+    protected void lineFeed()
+    {
+        if (y < height)
+            y++;
+        else if (!sizeKnown)    // did it scroll, or is the screen taller?
+            valid = false;
+    } // lineFeed
+
+
+        /**
+         *  Something besides text is moving the cursor. If the last
+         *   column was just filled, we don't know where it's moving from.
+         */
+    protected void resolveWrap()
+    {
+        if (x > width)
+        {
+            valid = false;
+            x = width;
+        } // if
+    } // resolveWrap
+
+
+        /**
+         *  A character went out; move past it.
+         */
+    protected void printable()
+    {
+        if (x > width)      // wrap before this char.
+        {
+            x = 1;
+            lineFeed();
+        } // if
+        x++;
+    } // printable
+
+
+        /**
+         *  The end of an AVATAR ^V command, with its arguments in params.
+         */
+    protected void endAvatarCommand()
+    {
+        if ((avtCommand >= 3) && (avtCommand <= 8))
+            resolveWrap();
+
+        switch (avtCommand)
+        {
+            case 3:     // up.
+                y = Math.max(1, y - 1);
+                break;
+
+            case 4:     // down.
+                y = Math.min(height, y + 1);
+                break;
+
+            case 5:     // left.
+                x = Math.max(1, x - 1);
+                break;
+
+            case 6:     // right.
+                x = Math.min(width, x + 1);
+                break;
+
+            case 8:     // position: row, column.
+                y = Math.max(1, Math.min(params[0], height));
+                x = Math.max(1, Math.min(params[1], width));
+                valid = ((sizeKnown) ||
+                         ((y == params[0]) && (x == params[1])));
+                break;
+
+            case 1:     // attribute, blink, and clear to end of line
+            case 2:     //  don't move it.
+            case 7:
+                break;
+
+            default:    // don't know this one.
+                valid = false;
+                break;
+        } // switch
+    } // endAvatarCommand
+
+
+    protected int param(int index, int defaultVal)
+    {
+        if ((index >= paramCount) || (params[index] == 0))
+            return(defaultVal);
+
+        return(params[index]);
+    } // param
+
+
+        /**
+         *  The end of an ESC [ sequence. Moves the cursor if it's a move.
+         */
+    protected void endSequence(int command)
+    {
+        if ((command != 'm') && (command != 'H') && (command != 'f'))
+            resolveWrap();
+
+        switch (command)
+        {
+            case 'H':   // position; from here on, we know where we are.
+            case 'f':
+                y = Math.max(1, Math.min(param(0, 1), height));
+                x = Math.max(1, Math.min(param(1, 1), width));
+                valid = ((sizeKnown) ||
+                         ((y == param(0, 1)) && (x == param(1, 1))));
+                break;
+
+            case 'A':   // up.
+                y = Math.max(1, y - param(0, 1));
+                break;
+
+            case 'B':   // down.
+                y = Math.min(height, y + param(0, 1));
+                break;
+
+            case 'C':   // right.
+                x = Math.min(width, x + param(0, 1));
+                break;
+
+            case 'D':   // left.
+                x = Math.max(1, x - param(0, 1));
+                break;
+
+            case 's':   // save position.
+                savedX = x;
+                savedY = y;
+                break;
+
+            case 'u':   // restore position.
+                x = savedX;
+                y = savedY;
+                break;
+
+            case 'm':   // colors, erasing, and queries don't move it.
+            case 'K':
+            case 'n':
+                break;
+
+            case 'J':   // clients differ on where 2J leaves the cursor.
+            default:    // don't know this one.
+                valid = false;
+                break;
+        } // switch
+    } // endSequence
+
+
+    protected void track(byte[] b, int off, int len)
+    {
+        int ch;
+        int i;
+
+        for (i = off; i < off + len; i++)
+        {
+            ch = b[i] & 0xFF;
+
+            switch (state)
+            {
+                case STATE_TEXT:
+                    if (ch >= ' ')
+                    {
+                        if (ch != 0x7F)     // DEL doesn't print.
+                            printable();
+                    } // if
+
+                    else if ((avatar) && (ch == AVT_COMMAND))
+                        state = STATE_AVT;
+                    else if ((avatar) && (ch == AVT_REPEAT))
+                    {
+                        state = STATE_REPEAT;
+                        argsLeft = 2;
+                    } // else if
+                    else if ((avatar) && (ch == AVT_CLEAR))
+                    {
+                        x = 1;
+                        y = 1;
+                        valid = true;
+                    } // else if
+                    else if ((!avatar) && (ch == SocketStream.ASCII_ESCAPE))
+                        state = STATE_ESCAPE;
+                    else if (ch == SocketStream.ASCII_CR)
+                    {
+                        resolveWrap();
+                        x = 1;
+                    } // else if
+                    else if (ch == SocketStream.ASCII_LF)
+                    {
+                        resolveWrap();
+                        lineFeed();
+                    } // else if
+                    else if (ch == SocketStream.ASCII_BACKSPACE)
+                    {
+                        resolveWrap();
+                        x = Math.max(1, x - 1);
+                    } // else if
+                    else if (ch == '\t')
+                    {
+                        resolveWrap();
+                        x = Math.min(width, ((x - 1) / 8 + 1) * 8 + 1);
+                    } // else if
+                    else if (ch == 12)      // form feed; clears on some.
+                        valid = false;
+                    break;
+
+                case STATE_ESCAPE:
+                    if (ch == '[')
+                    {
+                        state = STATE_CSI;
+                        paramCount = 0;
+                        params[0] = 0;
+                    } // if
+                    else
+                    {
+                        state = STATE_TEXT;
+                        valid = false;      // some other escape.
+                    } // else
+                    break;
+
+                case STATE_CSI:
+                    if ((ch >= '0') && (ch <= '9'))
+                    {
+                        if (paramCount == 0)
+                            paramCount = 1;
+                        if (paramCount <= MAX_PARAMS)
+                        {
+                            params[paramCount - 1] =
+                                    (params[paramCount - 1] * 10) + (ch - '0');
+                        } // if
+                    } // if
+
+                    else if (ch == ';')
+                    {
+                        if (paramCount == 0)
+                            paramCount = 1;
+                        if (paramCount < MAX_PARAMS)
+                            params[paramCount] = 0;
+                        paramCount++;
+                    } // else if
+
+                    else if ((ch >= 0x40) && (ch <= 0x7E))
+                    {
+                        state = STATE_TEXT;
+                        endSequence(ch);
+                    } // else if
+
+                    else if (ch < 0x20)     // garbage; give up on it.
+                    {
+                        state = STATE_TEXT;
+                        valid = false;
+                    } // else if
+                    break;
+
+                case STATE_AVT:
+                    avtCommand = ch;
+                    paramCount = 0;
+                    argsLeft = (ch == 1) ? 1 : ((ch == 8) ? 2 : 0);
+                    state = STATE_AVT_ARGS;
+                    if (argsLeft == 0)
+                    {
+                        state = STATE_TEXT;
+                        endAvatarCommand();
+                    } // if
+                    break;
+
+                case STATE_AVT_ARGS:
+                    if (paramCount < MAX_PARAMS)
+                        params[paramCount++] = ch;
+                    if (--argsLeft == 0)
+                    {
+                        state = STATE_TEXT;
+                        endAvatarCommand();
+                    } // if
+                    break;
+
+                case STATE_REPEAT:      // character, then count.
+                    if (--argsLeft > 0)
+                    {
+                        if (ch < ' ')
+                            valid = false;  // repeated control characters.
+                    } // if
+                    else
+                    {
+                        state = STATE_TEXT;
+                        for ( ; ch > 0; ch--)
+                            printable();
+                    } // else
+                    break;
+            } // switch
+        } // for
+    } // track
+
+
+        // OutputStream implementation...
+
+    public void write(int b) throws IOException
+    {
+        byte[] one = new byte[1];
+
+        one[0] = (byte) b;
+        write(one, 0, 1);
+    } // write (one byte)
+
+
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        synchronized (this)
+        {
+            if (tracking)
+                track(b, off, len);
+        } // synchronized
+
+        sink.write(b, off, len);
+    } // write (byte array range)
+
+
+    public void flush() throws IOException
+    {
+        sink.flush();
+    } // flush
+
+
+    public void close() throws IOException
+    {
+        sink.close();
+    } // close
+
+} // CursorTracker
+
+// end of CursorTracker.java ...
+
@@ -0,0 +1,32 @@
+/**
+ *  Flight recorder event: a session ending. The duration is closing
+ *   the connection, which waits for the last output to drain; how long
+ *   they were on is in connected.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import jdk.jfr.*;
+
+@Name("jbbs.Disconnect")
+@Label("Disconnect")
+@Category({ "JBBS", "Sessions" })
+@StackTrace(false)
+public class DisconnectEvent extends Event
+{
+    @Label("User")
+    @Description("Who was logged in, if anybody.")
+    public String user;
+
+    @Label("Reason")
+    public String reason;
+
+    @Label("Time Connected")
+    @Timespan(Timespan.MILLISECONDS)
+    public long connected;
+
+} // DisconnectEvent
+
+// end of DisconnectEvent.java ...
+
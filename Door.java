@@ -0,0 +1,409 @@
+/**
+ *  Doors: external programs that users can run from the BBS, talking to
+ *   them through the program's stdin and stdout.
+ *
+ *  Doors are listed in the "doors" file in the data directory, one per
+ *   line, as "name|max users|minutes|command line". Lines starting with
+ *   '#' are comments. In the command line, %N becomes the user's node
+ *   number and %D the directory holding the drop files. Each node gets
+ *   its own directory, "node.<number>", where DOOR.SYS and DORINFO1.DEF
+ *   are written before the door starts.
+ *
+ *  A door can only have "max users" copies running at once, and gets
+ *   killed if the user sits idle too long, or after "minutes" minutes.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+public class Door
+{
+        // Constants...
+    public final static String FILENAME_DOORLIST = "doors";
+    public final static String PREFIX_NODEDIR = "node.";
+    public final static int DEFAULT_MINUTES = 60;
+    public final static int POLL_TIMEOUT = 1000;        // milliseconds.
+    public final static int FINISH_TIMEOUT = 2000;      // milliseconds.
+
+        // Static class variables...
+    protected static Door[] doors = new Door[0];
+
+        // Instance variables...
+    protected String name;
+    protected int maxUsers;
+    protected int minutes;
+    protected String commandLine;
+    protected int users = 0;
+
+
+    protected Door(String _name, int _maxUsers, int _minutes, String cmd)
+    {
+        name = _name;
+        maxUsers = _maxUsers;
+        minutes = _minutes;
+        commandLine = cmd;
+    } // Constructor
+
+
+        /**
+         *  Read the door list. No list just means no doors.
+         *
+         *  @return Number of doors.
+         */
+    public static synchronized int openDoors()
+    {
+        Vector list = new Vector();
+        BufferedReader in;
+        StringTokenizer tok;
+        String line;
+
+        try
+        {
+            in = new BufferedReader(new FileReader(JBBSConfig.dataDir +
+                                                   FILENAME_DOORLIST));
+            while ((line = in.readLine()) != null)
+            {
+                line = line.trim();
+                if ((line.length() == 0) || (line.startsWith("#")))
+                    continue;
+
+                tok = new StringTokenizer(line, "|");
+                try
+                {
+                    list.addElement(new Door(tok.nextToken().trim(),
+                                       Integer.parseInt(tok.nextToken().trim()),
+                                       Integer.parseInt(tok.nextToken().trim()),
+                                       tok.nextToken("").substring(1).trim()));
+                } // try
+                catch (RuntimeException e)      // bad number, short line.
+                {
+                    System.out.println("Bad line in door list: " + line);
+                } // catch
+            } // while
+            in.close();
+        } // try
+
+        catch (IOException e)
+        {
+            // don't care; no door list just means no doors.
+        } // catch
+
+        doors = new Door[list.size()];
+        list.copyInto(doors);
+        return(doors.length);
+    } // openDoors
+
+
+    public static int getDoorCount()
+    {
+        return(doors.length);
+    } // getDoorCount
+
+
+        /**
+         *  Get a door by number.
+         *
+         *   @param num 1-based door number, as shown to users.
+         *  @return The door, or <em>null</em> if there's no such door.
+         */
+    public static Door getDoor(int num)
+    {
+        if ((num < 1) || (num > doors.length))
+            return(null);
+
+        return(doors[num - 1]);
+    } // getDoor
+
+
+    public String getName()
+    {
+        return(name);
+    } // getName
+
+
+    protected synchronized boolean acquire()
+    {
+        if (users >= maxUsers)
+            return(false);
+
+        users++;
+        return(true);
+    } // acquire
+
+
+    protected synchronized void release()
+    {
+        users--;
+    } // release
+
+
+    public synchronized int getUsers()
+    {
+        return(users);
+    } // getUsers
+
+
+        // Drop files...
+
+    protected static void writeLines(File file, String[] lines)
+                                               throws IOException
+    {
+        Writer out = new BufferedWriter(new FileWriter(file));
+        int i;
+
+        try
+        {
+            for (i = 0; i < lines.length; i++)
+                out.write(lines[i] + "\r\n");
+        } // try
+        finally
+        {
+            out.close();
+        } // finally
+    } // writeLines
+
+
+        /**
+         *  Write DOOR.SYS and DORINFO1.DEF for a session.
+         */
+    protected void writeDropFiles(OnlineSession session, File dir, int node)
+                                                      throws IOException
+    {
+        SimpleDateFormat date = new SimpleDateFormat("MM/dd/yy");
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm");
+        JBBSUser user = session.user;
+        boolean ansi = session.getSocketStream().doesForeColor();
+        Date now = new Date();
+        String first = user.getHandle();
+        String last = "";
+        int space = first.indexOf(' ');
+        String[] doorSys;
+        String[] dorInfo;
+
+        if (space != -1)
+        {
+            last = first.substring(space + 1);
+            first = first.substring(0, space);
+        } // if
+
+        doorSys = new String[] {
+            "COM0:", "115200", "8", "" + node, "115200", "Y", "N", "Y", "Y",
+            user.getRealName(), "", "", "", "",  // password stays with us.
+            "100", "1", date.format(now), "" + (minutes * 60), "" + minutes,
+            ansi ? "GR" : "NG", "24", "N", "", "", "12/31/99",
+            "" + user.getNumber(), "Z", "0", "0", "0", "999999", "01/01/70",
+            dir.getAbsolutePath() + File.separator,
+            dir.getAbsolutePath() + File.separator,
+            "Sysop", user.getHandle(), "00:00", "Y", "N", "Y", "7", "0",
+            date.format(now), time.format(now), time.format(now), "9999",
+            "0", "0", "0", "", "0", "0"
+        };
+
+        dorInfo = new String[] {
+            JBBSConfig.BBSName, "Sysop", "", "COM0", "115200 BAUD,N,8,1",
+            "0", first, last, "", ansi ? "1" : "0", "100", "" + minutes,
+            "-1"
+        };
+
+        writeLines(new File(dir, "DOOR.SYS"), doorSys);
+        writeLines(new File(dir, "DORINFO1.DEF"), dorInfo);
+    } // writeDropFiles
+
+
+        /**
+         *  Build the door's command, filling in %N and %D.
+         */
+    protected String[] buildCommand(int node, File dir)
+    {
+        StringTokenizer tok = new StringTokenizer(commandLine, " ");
+        String[] retVal = new String[tok.countTokens()];
+        StringBuffer arg;
+        String str;
+        int i;
+        int j;
+
+        for (i = 0; i < retVal.length; i++)
+        {
+            str = tok.nextToken();
+            arg = new StringBuffer();
+            for (j = 0; j < str.length(); j++)
+            {
+                if ((str.charAt(j) == '%') && (j + 1 < str.length()) &&
+                    (Character.toUpperCase(str.charAt(j + 1)) == 'N'))
+                {
+                    arg.append(node);
+                    j++;
+                } // if
+
+                else if ((str.charAt(j) == '%') && (j + 1 < str.length()) &&
+                         (Character.toUpperCase(str.charAt(j + 1)) == 'D'))
+                {
+                    arg.append(dir.getAbsolutePath());
+                    j++;
+                } // else if
+
+                else
+                    arg.append(str.charAt(j));
+            } // for
+
+            retVal[i] = arg.toString();
+        } // for
+
+        return(retVal);
+    } // buildCommand
+
+
+        // Running...
+
+        /**
+         *  Run the door for a session, and come back when it's done.
+         *
+         *   @param session Session to run it for.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public void run(OnlineSession session) throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        int node = ConnectionManager.getNodeFor(session);
+        File dir = new File(JBBSConfig.dataDir + PREFIX_NODEDIR + node);
+        Process process;
+        DoorPump pump;
+
+        if (!acquire())
+        {
+            io.sendln("Sorry, " + name + " is full. Try again later.");
+            return;
+        } // if
+
+        try
+        {
+            if ((!dir.isDirectory()) && (!dir.mkdirs()))
+                throw(new IOException("Can't make " + dir));
+
+            writeDropFiles(session, dir, node);
+
+            process = new ProcessBuilder(buildCommand(node, dir))
+                                .directory(dir)
+                                .redirectErrorStream(true)
+                                .start();
+        } // try
+
+        catch (IOException e)
+        {
+            release();
+            io.sendln("Couldn't start " + name + ".");
+            return;
+        } // catch
+
+        io.sendln("Starting " + name + "...");
+        io.holdDeliveries(true);        // no chat over the door's screen.
+        pump = new DoorPump(process, io, name);
+
+        try
+        {
+            pumpInput(io, process);
+        } // try
+
+        finally
+        {
+            process.destroy();
+            pump.finish(FINISH_TIMEOUT);
+            io.holdDeliveries(false);
+            release();
+        } // finally
+
+        io.sendln();
+        io.sendln("Back from " + name + ".");
+    } // run
+
+
+        /**
+         *  Copy the user's typing to the door until it exits, or until
+         *   the user's idle or time limit runs out. Input comes in bulk,
+         *   whatever has arrived, and goes to the door in one write.
+         */
+    protected void pumpInput(SocketStream io, Process process)
+                                        throws LostCarrierException
+    {
+        OutputStream toDoor = process.getOutputStream();
+        byte[] buffer = new byte[DoorPump.LEN_PUMP];
+        long now = System.currentTimeMillis();
+        long idleLimit = JBBSConfig.idleTimeout * 60L * 1000L;
+        long deadline = now + (minutes * 60L * 1000L);
+        long lastInput = now;
+        int n;
+
+        while (process.isAlive())
+        {
+            n = io.recv(buffer, 0, buffer.length, POLL_TIMEOUT);
+            now = System.currentTimeMillis();
+
+            if (n > 0)
+            {
+                lastInput = now;
+                try
+                {
+                    toDoor.write(buffer, 0, n);
+                    toDoor.flush();
+                } // try
+                catch (IOException e)
+                {
+                    return;         // door closed its input; it's leaving.
+                } // catch
+            } // if
+
+            if ((idleLimit > 0) && (now - lastInput > idleLimit))
+            {
+                io.sendln();
+                io.sendln("Idle too long; closing " + name + ".");
+                return;
+            } // if
+
+            if (now > deadline)
+            {
+                io.sendln();
+                io.sendln("Time's up in " + name + ".");
+                return;
+            } // if
+        } // while
+    } // pumpInput
+
+
+        // Online UI...
+
+    public static void doDoors(OnlineSession session)
+                                 throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        Door door;
+        int i;
+
+        io.sendln();
+        if (getDoorCount() == 0)
+        {
+            io.sendln("No doors are open.");
+            return;
+        } // if
+
+        for (i = 1; i <= getDoorCount(); i++)
+        {
+            door = getDoor(i);
+            io.sendln("  " + i + ") " + door.getName() + "  (" +
+                      door.getUsers() + " of " + door.maxUsers + " in use)");
+        } // for
+
+        door = getDoor(MessageBoard.recvNumber(io, "Door number : "));
+        if (door == null)
+            io.sendln("No such door.");
+        else
+            door.run(session);
+    } // doDoors
+
+} // Door
+
+// end of Door.java ...
+
@@ -0,0 +1,92 @@
+/**
+ *  Thread that copies a door program's output to the user. Output is
+ *   moved in big reads, each handed to the session's OutputQueue as a
+ *   single write; the read size matches the queue's staging buffer, so
+ *   each read turns into one write to the socket.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+
+public class DoorPump implements Runnable
+{
+        // Constants...
+    public final static int LEN_PUMP = 4096;    // OutputQueue.LEN_STAGING.
+
+        // Instance variables...
+    protected InputStream from;
+    protected SocketStream to;
+    protected Process process;
+    protected Thread pumpThread;
+    protected long bytesPumped = 0;
+
+
+    public DoorPump(Process _process, SocketStream _to, String doorName)
+    {
+        process = _process;
+        from = process.getInputStream();
+        to = _to;
+
+        pumpThread = new Thread(this, "DoorPump " + doorName);
+        pumpThread.setDaemon(true);
+        pumpThread.start();
+    } // Constructor
+
+
+        /**
+         *  Wait for the door's last output to reach the user.
+         *
+         *   @param timeout Milliseconds to wait, at most.
+         */
+    public void finish(long timeout)
+    {
+        try
+        {
+            pumpThread.join(timeout);
+        } // try
+        catch (InterruptedException e)
+        {
+            // don't care.
+        } // catch
+    } // finish
+
+
+    public long getBytesPumped()
+    {
+        return(bytesPumped);
+    } // getBytesPumped
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        byte[] buffer = new byte[LEN_PUMP];
+        int n;
+
+        try
+        {
+            while ((n = from.read(buffer)) != -1)
+            {
+                to.send(buffer, n);
+                bytesPumped += n;
+            } // while
+        } // try
+
+        catch (IOException e)
+        {
+            // door's gone; we're done.
+        } // catch
+
+        catch (LostCarrierException lce)
+        {
+            process.destroy();      // user's gone; the door goes too.
+        } // catch
+    } // run
+
+} // DoorPump
+
+// end of DoorPump.java ...
+
@@ -0,0 +1,32 @@
+/**
+ *  Flight recorder event: picking a caller's terminal emulation, telnet
+ *   negotiation included. When the terminal type didn't settle it,
+ *   probed is set, and most of the time went to waiting for answers.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import jdk.jfr.*;
+
+@Name("jbbs.EmulationDetect")
+@Label("Emulation Detection")
+@Category({ "JBBS", "Sessions" })
+@StackTrace(false)
+public class EmulationEvent extends Event
+{
+    @Label("Terminal Type")
+    @Description("What telnet TTYPE said, if anything.")
+    public String termType;
+
+    @Label("Emulation")
+    public String emulation;
+
+    @Label("Probed")
+    @Description("True if the terminal had to be probed for.")
+    public boolean probed;
+
+} // EmulationEvent
+
+// end of EmulationEvent.java ...
+
@@ -0,0 +1,103 @@
+/**
+ *  Lets an Encryptable work where a StreamEncryptable is wanted. Each
+ *   call copies the bytes out to an array for the Encryptable, and its
+ *   answer back in, so this makes garbage just like the Encryptable
+ *   always did; it's for getting old ciphers going, not for speed.
+ *
+ *  The Encryptable has to give back as many bytes as it got; if it
+ *   doesn't, it can't encrypt a stream, and this throws an
+ *   IllegalStateException instead of garbling the session.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.nio.ByteBuffer;
+
+public class EncryptableAdapter implements StreamEncryptable
+{
+        // Instance variables...
+    protected Encryptable cipher;
+
+
+    public EncryptableAdapter(Encryptable _cipher)
+    {
+        cipher = _cipher;
+    } // Constructor
+
+
+    public Encryptable getEncryptable()
+    {
+        return(cipher);
+    } // getEncryptable
+
+
+    public void setEncryptKey(byte[] bytes)
+    {
+        cipher.setEncryptKey(bytes);
+    } // setEncryptKey
+
+
+        /**
+         *  Run src's remaining bytes through the Encryptable, into dst.
+         *
+         *   @param src Bytes to convert.
+         *   @param dst Where they go; may be src, to convert in place.
+         *   @param encrypting <em>true</em> to encrypt, <em>false</em> to
+         *                     decrypt.
+         */
+    protected void convert(ByteBuffer src, ByteBuffer dst,
+                           boolean encrypting)
+    {
+        byte[] bytes = new byte[src.remaining()];
+        byte[] converted;
+
+        src.get(bytes);
+        converted = (encrypting) ? cipher.encrypt(bytes) :
+                                   cipher.decrypt(bytes);
+
+        if (converted.length != bytes.length)
+        {
+            throw(new IllegalStateException(cipher.getClass().getName() +
+                                   " changes lengths; can't stream it."));
+        } // if
+
+        dst.put(converted);
+    } // convert
+
+
+        // StreamEncryptable implementation...
+
+    public void encrypt(ByteBuffer buf)
+    {
+        int pos = buf.position();
+
+        convert(buf, buf.duplicate(), true);  // duplicate is still at pos.
+        buf.position(pos);
+    } // encrypt (in place)
+
+
+    public void decrypt(ByteBuffer buf)
+    {
+        int pos = buf.position();
+
+        convert(buf, buf.duplicate(), false);
+        buf.position(pos);
+    } // decrypt (in place)
+
+
+    public void encrypt(ByteBuffer src, ByteBuffer dst)
+    {
+        convert(src, dst, true);
+    } // encrypt (into another buffer)
+
+
+    public void decrypt(ByteBuffer src, ByteBuffer dst)
+    {
+        convert(src, dst, false);
+    } // decrypt (into another buffer)
+
+} // EncryptableAdapter
+
+// end of EncryptableAdapter.java ...
+
@@ -0,0 +1,115 @@
+/**
+ *  Decrypts everything read through it, with a StreamEncryptable. Each
+ *   read from the stream underneath goes into a buffer that gets reused,
+ *   and is decrypted there.
+ *
+ *  The cipher has to see every byte, in order, so skip() reads and
+ *   decrypts what it skips, too.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+public class EncryptedInputStream extends InputStream
+{
+        // Instance variables...
+    protected InputStream raw;
+    protected StreamEncryptable cipher;
+    protected ByteBuffer buffer = ByteBuffer.allocate(OutputQueue.LEN_STAGING);
+
+
+    public EncryptedInputStream(InputStream _raw, StreamEncryptable _cipher)
+    {
+        raw = _raw;
+        cipher = _cipher;
+        buffer.limit(0);        // nothing decrypted yet.
+    } // Constructor
+
+
+        /**
+         *  Read from the stream underneath once, and decrypt it. Call
+         *   this synchronized, with the buffer empty.
+         *
+         *   @param max Most bytes to read.
+         *  @return <em>false</em> at end of stream.
+         */
+    protected boolean fill(int max) throws IOException
+    {
+        int n = raw.read(buffer.array(), 0, Math.min(max, buffer.capacity()));
+
+        if (n <= 0)
+            return(false);
+
+        buffer.position(0);
+        buffer.limit(n);
+        cipher.decrypt(buffer);
+        return(true);
+    } // fill
+
+
+        // InputStream implementation...
+
+    public synchronized int read() throws IOException
+    {
+        if ((!buffer.hasRemaining()) && (!fill(buffer.capacity())))
+            return(-1);
+
+        return(buffer.get() & 0xFF);
+    } // read (one byte)
+
+
+    public synchronized int read(byte[] b, int off, int len)
+                                              throws IOException
+    {
+        if (len == 0)
+            return(0);
+
+        if ((!buffer.hasRemaining()) && (!fill(buffer.capacity())))
+            return(-1);
+
+        len = Math.min(len, buffer.remaining());
+        buffer.get(b, off, len);
+        return(len);
+    } // read (byte array range)
+
+
+    public synchronized int available() throws IOException
+    {
+        return(buffer.remaining() + raw.available());
+    } // available
+
+
+    public synchronized long skip(long n) throws IOException
+    {
+        long skipped = 0;
+        int chunk;
+
+        while (skipped < n)
+        {
+            if ((!buffer.hasRemaining()) &&
+                (!fill((int) Math.min(n - skipped, buffer.capacity()))))
+            {
+                break;
+            } // if
+
+            chunk = (int) Math.min(n - skipped, buffer.remaining());
+            buffer.position(buffer.position() + chunk);
+            skipped += chunk;
+        } // while
+
+        return(skipped);
+    } // skip
+
+
+    public void close() throws IOException
+    {
+        raw.close();
+    } // close
+
+} // EncryptedInputStream
+
+// end of EncryptedInputStream.java ...
+
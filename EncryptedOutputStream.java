@@ -0,0 +1,69 @@
+/**
+ *  Encrypts everything written through it, with a StreamEncryptable,
+ *   on its way to another stream. The bytes are copied to a buffer that
+ *   gets reused and encrypted there, so the caller's array is never
+ *   touched (OutputQueue shares delivered arrays between sessions), and
+ *   each write() is still one write to the stream underneath.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+public class EncryptedOutputStream extends OutputStream
+{
+        // Instance variables...
+    protected OutputStream sink;
+    protected StreamEncryptable cipher;
+    protected ByteBuffer buffer = ByteBuffer.allocate(OutputQueue.LEN_STAGING);
+
+
+    public EncryptedOutputStream(OutputStream _sink, StreamEncryptable _cipher)
+    {
+        sink = _sink;
+        cipher = _cipher;
+    } // Constructor
+
+
+        // OutputStream implementation...
+
+    public void write(int b) throws IOException
+    {
+        byte[] one = new byte[1];
+
+        one[0] = (byte) b;
+        write(one, 0, 1);
+    } // write (one byte)
+
+
+    public synchronized void write(byte[] b, int off, int len)
+                                                  throws IOException
+    {
+        if (buffer.capacity() < len)
+            buffer = ByteBuffer.allocate(len);
+
+        buffer.clear();
+        buffer.put(b, off, len);
+        buffer.flip();
+        cipher.encrypt(buffer);
+        sink.write(buffer.array(), 0, len);
+    } // write (byte array range)
+
+
+    public void flush() throws IOException
+    {
+        sink.flush();
+    } // flush
+
+
+    public void close() throws IOException
+    {
+        sink.close();
+    } // close
+
+} // EncryptedOutputStream
+
+// end of EncryptedOutputStream.java ...
+
@@ -0,0 +1,127 @@
+/**
+ *  A line of text bound for many sessions at once (chat, sysop
+ *   broadcasts, etc).
+ *
+ *  The line is rendered once per terminal emulation, the first time a
+ *   recipient using that emulation needs it, and every other recipient
+ *   with the same emulation gets the very same byte array, via
+ *   SocketStream.deliver().
+ *
+ *  Every FanOutWorker shard asks for the same message at once, so
+ *   finding a rendering takes no lock: what's been rendered is kept in
+ *   an array that's never changed once it's published, only replaced
+ *   by a longer copy. Only rendering for a new emulation locks.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+
+public class FanOutMessage
+{
+        // Instance variables...
+    protected int type;                             // OutputQueue.TYPE_*.
+    protected int[] colors;                         // one per text piece.
+    protected String[] texts;                       // pieces of the line.
+    protected volatile Object[] renders = new Object[0];  // name, bytes...
+
+
+        /**
+         *  Constructor.
+         *
+         *   @param _type OutputQueue.TYPE_* constant; decides what happens
+         *                to this message if a recipient falls behind.
+         *   @param _colors TERMCOLOR_* constant for each piece of text.
+         *   @param _texts Pieces of text that make up the line. A newline
+         *                 is added after the last piece.
+         */
+    public FanOutMessage(int _type, int[] _colors, String[] _texts)
+    {
+        type = _type;
+        colors = _colors;
+        texts = _texts;
+    } // Constructor
+
+
+    public int getType()
+    {
+        return(type);
+    } // getType
+
+
+        /**
+         *  Get this line, as rendered for io's terminal emulation.
+         *
+         *   @param io Stream that the bytes are going to.
+         *  @return Bytes for io. Shared; don't modify them!
+         */
+    public byte[] renderFor(SocketStream io)
+    {
+        byte[] retVal = find(renders, io.getTermEmulName());
+
+        if (retVal == null)
+            retVal = render(io);
+
+        return(retVal);
+    } // renderFor
+
+
+        /**
+         *  Look for an emulation's bytes in a renders array.
+         *
+         *  @return The bytes, or <em>null</em> if they aren't there.
+         */
+    protected static byte[] find(Object[] list, String emulName)
+    {
+        int i;
+
+        for (i = 0; i < list.length; i += 2)
+        {
+            if (list[i].equals(emulName))
+                return((byte[]) list[i + 1]);
+        } // for
+
+        return(null);
+    } // find
+
+
+        /**
+         *  Render for a new emulation, and publish it.
+         */
+    protected synchronized byte[] render(SocketStream io)
+    {
+        String emulName = io.getTermEmulName();
+        Object[] list = renders;
+        byte[] retVal = find(list, emulName);   // another shard beat us?
+        ByteArrayOutputStream bytes;
+        Object[] grown;
+        byte[] piece;
+        int i;
+
+        if (retVal != null)
+            return(retVal);
+
+        bytes = new ByteArrayOutputStream();
+        for (i = 0; i < texts.length; i++)
+        {
+            piece = io.encode(colors[i], texts[i]);
+            bytes.write(piece, 0, piece.length);
+        } // for
+        bytes.write(SocketStream.ASCII_CR);
+        bytes.write(SocketStream.ASCII_LF);
+        retVal = bytes.toByteArray();
+
+        grown = new Object[list.length + 2];
+        System.arraycopy(list, 0, grown, 0, list.length);
+        grown[list.length] = emulName;
+        grown[list.length + 1] = retVal;
+        renders = grown;
+
+        return(retVal);
+    } // render
+
+} // FanOutMessage
+
+// end of FanOutMessage.java ...
+
@@ -0,0 +1,184 @@
+/**
+ *  Thread that hands FanOutMessages to a list of sessions.
+ *
+ *  ChatRoom keeps one of these per processor, and splits each room's
+ *   members into that many shards, so a message to a big room is handed
+ *   out by every processor at once. Handing a message to a session is
+ *   just a SocketStream.deliver() call, which never blocks, so a slow
+ *   reader can't hold up anyone else.
+ *
+ *  The queue holds at most MAX_QUEUED messages; if the workers fall that
+ *   far behind, new messages get the same treatment their type gets from
+ *   a full OutputQueue. Chat is dropped, a notice replaces the one still
+ *   waiting from the same source (a room, or ChatRoom.BROADCAST), and a
+ *   broadcast pushes the oldest droppable message out to make room.
+ *   Whatever's thrown away is counted in JBBSMetrics.fanOutDropped.
+ *   Sources are compared, not recipient lists; those are copied whenever
+ *   somebody joins or leaves, and sliced anew for every broadcast.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+public class FanOutWorker implements Runnable
+{
+        // Constants...
+    public final static int MAX_QUEUED = 256;
+
+        // Instance variables...
+    protected Object[] sources = new Object[MAX_QUEUED];
+    protected OnlineSession[][] recipients = new OnlineSession[MAX_QUEUED][];
+    protected FanOutMessage[] messages = new FanOutMessage[MAX_QUEUED];
+    protected int head = 0;
+    protected int count = 0;
+    protected Thread workerThread;
+
+
+    public FanOutWorker(int number)
+    {
+        workerThread = new Thread(this, "FanOutWorker " + number);
+        workerThread.setDaemon(true);
+        workerThread.start();
+    } // Constructor
+
+
+        /**
+         *  Queue a message for a list of sessions. Returns right away.
+         *
+         *   @param source Who it's from: the ChatRoom, or BROADCAST.
+         *   @param to Sessions to get message. Not copied; don't modify it.
+         *   @param msg Message to give them.
+         *  @return <em>true</em> if queued, <em>false</em> if dropped.
+         */
+    public synchronized boolean add(Object source, OnlineSession[] to,
+                                    FanOutMessage msg)
+    {
+        int policy = OutputQueue.getPolicy(msg.getType());
+        int i;
+        int j;
+
+        if (policy == OutputQueue.POLICY_COALESCE)
+        {
+            for (i = 0; i < count; i++)
+            {
+                j = (head + i) % messages.length;
+                if ((sources[j] == source) &&
+                    (messages[j].getType() == msg.getType()))
+                {
+                    recipients[j] = to;     // whoever's there now.
+                    messages[j] = msg;
+                    return(true);
+                } // if
+            } // for
+        } // if
+
+        if ((count == messages.length) &&
+            ((policy != OutputQueue.POLICY_DISCONNECT) || (!evict())))
+        {
+            JBBSMetrics.fanOutDropped.increment();
+            return(false);
+        } // if
+
+        sources[(head + count) % messages.length] = source;
+        recipients[(head + count) % messages.length] = to;
+        messages[(head + count) % messages.length] = msg;
+        count++;
+        notify();
+        return(true);
+    } // add
+
+
+        /**
+         *  Throw out the oldest queued message whose type can be dropped,
+         *   to make room for one that can't. Call with the lock held.
+         *
+         *  @return <em>false</em> if everything queued has to stay.
+         */
+    protected boolean evict()
+    {
+        int i;
+        int j;
+        int k;
+
+        for (i = 0; i < count; i++)
+        {
+            j = (head + i) % messages.length;
+            if (OutputQueue.getPolicy(messages[j].getType()) !=
+                                              OutputQueue.POLICY_DISCONNECT)
+            {
+                for ( ; i < count - 1; i++)     // close the gap.
+                {
+                    j = (head + i) % messages.length;
+                    k = (j + 1) % messages.length;
+                    sources[j] = sources[k];
+                    recipients[j] = recipients[k];
+                    messages[j] = messages[k];
+                } // for
+
+                j = (head + count - 1) % messages.length;
+                sources[j] = null;
+                recipients[j] = null;
+                messages[j] = null;
+                count--;
+                JBBSMetrics.fanOutDropped.increment();
+                return(true);
+            } // if
+        } // for
+
+        return(false);
+    } // evict
+
+
+    protected synchronized void waitForWork()
+    {
+        while (count == 0)
+        {
+            try
+            {
+                wait();
+            } // try
+            catch (InterruptedException e)
+            {
+                // don't care.
+            } // catch
+        } // while
+    } // waitForWork
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        OnlineSession[] to;
+        FanOutMessage msg;
+        SocketStream io;
+        int i;
+
+        while (true)    // loop until killed.
+        {
+            waitForWork();
+
+            synchronized (this)
+            {
+                to = recipients[head];
+                msg = messages[head];
+                sources[head] = null;
+                recipients[head] = null;
+                messages[head] = null;
+                head = (head + 1) % messages.length;
+                count--;
+            } // synchronized
+
+            for (i = 0; i < to.length; i++)
+            {
+                io = to[i].getSocketStream();
+                if (io != null)
+                    io.deliver(msg.renderFor(io), msg.getType());
+            } // for
+        } // while
+    } // run
+
+} // FanOutWorker
+
+// end of FanOutWorker.java ...
+
@@ -0,0 +1,674 @@
+/**
+ *  File areas. Each area is a directory of files under the data
+ *   directory, plus a catalog that remembers each file's size, time,
+ *   description and download count.
+ *
+ *  The catalog lives in memory. It's read once at startup (and checked
+ *   against the directory then), and after that FileAreaWatcher tells us
+ *   which files changed, so we only ever look at those. Listings come
+ *   from a sorted snapshot array that's rebuilt on change, so "list
+ *   files" never touches the disk, and readers never lock anything.
+ *
+ *  Catalog format: two version bytes, an int count, then per file:
+ *   UTF name, long size, long mod time, UTF description, long downloads.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+public class FileArea
+{
+        // Constants...
+    public final static String FILENAME_AREALIST = "fileareas";
+    public final static String DEFAULT_AREANAME = "Uploads";
+    public final static String PREFIX_AREA = "files.";
+    public final static String EXT_CATALOG = ".cat";
+    public final static String EXT_SAVING = ".tmp";
+    public final static int PAGE_LENGTH = 20;
+
+        // Static class variables...
+    protected static FileArea[] areas = null;
+
+        // Instance variables...
+    protected String name;
+    protected int number;                        // 1-based, as shown.
+    protected File dir;
+    protected String catalogName;
+    protected Hashtable entries = new Hashtable();   // name -> FileEntry.
+    protected volatile FileEntry[] sorted = new FileEntry[0];
+    protected volatile boolean dirty = false;    // catalog needs saving?
+
+
+        /**
+         *  Load every file area's catalog, and start watching their
+         *   directories. Areas are listed in the "fileareas" file, one
+         *   per line; if there isn't one, there's just the default area.
+         *
+         *  @return <em>false</em> if something couldn't be opened.
+         */
+    public static synchronized boolean openAreas()
+    {
+        boolean retVal = true;
+        Vector names = new Vector();
+        BufferedReader list;
+        String line;
+        int i;
+
+        if (areas != null)         // already open?
+            return(false);         //  ...if so, just fail.
+
+        try
+        {
+            list = new BufferedReader(new FileReader(JBBSConfig.dataDir +
+                                                     FILENAME_AREALIST));
+            while ((line = list.readLine()) != null)
+            {
+                line = line.trim();
+                if (line.length() > 0)
+                    names.addElement(line);
+            } // while
+            list.close();
+        } // try
+        catch (IOException e)
+        {
+            // don't care; no area list just means the default area.
+        } // catch
+
+        if (names.size() == 0)
+            names.addElement(DEFAULT_AREANAME);
+
+        areas = new FileArea[names.size()];
+        for (i = 0; i < areas.length; i++)
+        {
+            areas[i] = new FileArea((String) names.elementAt(i), i + 1);
+            if (areas[i].open() == false)
+                retVal = false;
+        } // for
+
+        if (FileAreaWatcher.start(areas) == false)
+            retVal = false;
+
+        return(retVal);
+    } // openAreas
+
+
+    public static int getAreaCount()
+    {
+        return((areas == null) ? 0 : areas.length);
+    } // getAreaCount
+
+
+        /**
+         *  Get an area by number.
+         *
+         *   @param num 1-based area number, as shown to users.
+         *  @return The area, or <em>null</em> if there's no such area.
+         */
+    public static FileArea getArea(int num)
+    {
+        if ((num < 1) || (num > getAreaCount()))
+            return(null);
+
+        return(areas[num - 1]);
+    } // getArea
+
+
+        /**
+         *  Write out any catalogs that changed. FileAreaWatcher calls
+         *   this now and then, and it's called at shutdown.
+         */
+    public static void saveAll()
+    {
+        int i;
+
+        for (i = 0; i < getAreaCount(); i++)
+        {
+            if (areas[i].dirty)
+                areas[i].save();
+        } // for
+    } // saveAll
+
+
+    protected FileArea(String areaName, int num)
+    {
+        StringBuffer safeName = new StringBuffer();
+        char ch;
+        int i;
+
+        name = areaName;
+        number = num;
+
+        for (i = 0; i < areaName.length(); i++)
+        {
+            ch = Character.toLowerCase(areaName.charAt(i));
+            if (Character.isLetterOrDigit(ch))
+                safeName.append(ch);
+            else
+                safeName.append('_');
+        } // for
+
+        dir = new File(JBBSConfig.dataDir + PREFIX_AREA + safeName);
+        catalogName = JBBSConfig.dataDir + PREFIX_AREA + safeName +
+                      EXT_CATALOG;
+    } // Constructor
+
+
+        /**
+         *  Make the area's directory if needed, load the catalog, and
+         *   bring it up to date with whatever happened while we were down.
+         */
+    protected synchronized boolean open()
+    {
+        if ((!dir.isDirectory()) && (!dir.mkdirs()))
+            return(false);
+
+        loadCatalog();
+        reconcile();
+
+        if (dirty)
+            return(save());
+
+        return(true);
+    } // open
+
+
+    protected void loadCatalog()
+    {
+        DataInputStream in;
+        FileEntry entry;
+        int count;
+        int i;
+
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(
+                                     new FileInputStream(catalogName)));
+        } // try
+        catch (IOException e)
+        {
+            return;     // no catalog yet. reconcile() will build one.
+        } // catch
+
+        try
+        {
+            if ((in.readByte() == JBBS.VERSION_MAJOR) &&
+                (in.readByte() == JBBS.VERSION_MINOR))
+            {
+                count = in.readInt();
+                for (i = 0; i < count; i++)
+                {
+                    entry = new FileEntry(in.readUTF(), in.readLong(),
+                                          in.readLong(), in.readUTF(),
+                                          in.readLong());
+                    entries.put(entry.getName(), entry);
+                } // for
+            } // if
+        } // try
+
+        catch (IOException e)
+        {
+            dirty = true;           // truncated? Keep what we got.
+        } // catch
+
+        try
+        {
+            in.close();
+        } // try
+        catch (IOException e)
+        {
+            // don't care.
+        } // catch
+
+        resort();
+    } // loadCatalog
+
+
+        /**
+         *  Check the whole directory against the catalog. This is only
+         *   done at startup, and if the watcher loses track of events.
+         */
+    public synchronized void reconcile()
+    {
+        String[] files = dir.list();
+        Hashtable seen = new Hashtable();
+        Vector gone = new Vector();
+        boolean changed = false;
+        Enumeration e;
+        String fileName;
+        int i;
+
+        if (files == null)
+            return;
+
+        for (i = 0; i < files.length; i++)
+        {
+            seen.put(files[i], files[i]);
+            if (update(files[i]))
+                changed = true;
+        } // for
+
+        for (e = entries.keys(); e.hasMoreElements(); )
+        {
+            fileName = (String) e.nextElement();
+            if (seen.get(fileName) == null)
+                gone.addElement(fileName);
+        } // for
+
+        for (i = 0; i < gone.size(); i++)
+        {
+            entries.remove(gone.elementAt(i));
+            changed = true;
+        } // for
+
+        if (changed)
+        {
+            dirty = true;
+            resort();
+        } // if
+    } // reconcile
+
+
+        /**
+         *  Bring one file's catalog entry up to date with the disk.
+         *   Entries for new files are added, and entries for deleted files
+         *   are removed. Descriptions and download counts carry over.
+         *
+         *   @param fileName File that may have changed.
+         */
+    public synchronized void refresh(String fileName)
+    {
+        if (update(fileName))
+        {
+            dirty = true;
+            resort();
+        } // if
+    } // refresh
+
+
+        /**
+         *  Does refresh()'s work, except for the resort. Call this
+         *   synchronized.
+         *
+         *  @return <em>true</em> if the entry changed.
+         */
+    protected boolean update(String fileName)
+    {
+        FileEntry entry = (FileEntry) entries.get(fileName);
+        File file = new File(dir, fileName);
+
+        if ((file.isFile()) &&
+            (fileName.equals(FileTransfer.safeFileName(fileName))))
+        {
+            if ((entry != null) && (entry.getSize() == file.length()) &&
+                (entry.getModTime() == file.lastModified()))
+                return(false);      // nothing new.
+
+            if (entry == null)
+                entry = new FileEntry(fileName, file.length(),
+                                      file.lastModified(), "", 0);
+            else
+                entry = new FileEntry(entry, file.length(),
+                                      file.lastModified(),
+                                      entry.getDescription());
+
+            entries.put(fileName, entry);
+            return(true);
+        } // if
+
+        if (entry != null)
+        {
+            entries.remove(fileName);
+            return(true);
+        } // if
+
+        return(false);
+    } // update
+
+
+        /**
+         *  Set a file's description.
+         *
+         *   @param fileName File to describe.
+         *   @param desc The description.
+         */
+    public synchronized void describe(String fileName, String desc)
+    {
+        FileEntry entry = (FileEntry) entries.get(fileName);
+
+        if (entry != null)
+        {
+            if (desc.length() > FileEntry.MAX_DESCRIPTION)
+                desc = desc.substring(0, FileEntry.MAX_DESCRIPTION);
+
+            entries.put(fileName, new FileEntry(entry, entry.getSize(),
+                                                entry.getModTime(), desc));
+            dirty = true;
+            resort();
+        } // if
+    } // describe
+
+
+        /**
+         *  Count a download. This is striped and doesn't lock anything;
+         *   the new count gets to disk at the next saveAll().
+         */
+    public void countDownload(FileEntry entry)
+    {
+        entry.downloads.increment();
+        dirty = true;
+    } // countDownload
+
+
+        /**
+         *  Rebuild the sorted snapshot from entries. Call this synchronized.
+         */
+    protected void resort()
+    {
+        FileEntry[] list = new FileEntry[entries.size()];
+        Enumeration e = entries.elements();
+        int i;
+
+        for (i = 0; e.hasMoreElements(); i++)
+            list[i] = (FileEntry) e.nextElement();
+
+        Arrays.sort(list);
+        sorted = list;
+    } // resort
+
+
+        /**
+         *  Write the catalog to disk. The new one is written beside the
+         *   old, synced, then renamed over it in one step, so a crash
+         *   leaves one catalog or the other, never neither.
+         *
+         *  @return <em>true</em> if saved.
+         */
+    public synchronized boolean save()
+    {
+        FileEntry[] list = sorted;
+        File oldFile = new File(catalogName);
+        File newFile = new File(catalogName + EXT_SAVING);
+        FileOutputStream stream;
+        DataOutputStream out;
+        int i;
+
+        dirty = false;      // downloads counted from here on re-dirty us.
+
+        try
+        {
+            stream = new FileOutputStream(newFile);
+            out = new DataOutputStream(new BufferedOutputStream(stream));
+            try
+            {
+                out.writeByte(JBBS.VERSION_MAJOR);
+                out.writeByte(JBBS.VERSION_MINOR);
+                out.writeInt(list.length);
+                for (i = 0; i < list.length; i++)
+                {
+                    out.writeUTF(list[i].getName());
+                    out.writeLong(list[i].getSize());
+                    out.writeLong(list[i].getModTime());
+                    out.writeUTF(list[i].getDescription());
+                    out.writeLong(list[i].getDownloads());
+                } // for
+                out.flush();
+                stream.getFD().sync();
+            } // try
+            finally
+            {
+                out.close();
+            } // finally
+
+            Files.move(newFile.toPath(), oldFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } // try
+
+        catch (IOException e)
+        {
+            newFile.delete();
+            dirty = true;       // try again next time.
+            return(false);
+        } // catch
+
+        return(true);
+    } // save
+
+
+        // Instance variable gateways...
+
+    public String getName()
+    {
+        return(name);
+    } // getName
+
+
+    public int getNumber()
+    {
+        return(number);
+    } // getNumber
+
+
+    public File getDirectory()
+    {
+        return(dir);
+    } // getDirectory
+
+
+    public int getFileCount()
+    {
+        return(sorted.length);
+    } // getFileCount
+
+
+    public int getPageCount()
+    {
+        return((sorted.length + PAGE_LENGTH - 1) / PAGE_LENGTH);
+    } // getPageCount
+
+
+        /**
+         *  Get one page of the listing. Nothing's read from disk.
+         *
+         *   @param page 0-based page number.
+         *  @return Up to PAGE_LENGTH entries, in order. Empty past the end.
+         */
+    public FileEntry[] getPage(int page)
+    {
+        FileEntry[] list = sorted;
+        int start = page * PAGE_LENGTH;
+        FileEntry[] retVal;
+
+        if ((start < 0) || (start >= list.length))
+            return(new FileEntry[0]);
+
+        retVal = new FileEntry[Math.min(PAGE_LENGTH, list.length - start)];
+        System.arraycopy(list, start, retVal, 0, retVal.length);
+        return(retVal);
+    } // getPage
+
+
+        /**
+         *  Find a file by name. An exact match wins; otherwise case
+         *   doesn't matter.
+         *
+         *   @param fileName Name to look for.
+         *  @return The file's entry, or <em>null</em> if it isn't here.
+         */
+    public FileEntry find(String fileName)
+    {
+        FileEntry retVal = (FileEntry) entries.get(fileName);
+        FileEntry[] list = sorted;
+        int lo = 0;
+        int hi = list.length - 1;
+        int mid;
+        int cmp;
+
+        while ((retVal == null) && (lo <= hi))
+        {
+            mid = (lo + hi) / 2;
+            cmp = list[mid].getName().compareToIgnoreCase(fileName);
+            if (cmp == 0)
+                retVal = list[mid];
+            else if (cmp < 0)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        } // while
+
+        return(retVal);
+    } // find
+
+
+        // Online UI...
+
+    public static void doFileAreas(OnlineSession session)
+                                     throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        FileArea area = getArea(1);
+        int i;
+
+        if (getAreaCount() > 1)
+        {
+            io.sendln();
+            for (i = 1; i <= getAreaCount(); i++)
+            {
+                io.sendln("  " + i + ") " + getArea(i).getName() + "  (" +
+                          getArea(i).getFileCount() + " files)");
+            } // for
+
+            area = getArea(MessageBoard.recvNumber(io, "Area number : "));
+        } // if
+
+        if (area == null)
+            io.sendln("No such area.");
+        else
+            area.areaMenu(session);
+    } // doFileAreas
+
+
+    protected void areaMenu(OnlineSession session)
+                               throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        boolean getOut = false;
+
+        while (!getOut)
+        {
+            io.sendln();
+            io.send(name + " : [L]ist files, [D]ownload, [U]pload, [Q]uit ? ");
+
+            switch (JBBS.asciiByteToLower(io.recv()))
+            {
+                case 'l':
+                    io.sendln("list");
+                    listFiles(session);
+                    break;
+
+                case 'd':
+                    io.sendln("download");
+                    downloadFile(session);
+                    break;
+
+                case 'u':
+                    io.sendln("upload");
+                    uploadFiles(session);
+                    break;
+
+                case 'q':
+                    io.sendln("quit");
+                    getOut = true;
+                    break;
+            } // switch
+        } // while
+    } // areaMenu
+
+
+    protected void listFiles(OnlineSession session)
+                               throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        FileEntry[] page;
+        int pages = getPageCount();
+        int i;
+        int j;
+
+        io.sendln();
+        if (pages == 0)
+            io.sendln("  No files.");
+
+        for (i = 0; i < pages; i++)
+        {
+            page = getPage(i);
+            for (j = 0; j < page.length; j++)
+            {
+                io.sendln("  " + JBBS.padString(page[j].getName(), 16) +
+                          JBBS.padString("" + page[j].getSize(), 10) +
+                          JBBS.padString("" + page[j].getDownloads(), 5) +
+                          page[j].getDescription());
+            } // for
+
+            if ((i < pages - 1) && (!session.getYN("More files? ")))
+                break;
+        } // for
+    } // listFiles
+
+
+    protected void downloadFile(OnlineSession session)
+                                  throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        FileEntry entry;
+
+        io.send("File name : ");
+        entry = find(io.recvln(FileTransfer.MAX_FILENAME).trim());
+
+        if (entry == null)
+            io.sendln("No such file.");
+        else if (FileTransfer.download(session,
+                                       new File(dir, entry.getName())))
+            countDownload(entry);
+    } // downloadFile
+
+
+        /**
+         *  Take uploads into the user's work directory, and only move
+         *   them into the area if nothing here has their name: an upload
+         *   never touches a file that's already catalogued.
+         */
+    protected void uploadFiles(OnlineSession session)
+                                 throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        String[] received = FileTransfer.receive(session);
+        int i;
+
+        for (i = 0; i < received.length; i++)
+        {
+            if (find(received[i]) != null)
+            {
+                io.sendln("There's already a file named " + received[i] +
+                          " here.");
+                new File(FileTransfer.workDir(session), received[i]).delete();
+                continue;
+            } // if
+
+            if (!FileTransfer.install(session, received[i], dir))
+                continue;
+
+            refresh(received[i]);   // don't wait for the watcher.
+            io.send("Describe " + received[i] + " : ");
+            describe(received[i], io.recvln(FileEntry.MAX_DESCRIPTION));
+        } // for
+    } // uploadFiles
+
+} // FileArea
+
+// end of FileArea.java ...
+
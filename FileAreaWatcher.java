@@ -0,0 +1,129 @@
+/**
+ *  Thread that watches the file area directories, and tells each
+ *   FileArea which of its files changed, so nobody has to rescan a
+ *   directory to find out. It also saves changed catalogs (new download
+ *   counts, mostly) now and then.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class FileAreaWatcher implements Runnable
+{
+        // Constants...
+    public final static int FLUSH_INTERVAL = 60 * 1000;    // millisecs.
+
+        // Static class variables...
+    protected static Thread watchThread = null;
+
+        // Instance variables...
+    protected WatchService watcher;
+    protected Hashtable areasByKey = new Hashtable();   // WatchKey->FileArea.
+
+
+        /**
+         *  Start the watcher thread, if it isn't already running.
+         *
+         *   @param areas Areas to watch.
+         *  @return <em>false</em> if the directories can't be watched.
+         */
+    public static synchronized boolean start(FileArea[] areas)
+    {
+        FileAreaWatcher fw;
+
+        if (watchThread == null)
+        {
+            try
+            {
+                fw = new FileAreaWatcher(areas);
+            } // try
+            catch (IOException e)
+            {
+                return(false);
+            } // catch
+
+            watchThread = new Thread(fw, "FileAreaWatcher");
+            watchThread.setDaemon(true);
+            watchThread.start();
+        } // if
+
+        return(true);
+    } // start
+
+
+    protected FileAreaWatcher(FileArea[] areas) throws IOException
+    {
+        WatchKey key;
+        int i;
+
+        watcher = FileSystems.getDefault().newWatchService();
+        for (i = 0; i < areas.length; i++)
+        {
+            key = areas[i].getDirectory().toPath().register(watcher,
+                                   StandardWatchEventKinds.ENTRY_CREATE,
+                                   StandardWatchEventKinds.ENTRY_DELETE,
+                                   StandardWatchEventKinds.ENTRY_MODIFY);
+            areasByKey.put(key, areas[i]);
+        } // for
+    } // Constructor
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        long nextFlush = System.currentTimeMillis() + FLUSH_INTERVAL;
+        FileArea area;
+        WatchEvent event;
+        WatchKey key;
+        List events;
+        long now;
+        int i;
+
+        while (true)    // loop until killed.
+        {
+            now = System.currentTimeMillis();
+            try
+            {
+                key = watcher.poll(Math.max(1, nextFlush - now),
+                                   TimeUnit.MILLISECONDS);
+            } // try
+            catch (InterruptedException e)
+            {
+                key = null;
+            } // catch
+
+            if (key != null)
+            {
+                area = (FileArea) areasByKey.get(key);
+                events = key.pollEvents();
+                for (i = 0; (area != null) && (i < events.size()); i++)
+                {
+                    event = (WatchEvent) events.get(i);
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        area.reconcile();       // lost track; look again.
+                    else
+                        area.refresh(event.context().toString());
+                } // for
+
+                key.reset();
+            } // if
+
+            if (System.currentTimeMillis() >= nextFlush)
+            {
+                FileArea.saveAll();
+                nextFlush = System.currentTimeMillis() + FLUSH_INTERVAL;
+            } // if
+        } // while
+    } // run
+
+} // FileAreaWatcher
+
+// end of FileAreaWatcher.java ...
+
@@ -0,0 +1,100 @@
+/**
+ *  One file in a FileArea's catalog. Everything but the download count
+ *   is replaced wholesale when the file changes on disk, so readers never
+ *   see half an update; the count is striped, so busy downloads don't
+ *   fight over it. Entries sort by name, ignoring case.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class FileEntry implements Comparable
+{
+        // Constants...
+    public final static int MAX_DESCRIPTION = 45;
+
+        // Instance variables...
+    protected String name;
+    protected long size;
+    protected long modTime;
+    protected String description;
+    protected LongAdder downloads = new LongAdder();
+
+
+    protected FileEntry(String _name, long _size, long _modTime,
+                        String desc, long downloadCount)
+    {
+        name = _name;
+        size = _size;
+        modTime = _modTime;
+        description = desc;
+        downloads.add(downloadCount);
+    } // Constructor
+
+
+        /**
+         *  An updated copy of an entry. The copy shares the original's
+         *   download counter, so no counts are lost in the changeover.
+         */
+    protected FileEntry(FileEntry old, long _size, long _modTime,
+                        String desc)
+    {
+        name = old.name;
+        size = _size;
+        modTime = _modTime;
+        description = desc;
+        downloads = old.downloads;
+    } // Constructor (update of another entry)
+
+
+        // Instance variable gateways...
+
+    public String getName()
+    {
+        return(name);
+    } // getName
+
+
+    public long getSize()
+    {
+        return(size);
+    } // getSize
+
+
+    public long getModTime()
+    {
+        return(modTime);
+    } // getModTime
+
+
+    public String getDescription()
+    {
+        return(description);
+    } // getDescription
+
+
+    public long getDownloads()
+    {
+        return(downloads.sum());
+    } // getDownloads
+
+
+        // Comparable implementation...
+
+    public int compareTo(Object obj)
+    {
+        FileEntry other = (FileEntry) obj;
+        int retVal = name.compareToIgnoreCase(other.name);
+
+        if (retVal == 0)
+            retVal = name.compareTo(other.name);
+
+        return(retVal);
+    } // compareTo
+
+} // FileEntry
+
+// end of FileEntry.java ...
+
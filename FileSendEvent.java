@@ -0,0 +1,33 @@
+/**
+ *  Flight recorder event: a download, from the protocol starting to
+ *   it finishing or giving up.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import jdk.jfr.*;
+
+@Name("jbbs.FileSend")
+@Label("File Send")
+@Category({ "JBBS", "Files" })
+@StackTrace(false)
+public class FileSendEvent extends Event
+{
+    @Label("File Name")
+    public String fileName;
+
+    @Label("Protocol")
+    public String protocol;
+
+    @Label("Bytes Sent")
+    @DataAmount
+    public long bytes;
+
+    @Label("Success")
+    public boolean success;
+
+} // FileSendEvent
+
+// end of FileSendEvent.java ...
+
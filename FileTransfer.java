@@ -0,0 +1,297 @@
+/**
+ *  The user's side of file transfers: picking a protocol, and telling
+ *   them how it went. The protocols themselves are in ZModem and XModem.
+ *
+ *  Uploads are received into a directory of the uploader's own
+ *   ("upload.12" in the data directory, for user #12), where ZModem can
+ *   resume what they didn't finish last time. Only complete files are
+ *   moved to where they're going, and never over a file that's there.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Vector;
+
+public class FileTransfer
+{
+        // Constants...
+    public final static int MAX_FILENAME = 64;
+    public final static String PREFIX_WORKDIR = "upload.";
+
+
+        /**
+         *  Make a file name from the other end safe to create: no paths,
+         *   no hidden files, no control characters.
+         *
+         *   @param name File name as sent.
+         *  @return Safe name, or <em>null</em> if there's nothing left.
+         */
+    public static String safeFileName(String name)
+    {
+        StringBuffer retVal = new StringBuffer();
+        char ch;
+        int i;
+
+        i = Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\'));
+        name = name.substring(i + 1).trim();
+
+        for (i = 0; (i < name.length()) && (i < MAX_FILENAME); i++)
+        {
+            ch = name.charAt(i);
+            if ((ch > ' ') && (ch < 127) && (ch != ':'))
+                retVal.append(ch);
+        } // for
+
+        if ((retVal.length() == 0) || (retVal.charAt(0) == '.'))
+            return(null);
+
+        return(retVal.toString());
+    } // safeFileName
+
+
+    protected static void report(SocketStream io, boolean success,
+                                 long bytes, long millis)
+                                   throws LostCarrierException
+    {
+        long cps = ((millis > 0) ? ((bytes * 1000) / millis) : bytes);
+
+        io.clearBuffer();       // protocol leftovers.
+        io.sendln();
+        io.sendln((success ? "Transfer complete: " : "Transfer aborted: ") +
+                  bytes + " bytes in " + (millis / 1000) + "." +
+                  ((millis % 1000) / 100) + " seconds (" + cps + " cps).");
+    } // report
+
+
+        /**
+         *  Finish a download's flight recorder event, if it's wanted.
+         */
+    protected static void sent(FileSendEvent event, File file,
+                               String protocol, boolean success, long bytes)
+    {
+        if (event.shouldCommit())
+        {
+            event.fileName = file.getName();
+            event.protocol = protocol;
+            event.success = success;
+            event.bytes = bytes;
+            event.commit();
+        } // if
+    } // sent
+
+
+        /**
+         *  Send a file to the user, in the protocol of their choice.
+         *
+         *   @param session Session to send to.
+         *   @param file File to send.
+         *  @return <em>true</em> if the file was sent.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public static boolean download(OnlineSession session, File file)
+                                        throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        FileSendEvent event = new FileSendEvent();
+        boolean retVal;
+        ZModem zmodem;
+        XModem xmodem;
+
+        io.sendln();
+        io.sendln(file.getName() + " is " + file.length() + " bytes.");
+        io.send("Protocol : [Z]modem, [X]modem-1K, [Q]uit ? ");
+
+        switch (JBBS.asciiByteToLower(io.recv()))
+        {
+            case 'z':
+                io.sendln("Zmodem");
+                io.sendln("Start your Zmodem download now.");
+                zmodem = new ZModem(io);
+                event.begin();
+                retVal = zmodem.send(file);
+                sent(event, file, "Zmodem", retVal, zmodem.getBytesMoved());
+                report(io, retVal, zmodem.getBytesMoved(),
+                       zmodem.getElapsedTime());
+                return(retVal);
+
+            case 'x':
+                io.sendln("Xmodem-1K");
+                io.sendln("Start your Xmodem-1K download now.");
+                xmodem = new XModem(io);
+                event.begin();
+                retVal = xmodem.send(file);
+                sent(event, file, "Xmodem-1K", retVal, xmodem.getBytesMoved());
+                report(io, retVal, xmodem.getBytesMoved(),
+                       xmodem.getElapsedTime());
+                return(retVal);
+
+            default:
+                io.sendln("quit");
+                return(false);
+        } // switch
+    } // download
+
+
+        /**
+         *  Take files from the user, and put them in a directory. Names
+         *   that are already there are refused.
+         *
+         *   @param session Session to receive from.
+         *   @param dir Directory to put files in.
+         *  @return Names of the files received; may be empty.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public static String[] upload(OnlineSession session, File dir)
+                                   throws LostCarrierException
+    {
+        String[] staged = receive(session);
+        Vector installed = new Vector();
+        String[] retVal;
+        int i;
+
+        for (i = 0; i < staged.length; i++)
+        {
+            if (install(session, staged[i], dir))
+                installed.addElement(staged[i]);
+        } // for
+
+        retVal = new String[installed.size()];
+        installed.copyInto(retVal);
+        return(retVal);
+    } // upload
+
+
+        /**
+         *  Where a user's uploads are received.
+         *
+         *   @param session Uploader's session.
+         *  @return Their work directory; it's made if it isn't there.
+         */
+    public static File workDir(OnlineSession session)
+    {
+        File retVal = new File(JBBSConfig.dataDir + PREFIX_WORKDIR +
+                               session.user.getNumber());
+
+        if (!retVal.isDirectory())
+            retVal.mkdirs();
+
+        return(retVal);
+    } // workDir
+
+
+        /**
+         *  Take files from the user, in the protocol of their choice, into
+         *   their work directory. Put each one where it goes with
+         *   install(), or it'll be thrown out next upload.
+         *
+         *   @param session Session to receive from.
+         *  @return Names of the files received; may be empty.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public static String[] receive(OnlineSession session)
+                                   throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        File dir = workDir(session);
+        String[] retVal = new String[0];
+        String[] leftovers = dir.list();
+        String name;
+        ZModem zmodem;
+        XModem xmodem;
+        int i;
+
+            // Whole files still here were never installed (we went down
+            //  first); they'd only be in the way. Partials stay, to resume.
+        for (i = 0; (leftovers != null) && (i < leftovers.length); i++)
+        {
+            if (!leftovers[i].endsWith(ZModem.EXT_PARTIAL))
+                new File(dir, leftovers[i]).delete();
+        } // for
+
+        io.sendln();
+        io.send("Protocol : [Z]modem, [X]modem-1K, [Q]uit ? ");
+
+        switch (JBBS.asciiByteToLower(io.recv()))
+        {
+            case 'z':
+                io.sendln("Zmodem");
+                io.sendln("Start your Zmodem upload now.");
+                zmodem = new ZModem(io);
+                zmodem.receive(dir);
+                retVal = zmodem.getReceivedFiles();
+                report(io, (retVal.length > 0), zmodem.getBytesMoved(),
+                       zmodem.getElapsedTime());
+                break;
+
+            case 'x':
+                io.sendln("Xmodem-1K");
+                io.send("File name : ");
+                name = safeFileName(io.recvln(MAX_FILENAME));
+                if (name == null)
+                    break;
+
+                io.sendln("Start your Xmodem-1K upload now.");
+                xmodem = new XModem(io);
+                if (xmodem.receive(new File(dir, name)))
+                {
+                    retVal = new String[1];
+                    retVal[0] = name;
+                } // if
+                else
+                    new File(dir, name).delete();   // no resume in Xmodem.
+
+                report(io, (retVal.length > 0), xmodem.getBytesMoved(),
+                       xmodem.getElapsedTime());
+                break;
+
+            default:
+                io.sendln("quit");
+                break;
+        } // switch
+
+        return(retVal);
+    } // receive
+
+
+        /**
+         *  Move a file receive() got to where it's going. If there's a
+         *   file by that name there already, it's left alone, the user's
+         *   told, and the upload is thrown out.
+         *
+         *   @param session Uploader's session.
+         *   @param name File's name, as receive() gave it.
+         *   @param dir Where it goes.
+         *  @return <em>true</em> if it's there now.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public static boolean install(OnlineSession session, String name,
+                                  File dir) throws LostCarrierException
+    {
+        File staged = new File(workDir(session), name);
+
+        try
+        {
+            Files.move(staged.toPath(), new File(dir, name).toPath());
+            return(true);
+        } // try
+        catch (FileAlreadyExistsException e)
+        {
+            session.getSocketStream().sendln("There's already a file " +
+                                             "named " + name + ".");
+        } // catch
+        catch (IOException e)
+        {
+            session.getSocketStream().sendln("Couldn't store " + name + ".");
+        } // catch
+
+        staged.delete();
+        return(false);
+    } // install
+
+} // FileTransfer
+
+// end of FileTransfer.java ...
+
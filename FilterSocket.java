@@ -0,0 +1,110 @@
+/**
+ *  A Socket that's a front for another one, the way a FilterInputStream
+ *   is a front for another stream. Everything goes to the real socket;
+ *   subclasses override getInputStream() and getOutputStream() to
+ *   change what goes through it. Nothing above can tell it's not a
+ *   plain Socket.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.net.*;
+
+public class FilterSocket extends Socket
+{
+        // Instance variables...
+    protected Socket raw;
+
+
+    public FilterSocket(Socket _raw) throws IOException
+    {
+        super((SocketImpl) null);       // we're only a front for _raw.
+        raw = _raw;
+    } // Constructor
+
+
+    public Socket getRawSocket()
+    {
+        return(raw);
+    } // getRawSocket
+
+
+        // Socket overrides; everything goes to the real socket...
+
+    public InputStream getInputStream() throws IOException
+    {
+        return(raw.getInputStream());
+    } // getInputStream
+
+
+    public OutputStream getOutputStream() throws IOException
+    {
+        return(raw.getOutputStream());
+    } // getOutputStream
+
+
+    public void setSoTimeout(int timeout) throws SocketException
+    {
+        raw.setSoTimeout(timeout);
+    } // setSoTimeout
+
+
+    public int getSoTimeout() throws SocketException
+    {
+        return(raw.getSoTimeout());
+    } // getSoTimeout
+
+
+    public void setTcpNoDelay(boolean on) throws SocketException
+    {
+        raw.setTcpNoDelay(on);
+    } // setTcpNoDelay
+
+
+    public boolean getTcpNoDelay() throws SocketException
+    {
+        return(raw.getTcpNoDelay());
+    } // getTcpNoDelay
+
+
+    public InetAddress getInetAddress()
+    {
+        return(raw.getInetAddress());
+    } // getInetAddress
+
+
+    public int getPort()
+    {
+        return(raw.getPort());
+    } // getPort
+
+
+    public int getLocalPort()
+    {
+        return(raw.getLocalPort());
+    } // getLocalPort
+
+
+    public boolean isClosed()
+    {
+        return(raw.isClosed());
+    } // isClosed
+
+
+    public void close() throws IOException
+    {
+        raw.close();
+    } // close
+
+
+    public String toString()
+    {
+        return(getClass().getName() + "[" + raw.toString() + "]");
+    } // toString
+
+} // FilterSocket
+
+// end of FilterSocket.java ...
+
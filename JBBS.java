@@ -13,9 +13,15 @@ public final class JBBS
     public static final String TITLE      = "JBBS";
     public static final int VERSION_MAJOR = 0;
     public static final int VERSION_MINOR = 10;
+    public static final int CONSOLE_LINEMAX = 256;
 
         // Static variables...
     private static long startTime;
+    private static BufferedReader console =
+                          new BufferedReader(new InputStreamReader(System.in));
+    private static Object shutdownLock = new Object();
+    private static boolean shutdownRequested = false;
+    private static boolean cleanedUp = false;
 
 
     public static byte asciiByteToLower(byte conv)
@@ -100,156 +106,132 @@ public final class JBBS
 
     public static String readLine(int lineMax) throws IOException
     /**
-     *   !!! comment !!!
+     *  Read a line from the console. This blocks until there's a whole
+     *   line (the terminal does the editing), without using any CPU.
+     *
+     *     params : lineMax == most characters to keep; the rest of the
+     *                         line is thrown out.
+     *    returns : the line, without its line end.
+     *     throws : EOFException if the console is closed.
      */
     {
-        byte readByte;
-        byte[] inLine = new byte[lineMax];
-        int bytesRead = 0;
-        boolean getOut = false;
-        
-        while (!getOut)
-        {
-            while (System.in.available() == 0)
-                Thread.yield();
+        StringBuffer retVal = new StringBuffer();
+        String line = console.readLine();
+        char ch;
+        int i;
 
-            readByte = (byte) System.in.read();   // chars? !!!
-            if (readByte == (byte) '\b')          // backspace?
-            {
-                if (bytesRead > 0)
-                {
-                    inLine[bytesRead] = (byte) ' ';
-                    bytesRead--;
-                } // if
-            } // if
+        if (line == null)
+            throw(new EOFException("Console closed."));
 
-            else if ((readByte == (byte) '\r') || (readByte == (byte) '\n'))
+        for (i = 0; i < line.length(); i++)
+        {
+            ch = line.charAt(i);
+            if (ch == '\b')         // backspace the terminal didn't eat?
             {
-                getOut = true;
-                System.in.skip(System.in.available());   // clear stream...
+                if (retVal.length() > 0)
+                    retVal.setLength(retVal.length() - 1);
             } // if
+            else if (retVal.length() < lineMax)
+                retVal.append(ch);
+        } // for
 
-            else
-            {
-                if (bytesRead < lineMax)
-                {
-                    inLine[bytesRead] = readByte;
-                    bytesRead++;
-                } // if
-            } // else
-        } // while
-
-        return(new String(inLine));
+        return(retVal.toString());
     } // readLine
 
 
-    private static boolean parseConsoleCommand(String command)
+    public static BufferedReader getConsole()
+    {
+        return(console);
+    } // getConsole
+
+
+    public static String compressionString(java.net.Socket socket)
     /**
-     *  !!! comment !!!
+     *  How much a session's output compression saves, and what it costs.
+     *
+     *     params : socket == session's socket.
+     *    returns : "-" if it isn't compressing, otherwise something like
+     *              "72% 15ms" (MCCP), or "72% ws" (permessage-deflate).
      */
     {
-        boolean retVal = false;
-        long freeMem;
-        int splitIndex;
-        Runtime rt;
-        String params;
+        TelnetSocket telnet;
+        java.net.Socket raw;
+        int savings;
 
-        if (command.length() == 0)
-            return(false);
+        if (!(socket instanceof TelnetSocket))
+            return("-");
 
-        splitIndex = command.indexOf(' ');
-        if (splitIndex != -1)
-        {
-            params = command.substring(splitIndex + 1).trim();
-            command = command.substring(0, splitIndex - 1).trim();
-        } // if
-        else
-            params = null;
+        telnet = (TelnetSocket) socket;
+        savings = telnet.getCompressionSavings();
+        if (savings != -1)
+            return(savings + "% " + telnet.getCompressMillis() + "ms");
 
-        if (command.equalsIgnoreCase("shutdown"))
+        raw = telnet.getRawSocket();
+        if (raw instanceof WebSocketSocket)
         {
-            try
-            {
-                if (getYN("Are you sure?", false))
-                    retVal = true;
-            } // try
-            catch (IOException e)
-            {
-                // don't care.
-            } // catch
+            savings = ((WebSocketSocket) raw).getCompressionSavings();
+            if (savings != -1)
+                return(savings + "% ws");
         } // if
 
-        else if (command.equalsIgnoreCase("stats"))
-        {
-            rt = Runtime.getRuntime();
-            freeMem = rt.freeMemory();
-
-            System.out.println("  " + TITLE + " " + versionString());
-            System.out.println("  Users currently connected : " +
-                               ConnectionManager.getCurrentConnectionCount());
-            System.out.println("  Total connection since boot : " +
-                               ConnectionManager.getTotalConnectionCount());
-            System.out.println("  Memory usage : (" +
-                                (rt.totalMemory() - freeMem) + " of "
-                                + rt.totalMemory() + " bytes)");
-            System.out.println("  Uptime : " + getUptime());
-        } // else if
-
-        else if (command.equalsIgnoreCase("gc"))
-        {
-            rt = Runtime.getRuntime();
-            freeMem = rt.freeMemory();
+        return("-");
+    } // compressionString
 
-            System.out.println("Doing finalization and garbage collection...");
-            rt.runFinalization();
-            rt.gc();
-            System.out.println("Regained " + 
-                                (rt.freeMemory() - freeMem) + " bytes.");
-        } // else if
 
-        else if (command.equalsIgnoreCase("help"))
-        {
-            System.out.println("Available commands...");
-            System.out.println("  [help]     -- this information.");
-            System.out.println("  [shutdown] -- shutdown BBS server.");
-            System.out.println("  [stats]    -- give current stats.");
-            System.out.println("  [gc]       -- run garbage collection.");
-        } // else if
+    public static String padString(String str, int len)
+    /**
+     *  Pad a string with spaces, for lining up columns.
+     *
+     *     params : str == string to pad.
+     *              len == length to pad to.
+     *    returns : str, with spaces added on the end to make it len
+     *              characters long. Longer strings are returned as-is.
+     */
+    {
+        StringBuffer retVal = new StringBuffer(str);
 
-        else
-            System.out.println("Unknown command.");
+        while (retVal.length() < len)
+            retVal.append(' ');
 
-        return(retVal);
-    } // parseConsoleCommand
+        return(retVal.toString());
+    } // padString
 
 
-    private static void processConsole()
+    public static void requestShutdown()
     /**
-     *   !!! comment !!!
+     *  Ask for the server to shut down. main() does it, as soon as it
+     *   hears; this returns right away.
      */
     {
-        String command;
-        boolean getOut = false;
+        synchronized (shutdownLock)
+        {
+            shutdownRequested = true;
+            shutdownLock.notifyAll();
+        } // synchronized
+    } // requestShutdown
 
-        System.out.println("Type HELP for list of commands.");
-        System.out.println();
 
-        while (!getOut)
+    private static void waitForShutdown()
+    /**
+     *  Sleep until somebody calls requestShutdown(): the console, or a
+     *   signal, by way of ShutdownHook.
+     */
+    {
+        synchronized (shutdownLock)
         {
-            try
+            while (!shutdownRequested)
             {
-                command = readLine(30).trim();
-                getOut = parseConsoleCommand(command);
-            } // try
-            catch (IOException e)
-            {
-                System.out.println();
-                System.out.println("IOException reading console!");
-                System.out.println();
-                getOut = true;
-            } // catch
-        } // while
-    } // processConsoleCommands
+                try
+                {
+                    shutdownLock.wait();
+                } // try
+                catch (InterruptedException e)
+                {
+                    // don't care.
+                } // catch
+            } // while
+        } // synchronized
+    } // waitForShutdown
 
 
     public static String getUptime()
@@ -320,6 +302,7 @@ public final class JBBS
         System.out.println();
 
         System.runFinalizersOnExit(true);
+        ServerCommands.register();
 
         try
         {
@@ -338,6 +321,9 @@ public final class JBBS
             System.out.println("   ...run JBBSSetup.class to update it.");
         } // catch
 
+        JBBSLog.start();
+        JBBSLog.add("JBBS", versionString() + " starting up.");
+
         System.out.print("Opening user database...");
         if (JBBSUser.openUserDB() == false)
         {
@@ -357,6 +343,35 @@ public final class JBBS
         } // if
         System.out.println("It's cool.");
 
+        System.out.print("Opening message boards...");
+        if (MessageBoard.openBoards() == false)
+        {
+            System.out.println("Error.");
+            System.out.println("   ...check the board files in " +
+                               JBBSConfig.dataDir + ".");
+            return(false);
+        } // if
+        System.out.println(MessageBoard.getBoardCount() + " found.");
+
+        System.out.print("Scanning mailboxes...");
+        System.out.println(MailBox.openMail() + " found.");
+
+        System.out.print("Loading file areas...");
+        if (FileArea.openAreas() == false)
+        {
+            System.out.println("Error.");
+            System.out.println("   ...check the file areas in " +
+                               JBBSConfig.dataDir + ".");
+            return(false);
+        } // if
+        System.out.println(FileArea.getAreaCount() + " found.");
+
+        System.out.print("Opening doors...");
+        System.out.println(Door.openDoors() + " found.");
+
+        System.out.print("Compiling screen templates...");
+        System.out.println(ScreenTemplate.loadTemplates() + " found.");
+
         System.out.print("Revving up the ConnectionManager...");
         try
         {
@@ -382,35 +397,77 @@ public final class JBBS
     } // initialize
 
 
-    public static void cleanup()
+    public static synchronized void cleanup()
     /**
-     *  Various random cleanups and shit.
+     *  Various random cleanups and shit. Only the first call does
+     *   anything; a ShutdownHook may call it after main() has.
      *
      *      params : void.
      *     returns : void.
      */
     {
+        File recording;
+
+        if (cleanedUp)
+            return;
+        cleanedUp = true;
+
         System.out.println();
         System.out.println("   ...Shutting down...");
         ConnectionManager.shutdown();
+        FileArea.saveAll();
+
+        if ((recording = JBBSRecording.stop()) != null)
+            System.out.println("   Flight recording written to " + recording);
+
+        JBBSLog.add("JBBS", "Shut down; " + JBBSLog.getDroppedCount() +
+                            " log records were dropped.");
+        JBBSLog.shutdown();
         System.out.println();
     } // cleanup
 
 
     public static void main(String[] args)
     /**
-     *  The Mainline of JBBS. Doesn't do much. There's no command line
-     *   arguments right now.
+     *  The Mainline of JBBS. Doesn't do much. Starts everything up,
+     *   then sleeps until it's time to shut down.
+     *
+     *  With "--headless" on the command line, there's no console, for
+     *   running as a service; a signal (SIGTERM, Ctrl-C) shuts it down
+     *   cleanly, and console commands still work through the admin
+     *   socket, if one's configured (see AdminListener).
      *
      *    params : args[] == command line arguments, if any.
      *   returns : void.
      */
     {
+        boolean headless = false;
+        int i;
+
+        for (i = 0; i < args.length; i++)
+        {
+            if (args[i].equalsIgnoreCase("--headless"))
+                headless = true;
+        } // for
+
         if (!initialize(args))
             System.out.println("   ...aborting...");
         else
         {
-            processConsole();
+            Runtime.getRuntime().addShutdownHook(
+                                new Thread(new ShutdownHook(), "ShutdownHook"));
+
+            if ((headless) && (JBBSConfig.adminSocket.length() > 0))
+            {
+                System.out.println("Running headless; admin socket is " +
+                                   JBBSConfig.adminSocket + ".");
+            } // if
+            else if (headless)
+                System.out.println("Running headless.");
+            else
+                new ServerConsole();
+
+            waitForShutdown();
             cleanup();
         } // else
     } // main
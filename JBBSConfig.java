@@ -17,6 +17,13 @@ public class JBBSConfig // extends Frame implements WindowListener
     public static final int DEFAULT_PORTNUM = 72; // !!! 23;
     public static final int DEFAULT_IDLETIMEOUT = 5;
     public static final int DEFAULT_LOGINTRIES = 3;
+    public static final int DEFAULT_OUTPUTHIGHWATER = 65536;
+    public static final int DEFAULT_COMPRESSLEVEL = 6;
+    public static final int DEFAULT_TLSPORTNUM = 0;       // 0 == no TLS.
+    public static final String DEFAULT_TLSKEYSTORE = "jbbs.p12";
+    public static final int DEFAULT_WEBPORTNUM = 0;       // 0 == no web.
+    public static final int DEFAULT_METRICSPORTNUM = 0;   // 0 == none.
+    public static final String DEFAULT_ADMINSOCKET = "";  // "" == none.
     public static final String DEFAULT_CFGFILENAME = "jbbs.cfg";
     public static final String BACKUP_CFGFILENAME  = "jbbscfg.bak";
 
@@ -31,6 +38,14 @@ public class JBBSConfig // extends Frame implements WindowListener
     public static boolean logIOExceptions = true;
     public static boolean logLostCarrierExceptions = true;
     public static boolean debugging = true;
+    public static int outputHighWater = DEFAULT_OUTPUTHIGHWATER;
+    public static int compressLevel = DEFAULT_COMPRESSLEVEL;  // 0 == off.
+    public static int tlsPortNum = DEFAULT_TLSPORTNUM;
+    public static String tlsKeyStore = DEFAULT_TLSKEYSTORE;
+    public static String tlsKeyStorePassword = "";
+    public static int webPortNum = DEFAULT_WEBPORTNUM;
+    public static int metricsPortNum = DEFAULT_METRICSPORTNUM; // loopback.
+    public static String adminSocket = DEFAULT_ADMINSOCKET;    // a path.
 
         // Static config file accessing methods...
     public static synchronized boolean in(String cfgFileName)
@@ -62,6 +77,14 @@ public class JBBSConfig // extends Frame implements WindowListener
                 useAutoPosts = cfgFile.readBoolean();
                 logIOExceptions = cfgFile.readBoolean();
                 logLostCarrierExceptions = cfgFile.readBoolean();
+                outputHighWater = cfgFile.readInt();
+                compressLevel = cfgFile.readInt();
+                tlsPortNum = cfgFile.readInt();
+                tlsKeyStore = cfgFile.readUTF();
+                tlsKeyStorePassword = cfgFile.readUTF();
+                webPortNum = cfgFile.readInt();
+                metricsPortNum = cfgFile.readInt();
+                adminSocket = cfgFile.readUTF();
                 cfgFile.close();
             } // try
 
@@ -116,6 +139,14 @@ public class JBBSConfig // extends Frame implements WindowListener
                 cfgFile.writeBoolean(useAutoPosts);
                 cfgFile.writeBoolean(logIOExceptions);
                 cfgFile.writeBoolean(logLostCarrierExceptions);
+                cfgFile.writeInt(outputHighWater);
+                cfgFile.writeInt(compressLevel);
+                cfgFile.writeInt(tlsPortNum);
+                cfgFile.writeUTF(tlsKeyStore);
+                cfgFile.writeUTF(tlsKeyStorePassword);
+                cfgFile.writeInt(webPortNum);
+                cfgFile.writeInt(metricsPortNum);
+                cfgFile.writeUTF(adminSocket);
                 cfgFile.close();
             } // try
 
@@ -0,0 +1,465 @@
+/**
+ *  The BBS's log: "jbbs.log" in the data directory, with older ones
+ *   rotated out to "jbbs.log.1", "jbbs.log.2", and so on.
+ *
+ *  Session threads must never wait on the disk, so add() doesn't: it
+ *   claims a slot in a ring with one compare-and-set, fills it in, and
+ *   marks it ready. One writer thread takes everything that's ready,
+ *   formats it into a buffer that gets reused, and writes the lot at
+ *   once, a few times a second, or as soon as a quarter of the ring is
+ *   waiting.
+ *
+ *  If the writer falls behind, records are dropped (and counted) rather
+ *   than making anybody wait. Records below PRIORITY_WARNING go first:
+ *   they're dropped once the ring is three quarters full, leaving the
+ *   rest for the ones that matter.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+public class JBBSLog implements Runnable
+{
+        // Constants...
+    public final static int PRIORITY_DEBUG   = 0;
+    public final static int PRIORITY_INFO    = 1;
+    public final static int PRIORITY_WARNING = 2;
+    public final static int PRIORITY_ERROR   = 3;
+
+    public final static String FILENAME_LOG = "jbbs.log";
+    public final static long MAX_LOG_BYTES = 1024 * 1024;
+    public final static int LOG_GENERATIONS = 4;    // old logs kept.
+
+    public final static int LEN_RING = 8192;        // power of two.
+    public final static int FLUSH_INTERVAL = 250;   // milliseconds.
+
+    protected final static int RING_MASK = LEN_RING - 1;
+    protected final static int LOW_PRIORITY_ROOM = (LEN_RING / 4) * 3;
+    protected final static int WAKE_PENDING = LEN_RING / 4;
+    protected final static int LEN_WRITEBUF = 16384;
+
+    protected final static String[] PRIORITY_NAMES = {
+        " debug ", " info  ", " WARN  ", " ERROR "
+    };
+
+        // Static class variables...
+        //  The ring. A slot is ready when published[slot] == its seq + 1.
+    protected static AtomicLong claimed = new AtomicLong(0); // next to claim.
+    protected static volatile long consumed = 0;             // next to write.
+    protected static AtomicLongArray published = new AtomicLongArray(LEN_RING);
+    protected static long[] times = new long[LEN_RING];
+    protected static int[] priorities = new int[LEN_RING];
+    protected static String[] types = new String[LEN_RING];
+    protected static String[] messages = new String[LEN_RING];
+    protected static String[] details = new String[LEN_RING];
+
+    protected static LongAdder dropped = new LongAdder();
+    protected static volatile long written = 0;
+    protected static volatile boolean running = false;
+    protected static volatile Thread writerThread = null;
+    protected static AtomicBoolean writerAsleep = new AtomicBoolean(false);
+
+        // Writer thread's own...
+    protected byte[] buf = new byte[LEN_WRITEBUF];
+    protected int bufLen = 0;
+    protected FileOutputStream file = null;
+    protected long fileSize = 0;
+    protected long stampSecond = -1;            // second stamp is for...
+    protected byte[] stamp = new byte[20];      //  ..."1997-06-01 12:34:56."
+    protected Calendar calendar = Calendar.getInstance();
+    protected boolean failed = false;           // said so already?
+
+
+    protected JBBSLog()
+    {
+        // only start() makes one.
+    } // Constructor
+
+
+        // Adding records...
+
+    public static boolean add(String type, String msg)
+    {
+        return(add(PRIORITY_INFO, type, msg, null));
+    } // add (type and message)
+
+
+    public static boolean add(int priority, String type, String msg)
+    {
+        return(add(priority, type, msg, null));
+    } // add (priority, type and message)
+
+
+        /**
+         *  Log something. Never waits; if the log's too far behind, the
+         *   record is dropped instead.
+         *
+         *   @param priority One of the PRIORITY_* constants.
+         *   @param type What sort of thing happened, like "IOException".
+         *   @param msg What happened.
+         *   @param detail More about it, or <em>null</em>. Kept separate
+         *                 so callers don't have to build a String.
+         *  @return <em>false</em> if the record was dropped.
+         */
+    public static boolean add(int priority, String type, String msg,
+                              String detail)
+    {
+        long room = (priority < PRIORITY_WARNING) ? LOW_PRIORITY_ROOM :
+                                                    LEN_RING;
+        long seq;
+        int slot;
+
+        do
+        {
+            seq = claimed.get();
+            if (seq - consumed >= room)
+            {
+                dropped.increment();
+                return(false);
+            } // if
+        } while (!claimed.compareAndSet(seq, seq + 1));
+
+        slot = (int) (seq & RING_MASK);
+        times[slot] = System.currentTimeMillis();
+        priorities[slot] = priority;
+        types[slot] = type;
+        messages[slot] = msg;
+        details[slot] = detail;
+        published.set(slot, seq + 1);   // writer can have it now.
+
+            // Enough for a batch? Wake the writer, if it's napping.
+        if ((seq + 1 - consumed >= WAKE_PENDING) && (writerAsleep.get()) &&
+            (writerAsleep.compareAndSet(true, false)))
+        {
+            LockSupport.unpark(writerThread);
+        } // if
+
+        return(true);
+    } // add (everything)
+
+
+        // Statistics...
+
+    public static long getDroppedCount()
+    {
+        return(dropped.sum());
+    } // getDroppedCount
+
+
+    public static long getWrittenCount()
+    {
+        return(written);
+    } // getWrittenCount
+
+
+    public static int getPendingCount()
+    {
+        return((int) (claimed.get() - consumed));
+    } // getPendingCount
+
+
+        /**
+         *  Have the writer write what's waiting now, rather than at its
+         *   next FLUSH_INTERVAL. Doesn't wait for it to finish.
+         */
+    public static void flush()
+    {
+        Thread t = writerThread;
+
+        if (t != null)
+            LockSupport.unpark(t);
+    } // flush
+
+
+        // Starting and stopping...
+
+        /**
+         *  Start the writer thread. Anything added before now is written
+         *   first. Call this once JBBSConfig knows the data directory.
+         */
+    public static synchronized void start()
+    {
+        if (running)
+            return;
+
+        running = true;
+        writerThread = new Thread(new JBBSLog(), "JBBSLog");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    } // start
+
+
+        /**
+         *  Write everything that's waiting, and stop the writer thread.
+         */
+    public static synchronized void shutdown()
+    {
+        if (!running)
+            return;
+
+        running = false;
+        LockSupport.unpark(writerThread);
+
+        try
+        {
+            writerThread.join(FLUSH_INTERVAL * 8);
+        } // try
+        catch (InterruptedException e)
+        {
+            // don't care.
+        } // catch
+
+        writerThread = null;
+    } // shutdown
+
+
+        // Writing...
+
+        /**
+         *  Put the time in the buffer: "1997-06-01 12:34:56.789". The part
+         *   up to the second only changes once a second, so it's kept.
+         */
+    protected void appendTime(long time)
+    {
+        long second = time / 1000;
+        int millis = (int) (time % 1000);
+
+        if (second != stampSecond)
+        {
+            calendar.setTimeInMillis(time);
+            stampSecond = second;
+            putDigits(stamp, 0, calendar.get(Calendar.YEAR), 4);
+            stamp[4] = '-';
+            putDigits(stamp, 5, calendar.get(Calendar.MONTH) + 1, 2);
+            stamp[7] = '-';
+            putDigits(stamp, 8, calendar.get(Calendar.DAY_OF_MONTH), 2);
+            stamp[10] = ' ';
+            putDigits(stamp, 11, calendar.get(Calendar.HOUR_OF_DAY), 2);
+            stamp[13] = ':';
+            putDigits(stamp, 14, calendar.get(Calendar.MINUTE), 2);
+            stamp[16] = ':';
+            putDigits(stamp, 17, calendar.get(Calendar.SECOND), 2);
+            stamp[19] = '.';
+        } // if
+
+        System.arraycopy(stamp, 0, buf, bufLen, stamp.length);
+        bufLen += stamp.length;
+        putDigits(buf, bufLen, millis, 3);
+        bufLen += 3;
+    } // appendTime
+
+
+    protected static void putDigits(byte[] to, int pos, int value, int len)
+    {
+        int i;
+
+        for (i = pos + len - 1; i >= pos; i--)
+        {
+            to[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } // for
+    } // putDigits
+
+
+        /**
+         *  Put a String in the buffer, a char at a time, so there's no
+         *   getBytes() garbage. Anything that isn't printable Latin-1
+         *   becomes '?', so nobody can forge a line of the log.
+         */
+    protected void append(String str) throws IOException
+    {
+        int len = str.length();
+        char ch;
+        int i;
+
+        for (i = 0; i < len; i++)
+        {
+            if (bufLen == buf.length)
+                writeBuffer();
+
+            ch = str.charAt(i);
+            buf[bufLen++] = (byte) (((ch < ' ') || (ch > 0xFF)) ? '?' : ch);
+        } // for
+    } // append
+
+
+        /**
+         *  Format one record into the buffer:
+         *   "1997-06-01 12:34:56.789 WARN  type: message (detail)"
+         */
+    protected void format(int slot) throws IOException
+    {
+        String name = PRIORITY_NAMES[Math.max(0, Math.min(priorities[slot],
+                                              PRIORITY_NAMES.length - 1))];
+
+        if (buf.length - bufLen < stamp.length + 3 + name.length())
+            writeBuffer();
+
+        appendTime(times[slot]);
+        append(name);
+        append(types[slot]);
+        append(": ");
+        append(String.valueOf(messages[slot]));
+        if (details[slot] != null)
+        {
+            append(" (");
+            append(details[slot]);
+            append(")");
+        } // if
+
+        if (bufLen == buf.length)
+            writeBuffer();
+        buf[bufLen++] = '\n';
+    } // format
+
+
+    protected void openFile() throws IOException
+    {
+        File f = new File(JBBSConfig.dataDir, FILENAME_LOG);
+
+        file = new FileOutputStream(f.getPath(), true);
+        fileSize = f.length();
+    } // openFile
+
+
+        /**
+         *  Move jbbs.log to jbbs.log.1, jbbs.log.1 to jbbs.log.2, etc.,
+         *   and start a new one.
+         */
+    protected void rotate() throws IOException
+    {
+        File dir = new File(JBBSConfig.dataDir);
+        File from;
+        File to;
+        int i;
+
+        file.close();
+        file = null;
+
+        for (i = LOG_GENERATIONS; i > 0; i--)
+        {
+            from = new File(dir, FILENAME_LOG + ((i > 1) ? "." + (i - 1) : ""));
+            to = new File(dir, FILENAME_LOG + "." + i);
+            if (from.exists())
+            {
+                to.delete();
+                from.renameTo(to);
+            } // if
+        } // for
+
+        openFile();
+    } // rotate
+
+
+    protected void writeBuffer() throws IOException
+    {
+        if (bufLen == 0)
+            return;
+
+        if (file == null)
+            openFile();
+
+        file.write(buf, 0, bufLen);
+        fileSize += bufLen;
+        bufLen = 0;
+
+        if (fileSize >= MAX_LOG_BYTES)
+            rotate();
+    } // writeBuffer
+
+
+        /**
+         *  Write everything that's ready.
+         *
+         *  @return Number of records written.
+         */
+    protected int drain()
+    {
+        long seq = consumed;
+        int count = 0;
+        int slot;
+
+        while (published.get(slot = (int) (seq & RING_MASK)) == seq + 1)
+        {
+            try
+            {
+                format(slot);
+            } // try
+            catch (IOException e)
+            {
+                logFailed(e);
+            } // catch
+
+            types[slot] = null;         // don't hold on to them.
+            messages[slot] = null;
+            details[slot] = null;
+            consumed = ++seq;           // slot's free again.
+            count++;
+        } // while
+
+        try
+        {
+            writeBuffer();
+        } // try
+        catch (IOException e)
+        {
+            logFailed(e);
+        } // catch
+
+        written += count;
+        return(count);
+    } // drain
+
+
+    protected void logFailed(IOException e)
+    {
+        bufLen = 0;     // throw it away; nowhere to put it.
+
+        if (!failed)
+        {
+            System.out.println("Can't write the log! [" + e.getMessage() +
+                               "]");
+            failed = true;
+        } // if
+    } // logFailed
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        while (running)
+        {
+            drain();
+
+                // Let a batch build up. add() wakes us if it gets big;
+                //  look again after saying we're asleep, or we might miss
+                //  its wake-up call.
+            writerAsleep.set(true);
+            if (getPendingCount() < WAKE_PENDING)
+                LockSupport.parkNanos(FLUSH_INTERVAL * 1000000L);
+            writerAsleep.set(false);
+        } // while
+
+        drain();    // last words.
+
+        try
+        {
+            if (file != null)
+                file.close();
+        } // try
+        catch (IOException e)
+        {
+            // don't care.
+        } // catch
+    } // run
+
+} // JBBSLog
+
+// end of JBBSLog.java ...
+
@@ -0,0 +1,199 @@
+/**
+ *  The server's counters, gauges and latency histograms, all in one
+ *   place, for the console's "stats" command. Everything here is cheap
+ *   to update from any thread (see MetricCounter and LatencyHistogram),
+ *   so it's always on.
+ *
+ *  To measure something new, add a field here with counter(), gauge()
+ *   or histogram(), and it shows up in "stats" by itself.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.PrintStream;
+import java.util.Vector;
+
+public class JBBSMetrics
+{
+        // Static class variables...
+    protected static Vector counters = new Vector();
+    protected static Vector histograms = new Vector();
+    protected static long resetTime = System.currentTimeMillis();
+
+        // Counters and gauges...
+    public final static MetricCounter connections =
+                               counter("Connections accepted");
+    public final static MetricCounter connectionsRefused =
+                               counter("Connections refused (full)");
+    public final static MetricCounter online =
+                               gauge("Sessions online");
+    public final static MetricCounter logins =
+                               counter("Logins");
+    public final static MetricCounter failedLogins =
+                               counter("Failed logins");
+    public final static MetricCounter bytesIn =
+                               counter("Bytes received");
+    public final static MetricCounter bytesOut =
+                               counter("Bytes sent");
+    public final static MetricCounter userDBReads =
+                               counter("User database reads");
+    public final static MetricCounter userDBWrites =
+                               counter("User database writes");
+    public final static MetricCounter fanOutDropped =
+                               counter("Fan-out messages dropped");
+
+        // Latencies...
+    public final static LatencyHistogram connectToLogin =
+                               histogram("Connect to login");
+    public final static LatencyHistogram handshake =
+                               histogram("Handshake (TLS, WebSocket)");
+    public final static LatencyHistogram negotiation =
+                               histogram("Terminal negotiation");
+    public final static LatencyHistogram userRetrieve =
+                               histogram("JBBSUser.retrieve");
+    public final static LatencyHistogram autoPostRead =
+                               histogram("AutoPosts read");
+    public final static LatencyHistogram autoPostWrite =
+                               histogram("AutoPosts write");
+
+
+    protected static MetricCounter counter(String name)
+    {
+        MetricCounter retVal = new MetricCounter(name, false);
+
+        counters.addElement(retVal);
+        return(retVal);
+    } // counter
+
+
+    protected static MetricCounter gauge(String name)
+    {
+        MetricCounter retVal = new MetricCounter(name, true);
+
+        counters.addElement(retVal);
+        return(retVal);
+    } // gauge
+
+
+    protected static LatencyHistogram histogram(String name)
+    {
+        LatencyHistogram retVal = new LatencyHistogram(name);
+
+        histograms.addElement(retVal);
+        return(retVal);
+    } // histogram
+
+
+        /**
+         *  Clear every counter and histogram (but not gauges).
+         */
+    public static void reset()
+    {
+        int i;
+
+        for (i = 0; i < counters.size(); i++)
+            ((MetricCounter) counters.elementAt(i)).reset();
+
+        for (i = 0; i < histograms.size(); i++)
+            ((LatencyHistogram) histograms.elementAt(i)).reset();
+
+        resetTime = System.currentTimeMillis();
+    } // reset
+
+
+    public static int getCounterCount()
+    {
+        return(counters.size());
+    } // getCounterCount
+
+
+    public static MetricCounter getCounter(int index)
+    {
+        return((MetricCounter) counters.elementAt(index));
+    } // getCounter
+
+
+    public static int getHistogramCount()
+    {
+        return(histograms.size());
+    } // getHistogramCount
+
+
+    public static LatencyHistogram getHistogram(int index)
+    {
+        return((LatencyHistogram) histograms.elementAt(index));
+    } // getHistogram
+
+
+    public static long getResetTime()
+    {
+        return(resetTime);
+    } // getResetTime
+
+
+        /**
+         *  Make a time in nanoseconds readable: "850ns", "12.3us",
+         *   "4.56ms", "2.1s".
+         */
+    public static String formatNanos(long nanos)
+    {
+        if (nanos < 1000)
+            return(nanos + "ns");
+        else if (nanos < 1000000)
+            return(tenths(nanos, 1000) + "us");
+        else if (nanos < 1000000000)
+            return(tenths(nanos, 1000000) + "ms");
+        else
+            return(tenths(nanos, 1000000000) + "s");
+    } // formatNanos
+
+
+    protected static String tenths(long value, long unit)
+    {
+        long tens = (value * 10) / unit;
+
+        return((tens / 10) + "." + (tens % 10));
+    } // tenths
+
+
+        /**
+         *  Print everything, lined up.
+         *
+         *   @param out Where to print it.
+         */
+    public static void print(PrintStream out)
+    {
+        MetricCounter counter;
+        LatencyHistogram h;
+        int i;
+
+        out.println("  Since " + new java.util.Date(resetTime) + ":");
+
+        for (i = 0; i < counters.size(); i++)
+        {
+            counter = (MetricCounter) counters.elementAt(i);
+            out.println("    " + JBBS.padString(counter.getName(), 28) +
+                        " " + counter.get());
+        } // for
+
+        out.println();
+        out.println("    " + JBBS.padString("Latency", 28) +
+                    " Count    p50      p99      p999     max");
+
+        for (i = 0; i < histograms.size(); i++)
+        {
+            h = (LatencyHistogram) histograms.elementAt(i);
+            out.println("    " + JBBS.padString(h.getName(), 28) + " " +
+                  JBBS.padString(Long.toString(h.getCount()), 8) + " " +
+                  JBBS.padString(formatNanos(h.getPercentile(0.5)), 8) + " " +
+                  JBBS.padString(formatNanos(h.getPercentile(0.99)), 8) + " " +
+                  JBBS.padString(formatNanos(h.getPercentile(0.999)), 8) +
+                  " " + formatNanos(h.getMax()));
+        } // for
+    } // print
+
+} // JBBSMetrics
+
+// end of JBBSMetrics.java ...
+
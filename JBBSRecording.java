@@ -0,0 +1,134 @@
+/**
+ *  Flight recordings, started and stopped from the console, for finding
+ *   out where the time goes when things get slow. A recording has the
+ *   JVM's usual events (the "default" settings, which cost next to
+ *   nothing) plus ours, from the *Event classes: accepts, emulation
+ *   detection, logins, user database and autopost access, file sends
+ *   and disconnects. It's written to "jbbs-<date>-<time>.jfr" in the
+ *   data directory when it's stopped; open it in JDK Mission Control,
+ *   or look at it with "jfr print --events jbbs.Login" and the like.
+ *
+ *  When nothing's recording, our events cost a check that the JIT
+ *   folds away; the code around them only fills in fields when
+ *   shouldCommit() says somebody wants them.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import jdk.jfr.*;
+
+public class JBBSRecording
+{
+        // Constants...
+    public final static String SETTINGS = "default";
+
+    protected final static Class[] EVENTS = {
+        SessionAcceptEvent.class, EmulationEvent.class, LoginEvent.class,
+        UserDBEvent.class, AutoPostEvent.class, FileSendEvent.class,
+        DisconnectEvent.class
+    };
+
+        // Static class variables...
+    protected static Recording recording = null;
+    protected static File destination = null;
+
+
+        /**
+         *  Start recording.
+         *
+         *  @return Where it'll be written.
+         *   @throw IOException if it can't be started, or one's already
+         *          going.
+         */
+    public static synchronized File start() throws IOException
+    {
+        SimpleDateFormat stamp = new SimpleDateFormat("yyyyMMdd-HHmmss");
+        Recording r;
+        File file;
+        int i;
+
+        if (recording != null)
+            throw(new IOException("Already recording to " + destination));
+
+        file = new File(JBBSConfig.dataDir,
+                        "jbbs-" + stamp.format(new Date()) + ".jfr");
+
+        try
+        {
+            r = new Recording(Configuration.getConfiguration(SETTINGS));
+        } // try
+        catch (java.text.ParseException e)
+        {
+            throw(new IOException("Bad recording settings: " +
+                                  e.getMessage()));
+        } // catch
+
+        for (i = 0; i < EVENTS.length; i++)
+            r.enable(EVENTS[i]);
+
+        r.setName("JBBS");
+        r.setToDisk(true);
+        r.setDestination(file.toPath());
+
+        try
+        {
+            r.start();
+        } // try
+        catch (RuntimeException e)  // no flight recorder in this JVM, etc.
+        {
+            r.close();
+            throw(new IOException(e.getMessage()));
+        } // catch
+
+        recording = r;
+        destination = file;
+        return(file);
+    } // start
+
+
+        /**
+         *  Stop recording, and write it out.
+         *
+         *  @return Where it was written, or <em>null</em> if nothing was
+         *          recording.
+         */
+    public static synchronized File stop()
+    {
+        File retVal = destination;
+
+        if (recording == null)
+            return(null);
+
+        try
+        {
+            recording.stop();       // this writes it to destination.
+        } // try
+        finally
+        {
+            recording.close();
+            recording = null;
+            destination = null;
+        } // finally
+
+        return(retVal);
+    } // stop
+
+
+        /**
+         *  Where the current recording is going.
+         *
+         *  @return The file, or <em>null</em> if nothing's recording.
+         */
+    public static synchronized File getDestination()
+    {
+        return(destination);
+    } // getDestination
+
+} // JBBSRecording
+
+// end of JBBSRecording.java ...
+
@@ -130,6 +130,46 @@ public class JBBSSetup extends JBBSUser
         JBBSConfig.logLostCarrierExceptions = JBBS.getYN("Log disconnects?",
                                         JBBSConfig.logLostCarrierExceptions);
 
+        JBBSConfig.outputHighWater = JBBS.getIntDefault(
+                             "Bytes queued for a slow user before dropping?",
+                             JBBSConfig.outputHighWater);
+
+        do
+        {
+            JBBSConfig.compressLevel = JBBS.getIntDefault(
+                             "Compression level for MCCP clients (0-9, 0=off)?",
+                             JBBSConfig.compressLevel);
+        } while ((JBBSConfig.compressLevel < 0) ||
+                 (JBBSConfig.compressLevel > 9));
+
+        JBBSConfig.tlsPortNum = JBBS.getIntDefault(
+                                  "Port number for telnet over TLS (0=off)?",
+                                  JBBSConfig.tlsPortNum);
+        if (JBBSConfig.tlsPortNum != 0)
+        {
+            JBBSConfig.tlsKeyStore = JBBS.getStrDefault(
+                                          "Keystore with TLS certificate?",
+                                          255, JBBSConfig.tlsKeyStore);
+            JBBSConfig.tlsKeyStorePassword = JBBS.getStrDefault(
+                                          "Keystore password?", 255,
+                                          JBBSConfig.tlsKeyStorePassword);
+        } // if
+
+        JBBSConfig.webPortNum = JBBS.getIntDefault(
+                             "Port number for browser callers (0=off)?",
+                             JBBSConfig.webPortNum);
+
+        JBBSConfig.metricsPortNum = JBBS.getIntDefault(
+                         "Local port number for metrics scrapes (0=off)?",
+                         JBBSConfig.metricsPortNum);
+
+        JBBSConfig.adminSocket = JBBS.getStrDefault(
+                         "Unix socket for remote admin (none=off)?", 255,
+                         (JBBSConfig.adminSocket.length() == 0) ? "none" :
+                          JBBSConfig.adminSocket);
+        if (JBBSConfig.adminSocket.equalsIgnoreCase("none"))
+            JBBSConfig.adminSocket = "";
+
         if (JBBS.getYN("Accept new configuration?", false))
         {
             if (JBBSConfig.out(JBBSConfig.DEFAULT_CFGFILENAME) == false)
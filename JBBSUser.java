@@ -77,8 +77,8 @@ public class JBBSUser
         } // try
         catch (IOException e)
         {
-            //if (JBBSConfig.logUnexpectedErrors)
-            //    JBBSLog.add(!!! "openUserDB()");
+            JBBSLog.add(JBBSLog.PRIORITY_ERROR, "IOException", e.getMessage(),
+                        "JBBSUser.openUserDB();");
 
             retVal = false;
         } // catch
@@ -122,6 +122,8 @@ public class JBBSUser
         if (dump.length != LEN_RECORD)     // array correct record size?
             return(false);                 //  ...if not, bail.
 
+        JBBSMetrics.userDBWrites.increment();
+
         try
         {
             rndDB.seek((recNum * LEN_RECORD) + 2);   // seek to record #...
@@ -152,6 +154,8 @@ public class JBBSUser
        int i;
        byte[] outputter = new byte[LEN_RECORD];
        byte[] rc;
+       UserDBEvent event;
+       boolean retVal;
 
            // outputter will be a memory image of what the user database
            //  record will look like on disk.
@@ -168,7 +172,17 @@ public class JBBSUser
                         MAX_USERNAME + MAX_REALNAME + 1,
                         rc.length);
 
-       return(dumpToDB(outputter, user.number));  // write and return.
+       event = new UserDBEvent();
+       event.begin();
+       retVal = dumpToDB(outputter, user.number);   // write it...
+       if (event.shouldCommit())
+       {
+           event.operation = "write";
+           event.record = user.number;
+           event.commit();
+       } // if
+
+       return(retVal);                              //  ...and return.
     } // update
 
 
@@ -197,10 +211,40 @@ public class JBBSUser
     } // compareArrays
 
 
-    public static synchronized JBBSUser retrieve(byte[] userName,
-                                                 String pWord)
+    public static JBBSUser retrieve(byte[] userName, String pWord)
     /**
      *  Create a JBBSUser instance from a record stored in the database.
+     *   The time it takes, waiting for the lock included, goes to
+     *   JBBSMetrics.userRetrieve.
+     *
+     *     params : userName == name to find in database.
+     *              pWord    == Password for account userName.
+     *    returns : new JBBSUser instance on success, null on failure.
+     */
+    {
+        UserDBEvent event = new UserDBEvent();
+        long start = System.nanoTime();
+        JBBSUser retVal;
+
+        event.begin();
+        retVal = retrieveFromDB(userName, pWord);
+        JBBSMetrics.userRetrieve.recordSince(start);
+
+        if (event.shouldCommit())
+        {
+            event.operation = "retrieve";
+            event.record = (retVal == null) ? -1 : retVal.number;
+            event.commit();
+        } // if
+
+        return(retVal);
+    } // retrieve
+
+
+    protected static synchronized JBBSUser retrieveFromDB(byte[] userName,
+                                                          String pWord)
+    /**
+     *  This does retrieve()'s actual work.
      *
      *     params : userName == name to find in database.
      *              pWord    == Password for account userName.
@@ -212,6 +256,8 @@ public class JBBSUser
         JBBSUser retVal = null;
         int i;
 
+        JBBSMetrics.userDBReads.increment();
+
         try
         {
             fileLen = rndDB.length();
@@ -250,7 +296,71 @@ public class JBBSUser
         } // catch
 
         return(null);  // username not found if code drops to here...
-    } // retrieve
+    } // retrieveFromDB
+
+
+    public static int findNumber(String userName)
+    /**
+     *  Look up a user's record number, by handle. Case doesn't matter.
+     *
+     *     params : userName == handle to find in database.
+     *    returns : user's record number on success, -1 on failure.
+     */
+    {
+        UserDBEvent event = new UserDBEvent();
+        int retVal;
+
+        event.begin();
+        retVal = findNumberInDB(userName);
+
+        if (event.shouldCommit())
+        {
+            event.operation = "findNumber";
+            event.record = retVal;
+            event.commit();
+        } // if
+
+        return(retVal);
+    } // findNumber
+
+
+    protected static synchronized int findNumberInDB(String userName)
+    /**
+     *  This does findNumber()'s actual work.
+     *
+     *     params : userName == handle to find in database.
+     *    returns : user's record number on success, -1 on failure.
+     */
+    {
+        byte[] readIn = new byte[MAX_USERNAME];
+        long fileLen;
+        int i;
+
+        userName = userName.trim();
+        if ((userName.length() == 0) || (userName.length() > MAX_USERNAME))
+            return(-1);
+
+        JBBSMetrics.userDBReads.increment();
+
+        try
+        {
+            fileLen = rndDB.length();
+            for (i = 2; i < fileLen; i += LEN_RECORD)
+            {
+                rndDB.seek(i);
+                rndDB.read(readIn, 0, MAX_USERNAME);
+
+                if (new String(readIn).trim().equalsIgnoreCase(userName))
+                    return((i - 2) / LEN_RECORD);
+            } // for
+        } // try
+        catch (IOException e)
+        {
+            // don't care; we just didn't find them.
+        } // catch
+
+        return(-1);
+    } // findNumberInDB
 
 
         // Instance variable gateways...
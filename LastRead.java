@@ -0,0 +1,150 @@
+/**
+ *  Per-user last-read pointers: the highest message number each user has
+ *   seen on each message board. Reading online moves them forward, and so
+ *   does downloading a QWK packet.
+ *
+ *  Each user has a small file, "lastread.<user number>": two version
+ *   bytes, then one int per board, in conference order. Boards added
+ *   after the file was written just read as zero.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+
+public class LastRead
+{
+        // Constants...
+    public final static String PREFIX_LASTREAD = "lastread.";
+
+
+    protected static String fileName(int userNumber)
+    {
+        return(JBBSConfig.dataDir + PREFIX_LASTREAD + userNumber);
+    } // fileName
+
+
+        /**
+         *  Get all of a user's pointers.
+         *
+         *   @param userNumber User's record number.
+         *  @return Array indexed by conference number (element 0 unused),
+         *          sized for every board there is.
+         */
+    public static synchronized int[] getAll(int userNumber)
+    {
+        int[] retVal = new int[MessageBoard.getBoardCount() + 1];
+        DataInputStream in;
+        int i;
+
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(
+                                 new FileInputStream(fileName(userNumber))));
+        } // try
+        catch (IOException e)
+        {
+            return(retVal);     // never read anything.
+        } // catch
+
+        try
+        {
+            if ((in.readByte() == JBBS.VERSION_MAJOR) &&
+                (in.readByte() == JBBS.VERSION_MINOR))
+            {
+                for (i = 1; i < retVal.length; i++)
+                    retVal[i] = in.readInt();
+            } // if
+        } // try
+
+        catch (IOException e)
+        {
+            // don't care; file's just shorter than the board list.
+        } // catch
+
+        try
+        {
+            in.close();
+        } // try
+        catch (IOException e)
+        {
+            // don't care.
+        } // catch
+
+        return(retVal);
+    } // getAll
+
+
+        /**
+         *  Move a user's pointers forward. Pointers never move backward;
+         *   any that are lower than the current ones are ignored.
+         *
+         *   @param userNumber User's record number.
+         *   @param pointers Array indexed by conference number.
+         *  @return <em>false</em> if they couldn't be saved.
+         */
+    public static synchronized boolean advance(int userNumber, int[] pointers)
+    {
+        int[] current = getAll(userNumber);
+        boolean changed = false;
+        DataOutputStream out;
+        int i;
+
+        for (i = 1; (i < current.length) && (i < pointers.length); i++)
+        {
+            if (pointers[i] > current[i])
+            {
+                current[i] = pointers[i];
+                changed = true;
+            } // if
+        } // for
+
+        if (!changed)
+            return(true);
+
+        try
+        {
+            out = new DataOutputStream(new BufferedOutputStream(
+                                 new FileOutputStream(fileName(userNumber))));
+            try
+            {
+                out.writeByte(JBBS.VERSION_MAJOR);
+                out.writeByte(JBBS.VERSION_MINOR);
+                for (i = 1; i < current.length; i++)
+                    out.writeInt(current[i]);
+            } // try
+            finally
+            {
+                out.close();
+            } // finally
+        } // try
+
+        catch (IOException e)
+        {
+            return(false);
+        } // catch
+
+        return(true);
+    } // advance
+
+
+        /**
+         *  Move one pointer forward.
+         *
+         *   @param userNumber User's record number.
+         *   @param conf Board's conference number.
+         *   @param num Message just read.
+         */
+    public static synchronized void advance(int userNumber, int conf, int num)
+    {
+        int[] pointers = new int[conf + 1];
+
+        pointers[conf] = num;
+        advance(userNumber, pointers);
+    } // advance (one board)
+
+} // LastRead
+
+// end of LastRead.java ...
+
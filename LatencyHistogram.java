@@ -0,0 +1,214 @@
+/**
+ *  How long something takes, for JBBSMetrics: a histogram of times in
+ *   nanoseconds, good to about 6%, from a nanosecond to centuries.
+ *
+ *  Buckets are log-linear, like HdrHistogram's: each power of two is
+ *   split into 16 buckets, so a time's bucket is a couple of shifts away,
+ *   and a percentile is off by at most a sixteenth. Recording is an
+ *   atomic increment and a couple of LongAdder adds; nothing is ever
+ *   locked, and nothing's allocated.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.util.concurrent.atomic.*;
+
+public class LatencyHistogram
+{
+        // Constants...
+    protected final static int SUB_BITS = 4;
+    protected final static int SUB_COUNT = 1 << SUB_BITS;
+    protected final static int LEN_BUCKETS = SUB_COUNT +
+                                             ((63 - SUB_BITS) * SUB_COUNT);
+
+        // Instance variables...
+    protected String name;
+    protected AtomicLongArray buckets = new AtomicLongArray(LEN_BUCKETS);
+    protected LongAdder count = new LongAdder();
+    protected LongAdder total = new LongAdder();
+    protected AtomicLong max = new AtomicLong(0);
+
+
+        /**
+         *  Constructor. Use JBBSMetrics.histogram() instead; it registers
+         *   it for "stats".
+         *
+         *   @param _name What it times, for "stats".
+         */
+    public LatencyHistogram(String _name)
+    {
+        name = _name;
+    } // Constructor
+
+
+    public String getName()
+    {
+        return(name);
+    } // getName
+
+
+        /**
+         *  Which bucket does a time go in?
+         */
+    protected static int bucketFor(long nanos)
+    {
+        int exp;
+
+        if (nanos < SUB_COUNT)
+            return((int) Math.max(nanos, 0));
+
+        exp = 63 - Long.numberOfLeadingZeros(nanos);    // top bit.
+        return(SUB_COUNT + ((exp - SUB_BITS) * SUB_COUNT) +
+               (int) ((nanos >>> (exp - SUB_BITS)) & (SUB_COUNT - 1)));
+    } // bucketFor
+
+
+        /**
+         *  The longest time a bucket holds.
+         */
+    protected static long bucketTop(int bucket)
+    {
+        int shift;
+
+        if (bucket < SUB_COUNT)
+            return(bucket);
+
+        shift = (bucket - SUB_COUNT) / SUB_COUNT;
+        return((((long) (SUB_COUNT + (bucket % SUB_COUNT)) + 1) << shift) - 1);
+    } // bucketTop
+
+
+        /**
+         *  Record how long something took.
+         *
+         *   @param nanos Time it took, in nanoseconds.
+         */
+    public void record(long nanos)
+    {
+        long was;
+
+        buckets.incrementAndGet(bucketFor(nanos));
+        count.increment();
+        total.add(nanos);
+
+        while (nanos > (was = max.get()))
+        {
+            if (max.compareAndSet(was, nanos))
+                break;
+        } // while
+    } // record
+
+
+        /**
+         *  Record the time since start.
+         *
+         *   @param start A System.nanoTime() from when it started.
+         */
+    public void recordSince(long start)
+    {
+        record(System.nanoTime() - start);
+    } // recordSince
+
+
+    public long getCount()
+    {
+        return(count.sum());
+    } // getCount
+
+
+    public long getMax()
+    {
+        return(max.get());
+    } // getMax
+
+
+    public long getTotal()
+    {
+        return(total.sum());
+    } // getTotal
+
+
+    public long getMean()
+    {
+        long n = count.sum();
+
+        return((n == 0) ? 0 : total.sum() / n);
+    } // getMean
+
+
+        /**
+         *  How long did the quickest fraction of them take, at most?
+         *   Records coming in meanwhile may or may not be counted.
+         *
+         *   @param fraction 0.5 for the median, 0.99 for p99, etc.
+         *  @return Nanoseconds; 0 if nothing's been recorded.
+         */
+    public long getPercentile(double fraction)
+    {
+        long n = 0;
+        long want;
+        int i;
+
+        for (i = 0; i < LEN_BUCKETS; i++)
+            n += buckets.get(i);
+
+        if (n == 0)
+            return(0);
+
+        want = (long) Math.ceil(fraction * n);
+        n = 0;
+        for (i = 0; i < LEN_BUCKETS; i++)
+        {
+            n += buckets.get(i);
+            if (n >= want)
+                return(Math.min(bucketTop(i), max.get()));
+        } // for
+
+        return(max.get());
+    } // getPercentile
+
+
+        /**
+         *  Count the times at or under each of a list of limits, in one
+         *   pass. A bucket straddling a limit counts as over it, so the
+         *   counts run a little low, never high.
+         *
+         *   @param limits Nanoseconds, smallest first.
+         *   @param counts Where the counts go; as long as limits.
+         */
+    public void getCountsUnder(long[] limits, long[] counts)
+    {
+        long n = 0;
+        int limit = 0;
+        int i;
+
+        for (i = 0; (i < LEN_BUCKETS) && (limit < limits.length); i++)
+        {
+            while ((limit < limits.length) && (bucketTop(i) > limits[limit]))
+                counts[limit++] = n;
+
+            n += buckets.get(i);
+        } // for
+
+        while (limit < limits.length)
+            counts[limit++] = n;
+    } // getCountsUnder
+
+
+    public void reset()
+    {
+        int i;
+
+        for (i = 0; i < LEN_BUCKETS; i++)
+            buckets.set(i, 0);
+
+        count.reset();
+        total.reset();
+        max.set(0);
+    } // reset
+
+} // LatencyHistogram
+
+// end of LatencyHistogram.java ...
+
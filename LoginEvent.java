@@ -0,0 +1,30 @@
+/**
+ *  Flight recorder event: checking one login attempt, from the password
+ *   coming in to the answer. The user's typing isn't part of it.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import jdk.jfr.*;
+
+@Name("jbbs.Login")
+@Label("Login Attempt")
+@Category({ "JBBS", "Sessions" })
+@StackTrace(false)
+public class LoginEvent extends Event
+{
+    @Label("User Name")
+    public String userName;
+
+    @Label("Attempt")
+    @Description("1 for the first try, and so on.")
+    public int attempt;
+
+    @Label("Success")
+    public boolean success;
+
+} // LoginEvent
+
+// end of LoginEvent.java ...
+
@@ -0,0 +1,825 @@
+/**
+ *  Private, user-to-user mail.
+ *
+ *  Each user's mail is kept in its own append-only file under
+ *   JBBSConfig.dataDir, named by the user's record number ("mail.12" is
+ *   user #12's mail). Records are never changed, except for a flags
+ *   byte at the start of each, which marks it read or deleted.
+ *
+ *  Every mailbox keeps its counters (total and unread), plus where each
+ *   record lives in the file, in memory. They're built once at startup,
+ *   with the mail files split between one MailScanner thread per
+ *   processor, and kept up to date as mail comes and goes, so telling
+ *   a user about new mail never touches the disk. Deleted mail is
+ *   squeezed out of the files later, by a MailCompactor thread.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+public class MailBox
+{
+        // Constants...
+    public final static String FILENAME_PREFIX = "mail.";
+    public final static String EXT_COMPACT = ".tmp";
+    public final static int COMPACT_MINBYTES = 4096;  // deleted bytes.
+    public final static int MAX_LINES = 99;
+
+        // Static class variables...
+    protected static Hashtable boxes = new Hashtable();  // Integer keys.
+
+        // Instance variables...
+    protected int owner;                       // user's record number.
+    protected String fileName;
+    protected long[] offsets = new long[8];    // where each record starts.
+    protected byte[] flags = new byte[8];      // each record's flags.
+    protected int count = 0;                   // records, deleted or not.
+    protected int total = 0;                   // records, not deleted.
+    protected int unread = 0;                  // ...and not read.
+    protected long deletedBytes = 0;           // wasted space in file.
+
+
+    protected MailBox(int userNumber)
+    {
+        owner = userNumber;
+        fileName = JBBSConfig.dataDir + FILENAME_PREFIX + userNumber;
+    } // Constructor
+
+
+        /**
+         *  Build every mailbox's counters, splitting the work among one
+         *   thread per processor, and start the MailCompactor.
+         *
+         *  @return Number of mailboxes found.
+         */
+    public static int openMail()
+    {
+        File dir = new File(JBBSConfig.dataDir);
+        String[] names;
+        MailScanner[] scanners;
+        Thread[] threads;
+        int[] userNumbers;
+        int found = 0;
+        int i;
+
+        recoverCompactions(dir);
+
+        names = dir.list();
+        if (names == null)
+            names = new String[0];
+
+        userNumbers = new int[names.length];
+        for (i = 0; i < names.length; i++)
+        {
+            if (names[i].startsWith(FILENAME_PREFIX))
+            {
+                try
+                {
+                    userNumbers[found] = Integer.parseInt(
+                                names[i].substring(FILENAME_PREFIX.length()));
+                    found++;
+                } // try
+                catch (NumberFormatException e)
+                {
+                    // not a mailbox ("mail.12.tmp" or something); skip it.
+                } // catch
+            } // if
+        } // for
+
+        i = Runtime.getRuntime().availableProcessors();
+        scanners = new MailScanner[i];
+        threads = new Thread[scanners.length];
+        for (i = 0; i < scanners.length; i++)
+        {
+            scanners[i] = new MailScanner(userNumbers, found, i,
+                                          scanners.length);
+            threads[i] = new Thread(scanners[i]);
+            threads[i].start();
+        } // for
+
+        for (i = 0; i < threads.length; i++)
+        {
+            try
+            {
+                threads[i].join();
+            } // try
+            catch (InterruptedException e)
+            {
+                // don't care.
+            } // catch
+        } // for
+
+        MailCompactor.start();
+        return(found);
+    } // openMail
+
+
+        /**
+         *  Clean up after compactions that didn't finish ("mail.12.tmp").
+         *   If the mailbox is still there, the compaction never replaced
+         *   it, and the copy is thrown out. If it isn't (an older JBBS
+         *   could lose it in a crash), the copy is all there is, and it
+         *   becomes the mailbox.
+         */
+    protected static void recoverCompactions(File dir)
+    {
+        String[] names = dir.list();
+        String mailName;
+        File mail;
+        int i;
+
+        for (i = 0; (names != null) && (i < names.length); i++)
+        {
+            if ((!names[i].startsWith(FILENAME_PREFIX)) ||
+                (!names[i].endsWith(EXT_COMPACT)))
+                continue;
+
+            mailName = names[i].substring(0, names[i].length() -
+                                             EXT_COMPACT.length());
+            try
+            {
+                Integer.parseInt(mailName.substring(FILENAME_PREFIX.length()));
+            } // try
+            catch (NumberFormatException e)
+            {
+                continue;       // not one of ours.
+            } // catch
+
+            mail = new File(dir, mailName);
+            try
+            {
+                if (mail.exists())
+                    Files.delete(new File(dir, names[i]).toPath());
+                else
+                {
+                    Files.move(new File(dir, names[i]).toPath(), mail.toPath(),
+                               StandardCopyOption.ATOMIC_MOVE);
+                    JBBSLog.add(JBBSLog.PRIORITY_WARNING, "Mail",
+                                "Recovered " + mailName + " from " + names[i]);
+                } // else
+            } // try
+            catch (IOException e)
+            {
+                JBBSLog.add(JBBSLog.PRIORITY_ERROR, "Mail",
+                            "Couldn't recover " + names[i] + " [" +
+                            e.getMessage() + "]");
+            } // catch
+        } // for
+    } // recoverCompactions
+
+
+        /**
+         *  Get a user's mailbox. Users without mail get an empty one.
+         *
+         *   @param userNumber User's record number.
+         *  @return The mailbox.
+         */
+    public static synchronized MailBox getMailBox(int userNumber)
+    {
+        Integer key = Integer.valueOf(userNumber);
+        MailBox retVal = (MailBox) boxes.get(key);
+
+        if (retVal == null)
+        {
+            retVal = new MailBox(userNumber);
+            boxes.put(key, retVal);
+        } // if
+
+        return(retVal);
+    } // getMailBox
+
+
+        /**
+         *  Get every mailbox there is. The array is yours to keep.
+         */
+    protected static synchronized MailBox[] getMailBoxes()
+    {
+        MailBox[] retVal = new MailBox[boxes.size()];
+        Enumeration e = boxes.elements();
+        int i;
+
+        for (i = 0; e.hasMoreElements(); i++)
+            retVal[i] = (MailBox) e.nextElement();
+
+        return(retVal);
+    } // getMailBoxes
+
+
+        /**
+         *  Make room for one more record. Call this synchronized.
+         */
+    protected void addRecord(long offset, byte recFlags, int recLen)
+    {
+        long[] growOffsets;
+        byte[] growFlags;
+
+        if (count == offsets.length)
+        {
+            growOffsets = new long[count * 2];
+            growFlags = new byte[count * 2];
+            System.arraycopy(offsets, 0, growOffsets, 0, count);
+            System.arraycopy(flags, 0, growFlags, 0, count);
+            offsets = growOffsets;
+            flags = growFlags;
+        } // if
+
+        offsets[count] = offset;
+        flags[count] = recFlags;
+        count++;
+        tally(recFlags, recLen, 1);
+    } // addRecord
+
+
+        /**
+         *  Add (sign == 1) or remove (sign == -1) a record from the
+         *   counters. Call this synchronized.
+         */
+    protected void tally(byte recFlags, int recLen, int sign)
+    {
+        if ((recFlags & MailMessage.FLAG_DELETED) != 0)
+            deletedBytes += (sign * (recLen + 4));
+        else
+        {
+            total += sign;
+            if ((recFlags & MailMessage.FLAG_READ) == 0)
+                unread += sign;
+        } // else
+    } // tally
+
+
+        /**
+         *  Read through this mailbox's file, and build counters for it.
+         *   Message text is skipped over, not read. A partial record at
+         *   the end of the file (we crashed mid-send?) is cut off.
+         */
+    protected synchronized void scan()
+    {
+        DataInputStream mail = null;
+        RandomAccessFile trunc;
+        long fileLen;
+        long offset = 2;     // skip version bytes.
+        int recLen;
+        byte recFlags;
+
+        count = 0;
+        total = 0;
+        unread = 0;
+        deletedBytes = 0;
+
+        try
+        {
+            fileLen = new File(fileName).length();
+            mail = new DataInputStream(new BufferedInputStream(
+                                    new FileInputStream(fileName), 16384));
+            mail.readFully(new byte[2]);
+
+            while (offset < fileLen)
+            {
+                try
+                {
+                    recLen = mail.readInt();
+                    recFlags = mail.readByte();
+                    MessageBoard.skipFully(mail, recLen - 1);
+                } // try
+                catch (EOFException e)
+                {
+                    break;
+                } // catch
+
+                addRecord(offset, recFlags, recLen);
+                offset += (recLen + 4);
+            } // while
+
+            mail.close();
+            mail = null;
+
+            if (offset < fileLen)
+            {
+                trunc = new RandomAccessFile(fileName, "rw");
+                trunc.setLength(offset);
+                trunc.close();
+            } // if
+        } // try
+
+        catch (IOException e)
+        {
+            // don't care; whatever we counted is what there is.
+        } // catch
+
+        if (mail != null)
+        {
+            try
+            {
+                mail.close();
+            } // try
+            catch (IOException e)
+            {
+                // don't care.
+            } // catch
+        } // if
+    } // scan
+
+
+        // Counters...
+
+    public synchronized int getTotal()
+    {
+        return(total);
+    } // getTotal
+
+
+    public synchronized int getUnread()
+    {
+        return(unread);
+    } // getUnread
+
+
+        /**
+         *  Records in this mailbox, counting deleted ones. Use this and
+         *   isDeleted() to walk through it.
+         */
+    public synchronized int getCount()
+    {
+        return(count);
+    } // getCount
+
+
+    public synchronized boolean isDeleted(int i)
+    {
+        return((flags[i] & MailMessage.FLAG_DELETED) != 0);
+    } // isDeleted
+
+
+        /**
+         *  Send a piece of mail. If the recipient is online, their
+         *   session gets a notice right away.
+         *
+         *   @param from Who's sending it.
+         *   @param to Recipient's user record number.
+         *   @param subject Subject line.
+         *   @param body The mail text, lines separated by "\r\n".
+         *  @return <em>true</em> if sent, <em>false</em> on I/O errors.
+         */
+    public static boolean send(JBBSUser from, int to, String subject,
+                               String body)
+    {
+        MailBox box = getMailBox(to);
+        OnlineSession session;
+        SocketStream io;
+        FanOutMessage notice;
+        int unreadNow;
+
+        synchronized (box)
+        {
+            if (box.append(from, subject, body) == false)
+                return(false);
+            unreadNow = box.unread;
+        } // synchronized
+
+        session = ConnectionManager.getSessionFor(to);
+        if (session != null)
+        {
+            io = session.getSocketStream();
+            notice = new FanOutMessage(OutputQueue.TYPE_NOTICE,
+                            new int[] { SocketStream.TERMCOLOR_HIGREEN },
+                            new String[] { "\r\n*** New mail from " +
+                                           from.getHandle() + "! (" +
+                                           unreadNow + " unread)" });
+            if (io != null)
+                io.deliver(notice.renderFor(io), notice.getType());
+        } // if
+
+        return(true);
+    } // send
+
+
+        /**
+         *  Append a record to this mailbox's file. Call this synchronized.
+         */
+    protected boolean append(JBBSUser from, String subject, String body)
+    {
+        ByteArrayOutputStream recBytes = new ByteArrayOutputStream(512);
+        DataOutputStream rec = new DataOutputStream(recBytes);
+        RandomAccessFile mail;
+        long offset;
+        byte[] bytes;
+
+        try
+        {
+            rec.writeInt(0);        // length; filled in below.
+            rec.writeByte(0);       // flags.
+            rec.writeInt(from.getNumber());
+            rec.writeLong(System.currentTimeMillis());
+            rec.writeUTF(from.getHandle());
+            rec.writeUTF(subject);
+            rec.writeUTF(body);
+            rec.close();
+            bytes = MessageBoard.lengthStamp(recBytes.toByteArray());
+
+            mail = new RandomAccessFile(fileName, "rw");
+            if (mail.length() == 0)         // new mailbox? Tag version.
+            {
+                mail.writeByte(JBBS.VERSION_MAJOR);
+                mail.writeByte(JBBS.VERSION_MINOR);
+            } // if
+
+            offset = mail.length();
+            mail.seek(offset);
+            mail.write(bytes);
+            mail.close();
+        } // try
+
+        catch (IOException e)
+        {
+            return(false);
+        } // catch
+
+        addRecord(offset, (byte) 0, bytes.length - 4);
+        return(true);
+    } // append
+
+
+        /**
+         *  Read a piece of mail.
+         *
+         *   @param i Record number, from 0 to getCount() - 1.
+         *  @return The mail, or <em>null</em> if it couldn't be read.
+         */
+    public synchronized MailMessage read(int i)
+    {
+        MailMessage retVal = new MailMessage();
+        RandomAccessFile mail;
+
+        if ((i < 0) || (i >= count))
+            return(null);
+
+        try
+        {
+            mail = new RandomAccessFile(fileName, "r");
+            mail.seek(offsets[i] + 4);      // skip length word.
+            retVal.flags = mail.readByte();
+            retVal.author = mail.readInt();
+            retVal.sendTime = mail.readLong();
+            retVal.handle = mail.readUTF();
+            retVal.subject = mail.readUTF();
+            retVal.body = mail.readUTF();
+            mail.close();
+        } // try
+
+        catch (IOException e)
+        {
+            retVal = null;
+        } // catch
+
+        return(retVal);
+    } // read
+
+
+        /**
+         *  Change a record's flags, on disk and in the counters.
+         *   Call this synchronized.
+         */
+    protected boolean setFlags(int i, byte newFlags)
+    {
+        RandomAccessFile mail;
+        int recLen;
+
+        try
+        {
+            mail = new RandomAccessFile(fileName, "rw");
+            mail.seek(offsets[i]);
+            recLen = mail.readInt();
+            mail.writeByte(newFlags);
+            mail.close();
+        } // try
+        catch (IOException e)
+        {
+            return(false);
+        } // catch
+
+        tally(flags[i], recLen, -1);
+        tally(newFlags, recLen, 1);
+        flags[i] = newFlags;
+        return(true);
+    } // setFlags
+
+
+    public synchronized boolean markRead(int i)
+    {
+        if ((i < 0) || (i >= count) ||
+            ((flags[i] & MailMessage.FLAG_READ) != 0))
+            return(false);
+
+        return(setFlags(i, (byte) (flags[i] | MailMessage.FLAG_READ)));
+    } // markRead
+
+
+    public synchronized boolean delete(int i)
+    {
+        if ((i < 0) || (i >= count) || (isDeleted(i)))
+            return(false);
+
+        return(setFlags(i, (byte) (flags[i] | MailMessage.FLAG_DELETED)));
+    } // delete
+
+
+        /**
+         *  Does this mailbox have enough deleted mail to bother compacting?
+         */
+    public synchronized boolean needsCompacting()
+    {
+        return(deletedBytes >= COMPACT_MINBYTES);
+    } // needsCompacting
+
+
+        /**
+         *  Rewrite this mailbox's file without its deleted records. Don't
+         *   do this while the owner is online; record numbers change.
+         *
+         *  @return <em>true</em> if compacted, <em>false</em> on I/O errors.
+         */
+    public synchronized boolean compact()
+    {
+        RandomAccessFile oldMail = null;
+        DataOutputStream newMail = null;
+        FileOutputStream newStream;
+        File oldFile = new File(fileName);
+        File newFile = new File(fileName + EXT_COMPACT);
+        long[] oldOffsets = offsets;
+        byte[] oldFlags = flags;
+        int oldCount = count;
+        byte[] rec = new byte[512];
+        int recLen;
+        int i;
+
+        try
+        {
+            oldMail = new RandomAccessFile(oldFile, "r");
+            newStream = new FileOutputStream(newFile);
+            newMail = new DataOutputStream(new BufferedOutputStream(
+                                                               newStream));
+            newMail.writeByte(JBBS.VERSION_MAJOR);
+            newMail.writeByte(JBBS.VERSION_MINOR);
+
+            offsets = new long[oldOffsets.length];
+            flags = new byte[oldFlags.length];
+            count = 0;
+            total = 0;
+            unread = 0;
+            deletedBytes = 0;
+
+            for (i = 0; i < oldCount; i++)
+            {
+                if ((oldFlags[i] & MailMessage.FLAG_DELETED) != 0)
+                    continue;
+
+                oldMail.seek(oldOffsets[i]);
+                recLen = oldMail.readInt();
+                if (rec.length < recLen)
+                    rec = new byte[recLen];
+                oldMail.readFully(rec, 0, recLen);
+
+                addRecord(newMail.size(), oldFlags[i], recLen);
+                newMail.writeInt(recLen);
+                newMail.write(rec, 0, recLen);
+            } // for
+
+            oldMail.close();
+            oldMail = null;
+            newMail.flush();
+            newStream.getFD().sync();   // on the disk before it's swapped in.
+            newMail.close();
+            newMail = null;
+
+                // One step: a crash leaves the old mailbox or the new one.
+            Files.move(newFile.toPath(), oldFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } // try
+
+        catch (IOException e)
+        {
+            try
+            {
+                if (oldMail != null)
+                    oldMail.close();
+                if (newMail != null)
+                    newMail.close();
+            } // try
+            catch (IOException ioe)
+            {
+                // don't care.
+            } // catch
+
+                // The old file's untouched; put things back the way they were.
+            newFile.delete();
+            offsets = oldOffsets;
+            flags = oldFlags;
+            count = 0;
+            total = 0;
+            unread = 0;
+            deletedBytes = 0;
+            scan();
+
+            return(false);
+        } // catch
+
+        return(true);
+    } // compact
+
+
+        /**
+         *  Compact every mailbox that needs it, skipping those whose
+         *   owners are online. MailCompactor calls this now and then.
+         */
+    public static void compactAll()
+    {
+        MailBox[] all = getMailBoxes();
+        int i;
+
+        for (i = 0; i < all.length; i++)
+        {
+            if ((all[i].needsCompacting()) &&
+                (ConnectionManager.getSessionFor(all[i].owner) == null))
+                all[i].compact();
+        } // for
+    } // compactAll
+
+
+        // Online stuff...
+
+        /**
+         *  Tell a user who just logged in about their mail. This is just
+         *   a look at the counters.
+         */
+    public static void loginNotice(OnlineSession session)
+                                    throws LostCarrierException
+    {
+        MailBox box = getMailBox(session.user.getNumber());
+        int newMail = box.getUnread();
+
+        if (newMail > 0)
+        {
+            session.getSocketStream().sendln("You have " + newMail +
+                                             " new message" +
+                                             ((newMail == 1) ? "" : "s") +
+                                             " in your mailbox.");
+        } // if
+    } // loginNotice
+
+
+        /**
+         *  Call this from whereever, and this class will deal with the
+         *   rest of the details.
+         *
+         *   @param session Session that wants to read/send mail.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public static void doMail(OnlineSession session)
+                               throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        MailBox box = getMailBox(session.user.getNumber());
+        boolean getOut = false;
+
+        while (!getOut)
+        {
+            io.sendln();
+            io.sendln("Mailbox : " + box.getTotal() + " messages, " +
+                      box.getUnread() + " unread.");
+            io.send("Mail : [R]ead, [S]end, [Q]uit ? ");
+
+            switch (JBBS.asciiByteToLower(io.recv()))
+            {
+                case 'r':
+                    io.sendln("read");
+                    box.readMail(session);
+                    break;
+
+                case 's':
+                    io.sendln("send");
+                    writeMail(session, null, null);
+                    break;
+
+                case 'q':
+                    io.sendln("quit");
+                    getOut = true;
+                    break;
+            } // switch
+        } // while
+    } // doMail
+
+
+    protected void readMail(OnlineSession session)
+                              throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        MailMessage mail;
+        int i;
+
+        for (i = 0; i < getCount(); i++)
+        {
+            if (isDeleted(i))
+                continue;
+
+            mail = read(i);
+            if (mail == null)
+            {
+                io.sendln("Couldn't read your mail!");
+                return;
+            } // if
+
+            io.sendln();
+            io.sendln("From: " + mail.getHandle() +
+                      (mail.isRead() ? "" : "   (new)"));
+            io.sendln("Subj: " + mail.getSubject());
+            io.sendln();
+            io.sendln(mail.getBody());
+            markRead(i);
+
+            io.send("[N]ext, [R]eply, [D]elete, [Q]uit ? ");
+            switch (JBBS.asciiByteToLower(io.recv()))
+            {
+                case 'r':
+                    io.sendln("reply");
+                    writeMail(session, mail.getHandle(), mail.getSubject());
+                    break;
+
+                case 'd':
+                    io.sendln("delete");
+                    delete(i);
+                    break;
+
+                case 'q':
+                    io.sendln("quit");
+                    return;
+
+                default:
+                    io.sendln("next");
+                    break;
+            } // switch
+        } // for
+
+        io.sendln("No more mail.");
+    } // readMail
+
+
+    protected static void writeMail(OnlineSession session, String to,
+                                    String subject)
+                                       throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        StringBuffer text = new StringBuffer();
+        String line;
+        int toNumber;
+        int lines;
+
+        if (to == null)
+        {
+            io.send("To : ");
+            to = io.recvln(JBBSUser.MAX_USERNAME).trim();
+        } // if
+
+        toNumber = JBBSUser.findNumber(to);
+        if (toNumber == -1)
+        {
+            io.sendln("No such user.");
+            return;
+        } // if
+
+        if (subject == null)
+        {
+            io.send("Subject : ");
+            subject = io.recvln(BoardMessage.MAX_SUBJECT).trim();
+        } // if
+        else if (!subject.startsWith("Re: "))
+            subject = "Re: " + subject;
+
+        io.sendln("Enter text. A blank line ends the message.");
+        for (lines = 0; lines < MAX_LINES; lines++)
+        {
+            line = io.recvln(78);
+            if (line.length() == 0)
+                break;
+            text.append(line);
+            text.append("\r\n");
+        } // for
+
+        if ((lines == 0) || (!session.getYN("Send it? ")))
+            return;
+
+        if (send(session.user, toNumber, subject, text.toString()))
+            io.sendln("Sent.");
+        else
+            io.sendln("Couldn't send your mail!");
+    } // writeMail
+
+} // MailBox
+
+// end of MailBox.java ...
+
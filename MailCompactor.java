@@ -0,0 +1,47 @@
+/**
+ *  Thread that squeezes deleted mail out of MailBox files, now and then,
+ *   so nobody has to wait for it.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+public class MailCompactor implements Runnable
+{
+        // Constants...
+    public final static int COMPACT_INTERVAL = 10 * 60 * 1000;  // millisecs.
+
+        // Static class variables...
+    protected static Thread compactThread = null;
+
+
+        /**
+         *  Start the compactor thread, if it isn't already running.
+         */
+    public static synchronized void start()
+    {
+        if (compactThread == null)
+        {
+            compactThread = new Thread(new MailCompactor(), "MailCompactor");
+            compactThread.setDaemon(true);
+            compactThread.setPriority(Thread.MIN_PRIORITY);
+            compactThread.start();
+        } // if
+    } // start
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        while (true)    // loop until killed.
+        {
+            JBBS.nap(COMPACT_INTERVAL);
+            MailBox.compactAll();
+        } // while
+    } // run
+
+} // MailCompactor
+
+// end of MailCompactor.java ...
+
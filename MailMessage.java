@@ -0,0 +1,68 @@
+/**
+ *  One piece of private mail. Instances are built by MailBox.read().
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+public class MailMessage
+{
+        // Constants...
+    public final static byte FLAG_READ    = 1;
+    public final static byte FLAG_DELETED = 2;
+
+        // Instance variables...
+    protected byte   flags = 0;
+    protected int    author = 0;     // author's user record number.
+    protected long   sendTime = 0;   // System.currentTimeMillis() at send.
+    protected String handle  = "";   // author's handle when sent.
+    protected String subject = "";
+    protected String body    = "";
+
+
+    protected MailMessage()
+    {
+    } // Constructor
+
+
+        // Instance variable gateways...
+
+    public boolean isRead()
+    {
+        return((flags & FLAG_READ) != 0);
+    } // isRead
+
+
+    public int getAuthor()
+    {
+        return(author);
+    } // getAuthor
+
+
+    public long getSendTime()
+    {
+        return(sendTime);
+    } // getSendTime
+
+
+    public String getHandle()
+    {
+        return(handle);
+    } // getHandle
+
+
+    public String getSubject()
+    {
+        return(subject);
+    } // getSubject
+
+
+    public String getBody()
+    {
+        return(body);
+    } // getBody
+
+} // MailMessage
+
+// end of MailMessage.java ...
+
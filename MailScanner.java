@@ -0,0 +1,40 @@
+/**
+ *  Thread that builds MailBox counters at startup. MailBox.openMail()
+ *   runs one of these per processor, each taking every nth mailbox.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+public class MailScanner implements Runnable
+{
+        // Instance variables...
+    protected int[] userNumbers;    // mailboxes to scan...
+    protected int count;            //  ...how many of them...
+    protected int start;            //  ...which one to start at...
+    protected int step;             //  ...and how many to skip each time.
+
+
+    public MailScanner(int[] _userNumbers, int _count, int _start, int _step)
+    {
+        userNumbers = _userNumbers;
+        count = _count;
+        start = _start;
+        step = _step;
+    } // Constructor
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        int i;
+
+        for (i = start; i < count; i += step)
+            MailBox.getMailBox(userNumbers[i]).scan();
+    } // run
+
+} // MailScanner
+
+// end of MailScanner.java ...
+
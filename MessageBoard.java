@@ -0,0 +1,959 @@
+/**
+ *  Message boards for JBBS.
+ *
+ *  Each board is kept in two files under JBBSConfig.dataDir. The segment
+ *   file (name.msg) is an append-only stream of message records, and is
+ *   the only thing that really matters; the thread index (name.thr) is
+ *   a table of fixed-length records, one per message, that links each
+ *   message to its parent, its first and last replies, and its next
+ *   sibling. The index is updated as each post is appended, so finding
+ *   the next reply in a thread is a couple of seeks, not a scan of
+ *   every header on the board.
+ *
+ *  If the index ever goes missing, or doesn't agree with the segment
+ *   file, it is rebuilt from the segment file in one streaming pass.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.util.Vector;
+
+public class MessageBoard
+{
+        // Constants...
+    public final static String FILENAME_BOARDLIST = "boards";
+    public final static String DEFAULT_BOARDNAME  = "General";
+    public final static String EXT_SEGMENT = ".msg";
+    public final static String EXT_INDEX   = ".thr";
+    public final static int MAX_LINES = 99;
+    public final static int MAX_FIELD = 65535;  // writeUTF()'s limit, bytes.
+
+        // Shortest a record can be, past its length word: number, parent,
+        //  author, post time, and four empty strings.
+    protected final static int MIN_RECORD = 4 + 4 + 4 + 8 + (4 * 2);
+
+        // Thread index header:
+        //   byte major version, byte minor version,
+        //   int message count, long segment length at last update,
+        //   int first thread, int last thread.
+    protected final static int LEN_HEADER    = 22;
+
+        // Thread index record, one per message, at
+        //  (((number - 1) * LEN_INDEX) + LEN_HEADER)...
+    protected final static int IDX_OFFSET     = 0;   // long, into segment.
+    protected final static int IDX_PARENT     = 8;
+    protected final static int IDX_ROOT       = 12;
+    protected final static int IDX_FIRSTREPLY = 16;
+    protected final static int IDX_LASTREPLY  = 20;
+    protected final static int IDX_NEXT       = 24;  // next sibling.
+    protected final static int IDX_DEPTH      = 28;
+    protected final static int LEN_INDEX      = 32;
+
+        // Static class variables...
+    protected static MessageBoard[] boards = null;
+
+        // Instance variables...
+    protected String name;                  // as shown to users.
+    protected String fileBase;              // name, made safe for files.
+    protected int conference;               // 1-based place in board list.
+    protected RandomAccessFile segment = null;
+    protected RandomAccessFile index = null;
+    protected int msgCount = 0;             // messages on this board.
+    protected int firstRoot = 0;            // threads are siblings under
+    protected int lastRoot = 0;             //  an imaginary message 0.
+
+
+        /**
+         *  Open every board listed in the board list file. If there is
+         *   no board list, a single default board is used.
+         *
+         *  @return <em>true</em> if all boards opened, <em>false</em>
+         *          otherwise.
+         */
+    public static synchronized boolean openBoards()
+    {
+        boolean retVal = true;
+        Vector names = new Vector();
+        BufferedReader list;
+        String line;
+        int i;
+
+        if (boards != null)        // already open?
+            return(false);         //  ...if so, just fail.
+
+        try
+        {
+            list = new BufferedReader(new FileReader(JBBSConfig.dataDir +
+                                                     FILENAME_BOARDLIST));
+            while ((line = list.readLine()) != null)
+            {
+                line = line.trim();
+                if (line.length() > 0)
+                    names.addElement(line);
+            } // while
+            list.close();
+        } // try
+        catch (IOException e)
+        {
+            // don't care; no board list just means the default board.
+        } // catch
+
+        if (names.size() == 0)
+            names.addElement(DEFAULT_BOARDNAME);
+
+        boards = new MessageBoard[names.size()];
+        for (i = 0; i < boards.length; i++)
+        {
+            boards[i] = new MessageBoard((String) names.elementAt(i), i + 1);
+            if (boards[i].open() == false)
+                retVal = false;
+        } // for
+
+        return(retVal);
+    } // openBoards
+
+
+    public static int getBoardCount()
+    {
+        return((boards == null) ? 0 : boards.length);
+    } // getBoardCount
+
+
+        /**
+         *  Get a board by conference number.
+         *
+         *   @param conf 1-based board number, as shown to users.
+         *  @return The board, or <em>null</em> if there's no such board.
+         */
+    public static MessageBoard getBoard(int conf)
+    {
+        if ((conf < 1) || (conf > getBoardCount()))
+            return(null);
+
+        return(boards[conf - 1]);
+    } // getBoard
+
+
+    protected MessageBoard(String boardName, int conf)
+    {
+        StringBuffer safeName = new StringBuffer();
+        char ch;
+        int i;
+
+        name = boardName;
+        conference = conf;
+
+        for (i = 0; i < boardName.length(); i++)
+        {
+            ch = Character.toLowerCase(boardName.charAt(i));
+            if (Character.isLetterOrDigit(ch))
+                safeName.append(ch);
+            else
+                safeName.append('_');
+        } // for
+
+        fileBase = safeName.toString();
+    } // Constructor
+
+
+        /**
+         *  Open this board's files, creating them if needed, and make
+         *   sure the thread index agrees with the segment file.
+         *
+         *  @return <em>true</em> if board is ready, <em>false</em> otherwise.
+         */
+    protected synchronized boolean open()
+    {
+        boolean retVal = true;
+
+        try
+        {
+            segment = new RandomAccessFile(JBBSConfig.dataDir + fileBase +
+                                           EXT_SEGMENT, "rw");
+            index = new RandomAccessFile(JBBSConfig.dataDir + fileBase +
+                                         EXT_INDEX, "rw");
+
+            if (segment.length() == 0)      // new board? Tag version.
+            {
+                segment.writeByte(JBBS.VERSION_MAJOR);
+                segment.writeByte(JBBS.VERSION_MINOR);
+            } // if
+
+            segment.seek(0);
+            if ((segment.readByte() != JBBS.VERSION_MAJOR) ||
+                (segment.readByte() != JBBS.VERSION_MINOR))
+                retVal = false;
+
+            else if (indexIsCurrent() == false)
+                retVal = rebuildIndex();
+        } // try
+        catch (IOException e)
+        {
+            retVal = false;
+        } // catch
+
+        return(retVal);
+    } // open
+
+
+        /**
+         *  Read the thread index header, and check it against the
+         *   segment file.
+         *
+         *  @return <em>true</em> if the index can be trusted.
+         */
+    protected boolean indexIsCurrent() throws IOException
+    {
+        long segLen;
+
+        if (index.length() < LEN_HEADER)
+            return(false);
+
+        index.seek(0);
+        if ((index.readByte() != JBBS.VERSION_MAJOR) ||
+            (index.readByte() != JBBS.VERSION_MINOR))
+            return(false);
+
+        msgCount = index.readInt();
+        segLen = index.readLong();
+        firstRoot = index.readInt();
+        lastRoot = index.readInt();
+
+        if (segLen != segment.length())
+            return(false);
+
+        return(index.length() ==
+                 (LEN_HEADER + (((long) msgCount) * LEN_INDEX)));
+    } // indexIsCurrent
+
+
+    protected void writeHeader() throws IOException
+    {
+        index.seek(0);
+        index.writeByte(JBBS.VERSION_MAJOR);
+        index.writeByte(JBBS.VERSION_MINOR);
+        index.writeInt(msgCount);
+        index.writeLong(segment.length());
+        index.writeInt(firstRoot);
+        index.writeInt(lastRoot);
+    } // writeHeader
+
+
+    protected long indexPos(int num)
+    {
+        return((((long) (num - 1)) * LEN_INDEX) + LEN_HEADER);
+    } // indexPos
+
+
+    protected int readIndexInt(int num, int field) throws IOException
+    {
+        index.seek(indexPos(num) + field);
+        return(index.readInt());
+    } // readIndexInt
+
+
+    protected void writeIndexInt(int num, int field, int val)
+                                                    throws IOException
+    {
+        index.seek(indexPos(num) + field);
+        index.writeInt(val);
+    } // writeIndexInt
+
+
+        /**
+         *  Add a thread index record for a message that's already in the
+         *   segment file, and link it in as its parent's last reply.
+         *   Header is not written; caller does that when done.
+         */
+    protected void appendIndex(int num, long offset, int parent)
+                                                    throws IOException
+    {
+        int root = num;
+        int depth = 0;
+        int lastReply;
+
+        if (parent != 0)
+        {
+            root = readIndexInt(parent, IDX_ROOT);
+            depth = readIndexInt(parent, IDX_DEPTH) + 1;
+        } // if
+
+        index.seek(indexPos(num));
+        index.writeLong(offset);
+        index.writeInt(parent);
+        index.writeInt(root);
+        index.writeInt(0);          // no first reply yet.
+        index.writeInt(0);          // no last reply yet.
+        index.writeInt(0);          // no next sibling yet.
+        index.writeInt(depth);
+
+        if (parent == 0)            // new thread...
+        {
+            if (lastRoot == 0)
+                firstRoot = num;
+            else
+                writeIndexInt(lastRoot, IDX_NEXT, num);
+            lastRoot = num;
+        } // if
+
+        else                        // reply...
+        {
+            lastReply = readIndexInt(parent, IDX_LASTREPLY);
+            if (lastReply == 0)
+                writeIndexInt(parent, IDX_FIRSTREPLY, num);
+            else
+                writeIndexInt(lastReply, IDX_NEXT, num);
+            writeIndexInt(parent, IDX_LASTREPLY, num);
+        } // else
+
+        msgCount = num;
+    } // appendIndex
+
+
+        /**
+         *  Throw out the thread index, and build it again from the
+         *   segment file. This is one front-to-back read of the segment;
+         *   message bodies are skipped over, not parsed. A partial record
+         *   at the end of the segment (we crashed mid-post?) is cut off.
+         *
+         *  @return <em>true</em> if rebuilt, <em>false</em> on I/O errors.
+         */
+    public synchronized boolean rebuildIndex()
+    {
+        DataInputStream seg = null;
+        boolean retVal = true;
+        long segLen;
+        long offset = 2;        // skip version bytes.
+        int recLen;
+        int num;
+        int parent;
+
+        try
+        {
+            segLen = segment.length();
+            index.setLength(0);
+            msgCount = 0;
+            firstRoot = 0;
+            lastRoot = 0;
+
+            seg = new DataInputStream(new BufferedInputStream(
+                          new FileInputStream(JBBSConfig.dataDir + fileBase +
+                                              EXT_SEGMENT), 16384));
+            seg.readFully(new byte[2]);
+
+            while (offset < segLen)
+            {
+                try
+                {
+                    recLen = seg.readInt();
+                    if ((recLen < MIN_RECORD) ||
+                        (offset + 4 + recLen > segLen))
+                        break;          // torn or garbage; lose it below.
+                    num = seg.readInt();
+                    parent = seg.readInt();
+                    skipFully(seg, recLen - 8);
+                } // try
+                catch (EOFException e)
+                {
+                    break;              // partial record; lose it below.
+                } // catch
+
+                if ((num != msgCount + 1) || (parent < 0) || (parent >= num))
+                    break;              // garbage; lose it below.
+
+                appendIndex(num, offset, parent);
+                offset += (recLen + 4);
+            } // while
+
+            seg.close();
+            seg = null;
+
+            if (offset < segLen)
+                segment.setLength(offset);
+
+            writeHeader();
+        } // try
+
+        catch (IOException e)
+        {
+            retVal = false;
+        } // catch
+
+        if (seg != null)
+        {
+            try
+            {
+                seg.close();
+            } // try
+            catch (IOException e)
+            {
+                // don't care.
+            } // catch
+        } // if
+
+        return(retVal);
+    } // rebuildIndex
+
+
+        /**
+         *  Skip bytes in a stream, or throw EOFException trying.
+         */
+    protected static void skipFully(DataInputStream in, int len)
+                                                       throws IOException
+    {
+        int skipped;
+
+        while (len > 0)
+        {
+            skipped = in.skipBytes(len);
+            if (skipped <= 0)
+                throw(new EOFException());
+            len -= skipped;
+        } // while
+    } // skipFully
+
+
+        /**
+         *  Append a message to this board, and link it into its thread.
+         *
+         *   @param msg Message to post. Its number and post time are set.
+         *  @return New message's number, or -1 on failure.
+         */
+    public synchronized int post(BoardMessage msg)
+    {
+        BoardMessage[] msgs = new BoardMessage[1];
+
+        msgs[0] = msg;
+        if (post(msgs) != 1)
+            return(-1);
+
+        return(msg.number);
+    } // post
+
+
+        /**
+         *  Append a batch of messages to this board, with one write to the
+         *   segment file and one header update, and link each into its
+         *   thread. Used for merging offline replies.
+         *
+         *   @param msgs Messages to post. Numbers and post times are set.
+         *  @return Number of messages posted (all of them), or -1 on
+         *          failure; nothing is posted if any message has a bad
+         *          parent, or a field too long to store.
+         */
+    public synchronized int post(BoardMessage[] msgs)
+    {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(512);
+        ByteArrayOutputStream recBytes = new ByteArrayOutputStream(512);
+        DataOutputStream rec = new DataOutputStream(recBytes);
+        long[] offsets = new long[msgs.length];
+        long segmentEnd;
+        int i;
+
+        for (i = 0; i < msgs.length; i++)
+        {
+            if ((msgs[i].parent < 0) || (msgs[i].parent > msgCount))
+                return(-1);
+
+            if ((utfLength(msgs[i].handle) > MAX_FIELD) ||
+                (utfLength(msgs[i].toWhom) > MAX_FIELD) ||
+                (utfLength(msgs[i].subject) > MAX_FIELD) ||
+                (utfLength(msgs[i].body) > MAX_FIELD))
+            {
+                return(-1);
+            } // if
+        } // for
+
+        try
+        {
+            segmentEnd = segment.length();
+
+                // Build the records in memory, so they hit disk in one write.
+            for (i = 0; i < msgs.length; i++)
+            {
+                msgs[i].number = msgCount + 1 + i;
+                msgs[i].postTime = System.currentTimeMillis();
+
+                recBytes.reset();
+                rec.writeInt(0);        // length; filled in below.
+                rec.writeInt(msgs[i].number);
+                rec.writeInt(msgs[i].parent);
+                rec.writeInt(msgs[i].author);
+                rec.writeLong(msgs[i].postTime);
+                rec.writeUTF(msgs[i].handle);
+                rec.writeUTF(msgs[i].toWhom);
+                rec.writeUTF(msgs[i].subject);
+                rec.writeUTF(msgs[i].body);
+                rec.flush();
+
+                offsets[i] = segmentEnd + batch.size();
+                batch.write(lengthStamp(recBytes.toByteArray()));
+            } // for
+
+            segment.seek(segmentEnd);
+            segment.write(batch.toByteArray());
+
+            for (i = 0; i < msgs.length; i++)
+                appendIndex(msgs[i].number, offsets[i], msgs[i].parent);
+            writeHeader();
+        } // try
+
+        catch (IOException e)
+        {
+            rebuildIndex();     // get back to a sane state.
+            return(-1);
+        } // catch
+
+        return(msgs.length);
+    } // post (batch)
+
+
+        /**
+         *  How many bytes writeUTF() would make of a string: one for
+         *   each character from 1 to 127, three for each from 2048 up,
+         *   and two for the rest (NUL included).
+         */
+    protected static int utfLength(String str)
+    {
+        int retVal = 0;
+        int i;
+        char ch;
+
+        for (i = 0; i < str.length(); i++)
+        {
+            ch = str.charAt(i);
+            if ((ch >= 0x0001) && (ch <= 0x007F))
+                retVal++;
+            else if (ch > 0x07FF)
+                retVal += 3;
+            else
+                retVal += 2;
+        } // for
+
+        return(retVal);
+    } // utfLength
+
+
+        /**
+         *  Fill in the length word at the start of a record built by
+         *   post(). The length doesn't count the length word itself.
+         */
+    protected static byte[] lengthStamp(byte[] rec)
+    {
+        int len = rec.length - 4;
+
+        rec[0] = (byte) (len >>> 24);
+        rec[1] = (byte) (len >>> 16);
+        rec[2] = (byte) (len >>> 8);
+        rec[3] = (byte) len;
+
+        return(rec);
+    } // lengthStamp
+
+
+        /**
+         *  Read a message from this board.
+         *
+         *   @param num Message number.
+         *  @return The message, or <em>null</em> if it couldn't be read.
+         */
+    public synchronized BoardMessage read(int num)
+    {
+        BoardMessage retVal;
+
+        if ((num < 1) || (num > msgCount))
+            return(null);
+
+        try
+        {
+            index.seek(indexPos(num) + IDX_OFFSET);
+            segment.seek(index.readLong() + 4);     // skip length word.
+
+            retVal = new BoardMessage();
+            retVal.number = segment.readInt();
+            retVal.parent = segment.readInt();
+            retVal.author = segment.readInt();
+            retVal.postTime = segment.readLong();
+            retVal.handle = segment.readUTF();
+            retVal.toWhom = segment.readUTF();
+            retVal.subject = segment.readUTF();
+            retVal.body = segment.readUTF();
+        } // try
+
+        catch (IOException e)
+        {
+            retVal = null;
+        } // catch
+
+        return(retVal);
+    } // read
+
+
+        // Thread navigation. Message 0 is the imaginary parent of every
+        //  thread on the board, so getFirstReply(0) is the first thread,
+        //  and getNextReply() walks from one thread to the next.
+
+    protected int indexField(int num, int field)
+    {
+        if ((num < 1) || (num > msgCount))
+            return(0);
+
+        try
+        {
+            return(readIndexInt(num, field));
+        } // try
+        catch (IOException e)
+        {
+            return(0);
+        } // catch
+    } // indexField
+
+
+    public synchronized int getParent(int num)
+    {
+        return(indexField(num, IDX_PARENT));
+    } // getParent
+
+
+    public synchronized int getThreadRoot(int num)
+    {
+        return(indexField(num, IDX_ROOT));
+    } // getThreadRoot
+
+
+    public synchronized int getDepth(int num)
+    {
+        return(indexField(num, IDX_DEPTH));
+    } // getDepth
+
+
+    public synchronized int getFirstReply(int num)
+    {
+        return((num == 0) ? firstRoot : indexField(num, IDX_FIRSTREPLY));
+    } // getFirstReply
+
+
+    public synchronized int getNextReply(int num)
+    {
+        return(indexField(num, IDX_NEXT));
+    } // getNextReply
+
+
+        /**
+         *  Find the message that follows num when reading its thread
+         *   in reply order: num's first reply if it has one, otherwise
+         *   the next reply to num or the nearest of its ancestors.
+         *   Costs, at worst, one step per level of the thread.
+         *
+         *   @param num Current message.
+         *  @return Next message in thread, 0 at end of thread.
+         */
+    public synchronized int nextInThread(int num)
+    {
+        return(nextInThread(num, getThreadRoot(num)));
+    } // nextInThread
+
+
+    protected int nextInThread(int num, int top)
+    {
+        int retVal = getFirstReply(num);
+
+        while ((retVal == 0) && (num != top) && (num != 0))
+        {
+            retVal = getNextReply(num);
+            num = getParent(num);
+        } // while
+
+        return(retVal);
+    } // nextInThread (takes top of subtree)
+
+
+        /**
+         *  List a thread (or any part of one) in reply order.
+         *
+         *   @param top Message to start at. Only it and its replies
+         *              are listed.
+         *  @return Message numbers, in reading order.
+         */
+    public synchronized int[] listThread(int top)
+    {
+        int[] retVal = new int[16];
+        int[] grow;
+        int count = 0;
+        int num;
+
+        for (num = top; num != 0; num = nextInThread(num, top))
+        {
+            if (count == retVal.length)
+            {
+                grow = new int[retVal.length * 2];
+                System.arraycopy(retVal, 0, grow, 0, count);
+                retVal = grow;
+            } // if
+            retVal[count++] = num;
+        } // for
+
+        grow = new int[count];
+        System.arraycopy(retVal, 0, grow, 0, count);
+        return(grow);
+    } // listThread
+
+
+    public String getName()
+    {
+        return(name);
+    } // getName
+
+
+    public int getConference()
+    {
+        return(conference);
+    } // getConference
+
+
+    public synchronized int getMessageCount()
+    {
+        return(msgCount);
+    } // getMessageCount
+
+
+        // Online stuff...
+
+    protected static int recvNumber(SocketStream io, String prompt)
+                                           throws LostCarrierException
+    {
+        io.send(prompt);
+
+        try
+        {
+            return(Integer.parseInt(io.recvln(8).trim()));
+        } // try
+        catch (NumberFormatException e)
+        {
+            return(-1);
+        } // catch
+    } // recvNumber
+
+
+        /**
+         *  Call this from whereever, and this class will deal with the
+         *   rest of the details.
+         *
+         *   @param session Session that wants to read the boards.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public static void doMessageBoards(OnlineSession session)
+                                         throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        MessageBoard board = getBoard(1);
+        int i;
+
+        if (getBoardCount() > 1)
+        {
+            io.sendln();
+            for (i = 1; i <= getBoardCount(); i++)
+                io.sendln("  " + i + ") " + getBoard(i).getName());
+
+            board = getBoard(recvNumber(io, "Board number : "));
+        } // if
+
+        if (board == null)
+            io.sendln("No such board.");
+        else
+            board.boardMenu(session);
+    } // doMessageBoards
+
+
+    protected void boardMenu(OnlineSession session)
+                               throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        boolean getOut = false;
+        int num;
+
+        while (!getOut)
+        {
+            io.sendln();
+            io.send(name + " : [L]ist threads, [R]ead, [P]ost, [Q]uit ? ");
+
+            switch (JBBS.asciiByteToLower(io.recv()))
+            {
+                case 'l':
+                    io.sendln("list");
+                    listThreads(io);
+                    break;
+
+                case 'r':
+                    io.sendln("read");
+                    num = recvNumber(io, "Message number : ");
+                    if ((num < 1) || (num > getMessageCount()))
+                        io.sendln("No such message.");
+                    else
+                        readThread(session, num);
+                    break;
+
+                case 'p':
+                    io.sendln("post");
+                    postMessage(session, null);
+                    break;
+
+                case 'q':
+                    io.sendln("quit");
+                    getOut = true;
+                    break;
+            } // switch
+        } // while
+    } // boardMenu
+
+
+    protected void listThreads(SocketStream io) throws LostCarrierException
+    {
+        BoardMessage msg;
+        int num;
+
+        io.sendln();
+        for (num = getFirstReply(0); num != 0; num = getNextReply(num))
+        {
+            msg = read(num);
+            if (msg != null)
+            {
+                io.sendln("  #" + num + "  " + msg.getSubject() +
+                          "  (" + msg.getHandle() + ", " +
+                          (listThread(num).length - 1) + " replies)");
+            } // if
+        } // for
+
+        if (getFirstReply(0) == 0)
+            io.sendln("  No messages.");
+    } // listThreads
+
+
+    protected void showMessage(SocketStream io, BoardMessage msg)
+                                             throws LostCarrierException
+    {
+        StringBuffer indent = new StringBuffer();
+        int i;
+
+        for (i = getDepth(msg.getNumber()); i > 0; i--)
+            indent.append("  ");
+
+        io.sendln();
+        io.sendln(indent + "#" + msg.getNumber() + " of " +
+                  getMessageCount() + ((msg.getParent() == 0) ? "" :
+                  ("  (reply to #" + msg.getParent() + ")")));
+        io.sendln(indent + "From: " + msg.getHandle() + "   To: " +
+                  msg.getTo());
+        io.sendln(indent + "Subj: " + msg.getSubject());
+        io.sendln();
+        io.sendln(msg.getBody());
+    } // showMessage
+
+
+        /**
+         *  Read from num to the end of its thread, in reply order.
+         */
+    protected void readThread(OnlineSession session, int num)
+                                       throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        BoardMessage msg;
+
+        while (num != 0)
+        {
+            msg = read(num);
+            if (msg == null)
+            {
+                io.sendln("Couldn't read message #" + num + "!");
+                return;
+            } // if
+
+            showMessage(io, msg);
+            LastRead.advance(session.user.getNumber(), conference, num);
+            io.send("[N]ext, [R]eply, [Q]uit ? ");
+
+            switch (JBBS.asciiByteToLower(io.recv()))
+            {
+                case 'r':
+                    io.sendln("reply");
+                    postMessage(session, msg);
+                    num = nextInThread(num);
+                    break;
+
+                case 'q':
+                    io.sendln("quit");
+                    return;
+
+                default:
+                    io.sendln("next");
+                    num = nextInThread(num);
+                    break;
+            } // switch
+        } // while
+
+        io.sendln("End of thread.");
+    } // readThread
+
+
+        /**
+         *  Let the user write a message.
+         *
+         *   @param session Session of author.
+         *   @param replyTo Message being replied to, <em>null</em> for
+         *                  a new thread.
+         */
+    protected void postMessage(OnlineSession session, BoardMessage replyTo)
+                                             throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        StringBuffer text = new StringBuffer();
+        String subject;
+        String to = BoardMessage.ADDRESSED_TO_ALL;
+        String line;
+        int lines;
+        int num;
+
+        if (replyTo == null)
+        {
+            io.send("Subject : ");
+            subject = io.recvln(BoardMessage.MAX_SUBJECT).trim();
+            if (subject.length() == 0)
+                return;
+        } // if
+        else
+        {
+            subject = replyTo.getSubject();
+            if (!subject.startsWith("Re: "))
+                subject = "Re: " + subject;
+            to = replyTo.getHandle();
+        } // else
+
+        io.sendln("Enter text. A blank line ends the message.");
+        for (lines = 0; lines < MAX_LINES; lines++)
+        {
+            line = io.recvln(78);
+            if (line.length() == 0)
+                break;
+            text.append(line);
+            text.append("\r\n");
+        } // for
+
+        if ((lines == 0) || (!session.getYN("Post it? ")))
+            return;
+
+        num = post(new BoardMessage(session.user, to, subject,
+                                    text.toString(),
+                                    (replyTo == null) ? 0 :
+                                                        replyTo.getNumber()));
+        if (num == -1)
+            io.sendln("Couldn't post your message!");
+        else
+            io.sendln("Posted as message #" + num + ".");
+    } // postMessage
+
+} // MessageBoard
+
+// end of MessageBoard.java ...
+
@@ -0,0 +1,86 @@
+/**
+ *  A count of something, for JBBSMetrics. Counting is a LongAdder add,
+ *   which threads don't fight over, so it's cheap enough to leave on
+ *   everywhere.
+ *
+ *  A counter that's a gauge goes down as well as up (users online, say),
+ *   and isn't cleared by a reset, since what it measures hasn't gone
+ *   away.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class MetricCounter
+{
+        // Instance variables...
+    protected String name;
+    protected boolean gauge;
+    protected LongAdder count = new LongAdder();
+
+
+        /**
+         *  Constructor. Use JBBSMetrics.counter() or gauge() instead;
+         *   they register it for "stats".
+         *
+         *   @param _name What it counts, for "stats".
+         *   @param _gauge <em>true</em> for a gauge.
+         */
+    public MetricCounter(String _name, boolean _gauge)
+    {
+        name = _name;
+        gauge = _gauge;
+    } // Constructor
+
+
+    public String getName()
+    {
+        return(name);
+    } // getName
+
+
+    public boolean isGauge()
+    {
+        return(gauge);
+    } // isGauge
+
+
+    public void increment()
+    {
+        count.increment();
+    } // increment
+
+
+    public void decrement()
+    {
+        count.decrement();
+    } // decrement
+
+
+    public void add(long n)
+    {
+        count.add(n);
+    } // add
+
+
+    public long get()
+    {
+        return(count.sum());
+    } // get
+
+
+        /**
+         *  Start counting from zero again. Gauges ignore this.
+         */
+    public void reset()
+    {
+        if (!gauge)
+            count.reset();
+    } // reset
+
+} // MetricCounter
+
+// end of MetricCounter.java ...
+
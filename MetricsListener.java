@@ -0,0 +1,532 @@
+/**
+ *  Serves JBBSMetrics over HTTP, in Prometheus' text format, for
+ *   monitoring to scrape. It listens on JBBSConfig.metricsPortNum, on
+ *   the loopback address only; anything from off the machine needs a
+ *   proxy or a tunnel, on purpose.
+ *
+ *  Two paths: /metrics, for everything (the counters and histograms in
+ *   JBBSMetrics, the ConnectionManager's numbers, JBBSLog's, and the
+ *   JVM's memory and garbage collection), and /healthz, which answers
+ *   200 if the accept loop is taking callers and 503 if it isn't.
+ *
+ *  Scrapes are answered one at a time, on this thread, into buffers
+ *   that are kept from one to the next. Names and help text are built
+ *   once, up front, so a scrape makes next to no garbage; what little
+ *   there is comes from the JVM's management beans.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.lang.management.*;
+import java.net.*;
+
+public class MetricsListener implements Runnable
+{
+        // Constants...
+    public final static int REQUEST_TIMEOUT = 5000;     // milliseconds.
+    public final static int LEN_REQUEST = 4096;        // longer is cut off.
+    public final static String PREFIX = "jbbs_";
+    public final static String CONTENT_TYPE =
+                                  "text/plain; version=0.0.4; charset=utf-8";
+
+        // Histogram bucket limits, in nanoseconds, and as Prometheus
+        //  wants them written: seconds.
+    protected final static long[] LIMITS = {
+        10000L, 25000L, 50000L, 100000L, 250000L, 500000L,
+        1000000L, 2500000L, 5000000L, 10000000L, 25000000L, 50000000L,
+        100000000L, 250000000L, 500000000L,
+        1000000000L, 2500000000L, 5000000000L, 10000000000L
+    };
+    protected final static String[] LIMIT_LABELS = {
+        "0.00001", "0.000025", "0.00005", "0.0001", "0.00025", "0.0005",
+        "0.001", "0.0025", "0.005", "0.01", "0.025", "0.05",
+        "0.1", "0.25", "0.5", "1", "2.5", "5", "10"
+    };
+
+        // Instance variables...
+    protected ServerSocket listener;
+    protected Thread listenThread;
+    protected byte[] request = new byte[LEN_REQUEST];
+    protected ByteArrayOutputStream body = new ByteArrayOutputStream(16384);
+    protected ByteArrayOutputStream head = new ByteArrayOutputStream(256);
+    protected byte[] digits = new byte[20];
+    protected long[] counts = new long[LIMITS.length];
+
+        // Built once: names, and HELP and TYPE lines...
+    protected byte[][] counterNames;
+    protected byte[][] counterHeads;
+    protected byte[][] histogramNames;
+    protected byte[][] histogramHeads;
+    protected byte[][] limitLabels;
+    protected GarbageCollectorMXBean[] collectors;
+    protected byte[][] collectorLabels;
+
+
+        /**
+         *  Start listening.
+         *
+         *   @throw IOException if the port can't be listened on.
+         */
+    public MetricsListener() throws IOException
+    {
+        buildNames();
+
+        listener = new ServerSocket(JBBSConfig.metricsPortNum, 4,
+                                    InetAddress.getLoopbackAddress());
+
+        listenThread = new Thread(this, "MetricsListener");
+        listenThread.setDaemon(true);
+        listenThread.start();
+    } // Constructor
+
+
+        /**
+         *  Turn a name from "stats" into one Prometheus will take:
+         *   "Connections refused (full)" becomes
+         *   "jbbs_connections_refused_full".
+         */
+    public static String metricName(String name)
+    {
+        StringBuffer retVal = new StringBuffer(PREFIX);
+        boolean underscore = true;     // PREFIX ends in one.
+        char ch;
+        int i;
+
+        for (i = 0; i < name.length(); i++)
+        {
+            ch = Character.toLowerCase(name.charAt(i));
+            if (((ch >= 'a') && (ch <= 'z')) || ((ch >= '0') && (ch <= '9')))
+            {
+                retVal.append(ch);
+                underscore = false;
+            } // if
+            else if (!underscore)
+            {
+                retVal.append('_');
+                underscore = true;
+            } // else if
+        } // for
+
+        if (underscore)
+            retVal.setLength(retVal.length() - 1);
+
+        return(retVal.toString());
+    } // metricName
+
+
+    protected static byte[] ascii(String str)
+    {
+        byte[] retVal = new byte[str.length()];
+        int i;
+
+        for (i = 0; i < retVal.length; i++)
+            retVal[i] = (byte) str.charAt(i);
+
+        return(retVal);
+    } // ascii
+
+
+    protected static byte[] header(String name, String help, String type)
+    {
+        return(ascii("# HELP " + name + " " + help + "\n" +
+                     "# TYPE " + name + " " + type + "\n"));
+    } // header
+
+
+        /**
+         *  Build everything about the output that doesn't change between
+         *   scrapes.
+         */
+    protected void buildNames()
+    {
+        MetricCounter counter;
+        LatencyHistogram h;
+        String name;
+        int i;
+
+        counterNames = new byte[JBBSMetrics.getCounterCount()][];
+        counterHeads = new byte[counterNames.length][];
+        for (i = 0; i < counterNames.length; i++)
+        {
+            counter = JBBSMetrics.getCounter(i);
+            name = metricName(counter.getName());
+            if (counter.isGauge())
+                counterHeads[i] = header(name, counter.getName(), "gauge");
+            else
+            {
+                name += "_total";
+                counterHeads[i] = header(name, counter.getName(), "counter");
+            } // else
+            counterNames[i] = ascii(name + " ");
+        } // for
+
+        histogramNames = new byte[JBBSMetrics.getHistogramCount()][];
+        histogramHeads = new byte[histogramNames.length][];
+        for (i = 0; i < histogramNames.length; i++)
+        {
+            h = JBBSMetrics.getHistogram(i);
+            name = metricName(h.getName()) + "_seconds";
+            histogramHeads[i] = header(name, h.getName(), "histogram");
+            histogramNames[i] = ascii(name);
+        } // for
+
+        limitLabels = new byte[LIMIT_LABELS.length][];
+        for (i = 0; i < LIMIT_LABELS.length; i++)
+            limitLabels[i] = ascii("_bucket{le=\"" + LIMIT_LABELS[i] + "\"} ");
+
+        collectors = ManagementFactory.getGarbageCollectorMXBeans().toArray(
+                                         new GarbageCollectorMXBean[0]);
+        collectorLabels = new byte[collectors.length][];
+        for (i = 0; i < collectors.length; i++)
+            collectorLabels[i] = ascii("{gc=\"" + collectors[i].getName() +
+                                       "\"} ");
+    } // buildNames
+
+
+    public void close()
+    {
+        try
+        {
+            listener.close();   // accept() throws, and the thread quits.
+        } // try
+        catch (IOException e)
+        {
+            // don't care...it's going in the trash anyway...
+        } // catch
+    } // close
+
+
+        // Output...
+
+    protected static void put(ByteArrayOutputStream to, byte[] bytes)
+    {
+        to.write(bytes, 0, bytes.length);
+    } // put
+
+
+    protected static void put(ByteArrayOutputStream to, String str)
+    {
+        int i;
+
+        for (i = 0; i < str.length(); i++)
+            to.write(str.charAt(i));
+    } // put (String)
+
+
+    protected void put(ByteArrayOutputStream to, long value)
+    {
+        int i = digits.length;
+
+        if (value < 0)
+        {
+            to.write('-');
+            value = -value;
+        } // if
+
+        do
+        {
+            digits[--i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+
+        to.write(digits, i, digits.length - i);
+    } // put (long)
+
+
+        /**
+         *  Write nanoseconds as seconds, with all nine decimal places.
+         */
+    protected void putSeconds(ByteArrayOutputStream to, long nanos)
+    {
+        long fraction = nanos % 1000000000L;
+        int i;
+
+        put(to, nanos / 1000000000L);
+        to.write('.');
+        for (i = 100000000; i > 1; i /= 10)
+        {
+            if (fraction < i)
+                to.write('0');
+        } // for
+        put(to, fraction);
+    } // putSeconds
+
+
+    protected void putMetric(String name, String help, String type,
+                             long value)
+    {
+        put(body, "# HELP ");
+        put(body, name);
+        body.write(' ');
+        put(body, help);
+        put(body, "\n# TYPE ");
+        put(body, name);
+        body.write(' ');
+        put(body, type);
+        body.write('\n');
+        put(body, name);
+        body.write(' ');
+        put(body, value);
+        body.write('\n');
+    } // putMetric
+
+
+        /**
+         *  Render every metric into body.
+         */
+    protected void renderMetrics()
+    {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        MemoryUsage nonHeap = memory.getNonHeapMemoryUsage();
+        LatencyHistogram h;
+        int i;
+        int j;
+
+        body.reset();
+
+        for (i = 0; i < counterNames.length; i++)
+        {
+            put(body, counterHeads[i]);
+            put(body, counterNames[i]);
+            put(body, JBBSMetrics.getCounter(i).get());
+            body.write('\n');
+        } // for
+
+        for (i = 0; i < histogramNames.length; i++)
+        {
+            h = JBBSMetrics.getHistogram(i);
+            h.getCountsUnder(LIMITS, counts);
+
+            put(body, histogramHeads[i]);
+            for (j = 0; j < LIMITS.length; j++)
+            {
+                put(body, histogramNames[i]);
+                put(body, limitLabels[j]);
+                put(body, counts[j]);
+                body.write('\n');
+            } // for
+
+            put(body, histogramNames[i]);
+            put(body, "_bucket{le=\"+Inf\"} ");
+            put(body, h.getCount());
+            put(body, "\n");
+            put(body, histogramNames[i]);
+            put(body, "_sum ");
+            putSeconds(body, h.getTotal());
+            put(body, "\n");
+            put(body, histogramNames[i]);
+            put(body, "_count ");
+            put(body, h.getCount());
+            put(body, "\n");
+        } // for
+
+        putMetric("jbbs_sessions_max", "Session slots", "gauge",
+                  JBBSConfig.maxConnections);
+        putMetric("jbbs_accept_loop_healthy",
+                  "1 if the accept loop is taking callers", "gauge",
+                  ConnectionManager.isAcceptLoopHealthy() ? 1 : 0);
+        putMetric("jbbs_log_written_total", "Log records written",
+                  "counter", JBBSLog.getWrittenCount());
+        putMetric("jbbs_log_dropped_total", "Log records dropped",
+                  "counter", JBBSLog.getDroppedCount());
+        putMetric("jbbs_log_pending", "Log records waiting to be written",
+                  "gauge", JBBSLog.getPendingCount());
+
+        putMetric("jvm_memory_heap_used_bytes", "Heap in use", "gauge",
+                  heap.getUsed());
+        putMetric("jvm_memory_heap_committed_bytes", "Heap committed",
+                  "gauge", heap.getCommitted());
+        putMetric("jvm_memory_heap_max_bytes", "Most heap there can be",
+                  "gauge", heap.getMax());
+        putMetric("jvm_memory_nonheap_used_bytes", "Non-heap in use",
+                  "gauge", nonHeap.getUsed());
+        putMetric("jvm_threads_live", "Live threads", "gauge",
+                  Thread.activeCount());
+
+        put(body, "# HELP jvm_gc_collections_total Collections run\n");
+        put(body, "# TYPE jvm_gc_collections_total counter\n");
+        for (i = 0; i < collectors.length; i++)
+        {
+            put(body, "jvm_gc_collections_total");
+            put(body, collectorLabels[i]);
+            put(body, Math.max(collectors[i].getCollectionCount(), 0));
+            body.write('\n');
+        } // for
+
+        put(body, "# HELP jvm_gc_collection_seconds_total Time collecting\n");
+        put(body, "# TYPE jvm_gc_collection_seconds_total counter\n");
+        for (i = 0; i < collectors.length; i++)
+        {
+            put(body, "jvm_gc_collection_seconds_total");
+            put(body, collectorLabels[i]);
+            putSeconds(body,
+                       Math.max(collectors[i].getCollectionTime(), 0) *
+                       1000000L);
+            body.write('\n');
+        } // for
+    } // renderMetrics
+
+
+        // Requests...
+
+        /**
+         *  Read a request's header, up to the blank line after it.
+         *
+         *  @return Bytes read; the start of it is the request line.
+         */
+    protected int readRequest(InputStream in) throws IOException
+    {
+        int len = 0;
+        int b;
+
+        while ((len < request.length) && ((b = in.read()) != -1))
+        {
+            request[len++] = (byte) b;
+
+            if ((b == '\n') && (len >= 2) &&
+                ((request[len - 2] == '\n') ||
+                 ((len >= 4) && (request[len - 2] == '\r') &&
+                  (request[len - 3] == '\n'))))
+            {
+                break;      // blank line; that's the header done.
+            } // if
+        } // while
+
+        return(len);
+    } // readRequest
+
+
+        /**
+         *  Is the request for this path? Anything after a '?' is ignored.
+         */
+    protected boolean isRequestFor(int len, String method, String path)
+    {
+        int at = method.length() + 1 + path.length();
+        int i;
+
+        if (len <= at)
+            return(false);
+
+        for (i = 0; i < method.length(); i++)
+        {
+            if (request[i] != method.charAt(i))
+                return(false);
+        } // for
+
+        if (request[i] != ' ')
+            return(false);
+
+        for (i = 0; i < path.length(); i++)
+        {
+            if (request[method.length() + 1 + i] != path.charAt(i))
+                return(false);
+        } // for
+
+        return((request[at] == ' ') || (request[at] == '?'));
+    } // isRequestFor
+
+
+    protected void respond(OutputStream out, String status)
+                                                  throws IOException
+    {
+        head.reset();
+        put(head, "HTTP/1.0 ");
+        put(head, status);
+        put(head, "\r\nContent-Type: ");
+        put(head, CONTENT_TYPE);
+        put(head, "\r\nContent-Length: ");
+        put(head, body.size());
+        put(head, "\r\nConnection: close\r\n\r\n");
+
+        head.writeTo(out);
+        body.writeTo(out);
+        out.flush();
+    } // respond
+
+
+    protected void serve(Socket caller) throws IOException
+    {
+        OutputStream out = caller.getOutputStream();
+        int len = readRequest(caller.getInputStream());
+
+        if (isRequestFor(len, "GET", "/metrics"))
+        {
+            renderMetrics();
+            respond(out, "200 OK");
+        } // if
+
+        else if (isRequestFor(len, "GET", "/healthz"))
+        {
+            body.reset();
+            if (ConnectionManager.isAcceptLoopHealthy())
+            {
+                put(body, "ok\n");
+                respond(out, "200 OK");
+            } // if
+            else
+            {
+                put(body, "accept loop stalled\n");
+                respond(out, "503 Service Unavailable");
+            } // else
+        } // else if
+
+        else
+        {
+            body.reset();
+            put(body, "Try /metrics or /healthz.\n");
+            respond(out, "404 Not Found");
+        } // else
+    } // serve
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        Socket caller;
+
+        while (!listener.isClosed())
+        {
+            caller = null;
+
+            try
+            {
+                caller = listener.accept();
+                caller.setSoTimeout(REQUEST_TIMEOUT);
+                serve(caller);
+            } // try
+
+            catch (IOException e)
+            {
+                if (listener.isClosed())
+                    return;
+
+                if (JBBSConfig.logIOExceptions)
+                {
+                    JBBSLog.add(JBBSLog.PRIORITY_INFO, "IOException",
+                                e.getMessage(), "MetricsListener.run();");
+                } // if
+            } // catch
+
+            finally
+            {
+                try
+                {
+                    if (caller != null)
+                        caller.close();
+                } // try
+                catch (IOException ioe)
+                {
+                    // don't care.
+                } // catch
+            } // finally
+        } // while
+    } // run
+
+} // MetricsListener
+
+// end of MetricsListener.java ...
+
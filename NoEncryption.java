@@ -1,11 +1,14 @@
 /**
- *  Dummy class to implement Encryptable...does no encryption whatsoever.
+ *  Dummy class to implement Encryptable and StreamEncryptable...does no
+ *   encryption whatsoever.
  *
  *    Copyright (c) Lighting and Sound Technologies, 1997.
  *     Written by Ryan C. Gordon.
  */
 
-public class NoEncryption implements Encryptable
+import java.nio.ByteBuffer;
+
+public class NoEncryption implements Encryptable, StreamEncryptable
 {
     public void setEncryptKey(byte[] bytes) {}  // do nothing.
 
@@ -29,6 +32,20 @@ public class NoEncryption implements Encryptable
         return(decBytes);
     } // decrypt (takes byte[])
 
+    public void encrypt(ByteBuffer buf) {}     // do nothing.
+
+    public void decrypt(ByteBuffer buf) {}     // do nothing.
+
+    public void encrypt(ByteBuffer src, ByteBuffer dst)
+    {
+        dst.put(src);
+    } // encrypt (takes ByteBuffers)
+
+    public void decrypt(ByteBuffer src, ByteBuffer dst)
+    {
+        dst.put(src);
+    } // decrypt (takes ByteBuffers)
+
 } // NoEncryption
 
 // end of NoEncryption.java ...
@@ -8,16 +8,46 @@
 
 import java.io.*;
 import java.net.*;
+import java.util.Hashtable;
 
 public class OnlineSession implements Runnable
 {
         // Constants...
     public static final byte ASCII_BACKSPACE = 0x08;
 
+    protected static final int EMUL_UNKNOWN = 0;
+    protected static final int EMUL_DUMB = 1;
+    protected static final int EMUL_ANSI = 2;
+    protected static final int EMUL_AVATAR = 3;
+
+        // Probing for an emulation: how long to wait for any answer, and,
+        //  once ANSI's answered, how much longer to wait for AVATAR's.
+    protected static final int PROBE_TIMEOUT = 3000;   // milliseconds.
+    protected static final int PROBE_GRACE = 250;      // milliseconds.
+    protected static final byte[] ANSI_PROBE = {       // ESC[6n: "where's
+        SocketStream.ASCII_ESCAPE, '[', '6', 'n'        //  the cursor?"
+    };
+
+        // Telnet terminal types that mean ANSI will do.
+    protected static final String[] ANSI_TERMTYPES = {
+        "ANSI", "VT100", "VT102", "VT220", "XTERM", "LINUX", "SCREEN",
+        "SYNCTERM", "PUTTY", "CYGWIN", "NETRUNNER", "MTELNET", "QODEM"
+    };
+
+        // The main menu, when it's drawn full-screen: hotkeys, and what
+        //  they're for.
+    protected static final String MAINMENU_KEYS = "mefqdcg";
+    protected static final String[] MAINMENU_ITEMS = {
+        "Message boards", "Email", "Files", "QWK offline mail", "Doors",
+        "Chat", "Goodbye"
+    };
+
         // Instance variables...
     protected SocketStream io;               // socket's output stream.
     protected Thread sessionThread;          // All work is done in this thread.
     protected JBBSUser user = null;
+    protected VirtualScreen screen = null;   // for full-screen displays.
+    protected long connectTime = System.nanoTime();  // for JBBSMetrics.
 
 
         /**
@@ -29,11 +59,18 @@ public class OnlineSession implements Runnable
          */
     public OnlineSession(Socket socket) throws LostCarrierException
     {
+        SessionAcceptEvent accept = new SessionAcceptEvent();
+        EmulationEvent emulation = new EmulationEvent();
+        boolean accepted;
+
         //!!!socket.setSoTimeout((JBBSConfig.idleTimeout * 60) * 1000);
 
+        accept.begin();
+        emulation.begin();
         try
         {
             io = checkEmulation(socket);
+            JBBSMetrics.negotiation.recordSince(connectTime);
         } // try
         catch (LostCarrierException e)
         {
@@ -41,7 +78,26 @@ public class OnlineSession implements Runnable
             throw(e);    // rethrow exception...
         } // catch
 
-        if (ConnectionManager.addSession(this) == false)
+        if (emulation.shouldCommit())
+        {
+            if (socket instanceof TelnetSocket)
+                emulation.termType = ((TelnetSocket) socket).getTerminalType();
+            emulation.emulation = io.getTermEmulName();
+            emulation.probed = (emulationForTermType(emulation.termType) ==
+                                EMUL_UNKNOWN);
+            emulation.commit();
+        } // if
+
+        accepted = ConnectionManager.addSession(this);
+        if (accept.shouldCommit())
+        {
+            accept.address = socket.getInetAddress().getHostAddress();
+            accept.transport = transportName(socket);
+            accept.accepted = accepted;
+            accept.commit();
+        } // if
+
+        if (accepted == false)
         {
             io.send("Sorry, we can't connect you at this time. " +
                     "Try again later. Thanks!\r\n\r\n");
@@ -51,11 +107,34 @@ public class OnlineSession implements Runnable
         else    // no problems? Spin a thread to start user's session...
         {
             sessionThread = new Thread(this);
+            io.getStats().setSessionThread(sessionThread);
             sessionThread.start();
         } // else
     } // Constructor
 
 
+        /**
+         *  How did this caller get here? Only for telling people.
+         *
+         *   @param socket Caller's socket.
+         *  @return "TLS", "WebSocket" or "telnet".
+         */
+    protected static String transportName(Socket socket)
+    {
+        while (socket instanceof FilterSocket)
+        {
+            if (socket instanceof WebSocketSocket)
+                return("WebSocket");
+            socket = ((FilterSocket) socket).getRawSocket();
+        } // while
+
+        if (socket instanceof javax.net.ssl.SSLSocket)
+            return("TLS");
+
+        return("telnet");
+    } // transportName
+
+
         /**
          * Get the SocketStream associated with this OnlineSession.
          *  Use this if the built-in i/o methods (getYN(), etc) don't
@@ -69,6 +148,63 @@ public class OnlineSession implements Runnable
     } // getSocketStream
 
 
+        /**
+         * Get this session's off-screen copy of the user's screen, for
+         *  full-screen displays. It's made on first use, at the size of
+         *  the user's screen, and made again if that size changes.
+         *
+         *  @return The session's VirtualScreen.
+         */
+    public VirtualScreen getScreen()
+    {
+        if ((screen == null) ||
+            (screen.getWidth() != io.getScreenWidth()) ||
+            (screen.getHeight() != io.getScreenHeight()))
+        {
+            screen = new VirtualScreen(io.getScreenWidth(),
+                                       io.getScreenHeight());
+        } // if
+
+        return(screen);
+    } // getScreen
+
+
+        /**
+         * Get the variables screen templates can fill in for this session:
+         *  bbsname, version, emulation, and, once logged in, handle.
+         *
+         *  @return Variables, by name.
+         */
+    public Hashtable getScreenVars()
+    {
+        Hashtable retVal = new Hashtable();
+
+        retVal.put("bbsname", JBBSConfig.BBSName);
+        retVal.put("version", JBBS.TITLE + " " + JBBS.versionString());
+        retVal.put("emulation", io.getTermEmulName());
+        if (user != null)
+            retVal.put("handle", user.getHandle());
+
+        return(retVal);
+    } // getScreenVars
+
+
+        /**
+         * Show a screen template, or, if the sysop didn't make one, the
+         *  text we'd show without it.
+         *
+         *   @param name Template's name.
+         *   @param fallback What to send if there's no such template.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public void showScreen(String name, String fallback)
+                                  throws LostCarrierException
+    {
+        if (!ScreenTemplate.show(io, name, getScreenVars()))
+            io.send(fallback);
+    } // showScreen
+
+
         /**
          * Asks the user a Yes, No question.
          *
@@ -162,6 +298,7 @@ public class OnlineSession implements Runnable
     {
         byte[] userName;
         String password;
+        LoginEvent attempt;
         int tries;
         boolean retVal = false;
 
@@ -170,27 +307,75 @@ public class OnlineSession implements Runnable
             // The (MAX_???????? + 20) is just to further baffle maximums
             //  in the name of security.
 
-            io.send("username : ");
+            showScreen("username", "username : ");
             userName = io.recvln(JBBSUser.MAX_USERNAME + 20).getBytes();
-            io.send("password : ");
+            showScreen("password", "password : ");
             password = io.recvln(JBBSUser.MAX_PASSWORD + 20);
 
+            attempt = new LoginEvent();
+            attempt.begin();
        	    user = JBBSUser.retrieve(userName, password);
+            if (attempt.shouldCommit())
+            {
+                attempt.userName = new String(userName).trim();
+                attempt.attempt = tries + 1;
+                attempt.success = (user != null);
+                attempt.commit();
+            } // if
+
             if (user == null)
             {
-                //if (JBBSConfig.logSecurity)
-                //    JBBSLog.add("!!!");
+                JBBSLog.add(JBBSLog.PRIORITY_WARNING, "Login",
+                            "Failed login as " + new String(userName).trim(),
+                            io.getSocket().getInetAddress().toString());
+                JBBSMetrics.failedLogins.increment();
                 io.sendln("Login incorrect.");
                 io.sendln();
             } // if
             else
+            {
+                JBBSMetrics.logins.increment();
+                JBBSMetrics.connectToLogin.recordSince(connectTime);
                 retVal = true;
+            } // else
         } // for
 
         return(retVal);
     } // login
 
 
+        /**
+         * Pick an emulation from a telnet terminal type, so we needn't
+         *  probe for one.
+         *
+         *   @param termType Terminal type, or <em>null</em> if unknown.
+         *  @return One of the EMUL_* constants; EMUL_UNKNOWN to probe.
+         */
+    protected static int emulationForTermType(String termType)
+    {
+        int i;
+
+        if (termType == null)
+            return(EMUL_UNKNOWN);
+
+        termType = termType.toUpperCase();
+
+        if (termType.indexOf("AVATAR") != -1)
+            return(EMUL_AVATAR);
+
+        if (termType.startsWith("DUMB"))
+            return(EMUL_DUMB);
+
+        for (i = 0; i < ANSI_TERMTYPES.length; i++)
+        {
+            if (termType.startsWith(ANSI_TERMTYPES[i]))
+                return(EMUL_ANSI);
+        } // for
+
+        return(EMUL_UNKNOWN);
+    } // emulationForTermType
+
+
         /**
          *  This method tries to find the most functional emulation
          *   available to the remote client, and creates a SocketStream
@@ -200,18 +385,100 @@ public class OnlineSession implements Runnable
          *  @return SocketStream for all further communication with the client.
          *   @throw LostCarrierException if connection to user was lost.
          */
+        /**
+         *  Ask the client what it can do, for AVATAR and ANSI at once.
+         *   AVATAR clients answer ^E (ENQ) with "AVT0"; ANSI clients
+         *   answer ESC[6n with a position report, starting with ESC;
+         *   anybody else ignores both. Clients that do AVATAR usually do
+         *   ANSI too, and AVATAR's output is smaller, so it wins; but
+         *   once ANSI has answered, we only wait PROBE_GRACE more to
+         *   hear from AVATAR, so ANSI callers don't sit out the timeout.
+         *
+         *   @param in Stream from the client.
+         *   @param out Stream to the client.
+         *  @return EMUL_AVATAR, EMUL_ANSI, or EMUL_DUMB.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    protected static int probeEmulation(InputStream in, OutputStream out)
+                                             throws LostCarrierException
+    {
+        long giveUp = System.currentTimeMillis() + PROBE_TIMEOUT;
+        int retVal = EMUL_DUMB;
+        int matched = 0;
+        int ch;
+
+        try
+        {
+            in.skip(in.available());        // clear inputstream...
+            out.write(AvatarTerminal.ASCII_ENQ);
+            out.write(ANSI_PROBE);
+
+            while ((matched < AvatarTerminal.DETECT_REPLY.length) &&
+                   (System.currentTimeMillis() < giveUp))
+            {
+                if (in.available() == 0)
+                {
+                    JBBS.nap(50);
+                    continue;
+                } // if
+
+                ch = in.read();
+                if ((ch == SocketStream.ASCII_ESCAPE) && (retVal == EMUL_DUMB))
+                {
+                    retVal = EMUL_ANSI;
+                    giveUp = Math.min(giveUp,
+                                      System.currentTimeMillis() + PROBE_GRACE);
+                } // if
+
+                if (ch == AvatarTerminal.DETECT_REPLY[matched])
+                    matched++;
+                else
+                    matched = (ch == AvatarTerminal.DETECT_REPLY[0]) ? 1 : 0;
+            } // while
+
+            if (matched == AvatarTerminal.DETECT_REPLY.length)
+                retVal = EMUL_AVATAR;
+
+            if (retVal != EMUL_DUMB)    // throw out the rest of the answers.
+            {
+                JBBS.nap(100);
+                in.skip(in.available());
+            } // if
+        } // try
+
+        catch (IOException e)
+        {
+            SocketStream.handleIOException(e,
+                                    "OnlineSession.probeEmulation();");
+        } // catch
+
+        return(retVal);
+    } // probeEmulation
+
+
     protected SocketStream checkEmulation(Socket socket)
                                    throws LostCarrierException
     {
         SocketStream retVal;
         InputStream in = null;
         OutputStream out = null;
+        String termType = null;
 
         try
         {
+            if (socket instanceof TelnetSocket)
+            {
+                ((TelnetSocket) socket).negotiate();
+                termType = ((TelnetSocket) socket).getTerminalType();
+            } // if
+
             in = socket.getInputStream();
             out = socket.getOutputStream();
-            out.write("Please wait...checking term emulation...".getBytes());
+            if (termType == null)
+            {
+                out.write(
+                    "Please wait...checking term emulation...".getBytes());
+            } // if
         } // try
         catch (IOException e)
         {
@@ -219,10 +486,28 @@ public class OnlineSession implements Runnable
                                     "OnlineSession.checkEmulation();");
         } // catch
 
-        if (ANSITerminal.detectTerminal(in, out))
-            retVal = new ANSITerminal(socket);
-        else    // if all else fails, use Dumb Terminal Emulation...
-            retVal = new DumbTerminal(socket);
+        switch (emulationForTermType(termType))
+        {
+            case EMUL_AVATAR:
+                return(new AvatarTerminal(socket));
+            case EMUL_ANSI:
+                return(new ANSITerminal(socket));
+            case EMUL_DUMB:
+                return(new DumbTerminal(socket));
+        } // switch
+
+        switch (probeEmulation(in, out))
+        {
+            case EMUL_AVATAR:
+                retVal = new AvatarTerminal(socket);
+                break;
+            case EMUL_ANSI:
+                retVal = new ANSITerminal(socket);
+                break;
+            default:    // if all else fails, use Dumb Terminal Emulation...
+                retVal = new DumbTerminal(socket);
+                break;
+        } // switch
 
         in = null;
         out = null;
@@ -239,11 +524,11 @@ public class OnlineSession implements Runnable
          */
     protected void closeConnection()
     {
-        if (io != null)
-        {
-            io.close();
-            io = null;
-        } // if
+        SocketStream closing = io;  // shutdown() and run() can both be here.
+
+        io = null;
+        if (closing != null)
+            closing.close();
     } // closeConnection
 
 
@@ -312,6 +597,8 @@ public class OnlineSession implements Runnable
          */
     protected void sessionIntro() throws LostCarrierException
     {
+        MailBox.loginNotice(this);
+
         if (JBBSConfig.useAutoPosts)
             AutoPosts.doAutoPosts(this);
 
@@ -320,6 +607,159 @@ public class OnlineSession implements Runnable
     } // sessionIntro
 
 
+        /**
+         *  Draw the main menu full-screen, with who's online beside it,
+         *   and leave the cursor at the prompt. Only what changed since
+         *   the last time goes out, so a redraw after a stray key is
+         *   usually nothing at all, or a name in the who's-online list.
+         *
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    protected void drawMainMenu() throws LostCarrierException
+    {
+        VirtualScreen vs = getScreen();
+        OnlineSession[] online = ConnectionManager.getSessions();
+        int whoX = (vs.getWidth() / 2) + 1;
+        int promptY = vs.getHeight() - 1;
+        int y = 3;
+        int i;
+
+        vs.clear();
+
+        vs.setColor(SocketStream.TERMCOLOR_HIWHITE,
+                    SocketStream.TERMCOLOR_BLUE);
+        vs.put(1, 1, pad(" " + JBBSConfig.BBSName, vs.getWidth()));
+
+        for (i = 0; i < MAINMENU_ITEMS.length; i++, y++)
+        {
+            vs.setColor(SocketStream.TERMCOLOR_HIYELLOW,
+                        SocketStream.TERMCOLOR_BLACK);
+            vs.put(3, y, "[" + MAINMENU_KEYS.toUpperCase().charAt(i) + "]");
+            vs.setColor(SocketStream.TERMCOLOR_WHITE,
+                        SocketStream.TERMCOLOR_BLACK);
+            vs.put(7, y, MAINMENU_ITEMS[i]);
+        } // for
+
+        vs.setColor(SocketStream.TERMCOLOR_HICYAN,
+                    SocketStream.TERMCOLOR_BLACK);
+        vs.put(whoX, 3, "Who's online");
+        vs.setColor(SocketStream.TERMCOLOR_CYAN,
+                    SocketStream.TERMCOLOR_BLACK);
+        for (i = 0, y = 4; (i < online.length) && (y < promptY - 1); i++)
+        {
+            if (online[i].user == null)     // still logging in.
+                continue;
+
+            if ((y == promptY - 2) && (i < online.length - 1))
+                vs.put(whoX, y++, "...and others.");
+            else
+                vs.put(whoX, y++, online[i].user.getHandle());
+        } // for
+
+        vs.setColor(SocketStream.TERMCOLOR_WHITE,
+                    SocketStream.TERMCOLOR_BLACK);
+        vs.put(1, promptY, "Main ? ");
+
+        vs.render(io);
+        io.setPosXY(8, promptY);
+    } // drawMainMenu
+
+
+        /**
+         *  Pad a string with blanks to len characters.
+         */
+    protected static String pad(String str, int len)
+    {
+        StringBuffer retVal = new StringBuffer(str);
+
+        while (retVal.length() < len)
+            retVal.append(' ');
+
+        return(retVal.toString());
+    } // pad
+
+
+        /**
+         *  The main menu. User stays here until they say goodbye.
+         *   Terminals that can position the cursor get it full-screen,
+         *   unless the sysop made a "mainmenu" screen template.
+         *
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    protected void mainMenu() throws LostCarrierException
+    {
+        boolean getOut = false;
+        boolean fullScreen;
+        byte choice;
+
+        while (!getOut)
+        {
+            fullScreen = ((io.doesPositioning()) &&
+                          (ScreenTemplate.getTemplate("mainmenu") == null));
+
+            if (fullScreen)
+                drawMainMenu();
+            else
+            {
+                io.sendln();
+                showScreen("mainmenu",
+                           "Main : [M]essage boards, [E]mail, [F]iles, " +
+                           "[Q]WK, [D]oors, [C]hat, [G]oodbye ? ");
+            } // else
+
+            choice = JBBS.asciiByteToLower(io.recv());
+            if ((fullScreen) && (MAINMENU_KEYS.indexOf(choice) != -1))
+            {
+                io.clearTerminal();     // the choice gets the screen...
+                getScreen().invalidate();   // ...so redraw it all after.
+            } // if
+
+            switch (choice)
+            {
+                case 'm':
+                    io.sendln("message boards");
+                    MessageBoard.doMessageBoards(this);
+                    break;
+
+                case 'e':
+                    io.sendln("email");
+                    MailBox.doMail(this);
+                    break;
+
+                case 'f':
+                    io.sendln("files");
+                    FileArea.doFileAreas(this);
+                    break;
+
+                case 'q':
+                    io.sendln("QWK offline mail");
+                    QWKPacket.doQWK(this);
+                    break;
+
+                case 'd':
+                    io.sendln("doors");
+                    Door.doDoors(this);
+                    break;
+
+                case 'c':
+                    io.sendln("chat");
+                    ChatRoom.doChat(this);
+                    break;
+
+                case 'g':
+                    io.sendln("goodbye");
+                    getOut = true;
+                    break;
+
+                default:
+                    if (!fullScreen)
+                        io.sendln();
+                    break;
+            } // switch
+        } // while
+    } // mainMenu
+
+
         /**
          * Code drops here after a successful connection has been
          *  made, and a terminal type has been configured.
@@ -330,13 +770,15 @@ public class OnlineSession implements Runnable
     {
         byte readIn;
         
-        io.sendln("Connected with " + io.getTermEmulName() + " terminal.");
-        io.sendln();
-        io.sendln(JBBSConfig.BBSName);
-        io.sendln("  Please Login.");
+        showScreen("banner", "Connected with " + io.getTermEmulName() +
+                             " terminal.\r\n\r\n" + JBBSConfig.BBSName +
+                             "\r\n  Please Login.\r\n");
 
         if (login() == true)
+        {
             sessionIntro();
+            mainMenu();
+        } // if
     } // beginSession
 
 
@@ -348,18 +790,38 @@ public class OnlineSession implements Runnable
          */
     public void run()
     {
+        DisconnectEvent gone = new DisconnectEvent();
+        String reason = "Logged off";
+
         try
         {
             beginSession();
-            closeConnection();
-            ConnectionManager.removeSession(this);
         } // try
 
         catch (LostCarrierException e)
         {
-            //if (JBBSConfig.logLostCarrierExceptions)   !!!
-            //    JBBSLog.add("LostCarrierException", e.getDetails());
+            reason = e.getMessage();
+            if (JBBSConfig.logLostCarrierExceptions)
+            {
+                JBBSLog.add(JBBSLog.PRIORITY_INFO, "LostCarrierException",
+                            e.getMessage(), e.getDetails());
+            } // if
         } // catch
+
+        finally     // the slot's free, however they left.
+        {
+            gone.begin();
+            closeConnection();
+            ConnectionManager.removeSession(this);
+
+            if (gone.shouldCommit())
+            {
+                gone.user = (user == null) ? null : user.getHandle();
+                gone.reason = reason;
+                gone.connected = (System.nanoTime() - connectTime) / 1000000;
+                gone.commit();
+            } // if
+        } // finally
     } // run
 
 } // OnlineSession
@@ -0,0 +1,626 @@
+/**
+ *  Asynchronous output for a SocketStream.
+ *
+ *  Everything bound for a user goes through one of these: the session's
+ *   own output (SocketStream's send() methods write to it like any other
+ *   OutputStream), plus anything other sessions hand over with
+ *   SocketStream.deliver() (chat, broadcasts, notices, etc). A writer
+ *   thread feeds it all to the socket at whatever speed the client can
+ *   handle, so nobody but the session itself ever waits on a user's
+ *   connection.
+ *
+ *  The queue has a high-water mark, JBBSConfig.outputHighWater bytes.
+ *   When a client falls that far behind, what happens to the next thing
+ *   queued depends on what type of output it is:
+ *
+ *     POLICY_WAIT       == caller waits for the queue to drain. This is
+ *                          what a session's own output does, so send()
+ *                          still behaves like the old blocking write.
+ *     POLICY_DROP       == it's thrown out, and counted.
+ *     POLICY_COALESCE   == it replaces any of its type still waiting in
+ *                          the queue, so there's never more than one.
+ *                          (This happens even under the high-water mark.)
+ *     POLICY_DISCONNECT == user is hopeless; connection is closed.
+ *
+ *  Delivered arrays are queued as-is, not copied, so one array can be
+ *   shared by every recipient of a message. Don't modify an array after
+ *   you've queued it. A session's own writes are copied (callers reuse
+ *   their buffers), and small ones are packed together.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.net.Socket;
+
+public class OutputQueue extends OutputStream implements Runnable
+{
+        // Constants...
+    public final static int TYPE_SESSION   = 0;    // session's own output.
+    public final static int TYPE_CHAT      = 1;
+    public final static int TYPE_BROADCAST = 2;
+    public final static int TYPE_NOTICE    = 3;
+    public final static int TYPE_COUNT     = 4;
+
+    public final static int POLICY_WAIT       = 0;
+    public final static int POLICY_DROP       = 1;
+    public final static int POLICY_COALESCE   = 2;
+    public final static int POLICY_DISCONNECT = 3;
+
+    protected final static int MIN_CHUNK   = 512;   // bytes.
+    protected final static int LEN_STAGING = 4096;  // bytes.
+
+        // Static class variables...
+    protected static int[] policies = { POLICY_WAIT,        // TYPE_SESSION
+                                        POLICY_DROP,        // TYPE_CHAT
+                                        POLICY_DISCONNECT,  // TYPE_BROADCAST
+                                        POLICY_COALESCE };  // TYPE_NOTICE
+
+        // Instance variables...
+    protected Socket socket;                    // closed on disconnect.
+    protected OutputStream sink;                // where bytes are going.
+    protected int highWater;                    // in bytes.
+    protected byte[][] chunks = new byte[16][]; // queued arrays...
+    protected int[] lens = new int[16];         //  ...bytes used in each...
+    protected int[] types = new int[16];        //  ...TYPE_* of each...
+    protected boolean[] owned = new boolean[16];//  ...and can we add to it?
+    protected int head = 0;                     // next chunk to write.
+    protected int count = 0;                    // chunks in ring.
+    protected volatile int queuedBytes = 0;     // queued plus being written.
+    protected boolean closed = false;
+    protected boolean held = false;             // dropping deliveries?
+    protected String failure = null;            // why writes failed.
+    protected Thread writerThread;
+    protected SessionStats stats;
+
+        // Statistics...
+    protected volatile int peakBytes = 0;
+    protected volatile long totalBytes = 0;
+    protected int[] dropCounts = new int[TYPE_COUNT];
+    protected int[] coalesceCounts = new int[TYPE_COUNT];
+
+
+        /**
+         *  Change what happens to a type of output when a client falls
+         *   behind. Affects all sessions.
+         *
+         *   @param type One of the TYPE_* constants.
+         *   @param policy One of the POLICY_* constants.
+         */
+    public static synchronized void setPolicy(int type, int policy)
+    {
+        if ((type >= 0) && (type < TYPE_COUNT) &&
+            (policy >= POLICY_WAIT) && (policy <= POLICY_DISCONNECT))
+            policies[type] = policy;
+    } // setPolicy
+
+
+    public static synchronized int getPolicy(int type)
+    {
+        return(policies[type]);
+    } // getPolicy
+
+
+        /**
+         *  Constructor; spins a writer thread.
+         *
+         *   @param s Socket being written to. If a client is disconnected
+         *            for being too slow, this gets closed.
+         *   @param _sink Stream to write to; usually s's output stream.
+         *   @param _stats Session's accounting; bytes written and time
+         *                 spent waiting for room go there.
+         */
+    public OutputQueue(Socket s, OutputStream _sink, SessionStats _stats)
+    {
+        socket = s;
+        sink = _sink;
+        stats = _stats;
+        highWater = JBBSConfig.outputHighWater;
+
+        writerThread = new Thread(this, "OutputQueue");
+        writerThread.setDaemon(true);
+        stats.setWriterThread(writerThread);
+        writerThread.start();
+    } // Constructor
+
+
+        /**
+         *  Make room for one more chunk at the end of the ring.
+         *   Call this synchronized.
+         */
+    protected void growRing()
+    {
+        int size = chunks.length * 2;
+        byte[][] newChunks = new byte[size][];
+        int[] newLens = new int[size];
+        int[] newTypes = new int[size];
+        boolean[] newOwned = new boolean[size];
+        int i;
+        int j;
+
+        for (i = 0; i < count; i++)
+        {
+            j = (head + i) % chunks.length;
+            newChunks[i] = chunks[j];
+            newLens[i] = lens[j];
+            newTypes[i] = types[j];
+            newOwned[i] = owned[j];
+        } // for
+
+        chunks = newChunks;
+        lens = newLens;
+        types = newTypes;
+        owned = newOwned;
+        head = 0;
+    } // growRing
+
+
+        /**
+         *  Put a chunk at the end of the ring. Call this synchronized.
+         */
+    protected void append(byte[] bytes, int len, int type, boolean isOwned)
+    {
+        int tail;
+
+        if (count == chunks.length)
+            growRing();
+
+        tail = (head + count) % chunks.length;
+        chunks[tail] = bytes;
+        lens[tail] = len;
+        types[tail] = type;
+        owned[tail] = isOwned;
+        count++;
+
+        queuedBytes += len;
+        totalBytes += len;
+        if (queuedBytes > peakBytes)
+            peakBytes = queuedBytes;
+
+        notifyAll();
+    } // append
+
+
+        /**
+         *  Throw the connection away. Call this synchronized.
+         */
+    protected void fail(String why)
+    {
+        if (failure == null)
+            failure = why;
+
+        while (count > 0)
+        {
+            chunks[head] = null;
+            head = (head + 1) % chunks.length;
+            count--;
+        } // while
+
+        queuedBytes = 0;
+        notifyAll();
+    } // fail
+
+
+        /**
+         *  Queue an array that someone else built, and may be sharing
+         *   with other queues. Never blocks on the network, no matter
+         *   what the type's policy is; POLICY_WAIT is treated like
+         *   POLICY_DROP here.
+         *
+         *   @param bytes Array to write. This is NOT copied.
+         *   @param type One of the TYPE_* constants.
+         *  @return <em>true</em> if queued, <em>false</em> if dropped or
+         *          the connection is gone.
+         */
+    public boolean deliver(byte[] bytes, int type)
+    {
+        boolean disconnect = false;
+        int policy = getPolicy(type);
+        int i;
+        int j;
+
+        synchronized (this)
+        {
+            if ((closed) || (failure != null))
+                return(false);
+
+            if (held)
+            {
+                dropCounts[type]++;
+                return(false);
+            } // if
+
+            if (policy == POLICY_COALESCE)
+            {
+                for (i = 0; i < count; i++)
+                {
+                    j = (head + i) % chunks.length;
+                    if (types[j] == type)
+                    {
+                        queuedBytes += (bytes.length - lens[j]);
+                        chunks[j] = bytes;
+                        lens[j] = bytes.length;
+                        owned[j] = false;
+                        coalesceCounts[type]++;
+                        return(true);
+                    } // if
+                } // for
+            } // if
+
+            else if (queuedBytes + bytes.length > highWater)
+            {
+                if (policy == POLICY_DISCONNECT)
+                {
+                    fail("Output queue overflow.");
+                    disconnect = true;
+                } // if
+                else
+                {
+                    dropCounts[type]++;
+                    return(false);
+                } // else
+            } // else if
+
+            if (!disconnect)
+                append(bytes, bytes.length, type, false);
+        } // synchronized
+
+        if (disconnect)         // close outside the lock; could be slow.
+        {
+            try
+            {
+                socket.close();
+            } // try
+            catch (IOException e)
+            {
+                // don't care.
+            } // catch
+            return(false);
+        } // if
+
+        return(true);
+    } // deliver
+
+
+        // OutputStream implementation. These are the session's own
+        //  output, TYPE_SESSION, and they're copied.
+
+    public void write(int b) throws IOException
+    {
+        byte[] one = new byte[1];
+
+        one[0] = (byte) b;
+        write(one, 0, 1);
+    } // write (one byte)
+
+
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        int policy = getPolicy(TYPE_SESSION);
+        long start = 0;
+        int tail;
+        byte[] chunk;
+
+        synchronized (this)
+        {
+            if (policy == POLICY_WAIT)
+            {
+                while ((queuedBytes + len > highWater) && (queuedBytes > 0) &&
+                       (failure == null) && (!closed))
+                {
+                    if (start == 0)
+                        start = System.nanoTime();
+
+                    try
+                    {
+                        wait();
+                    } // try
+                    catch (InterruptedException e)
+                    {
+                        // don't care.
+                    } // catch
+                } // while
+
+                if (start != 0)
+                    stats.addBlocked(System.nanoTime() - start);
+            } // if
+
+            if (failure != null)
+                throw(new IOException(failure));
+
+            if (closed)
+                throw(new IOException("Output queue closed."));
+
+            if ((policy != POLICY_WAIT) && (queuedBytes + len > highWater))
+            {
+                if (policy != POLICY_DISCONNECT)
+                {
+                    dropCounts[TYPE_SESSION]++;
+                    return;
+                } // if
+
+                fail("Output queue overflow.");
+                socket.close();
+                throw(new IOException(failure));
+            } // if
+
+                // Pack onto the last chunk, if it's ours and has room...
+            if (count > 0)
+            {
+                tail = (head + count - 1) % chunks.length;
+                if ((owned[tail]) && (chunks[tail].length - lens[tail] >= len))
+                {
+                    System.arraycopy(b, off, chunks[tail], lens[tail], len);
+                    lens[tail] += len;
+                    queuedBytes += len;
+                    totalBytes += len;
+                    if (queuedBytes > peakBytes)
+                        peakBytes = queuedBytes;
+                    notifyAll();
+                    return;
+                } // if
+            } // if
+
+            chunk = new byte[Math.max(len, MIN_CHUNK)];
+            System.arraycopy(b, off, chunk, 0, len);
+            append(chunk, len, TYPE_SESSION, true);
+        } // synchronized
+    } // write (byte array range)
+
+
+        /**
+         *  While held, deliver() drops everything, and the session's own
+         *   output has the stream to itself.
+         *
+         *   @param hold <em>true</em> to hold, <em>false</em> to allow.
+         */
+    public synchronized void holdDeliveries(boolean hold)
+    {
+        held = hold;
+    } // holdDeliveries
+
+
+        /**
+         *  Wait until everything queued has been written, or the queue
+         *   fails.
+         *
+         *   @param timeout Milliseconds to wait, at most.
+         */
+    public synchronized void drain(long timeout)
+    {
+        long endTime = System.currentTimeMillis() + timeout;
+        long now;
+
+        while ((queuedBytes > 0) && (failure == null))
+        {
+            now = System.currentTimeMillis();
+            if (now >= endTime)
+                break;
+
+            try
+            {
+                wait(endTime - now);
+            } // try
+            catch (InterruptedException e)
+            {
+                break;
+            } // catch
+        } // while
+    } // drain
+
+
+        /**
+         *  Throw out anything waiting, and stop the writer thread.
+         *   Call drain() first if you want the user to see it.
+         */
+    public synchronized void close()
+    {
+        closed = true;
+        fail("Output queue closed.");
+    } // close
+
+
+        /**
+         *  Get the stream this queue writes to.
+         */
+    public synchronized OutputStream getSink()
+    {
+        return(sink);
+    } // getSink
+
+
+        /**
+         *  Start writing to a different stream (one that filters the old
+         *   one, usually). Waits until everything queued so far has been
+         *   written to the old one, so nothing is half in each.
+         *
+         *   @param _sink New stream to write to.
+         */
+    public synchronized void setSink(OutputStream _sink)
+    {
+        while ((queuedBytes > 0) && (failure == null))
+        {
+            try
+            {
+                wait();
+            } // try
+            catch (InterruptedException e)
+            {
+                // don't care.
+            } // catch
+        } // while
+
+        sink = _sink;
+    } // setSink
+
+
+        // Statistics. Only getChunkCount() takes the lock; the rest are
+        //  for the console, which mustn't make a session wait just to
+        //  look at it. The drop and coalesce counts are read racily, so
+        //  they can be a moment behind; that's fine for a display.
+
+    public int getDepth()
+    {
+        return(queuedBytes);
+    } // getDepth
+
+
+    public synchronized int getChunkCount()
+    {
+        return(count);
+    } // getChunkCount
+
+
+    public int getPeakDepth()
+    {
+        return(peakBytes);
+    } // getPeakDepth
+
+
+    public long getTotalBytes()
+    {
+        return(totalBytes);
+    } // getTotalBytes
+
+
+    public int getDropCount(int type)
+    {
+        return(dropCounts[type]);
+    } // getDropCount
+
+
+    public int getDropCount()
+    {
+        int retVal = 0;
+        int i;
+
+        for (i = 0; i < TYPE_COUNT; i++)
+            retVal += dropCounts[i];
+
+        return(retVal);
+    } // getDropCount (all types)
+
+
+    public int getCoalesceCount()
+    {
+        int retVal = 0;
+        int i;
+
+        for (i = 0; i < TYPE_COUNT; i++)
+            retVal += coalesceCounts[i];
+
+        return(retVal);
+    } // getCoalesceCount
+
+
+        // Runnable implementation...
+
+        /**
+         *  The writer thread. Takes everything queued at once, and writes
+         *   it with as few writes to the sink as it can: small chunks are
+         *   packed into a staging buffer, big ones go straight through.
+         */
+    public void run()
+    {
+        byte[] staging = new byte[LEN_STAGING];
+        OutputStream to;
+        byte[][] batch = new byte[16][];
+        int[] batchLens = new int[16];
+        int batchCount;
+        int batchBytes;
+        int staged;
+        int i;
+
+        while (true)    // loop until closed.
+        {
+            synchronized (this)
+            {
+                while ((count == 0) && (failure == null))
+                {
+                    try
+                    {
+                        wait();
+                    } // try
+                    catch (InterruptedException e)
+                    {
+                        // don't care.
+                    } // catch
+                } // while
+
+                if (failure != null)
+                    return;
+
+                to = sink;      // setSink() waits for us to finish with it.
+
+                if (batch.length < count)
+                {
+                    batch = new byte[chunks.length][];
+                    batchLens = new int[chunks.length];
+                } // if
+
+                batchBytes = 0;
+                for (batchCount = 0; count > 0; batchCount++)
+                {
+                    batch[batchCount] = chunks[head];
+                    batchLens[batchCount] = lens[head];
+                    batchBytes += lens[head];
+                    chunks[head] = null;
+                    head = (head + 1) % chunks.length;
+                    count--;
+                } // for
+            } // synchronized
+
+            try
+            {
+                staged = 0;
+                for (i = 0; i < batchCount; i++)
+                {
+                    if (staged + batchLens[i] > staging.length)
+                    {
+                        if (staged > 0)
+                            to.write(staging, 0, staged);
+                        staged = 0;
+                    } // if
+
+                    if (batchLens[i] > staging.length)
+                        to.write(batch[i], 0, batchLens[i]);
+                    else
+                    {
+                        System.arraycopy(batch[i], 0, staging, staged,
+                                         batchLens[i]);
+                        staged += batchLens[i];
+                    } // else
+
+                    batch[i] = null;
+                } // for
+
+                if (staged > 0)
+                    to.write(staging, 0, staged);
+                to.flush();
+                JBBSMetrics.bytesOut.add(batchBytes);
+                stats.addBytesOut(batchBytes);
+            } // try
+
+            catch (IOException e)
+            {
+                synchronized (this)
+                {
+                    fail(e.getMessage());  // session will hear on next send.
+                } // synchronized
+                return;
+            } // catch
+
+            synchronized (this)
+            {
+                if (failure == null)
+                    queuedBytes -= batchBytes;
+                notifyAll();
+            } // synchronized
+        } // while
+    } // run
+
+} // OutputQueue
+
+// end of OutputQueue.java ...
+
@@ -0,0 +1,611 @@
+/**
+ *  QWK offline mail. Builds packets of a user's new messages, and merges
+ *   their reply (.REP) packets back onto the boards.
+ *
+ *  Packets are streamed: messages are read from the boards one at a
+ *   time, and go straight into the zip file as 128 byte QWK blocks, so
+ *   building a packet takes the same memory for ten messages as for ten
+ *   thousand. Packing and merging run on the BulkWorker pool, not the
+ *   session's thread, so big packets wait their turn instead of taking
+ *   the machine away from people who are online.
+ *
+ *  A packet starts after the user's last-read pointers, and the pointers
+ *   only move once the packet has actually been downloaded.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.zip.*;
+
+public class QWKPacket implements Runnable
+{
+        // Constants...
+    public final static int LEN_BLOCK = 128;
+    public final static int LEN_BUFFER = 32768;
+    public final static int MAX_PACKET_MESSAGES = 5000;
+        // A reply's text is stored with writeUTF(), two bytes a char at
+        //  worst, and it can't take over 65535 bytes; so under 32k chars.
+    public final static int MAX_REPLY_BLOCKS = 255;
+    public final static byte QWK_NEWLINE = (byte) 0xE3;
+    public final static byte QWK_ACTIVE = (byte) 0xE1;
+    public final static String DEFAULT_BBSID = "JBBS";
+    public final static String PREFIX_WORKDIR = "qwk.";
+    public final static String EXT_FAILED = ".failed";
+    public final static String PRODUCED_BY =
+                     "Produced by Qmail...Copyright (c) 1987 by Sparkware.  " +
+                     "All Rights Reserved";
+
+    public final static int MODE_BUILD = 0;
+    public final static int MODE_MERGE = 1;
+
+        // Instance variables...
+    protected int mode;
+    protected JBBSUser user;
+    protected File file;                 // packet to build, or to merge.
+    protected int[] lastRead;            // where each board's packet ends.
+    protected int messageCount = 0;      // packed, or merged.
+    protected boolean success = false;
+    protected boolean done = false;
+    protected byte[] block = new byte[LEN_BLOCK];
+    protected byte[] text = new byte[LEN_BUFFER];   // one message's body.
+    protected int textLen = 0;
+
+
+    protected QWKPacket(int _mode, JBBSUser _user, File _file)
+    {
+        mode = _mode;
+        user = _user;
+        file = _file;
+    } // Constructor
+
+
+        /**
+         *  The BBS's packet ID: up to 8 letters and digits from its name.
+         */
+    public static String getBBSID()
+    {
+        StringBuffer retVal = new StringBuffer();
+        char ch;
+        int i;
+
+        for (i = 0; (i < JBBSConfig.BBSName.length()) &&
+                    (retVal.length() < 8); i++)
+        {
+            ch = Character.toUpperCase(JBBSConfig.BBSName.charAt(i));
+            if (((ch >= 'A') && (ch <= 'Z')) || ((ch >= '0') && (ch <= '9')))
+                retVal.append(ch);
+        } // for
+
+        return((retVal.length() == 0) ? DEFAULT_BBSID : retVal.toString());
+    } // getBBSID
+
+
+        // Runnable implementation; this runs on a BulkWorker...
+
+    public void run()
+    {
+        try
+        {
+            if (mode == MODE_BUILD)
+                success = build();
+            else
+                success = merge();
+        } // try
+
+        finally
+        {
+            synchronized (this)
+            {
+                done = true;
+                notifyAll();
+            } // synchronized
+        } // finally
+    } // run
+
+
+    protected synchronized void waitFor()
+    {
+        while (!done)
+        {
+            try
+            {
+                wait();
+            } // try
+            catch (InterruptedException e)
+            {
+                // don't care.
+            } // catch
+        } // while
+    } // waitFor
+
+
+        // Packet building...
+
+        /**
+         *  Copy a string into the current block, left-justified and
+         *   padded with spaces.
+         */
+    protected void putField(int off, int len, String str)
+    {
+        int i;
+
+        for (i = 0; i < len; i++)
+        {
+            if (i < str.length())
+                block[off + i] = (byte) str.charAt(i);
+            else
+                block[off + i] = (byte) ' ';
+        } // for
+    } // putField
+
+
+    protected boolean build()
+    {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("MM-dd-yyHH:mm");
+        ZipOutputStream zip = null;
+        MessageBoard board;
+        BoardMessage msg;
+        int conf;
+        int num;
+
+        lastRead = LastRead.getAll(user.getNumber());
+
+        try
+        {
+            zip = new ZipOutputStream(new BufferedOutputStream(
+                                new FileOutputStream(file), LEN_BUFFER));
+
+            zip.putNextEntry(new ZipEntry("MESSAGES.DAT"));
+            putField(0, LEN_BLOCK, PRODUCED_BY);
+            zip.write(block);
+
+            for (conf = 1; conf <= MessageBoard.getBoardCount(); conf++)
+            {
+                board = MessageBoard.getBoard(conf);
+                num = lastRead[conf] + 1;
+                while ((num <= board.getMessageCount()) &&
+                       (messageCount < MAX_PACKET_MESSAGES))
+                {
+                    msg = board.read(num);
+                    if (msg != null)
+                        writeMessage(zip, conf, msg, dateFormat);
+                    lastRead[conf] = num++;
+                } // while
+            } // for
+
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry("CONTROL.DAT"));
+            writeControl(zip);
+            zip.closeEntry();
+
+            zip.close();
+            zip = null;
+        } // try
+
+        catch (IOException e)
+        {
+            if (zip != null)
+            {
+                try
+                {
+                    zip.close();
+                } // try
+                catch (IOException ioe)
+                {
+                    // don't care.
+                } // catch
+            } // if
+
+            file.delete();
+            return(false);
+        } // catch
+
+        return(true);
+    } // build
+
+
+    protected void writeMessage(OutputStream out, int conf, BoardMessage msg,
+                                SimpleDateFormat dateFormat)
+                                            throws IOException
+    {
+        String body = msg.getBody();
+        String stamp = dateFormat.format(new Date(msg.getPostTime()));
+        byte[] bigger;
+        int blocks;
+        int i;
+        char ch;
+
+            // Body first, so we know how many blocks it takes.
+        textLen = 0;
+        for (i = 0; i < body.length(); i++)
+        {
+            ch = body.charAt(i);
+            if (ch == '\r')
+                continue;
+
+            if (textLen == text.length)
+            {
+                bigger = new byte[text.length * 2];
+                System.arraycopy(text, 0, bigger, 0, textLen);
+                text = bigger;
+            } // if
+
+            if (ch == '\n')
+                text[textLen++] = QWK_NEWLINE;
+            else
+                text[textLen++] = (byte) ((ch < 256) ? ch : '?');
+        } // for
+
+        blocks = 1 + ((textLen + LEN_BLOCK - 1) / LEN_BLOCK);
+        messageCount++;
+
+        putField(0, 1, " ");
+        putField(1, 7, "" + msg.getNumber());
+        putField(8, 8, stamp.substring(0, 8));
+        putField(16, 5, stamp.substring(8));
+        putField(21, 25, msg.getTo().toUpperCase());
+        putField(46, 25, msg.getHandle().toUpperCase());
+        putField(71, 25, msg.getSubject());
+        putField(96, 12, "");
+        putField(108, 8, (msg.getParent() == 0) ? "" : "" + msg.getParent());
+        putField(116, 6, "" + blocks);
+        block[122] = QWK_ACTIVE;
+        block[123] = (byte) conf;
+        block[124] = (byte) (conf >>> 8);
+        block[125] = (byte) messageCount;
+        block[126] = (byte) (messageCount >>> 8);
+        block[127] = (byte) ' ';
+        out.write(block);
+
+        out.write(text, 0, textLen);
+        i = textLen % LEN_BLOCK;
+        if (i > 0)                  // pad out the last block.
+        {
+            putField(0, LEN_BLOCK - i, "");
+            out.write(block, 0, LEN_BLOCK - i);
+        } // if
+    } // writeMessage
+
+
+    protected void writeControl(OutputStream out) throws IOException
+    {
+        SimpleDateFormat dateFormat =
+                             new SimpleDateFormat("MM-dd-yyyy,HH:mm:ss");
+        PrintWriter control = new PrintWriter(new OutputStreamWriter(out));
+        MessageBoard board;
+        int conf;
+
+        control.print(JBBSConfig.BBSName + "\r\n");
+        control.print("\r\n");                              // city.
+        control.print("\r\n");                              // phone.
+        control.print("Sysop\r\n");
+        control.print("00000," + getBBSID() + "\r\n");
+        control.print(dateFormat.format(new Date()) + "\r\n");
+        control.print(user.getHandle().toUpperCase() + "\r\n");
+        control.print("\r\n");                              // menu file.
+        control.print("0\r\n");
+        control.print(messageCount + "\r\n");
+        control.print((MessageBoard.getBoardCount() - 1) + "\r\n");
+
+        for (conf = 1; conf <= MessageBoard.getBoardCount(); conf++)
+        {
+            board = MessageBoard.getBoard(conf);
+            control.print(conf + "\r\n");
+            control.print(board.getName() + "\r\n");
+        } // for
+
+        control.print("HELLO\r\nNEWS\r\nGOODBYE\r\n");
+        control.flush();    // don't close; that would close the zip.
+    } // writeControl
+
+
+        // Reply merging...
+
+    protected String getField(int off, int len)
+    {
+        return(new String(block, off, len).trim());
+    } // getField
+
+
+    protected int getNumberField(int off, int len)
+    {
+        try
+        {
+            return(Integer.parseInt(getField(off, len)));
+        } // try
+        catch (NumberFormatException e)
+        {
+            return(-1);
+        } // catch
+    } // getNumberField
+
+
+        /**
+         *  Read the .MSG file out of a reply packet, and post every reply
+         *   in it. Replies are gathered up per board, and each board gets
+         *   them all in one append.
+         */
+    protected boolean merge()
+    {
+        Hashtable byBoard = new Hashtable();    // conf -> Vector of msgs.
+        ZipFile zip = null;
+        ZipEntry entry = null;
+        DataInputStream in;
+        Enumeration e;
+        Integer conf;
+        Vector replies;
+        BoardMessage[] batch;
+        MessageBoard board;
+        int blocks;
+        int parent;
+        int i;
+
+        try
+        {
+            zip = new ZipFile(file);
+            for (e = zip.entries(); e.hasMoreElements(); )
+            {
+                entry = (ZipEntry) e.nextElement();
+                if (entry.getName().toUpperCase().endsWith(".MSG"))
+                    break;
+                entry = null;
+            } // for
+
+            if (entry == null)
+                throw(new IOException("No .MSG file in reply packet."));
+
+            in = new DataInputStream(new BufferedInputStream(
+                                     zip.getInputStream(entry), LEN_BUFFER));
+            in.readFully(block);     // header block; BBS ID.
+
+            while (true)
+            {
+                try
+                {
+                    in.readFully(block);
+                } // try
+                catch (EOFException eof)
+                {
+                    break;
+                } // catch
+
+                    // In replies, the message number field is the board.
+                conf = Integer.valueOf(getNumberField(1, 7));
+                board = MessageBoard.getBoard(conf.intValue());
+                blocks = getNumberField(116, 6) - 1;
+                if ((blocks < 0) || (blocks > MAX_REPLY_BLOCKS))
+                    break;          // garbage; stop here.
+
+                if (text.length < blocks * LEN_BLOCK)
+                    text = new byte[blocks * LEN_BLOCK];
+                in.readFully(text, 0, blocks * LEN_BLOCK);
+
+                if (board == null)
+                    continue;       // no such board; drop it.
+
+                parent = getNumberField(108, 8);
+                if ((parent < 0) || (parent > board.getMessageCount()))
+                    parent = 0;
+
+                replies = (Vector) byBoard.get(conf);
+                if (replies == null)
+                {
+                    replies = new Vector();
+                    byBoard.put(conf, replies);
+                } // if
+
+                replies.addElement(new BoardMessage(user,
+                                                    getField(21, 25),
+                                                    getField(71, 25),
+                                                    replyText(blocks),
+                                                    parent));
+            } // while
+
+            zip.close();
+            zip = null;
+        } // try
+
+        catch (IOException ioe)
+        {
+            if (zip != null)
+            {
+                try
+                {
+                    zip.close();
+                } // try
+                catch (IOException ioe2)
+                {
+                    // don't care.
+                } // catch
+            } // if
+
+            return(false);
+        } // catch
+
+        for (e = byBoard.keys(); e.hasMoreElements(); )
+        {
+            conf = (Integer) e.nextElement();
+            replies = (Vector) byBoard.get(conf);
+            batch = new BoardMessage[replies.size()];
+            replies.copyInto(batch);
+
+            i = MessageBoard.getBoard(conf.intValue()).post(batch);
+            if (i < 0)
+                return(false);      // keep the packet; see uploadReplies().
+            messageCount += i;
+        } // for
+
+        return(true);
+    } // merge
+
+
+        /**
+         *  Turn a reply's body blocks (in text[]) back into our format.
+         */
+    protected String replyText(int blocks)
+    {
+        StringBuffer retVal = new StringBuffer(blocks * LEN_BLOCK);
+        int len = blocks * LEN_BLOCK;
+        int i;
+
+        while ((len > 0) && ((text[len - 1] == ' ') ||
+                             (text[len - 1] == 0) ||
+                             (text[len - 1] == QWK_NEWLINE)))
+            len--;
+
+        for (i = 0; i < len; i++)
+        {
+            if (text[i] == QWK_NEWLINE)
+                retVal.append("\r\n");
+            else
+                retVal.append((char) (text[i] & 0xFF));
+        } // for
+
+        if (len > 0)
+            retVal.append("\r\n");
+
+        return(retVal.toString());
+    } // replyText
+
+
+        // Online UI...
+
+    public static void doQWK(OnlineSession session)
+                               throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        File dir = new File(JBBSConfig.dataDir + PREFIX_WORKDIR +
+                            session.user.getNumber());
+        boolean getOut = false;
+
+        if ((!dir.isDirectory()) && (!dir.mkdirs()))
+        {
+            io.sendln("Offline mail isn't available right now.");
+            return;
+        } // if
+
+        while (!getOut)
+        {
+            io.sendln();
+            io.send("QWK : [D]ownload new messages, [U]pload replies, " +
+                    "[Q]uit ? ");
+
+            switch (JBBS.asciiByteToLower(io.recv()))
+            {
+                case 'd':
+                    io.sendln("download");
+                    downloadPacket(session, dir);
+                    break;
+
+                case 'u':
+                    io.sendln("upload");
+                    uploadReplies(session, dir);
+                    break;
+
+                case 'q':
+                    io.sendln("quit");
+                    getOut = true;
+                    break;
+            } // switch
+        } // while
+    } // doQWK
+
+
+        /**
+         *  Run a job on the BulkWorker pool, and wait for it.
+         *
+         *  @return <em>false</em> if the pool's too busy to take it.
+         */
+    protected static boolean runJob(SocketStream io, QWKPacket job)
+                                        throws LostCarrierException
+    {
+        if (!BulkWorker.submit(job))
+        {
+            io.sendln("The packer is busy. Try again in a few minutes.");
+            return(false);
+        } // if
+
+        job.waitFor();
+        return(true);
+    } // runJob
+
+
+    protected static void downloadPacket(OnlineSession session, File dir)
+                                           throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        File packet = new File(dir, getBBSID() + ".QWK");
+        QWKPacket job = new QWKPacket(MODE_BUILD, session.user, packet);
+
+        io.sendln("Packing new messages...");
+        if (!runJob(io, job))
+            return;
+
+        if (!job.success)
+            io.sendln("Couldn't build your packet!");
+        else if (job.messageCount == 0)
+            io.sendln("No new messages.");
+        else
+        {
+            io.sendln(job.messageCount + " messages packed.");
+            if (FileTransfer.download(session, packet))
+                LastRead.advance(session.user.getNumber(), job.lastRead);
+        } // else
+
+        packet.delete();
+    } // downloadPacket
+
+
+    protected static void uploadReplies(OnlineSession session, File dir)
+                                          throws LostCarrierException
+    {
+        SocketStream io = session.getSocketStream();
+        String[] received = FileTransfer.upload(session, dir);
+        QWKPacket job;
+        File rep;
+        int i;
+
+        for (i = 0; i < received.length; i++)
+        {
+            rep = new File(dir, received[i]);
+            if (received[i].toUpperCase().endsWith(".REP"))
+            {
+                job = new QWKPacket(MODE_MERGE, session.user, rep);
+                io.sendln("Posting replies from " + received[i] + "...");
+                if (runJob(io, job))
+                {
+                    if (job.messageCount > 0)
+                        io.sendln(job.messageCount + " replies posted.");
+
+                    if (!job.success)
+                    {
+                        io.sendln("Couldn't post " + ((job.messageCount > 0) ?
+                                  "the rest of the" : "the") + " replies in " +
+                                  received[i] + "!");
+                        io.sendln("It's been kept for the sysop to look at.");
+                        JBBSLog.add(JBBSLog.PRIORITY_WARNING, "QWK",
+                                    "Couldn't merge " + received[i] + " from " +
+                                    session.user.getHandle() + ".");
+                        rep.renameTo(new File(dir, received[i] + "." +
+                                     System.currentTimeMillis() + EXT_FAILED));
+                    } // if
+                    else if (job.messageCount == 0)
+                        io.sendln("There were no replies in it.");
+                } // if
+            } // if
+            else
+                io.sendln(received[i] + " isn't a reply packet.");
+
+            rep.delete();       // unless it was kept, above.
+        } // for
+    } // uploadReplies
+
+} // QWKPacket
+
+// end of QWKPacket.java ...
+
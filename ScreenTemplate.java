@@ -0,0 +1,338 @@
+/**
+ *  Screen templates: text files, with colors and blanks to fill in,
+ *   for the sysop to dress up the BBS's banner, prompts and menus.
+ *
+ *  Each template is a file named "screen.<name>" in the data directory.
+ *   In it, {$name} is filled in with a variable (see
+ *   OnlineSession.getScreenVars() for what's there), and a color name in
+ *   braces, like {hiyellow} or {blue}, changes the text color. {{ is a
+ *   plain '{'. Line ends go out as CR/LF, except the last one in the
+ *   file, so a template can end in a prompt.
+ *
+ *  Templates are compiled when they're loaded: for each emulation, all
+ *   the text and colors between variables become one array of bytes,
+ *   ready to send. Showing a template is just sending those arrays,
+ *   with the variables in between. loadTemplates() builds a whole new
+ *   set, and swaps it in at once; sessions showing a template at the
+ *   time finish with the old one.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.util.*;
+
+public class ScreenTemplate
+{
+        // Constants...
+    public final static String PREFIX_TEMPLATE = "screen.";
+
+        // Emulations templates are compiled for; anything else gets Dumb.
+    public final static int EMUL_DUMB = 0;
+    public final static int EMUL_ANSI = 1;
+    public final static int EMUL_AVATAR = 2;
+    public final static String[] EMULATIONS = {
+        DumbTerminal.TERMEMUL_NAME, ANSITerminal.TERMEMUL_NAME,
+        AvatarTerminal.TERMEMUL_NAME
+    };
+
+    public final static String[] COLOR_NAMES = {
+        "black", "red", "green", "yellow", "blue", "magenta", "cyan",
+        "white", "hiblack", "hired", "higreen", "hiyellow", "hiblue",
+        "himagenta", "hicyan", "hiwhite"
+    };
+
+        // Static class variables...
+    protected static volatile Hashtable templates = new Hashtable();
+
+        // Instance variables...
+    protected String name;
+    protected String[] varNames;    // variables, in the order they appear.
+    protected byte[][][] parts;     // [emulation][slice]; one more slice
+                                    //  than there are variables.
+    protected boolean colored = false;
+
+
+        /**
+         *  Compile a template.
+         *
+         *   @param _name Template's name.
+         *   @param text Template's text.
+         */
+    protected ScreenTemplate(String _name, String text)
+    {
+        ByteArrayOutputStream[] slice;
+        Vector vars = new Vector();
+        Vector[] slices;
+        String tag;
+        int color;
+        int close;
+        int e;
+        int i;
+        char ch;
+
+        name = _name;
+
+        slice = new ByteArrayOutputStream[EMULATIONS.length];
+        slices = new Vector[EMULATIONS.length];
+        for (e = 0; e < EMULATIONS.length; e++)
+        {
+            slice[e] = new ByteArrayOutputStream();
+            slices[e] = new Vector();
+        } // for
+
+        for (i = 0; i < text.length(); i++)
+        {
+            ch = text.charAt(i);
+            close = (ch == '{') ? text.indexOf('}', i) : -1;
+            tag = (close == -1) ? null : text.substring(i + 1, close);
+
+            if ((ch == '{') && (i + 1 < text.length()) &&
+                (text.charAt(i + 1) == '{'))
+            {
+                for (e = 0; e < EMULATIONS.length; e++)
+                    slice[e].write('{');
+                i++;
+            } // if
+
+            else if ((tag != null) && (tag.startsWith("$")))
+            {
+                vars.addElement(tag.substring(1).toLowerCase());
+                for (e = 0; e < EMULATIONS.length; e++)
+                {
+                    slices[e].addElement(slice[e].toByteArray());
+                    slice[e].reset();
+                } // for
+                i = close;
+            } // else if
+
+            else if ((tag != null) && ((color = colorFromName(tag)) != -1))
+            {
+                for (e = 0; e < EMULATIONS.length; e++)
+                    writeColor(slice[e], e, color);
+                colored = true;
+                i = close;
+            } // else if
+
+            else if (ch == '\n')
+            {
+                if (i < text.length() - 1)      // last line end is dropped.
+                {
+                    for (e = 0; e < EMULATIONS.length; e++)
+                    {
+                        slice[e].write(SocketStream.ASCII_CR);
+                        slice[e].write(SocketStream.ASCII_LF);
+                    } // for
+                } // if
+            } // else if
+
+            else if (ch != '\r')
+            {
+                for (e = 0; e < EMULATIONS.length; e++)
+                    slice[e].write((byte) ch);
+            } // else if
+        } // for
+
+        if (colored)    // leave things white on black, like we found them.
+        {
+            for (e = 0; e < EMULATIONS.length; e++)
+                writeColor(slice[e], e, SocketStream.TERMCOLOR_WHITE);
+        } // if
+
+        varNames = new String[vars.size()];
+        vars.copyInto(varNames);
+
+        parts = new byte[EMULATIONS.length][][];
+        for (e = 0; e < EMULATIONS.length; e++)
+        {
+            slices[e].addElement(slice[e].toByteArray());
+            parts[e] = new byte[slices[e].size()][];
+            slices[e].copyInto(parts[e]);
+        } // for
+    } // Constructor
+
+
+    protected static int colorFromName(String colorName)
+    {
+        int i;
+
+        for (i = 0; i < COLOR_NAMES.length; i++)
+        {
+            if (COLOR_NAMES[i].equalsIgnoreCase(colorName))
+                return(i);
+        } // for
+
+        return(-1);
+    } // colorFromName
+
+
+        /**
+         *  Write the bytes that set a color, for an emulation. We can't
+         *   know what colors the user had going, so ANSI gets the whole
+         *   thing, from a reset. AVATAR always sets the whole thing.
+         */
+    protected static void writeColor(ByteArrayOutputStream to, int emul,
+                                     int color)
+    {
+        byte[] seq;
+
+        if (emul == EMUL_ANSI)
+        {
+            seq = ANSITerminal.colorSequence(color);
+            to.write(seq, 0, seq.length);
+        } // if
+
+        else if (emul == EMUL_AVATAR)   // ^V ^A attribute.
+        {
+            to.write(CursorTracker.AVT_COMMAND);
+            to.write(1);
+            to.write(color);
+        } // else if
+    } // writeColor
+
+
+        // Loading...
+
+        /**
+         *  Compile every template in the data directory, and swap them in
+         *   for the ones in use. Safe to call while users are online.
+         *
+         *  @return Number of templates loaded.
+         */
+    public static synchronized int loadTemplates()
+    {
+        Hashtable loaded = new Hashtable();
+        File dir = new File(JBBSConfig.dataDir);
+        String[] files = dir.list();
+        byte[] text;
+        DataInputStream in;
+        File file;
+        String name;
+        int i;
+
+        for (i = 0; (files != null) && (i < files.length); i++)
+        {
+            if (!files[i].startsWith(PREFIX_TEMPLATE))
+                continue;
+
+            name = files[i].substring(PREFIX_TEMPLATE.length()).toLowerCase();
+            file = new File(dir, files[i]);
+            try
+            {
+                text = new byte[(int) file.length()];
+                in = new DataInputStream(new FileInputStream(file));
+                try
+                {
+                    in.readFully(text);
+                } // try
+                finally
+                {
+                    in.close();
+                } // finally
+
+                loaded.put(name,
+                           new ScreenTemplate(name,
+                                              new String(text, "ISO-8859-1")));
+            } // try
+
+            catch (IOException e)
+            {
+                System.out.println("Couldn't read template " + file + ".");
+            } // catch
+        } // for
+
+        templates = loaded;     // one write; nobody sees half a set.
+        return(loaded.size());
+    } // loadTemplates
+
+
+    public static int getTemplateCount()
+    {
+        return(templates.size());
+    } // getTemplateCount
+
+
+        /**
+         *  Get a template by name.
+         *
+         *  @return The template, or <em>null</em> if there's no such one.
+         */
+    public static ScreenTemplate getTemplate(String name)
+    {
+        return((ScreenTemplate) templates.get(name.toLowerCase()));
+    } // getTemplate
+
+
+    public String getName()
+    {
+        return(name);
+    } // getName
+
+
+        // Showing...
+
+        /**
+         *  Send this template to a user.
+         *
+         *   @param io Where the user is.
+         *   @param vars Variable values, by name; missing ones are blank.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public void show(SocketStream io, Hashtable vars)
+                                      throws LostCarrierException
+    {
+        String emulName = io.getTermEmulName();
+        byte[][] slices = parts[EMUL_DUMB];
+        Object value;
+        int i;
+
+        for (i = 0; i < EMULATIONS.length; i++)
+        {
+            if (EMULATIONS[i].equals(emulName))
+                slices = parts[i];
+        } // for
+
+        for (i = 0; i < slices.length; i++)
+        {
+            if (slices[i].length > 0)
+                io.send(slices[i]);
+
+            if ((i < varNames.length) && (vars != null))
+            {
+                value = vars.get(varNames[i]);
+                if (value != null)
+                    io.send(value.toString());
+            } // if
+        } // for
+
+        if (colored)
+            io.forgetColors();
+    } // show
+
+
+        /**
+         *  Show a template by name, if there is one.
+         *
+         *   @param io Where the user is.
+         *   @param name Template's name.
+         *   @param vars Variable values, by name; missing ones are blank.
+         *  @return <em>false</em> if there's no such template.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public static boolean show(SocketStream io, String name, Hashtable vars)
+                                                 throws LostCarrierException
+    {
+        ScreenTemplate template = getTemplate(name);
+
+        if (template == null)
+            return(false);
+
+        template.show(io, vars);
+        return(true);
+    } // show (by name)
+
+} // ScreenTemplate
+
+// end of ScreenTemplate.java ...
+
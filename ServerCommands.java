@@ -0,0 +1,455 @@
+/**
+ *  The console commands JBBS comes with. Each instance is one of them
+ *   (which, says which); register() puts them all in ConsoleCommands.
+ *
+ *  Everything here prints to the PrintStream it's handed, so the same
+ *   commands work on whatever console they came in on: the operator's,
+ *   or a remote admin's (see AdminListener). Looking at sessions never
+ *   takes a lock they send or receive under, so it can't hold them up.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.util.StringTokenizer;
+
+public class ServerCommands implements ConsoleCommand
+{
+        // Constants...
+    public final static int CMD_HELP      = 0;
+    public final static int CMD_SHUTDOWN  = 1;
+    public final static int CMD_STATS     = 2;
+    public final static int CMD_GC        = 3;
+    public final static int CMD_SESSIONS  = 4;
+    public final static int CMD_RELOAD    = 5;
+    public final static int CMD_JFR       = 6;
+    public final static int CMD_TOP       = 7;
+    public final static int CMD_BROADCAST = 8;
+    public final static int CMD_KICK      = 9;
+    public final static int CMD_DUMP      = 10;
+    public final static int CMD_FLUSH     = 11;
+
+    public final static int TOP_INTERVAL = 5;          // seconds.
+    public final static int INPUT_POLL = 100;          // milliseconds.
+
+        // Instance variables...
+    protected int which;
+
+
+    public ServerCommands(int _which)
+    {
+        which = _which;
+    } // Constructor
+
+
+        /**
+         *  Register all the built-in commands.
+         */
+    public static void register()
+    {
+        add("help", "help", "this information.", CMD_HELP);
+        add("shutdown", "shutdown", "shutdown BBS server.", CMD_SHUTDOWN);
+        add("stats", "stats [reset]", "give (or zero) current stats.",
+            CMD_STATS);
+        add("gc", "gc", "run garbage collection.", CMD_GC);
+        add("sessions", "sessions", "list sessions and output queues.",
+            CMD_SESSIONS);
+        add("reload", "reload", "reload screen templates.", CMD_RELOAD);
+        add("jfr", "jfr start|stop", "flight recording.", CMD_JFR);
+        add("top", "top [in|out|keys|cpu|alloc|wait] [secs]",
+            "busiest sessions.", CMD_TOP);
+        add("broadcast", "broadcast <msg>", "message all users.",
+            CMD_BROADCAST);
+        add("kick", "kick <node|handle>", "disconnect a user.", CMD_KICK);
+        add("dump", "dump", "everything about every session.", CMD_DUMP);
+        add("flush", "flush", "write out file catalogs and the log.",
+            CMD_FLUSH);
+    } // register
+
+
+    protected static void add(String name, String usage, String description,
+                              int which)
+    {
+        ConsoleCommands.register(name, usage, description,
+                                 new ServerCommands(which));
+    } // add
+
+
+        // ConsoleCommand implementation...
+
+    public boolean execute(String params, PrintStream out, BufferedReader in)
+                                                         throws IOException
+    {
+        switch (which)
+        {
+            case CMD_HELP:
+                ConsoleCommands.printHelp(out);
+                break;
+
+            case CMD_SHUTDOWN:
+                return(confirm("Are you sure?", out, in));
+
+            case CMD_STATS:
+                stats(params, out);
+                break;
+
+            case CMD_GC:
+                gc(out);
+                break;
+
+            case CMD_SESSIONS:
+                listSessions(out);
+                break;
+
+            case CMD_RELOAD:
+                out.println(ScreenTemplate.loadTemplates() +
+                            " screen templates loaded.");
+                break;
+
+            case CMD_JFR:
+                jfr(params, out);
+                break;
+
+            case CMD_TOP:
+                top(params, out, in);
+                break;
+
+            case CMD_BROADCAST:
+                if (params == null)
+                    out.println("Broadcast what?");
+                else
+                {
+                    ChatRoom.broadcast("SysOp", params);
+                    out.println("Sent to " +
+                                ConnectionManager.getCurrentConnectionCount() +
+                                " users.");
+                } // else
+                break;
+
+            case CMD_KICK:
+                kick(params, out);
+                break;
+
+            case CMD_DUMP:
+                dumpSessions(out);
+                break;
+
+            case CMD_FLUSH:
+                FileArea.saveAll();
+                JBBSLog.flush();
+                out.println("File catalogs saved; log flushed.");
+                break;
+        } // switch
+
+        return(false);
+    } // execute
+
+
+        /**
+         *  Ask a yes or no question; no is the default.
+         *
+         *  @return <em>true</em> on yes. No answer at all is no.
+         */
+    public static boolean confirm(String prompt, PrintStream out,
+                                  BufferedReader in) throws IOException
+    {
+        String answer;
+
+        if (in == null)
+            return(false);
+
+        out.print(prompt + " [y/N] : ");
+        out.flush();
+
+        answer = in.readLine();
+        return((answer != null) && (answer.trim().toLowerCase()
+                                          .startsWith("y")));
+    } // confirm
+
+
+    protected static void stats(String params, PrintStream out)
+    {
+        Runtime rt = Runtime.getRuntime();
+        long freeMem = rt.freeMemory();
+
+        if ((params != null) && (params.equalsIgnoreCase("reset")))
+        {
+            JBBSMetrics.reset();
+            out.println("Statistics cleared.");
+            return;
+        } // if
+
+        out.println("  " + JBBS.TITLE + " " + JBBS.versionString());
+        out.println("  Users currently connected : " +
+                    ConnectionManager.getCurrentConnectionCount());
+        out.println("  Total connection since boot : " +
+                    ConnectionManager.getTotalConnectionCount());
+        out.println("  Memory usage : (" + (rt.totalMemory() - freeMem) +
+                    " of " + rt.totalMemory() + " bytes)");
+        out.println("  Uptime : " + JBBS.getUptime());
+        JBBSMetrics.print(out);
+    } // stats
+
+
+    protected static void gc(PrintStream out)
+    {
+        Runtime rt = Runtime.getRuntime();
+        long freeMem = rt.freeMemory();
+
+        out.println("Doing finalization and garbage collection...");
+        rt.runFinalization();
+        rt.gc();
+        out.println("Regained " + (rt.freeMemory() - freeMem) + " bytes.");
+    } // gc
+
+
+    protected static void jfr(String params, PrintStream out)
+    {
+        File recording;
+
+        if ((params != null) && (params.equalsIgnoreCase("start")))
+        {
+            try
+            {
+                out.println("Recording to " + JBBSRecording.start() + ".");
+            } // try
+            catch (IOException e)
+            {
+                out.println("Couldn't start recording [" +
+                            e.getMessage() + "]");
+            } // catch
+        } // if
+
+        else if ((params != null) && (params.equalsIgnoreCase("stop")))
+        {
+            recording = JBBSRecording.stop();
+            if (recording == null)
+                out.println("Nothing's recording.");
+            else
+                out.println("Recording written to " + recording + ".");
+        } // else if
+
+        else
+        {
+            recording = JBBSRecording.getDestination();
+            out.println((recording == null) ? "Not recording." :
+                        "Recording to " + recording + ".");
+        } // else
+    } // jfr
+
+
+        /**
+         *  Show the busiest sessions, again and again, until a line comes
+         *   in (Enter, on a console).
+         *
+         *   @param params What to sort by (default cpu), and seconds
+         *                 between screens, either order.
+         */
+    protected static void top(String params, PrintStream out,
+                              BufferedReader in) throws IOException
+    {
+        int sortBy = SessionStats.SAMPLE_CPU;
+        int seconds = TOP_INTERVAL;
+        StringTokenizer tokens;
+        SessionTop top;
+        String token;
+        int i;
+
+        tokens = new StringTokenizer((params == null) ? "" : params);
+        while (tokens.hasMoreTokens())
+        {
+            token = tokens.nextToken();
+            if (SessionTop.sortKeyFor(token) != -1)
+                sortBy = SessionTop.sortKeyFor(token);
+            else
+            {
+                try
+                {
+                    seconds = Math.max(Integer.parseInt(token), 1);
+                } // try
+                catch (NumberFormatException e)
+                {
+                    out.println("Sort by one of: in, out, keys, " +
+                                "cpu, alloc, wait.");
+                    return;
+                } // catch
+            } // else
+        } // while
+
+        top = new SessionTop(sortBy);
+        if (in == null)     // nobody to say when to stop; once will do.
+        {
+            top.print(out);
+            return;
+        } // if
+
+        out.println("Press Enter to stop.");
+        while (!out.checkError())
+        {
+            top.print(out);
+            out.flush();
+
+            for (i = 0; i < (seconds * 1000) / INPUT_POLL; i++)
+            {
+                if (in.ready())
+                {
+                    in.readLine();
+                    return;
+                } // if
+
+                JBBS.nap(INPUT_POLL);
+            } // for
+        } // while
+    } // top
+
+
+        /**
+         *  Print everyone online, and how their output queues are doing.
+         */
+    protected static void listSessions(PrintStream out)
+    {
+        OnlineSession[] sessions = ConnectionManager.getSessions();
+        SocketStream io;
+        OutputQueue queue;
+        int i;
+
+        out.println("  User                  Term   Queued   Peak" +
+                    "  Dropped  Coalesced  Zip");
+
+        for (i = 0; i < sessions.length; i++)
+        {
+            io = sessions[i].getSocketStream();
+            if (io == null)
+                continue;
+
+            queue = io.getOutputQueue();
+            out.println("  " +
+              JBBS.padString((sessions[i].user == null) ? "(logging in)" :
+                             sessions[i].user.getHandle(), 21) + " " +
+              JBBS.padString(io.getTermEmulName(), 6) + " " +
+              JBBS.padString(Integer.toString(queue.getDepth()), 8) + " " +
+              JBBS.padString(Integer.toString(queue.getPeakDepth()), 6) + " " +
+              JBBS.padString(Integer.toString(queue.getDropCount()), 8) + " " +
+              JBBS.padString(Integer.toString(queue.getCoalesceCount()), 10) +
+              " " + JBBS.compressionString(io.getSocket()));
+        } // for
+
+        out.println("  " + sessions.length + " sessions.");
+    } // listSessions
+
+
+    protected static String handleOf(OnlineSession session)
+    {
+        JBBSUser user = session.user;
+
+        return((user == null) ? "(logging in)" : user.getHandle());
+    } // handleOf
+
+
+        /**
+         *  Hang up on somebody. Their own thread notices, and cleans up
+         *   as if they'd hung up themselves.
+         *
+         *   @param params Node number, or handle.
+         */
+    protected static void kick(String params, PrintStream out)
+    {
+        OnlineSession[] sessions;
+        OnlineSession session = null;
+        SocketStream io;
+        int i;
+
+        if (params == null)
+        {
+            out.println("Kick who? Give a node number or a handle.");
+            return;
+        } // if
+
+        try
+        {
+            session = ConnectionManager.getSessionOnNode(
+                                                Integer.parseInt(params));
+        } // try
+        catch (NumberFormatException e)
+        {
+            sessions = ConnectionManager.getSessions();
+            for (i = 0; (i < sessions.length) && (session == null); i++)
+            {
+                if (handleOf(sessions[i]).equalsIgnoreCase(params))
+                    session = sessions[i];
+            } // for
+        } // catch
+
+        io = (session == null) ? null : session.getSocketStream();
+        if (io == null)
+        {
+            out.println("Nobody like that is online.");
+            return;
+        } // if
+
+        io.hangUp();
+        JBBSLog.add(JBBSLog.PRIORITY_INFO, "Kick", handleOf(session) +
+                    " kicked off node " +
+                    ConnectionManager.getNodeFor(session) + ".");
+        out.println(handleOf(session) + " kicked.");
+    } // kick
+
+
+        /**
+         *  Print everything we know about everyone online, a few lines
+         *   each.
+         */
+    protected static void dumpSessions(PrintStream out)
+    {
+        OnlineSession[] sessions = ConnectionManager.getSessions();
+        long[] sample = new long[SessionStats.SAMPLE_COUNT];
+        SocketStream io;
+        OutputQueue queue;
+        JBBSUser user;
+        int i;
+
+        for (i = 0; i < sessions.length; i++)
+        {
+            io = sessions[i].getSocketStream();
+            if (io == null)
+                continue;       // on the way out.
+
+            user = sessions[i].user;
+            queue = io.getOutputQueue();
+            io.getStats().sample(sample);
+
+            out.println("  Node " + ConnectionManager.getNodeFor(sessions[i]) +
+                        ": " + handleOf(sessions[i]) +
+                        ((user == null) ? "" : " (#" + user.getNumber() + ")") +
+                        ", " + io.getSocket().getInetAddress() + " by " +
+                        OnlineSession.transportName(io.getSocket()) + ", " +
+                        io.getTermEmulName() + ".");
+            out.println("    Online " + JBBSMetrics.formatNanos(
+                              System.nanoTime() - sessions[i].connectTime) +
+                        ". In " + sample[SessionStats.SAMPLE_IN] +
+                        ", out " + sample[SessionStats.SAMPLE_OUT] +
+                        " bytes; " + sample[SessionStats.SAMPLE_KEYS] +
+                        " keys.");
+            out.println("    CPU " + JBBSMetrics.formatNanos(
+                                        sample[SessionStats.SAMPLE_CPU]) +
+                        ", allocated " +
+                        (sample[SessionStats.SAMPLE_ALLOC] / 1024) +
+                        " KB, waited on client " + JBBSMetrics.formatNanos(
+                                        sample[SessionStats.SAMPLE_BLOCKED]) +
+                        ".");
+            out.println("    Queued " + queue.getDepth() + " bytes (peak " +
+                        queue.getPeakDepth() + ", " + queue.getTotalBytes() +
+                        " total); dropped " + queue.getDropCount() +
+                        ", coalesced " + queue.getCoalesceCount() +
+                        "; compression " +
+                        JBBS.compressionString(io.getSocket()) + ".");
+        } // for
+
+        out.println("  " + sessions.length + " sessions.");
+    } // dumpSessions
+
+} // ServerCommands
+
+// end of ServerCommands.java ...
+
@@ -0,0 +1,72 @@
+/**
+ *  The operator's console: reads commands from standard input, on a
+ *   thread of its own, and runs them through ConsoleCommands. Waiting
+ *   for a line is a blocking read, so an idle console costs nothing.
+ *
+ *  If standard input closes (the server was started in the background,
+ *   say), the console goes away and the server keeps running, as if it
+ *   were started with --headless.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+
+public class ServerConsole implements Runnable
+{
+        // Instance variables...
+    protected Thread consoleThread;
+
+
+        /**
+         *  Constructor; starts taking commands.
+         */
+    public ServerConsole()
+    {
+        consoleThread = new Thread(this, "ServerConsole");
+        consoleThread.setDaemon(true);  // don't hold up the JVM's exit.
+        consoleThread.start();
+    } // Constructor
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        String command;
+
+        System.out.println("Type HELP for list of commands.");
+        System.out.println();
+
+        try
+        {
+            while (true)
+            {
+                command = JBBS.readLine(JBBS.CONSOLE_LINEMAX);
+                if (ConsoleCommands.execute(command, System.out,
+                                            JBBS.getConsole()))
+                {
+                    JBBS.requestShutdown();
+                    return;
+                } // if
+            } // while
+        } // try
+
+        catch (EOFException e)
+        {
+            System.out.println("Console closed; running headless.");
+        } // catch
+
+        catch (IOException e)
+        {
+            System.out.println();
+            System.out.println("IOException reading console! [" +
+                               e.getMessage() + "]; running headless.");
+        } // catch
+    } // run
+
+} // ServerConsole
+
+// end of ServerConsole.java ...
+
@@ -0,0 +1,32 @@
+/**
+ *  Flight recorder event: a caller was set up, from accept to getting
+ *   (or not getting) a slot. Negotiation is part of it; the
+ *   EmulationEvent inside it says how much.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import jdk.jfr.*;
+
+@Name("jbbs.SessionAccept")
+@Label("Session Accept")
+@Category({ "JBBS", "Sessions" })
+@StackTrace(false)
+public class SessionAcceptEvent extends Event
+{
+    @Label("Remote Address")
+    public String address;
+
+    @Label("Transport")
+    @Description("telnet, TLS or WebSocket.")
+    public String transport;
+
+    @Label("Accepted")
+    @Description("False if every slot was full.")
+    public boolean accepted;
+
+} // SessionAcceptEvent
+
+// end of SessionAcceptEvent.java ...
+
@@ -0,0 +1,191 @@
+/**
+ *  What one session is costing us: bytes in and out, keystrokes, time
+ *   its thread spent stuck waiting on a slow client, and (from the JVM)
+ *   the CPU time and memory its threads have used. The console's "top"
+ *   command reads these; see SessionTop.
+ *
+ *  Every counter has exactly one thread adding to it at a time, so it's
+ *   a plain volatile add, no locks and no compare-and-set. Reading one
+ *   from another thread is just a volatile read, so looking never slows
+ *   a session down:
+ *
+ *     bytesIn      == the socket's reader (TelnetInputStream, which is
+ *                     synchronized).
+ *     keystrokes   == the session's thread, in SocketStream.recv().
+ *     blockedNanos == the session's thread, in OutputQueue.write().
+ *     bytesOut     == the OutputQueue's writer thread.
+ *
+ *  Sessions live side by side on the heap, and their threads run at the
+ *   same time, so the counters are padded out to their own cache lines:
+ *   the session's, then the writer's, each with 64 bytes of nothing on
+ *   either side. (@Contended would do the same, but only with a JVM
+ *   switch.) The JVM keeps fields of one size in the order they're
+ *   declared, so the padding stays where it's put.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.lang.management.*;
+
+public class SessionStats
+{
+        // Constants: what sample() fills in...
+    public final static int SAMPLE_IN      = 0;     // bytes.
+    public final static int SAMPLE_OUT     = 1;     // bytes.
+    public final static int SAMPLE_KEYS    = 2;
+    public final static int SAMPLE_CPU     = 3;     // nanoseconds.
+    public final static int SAMPLE_ALLOC   = 4;     // bytes.
+    public final static int SAMPLE_BLOCKED = 5;     // nanoseconds.
+    public final static int SAMPLE_COUNT   = 6;
+
+    public final static String[] SAMPLE_NAMES = {
+        "in", "out", "keys", "cpu", "alloc", "wait"
+    };
+
+        // Static class variables...
+    protected static ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    protected static boolean cpuTiming = enableCpuTiming();
+
+        // Instance variables...
+        //  The session's side...
+    protected long p00, p01, p02, p03, p04, p05, p06, p07;
+    protected volatile long bytesIn = 0;
+    protected volatile long keystrokes = 0;
+    protected volatile long blockedNanos = 0;
+        //  ...and the writer's.
+    protected long q00, q01, q02, q03, q04, q05, q06, q07;
+    protected volatile long bytesOut = 0;
+    protected long r00, r01, r02, r03, r04, r05, r06, r07;
+
+    protected volatile Thread sessionThread = null;
+    protected volatile Thread writerThread = null;
+
+
+    protected static boolean enableCpuTiming()
+    {
+        try
+        {
+            if (!threads.isThreadCpuTimeSupported())
+                return(false);
+
+            if (!threads.isThreadCpuTimeEnabled())
+                threads.setThreadCpuTimeEnabled(true);
+
+            return(true);
+        } // try
+        catch (UnsupportedOperationException e)
+        {
+            return(false);
+        } // catch
+    } // enableCpuTiming
+
+
+    public void setSessionThread(Thread t)
+    {
+        sessionThread = t;
+    } // setSessionThread
+
+
+    public void setWriterThread(Thread t)
+    {
+        writerThread = t;
+    } // setWriterThread
+
+
+        // Counting; see the top for who may call which...
+
+    public void addBytesIn(long n)
+    {
+        bytesIn += n;
+    } // addBytesIn
+
+
+    public void addKeystrokes(long n)
+    {
+        keystrokes += n;
+    } // addKeystrokes
+
+
+    public void addBlocked(long nanos)
+    {
+        blockedNanos += nanos;
+    } // addBlocked
+
+
+    public void addBytesOut(long n)
+    {
+        bytesOut += n;
+    } // addBytesOut
+
+
+        // Reading...
+
+    protected static long cpuTime(Thread t)
+    {
+        long retVal;
+
+        if ((t == null) || (!cpuTiming))
+            return(0);
+
+        retVal = threads.getThreadCpuTime(t.getId());
+        return(Math.max(retVal, 0));    // -1 == thread's gone.
+    } // cpuTime
+
+
+    protected static long allocated(Thread t)
+    {
+        long retVal;
+
+        if ((t == null) ||
+            (!(threads instanceof com.sun.management.ThreadMXBean)))
+        {
+            return(0);
+        } // if
+
+        retVal = ((com.sun.management.ThreadMXBean) threads)
+                                     .getThreadAllocatedBytes(t.getId());
+        return(Math.max(retVal, 0));
+    } // allocated
+
+
+        /**
+         *  CPU time the session's threads have used; 0 if the JVM can't
+         *   say.
+         */
+    public long getCpuNanos()
+    {
+        return(cpuTime(sessionThread) + cpuTime(writerThread));
+    } // getCpuNanos
+
+
+        /**
+         *  Memory the session's threads have allocated (not how much they
+         *   still hold); 0 if the JVM can't say.
+         */
+    public long getAllocatedBytes()
+    {
+        return(allocated(sessionThread) + allocated(writerThread));
+    } // getAllocatedBytes
+
+
+        /**
+         *  Read everything at once.
+         *
+         *   @param into Array of at least SAMPLE_COUNT longs, filled in at
+         *               the SAMPLE_* indexes.
+         */
+    public void sample(long[] into)
+    {
+        into[SAMPLE_IN] = bytesIn;
+        into[SAMPLE_OUT] = bytesOut;
+        into[SAMPLE_KEYS] = keystrokes;
+        into[SAMPLE_CPU] = getCpuNanos();
+        into[SAMPLE_ALLOC] = getAllocatedBytes();
+        into[SAMPLE_BLOCKED] = blockedNanos;
+    } // sample
+
+} // SessionStats
+
+// end of SessionStats.java ...
+
@@ -0,0 +1,149 @@
+/**
+ *  The console's "top": who's online, busiest first, by whichever of
+ *   SessionStats' numbers you like. Each screen shows what sessions did
+ *   since the last one; the first shows everything since they came on.
+ *
+ *  It only reads SessionStats (volatile reads, and the JVM's thread
+ *   timers), so watching a session doesn't slow it down.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.PrintStream;
+import java.util.Hashtable;
+
+public class SessionTop
+{
+        // Constants...
+    public final static int MAX_ROWS = 20;
+
+        // Instance variables...
+    protected int sortBy;
+    protected Hashtable last = new Hashtable();  // session -> long[] sample.
+    protected long lastTime = 0;                 // System.nanoTime().
+
+
+        /**
+         *  Constructor.
+         *
+         *   @param _sortBy SessionStats.SAMPLE_* to sort by, biggest first.
+         */
+    public SessionTop(int _sortBy)
+    {
+        sortBy = _sortBy;
+    } // Constructor
+
+
+        /**
+         *  Find a sort key by name, from SessionStats.SAMPLE_NAMES.
+         *
+         *   @param name "cpu", "out", etc.
+         *  @return SessionStats.SAMPLE_* constant, or -1 if there's no such.
+         */
+    public static int sortKeyFor(String name)
+    {
+        int i;
+
+        for (i = 0; i < SessionStats.SAMPLE_NAMES.length; i++)
+        {
+            if (SessionStats.SAMPLE_NAMES[i].equalsIgnoreCase(name))
+                return(i);
+        } // for
+
+        return(-1);
+    } // sortKeyFor
+
+
+    protected static String column(long value, int width)
+    {
+        String str = Long.toString(value);
+
+        while (str.length() < width)      // numbers line up on the right.
+            str = " " + str;
+
+        return(str);
+    } // column
+
+
+        /**
+         *  Print one screen, and remember where everybody was for the
+         *   next one.
+         *
+         *   @param out Where to print it.
+         */
+    public void print(PrintStream out)
+    {
+        OnlineSession[] sessions = ConnectionManager.getSessions();
+        long[][] deltas = new long[sessions.length][];
+        int[] order = new int[sessions.length];
+        Hashtable now = new Hashtable();
+        long nowTime = System.nanoTime();
+        SocketStream io;
+        long[] sample;
+        long[] before;
+        int rows = 0;
+        int i;
+        int j;
+
+        for (i = 0; i < sessions.length; i++)
+        {
+            io = sessions[i].getSocketStream();
+            if (io == null)
+                continue;       // on the way out.
+
+            sample = new long[SessionStats.SAMPLE_COUNT];
+            io.getStats().sample(sample);
+            now.put(sessions[i], sample);
+
+            before = (long[]) last.get(sessions[i]);
+            deltas[i] = new long[SessionStats.SAMPLE_COUNT];
+            for (j = 0; j < SessionStats.SAMPLE_COUNT; j++)
+                deltas[i][j] = sample[j] - ((before == null) ? 0 : before[j]);
+
+                // insertion sort; there aren't many of them.
+            for (j = rows; (j > 0) &&
+                           (deltas[order[j - 1]][sortBy] < deltas[i][sortBy]);
+                 j--)
+            {
+                order[j] = order[j - 1];
+            } // for
+            order[j] = i;
+            rows++;
+        } // for
+
+        out.println();
+        out.println("  Top sessions by " + SessionStats.SAMPLE_NAMES[sortBy] +
+                    ((lastTime == 0) ? ", since they connected:" :
+                     ", over the last " +
+                     JBBSMetrics.formatNanos(nowTime - lastTime) + ":"));
+        out.println("  Node User                       In      Out   Keys" +
+                    "  CPU ms  Alloc KB  Wait ms");
+
+        for (i = 0; (i < rows) && (i < MAX_ROWS); i++)
+        {
+            j = order[i];
+            out.println("  " +
+                 JBBS.padString(Integer.toString(
+                            ConnectionManager.getNodeFor(sessions[j])), 4) +
+                 " " + JBBS.padString((sessions[j].user == null) ?
+                            "(logging in)" : sessions[j].user.getHandle(), 21) +
+                 column(deltas[j][SessionStats.SAMPLE_IN], 8) + " " +
+                 column(deltas[j][SessionStats.SAMPLE_OUT], 8) + " " +
+                 column(deltas[j][SessionStats.SAMPLE_KEYS], 6) + " " +
+                 column(deltas[j][SessionStats.SAMPLE_CPU] / 1000000, 7) + " " +
+                 column(deltas[j][SessionStats.SAMPLE_ALLOC] / 1024, 9) + " " +
+                 column(deltas[j][SessionStats.SAMPLE_BLOCKED] / 1000000, 8));
+        } // for
+
+        if (rows > MAX_ROWS)
+            out.println("  ...and " + (rows - MAX_ROWS) + " more.");
+
+        last = now;     // anybody who left is forgotten.
+        lastTime = nowTime;
+    } // print
+
+} // SessionTop
+
+// end of SessionTop.java ...
+
@@ -0,0 +1,22 @@
+/**
+ *  Runs when the JVM is told to quit (SIGTERM, Ctrl-C, etc), so a
+ *   server without a console still shuts down cleanly: it wakes up
+ *   JBBS.main(), and waits for it to finish cleaning up. If main()
+ *   is already done, there's nothing left to wait for.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+public class ShutdownHook implements Runnable
+{
+    public void run()
+    {
+        JBBS.requestShutdown();
+        JBBS.cleanup();     // waits for main()'s, if it got there first.
+    } // run
+
+} // ShutdownHook
+
+// end of ShutdownHook.java ...
+
@@ -22,6 +22,10 @@ public abstract class SocketStream
     public static final byte ASCII_CR        = 13;
     public static final byte ASCII_LF        = 10;
 
+    public static final int CLOSE_DRAINTIME = 2000;   // milliseconds.
+    public static final int DEFAULT_SCREEN_WIDTH = 80;
+    public static final int DEFAULT_SCREEN_HEIGHT = 24;
+
     public static final int TERMCOLOR_BLACK     = 0;
     public static final int TERMCOLOR_RED       = 1;
     public static final int TERMCOLOR_GREEN     = 2;
@@ -42,16 +46,27 @@ public abstract class SocketStream
 
         // Instance variables...
     protected Socket       socket;      // the initial socket.
-    protected OutputStream out;         // for writing to socket.
+    protected OutputQueue  outQueue;    // writer thread's queue...
+    protected OutputStream out;         //  ...for writing to socket.
     protected InputStream  in;          // for reading from socket.
+    protected SessionStats stats;       // what this session's costing.
+    protected volatile boolean delivered = false;   // see wasDelivered().
+    protected volatile int deliveries = 0;  // see getDeliveryCount().
 
     public SocketStream(Socket s) throws LostCarrierException
     {
         socket = s;
 
+        if (socket instanceof TelnetSocket)
+            stats = ((TelnetSocket) socket).getStats();
+        else
+            stats = new SessionStats();
+
         try
         {
-            out = socket.getOutputStream();
+            outQueue = new OutputQueue(socket, socket.getOutputStream(),
+                                       stats);
+            out = outQueue;
             in  = socket.getInputStream();
         } // try
         catch (IOException e)
@@ -75,8 +90,8 @@ public abstract class SocketStream
     {
         String errStr = e.getMessage();
 
-        //if (JBBSConfig.logIOExeceptions)                  !!!
-        //    JBBSLog.add("IOException", errStr);
+        if (JBBSConfig.logIOExceptions)
+            JBBSLog.add(JBBSLog.PRIORITY_INFO, "IOException", errStr, details);
 
         throw(new LostCarrierException(errStr, details));
     } // handleIOException
@@ -240,6 +255,245 @@ public abstract class SocketStream
     } // sendln (takes byte[])
 
 
+        /**
+         *  Queue bytes from somewhere other than this session to be sent
+         *   to the remote user. This never blocks, so it's safe to call
+         *   from another user's session. The array is not copied, so one
+         *   array can be given to any number of SocketStreams; don't
+         *   change it after. If the user has fallen behind, the type's
+         *   OutputQueue policy decides what happens to it.
+         *
+         *   @param bytes Bytes to transmit to remote client.
+         *   @param type One of the OutputQueue.TYPE_* constants.
+         *  @return <em>true</em> if queued, <em>false</em> if dropped.
+         */
+    public boolean deliver(byte[] bytes, int type)
+    {
+        if (!outQueue.deliver(bytes, type))
+            return(false);
+
+        delivered = true;       // see wasDelivered().
+        deliveries++;
+        return(true);
+    } // deliver
+
+
+        /**
+         *  Count of deliveries so far. It's only good for seeing whether
+         *   anything was delivered since the last time you looked; the
+         *   count itself can miss a few when they come in at once.
+         */
+    public int getDeliveryCount()
+    {
+        return(deliveries);
+    } // getDeliveryCount
+
+
+        /**
+         *  Has anything been delivered since the last time we asked?
+         *   Deliveries go around whatever an emulation knows about the
+         *   client's screen (cursor, colors), but they come from other
+         *   threads, which mustn't touch that; so deliver() only raises
+         *   this flag, and the session's own thread checks it before it
+         *   trusts what it knows. Only the session's thread should call
+         *   this.
+         *
+         *  @return <em>true</em> if so; the flag is cleared.
+         */
+    protected boolean wasDelivered()
+    {
+        if (!delivered)
+            return(false);
+
+        delivered = false;      // anything after this, we'll hear about.
+        return(true);
+    } // wasDelivered
+
+
+        /**
+         *  Hold off (or allow again) output that other sessions deliver.
+         *   File transfers use this so chat lines don't land in the
+         *   middle of a binary stream. Held deliveries are dropped.
+         *
+         *   @param hold <em>true</em> to hold, <em>false</em> to allow.
+         */
+    public void holdDeliveries(boolean hold)
+    {
+        outQueue.holdDeliveries(hold);
+    } // holdDeliveries
+
+
+        /**
+         *  Turn Nagle's algorithm off (or back on) for this stream's
+         *   socket. Bulk senders that wait on replies, like ZMODEM, want
+         *   it off. If the socket won't say or won't change, it's left
+         *   as it was; that's only slower.
+         *
+         *   @param on <em>true</em> to send small writes right away.
+         *  @return What it was set to before.
+         */
+    public boolean setNoDelay(boolean on)
+    {
+        boolean retVal = false;
+
+        try
+        {
+            retVal = socket.getTcpNoDelay();
+            socket.setTcpNoDelay(on);
+        } // try
+        catch (SocketException e)
+        {
+            // don't care.
+        } // catch
+
+        return(retVal);
+    } // setNoDelay
+
+
+        /**
+         *  Get this stream's output queue, for its statistics.
+         */
+    public OutputQueue getOutputQueue()
+    {
+        return(outQueue);
+    } // getOutputQueue
+
+
+    public SessionStats getStats()
+    {
+        return(stats);
+    } // getStats
+
+
+        /**
+         *  Encrypt everything from here on, both ways. Whatever's been
+         *   queued already goes out first, as it was. Each direction needs
+         *   its own cipher, since they keep state; for an Encryptable, use
+         *   an EncryptableAdapter.
+         *
+         *   @param outCipher Encrypts what we send.
+         *   @param inCipher Decrypts what we receive.
+         */
+    public void setEncryption(StreamEncryptable outCipher,
+                              StreamEncryptable inCipher)
+    {
+        outQueue.setSink(new EncryptedOutputStream(outQueue.getSink(),
+                                                   outCipher));
+        in = new EncryptedInputStream(in, inCipher);
+    } // setEncryption
+
+
+        /**
+         *  Get the socket this stream talks through, for its statistics.
+         */
+    public Socket getSocket()
+    {
+        return(socket);
+    } // getSocket
+
+
+        /**
+         *  Render a string in a given color, the way this emulation would
+         *   send it, without sending it. Emulations without color just
+         *   get the string's bytes.
+         *
+         *   @param color One of the TERMCOLOR_* constants.
+         *   @param str String to render.
+         *  @return Bytes to send to a client using this emulation.
+         */
+    public byte[] encode(int color, String str)
+    {
+        return(str.getBytes());
+    } // encode
+
+
+        /**
+         *  Size of the user's screen, as best this emulation knows it.
+         *   Emulations that can't find out just say 80x24.
+         */
+    public int getScreenWidth()
+    {
+        return(DEFAULT_SCREEN_WIDTH);
+    } // getScreenWidth
+
+
+    public int getScreenHeight()
+    {
+        return(DEFAULT_SCREEN_HEIGHT);
+    } // getScreenHeight
+
+
+        /**
+         *  Blank from the cursor to the end of its line, in the current
+         *   background color, without moving the cursor. Emulations that
+         *   can't do that send nothing, and say so.
+         *
+         *  @return <em>true</em> if the line was cleared.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public boolean clearToEndOfLine() throws LostCarrierException
+    {
+        return(false);
+    } // clearToEndOfLine
+
+
+        /**
+         *  Set foreground and background colors together. Emulations
+         *   that can do both in one command should override this.
+         *
+         *   @param fore Foreground, one of the TERMCOLOR_* constants.
+         *   @param back Background, one of the TERMCOLOR_* constants.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public void setColors(int fore, int back) throws LostCarrierException
+    {
+        setForeColor(fore);
+        setBackColor(back);
+    } // setColors
+
+
+        /**
+         *  Somebody sent color changes behind this emulation's back (a
+         *   precompiled screen, say); forget whatever it thought was set.
+         */
+    public void forgetColors()
+    {
+    } // forgetColors
+
+
+        /**
+         *  Something moved the cursor where this emulation couldn't see
+         *   it; forget whatever it thought about where it is.
+         */
+    public void forgetCursor()
+    {
+    } // forgetCursor
+
+
+        /**
+         *  The user's screen size, from the connection (telnet's NAWS),
+         *   for emulations that care. They should call watchScreenSize()
+         *   once they're ready to hear it.
+         *
+         *   @param width Columns.
+         *   @param height Rows.
+         */
+    public void setScreenSize(int width, int height)
+    {
+    } // setScreenSize
+
+
+        /**
+         *  Start hearing about screen size from the connection, if it can
+         *   tell us: now, and whenever it changes.
+         */
+    protected void watchScreenSize()
+    {
+        if (socket instanceof TelnetSocket)
+            ((TelnetSocket) socket).setTerminal(this);
+    } // watchScreenSize
+
+
         /**
          * Retrieve one byte from the socket. Blocks until it retrieves it.
          *
@@ -248,9 +502,16 @@ public abstract class SocketStream
          */
     public byte recv() throws LostCarrierException
     {
+        int retVal;
+
         try
         {
-            return((byte) in.read());
+            retVal = in.read();
+            if (retVal == -1)
+                throw(new EOFException("Connection closed."));
+            JBBSMetrics.bytesIn.increment();
+            stats.addKeystrokes(1);
+            return((byte) retVal);
         } // try
         catch (IOException e)
         {
@@ -261,6 +522,72 @@ public abstract class SocketStream
     } // recv
 
 
+        /**
+         * Retrieve bytes from the socket, waiting a limited time for them.
+         *  This is for file transfer protocols and such, that need
+         *  timeouts and bulk reads.
+         *
+         *   @param bytes Array to read into.
+         *   @param off Where in array to start.
+         *   @param len Most bytes to read.
+         *   @param timeout Milliseconds to wait for at least one byte.
+         *  @return Bytes read, 0 if the timeout expired first.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public int recv(byte[] bytes, int off, int len, int timeout)
+                                           throws LostCarrierException
+    {
+        int retVal = 0;
+
+        try
+        {
+            socket.setSoTimeout(timeout);
+            try
+            {
+                retVal = in.read(bytes, off, len);
+            } // try
+            finally
+            {
+                socket.setSoTimeout(0);
+            } // finally
+
+            if (retVal == -1)
+                throw(new EOFException("Connection closed."));
+            JBBSMetrics.bytesIn.add(retVal);
+        } // try
+
+        catch (InterruptedIOException e)
+        {
+            retVal = 0;     // timed out.
+        } // catch
+
+        catch (IOException e)
+        {
+            handleIOException(e, "SocketStream.recv(byte[], off, len, to);");
+        } // catch
+
+        return(retVal);
+    } // recv (bulk, with timeout)
+
+
+        /**
+         * Retrieve one byte from the socket, waiting a limited time for it.
+         *
+         *   @param timeout Milliseconds to wait.
+         *  @return Byte from socket (0 to 255), -1 if the timeout expired.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public int recv(int timeout) throws LostCarrierException
+    {
+        byte[] one = new byte[1];
+
+        if (recv(one, 0, 1, timeout) == 0)
+            return(-1);
+
+        return(one[0] & 0xFF);
+    } // recv (one byte, with timeout)
+
+
         /**
          * Retrieve a line of text from socket. The line is delimited by
          *  a carriage return (ASCII 13) byte sent through the socket.
@@ -277,6 +604,19 @@ public abstract class SocketStream
         byte inByte;
         boolean getOut = false;
 
+        if ((socket instanceof TelnetSocket) &&
+            (((TelnetSocket) socket).setLineEditing(true)))
+        {
+            try
+            {
+                return(recvEditedLine(max));
+            } // try
+            finally
+            {
+                ((TelnetSocket) socket).setLineEditing(false);
+            } // finally
+        } // if
+
         do
         {
             inByte = recv();
@@ -313,6 +653,32 @@ public abstract class SocketStream
     } // recvln (takes maximum entry length)
 
 
+        /**
+         * Retrieve a line the telnet client edited and echoed itself, and
+         *  sent whole. Control characters are dropped, and the line is
+         *  cut to max.
+         *
+         *   @param max Maximum characters to accept in String.
+         *  @return String of read bytes.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    protected String recvEditedLine(int max) throws LostCarrierException
+    {
+        StringBuffer strBuf = new StringBuffer();
+        byte inByte;
+
+        while (((inByte = recv()) != ASCII_CR) && (inByte != ASCII_LF))
+        {
+            if (((inByte & 0xFF) >= ' ') && (strBuf.length() < max))
+                strBuf.append((char) (inByte & 0xFF));
+        } // while
+
+        forgetCursor();     // the client moved it, echoing.
+        clearBuffer();
+        return(strBuf.toString());
+    } // recvEditedLine
+
+
         /**
          * Retrieve a line of text from socket. The line is delimited by
          *  a carriage return (ASCII 13) byte sent through the socket.
@@ -373,6 +739,8 @@ public abstract class SocketStream
          */
     public void close()
     {
+        outQueue.drain(CLOSE_DRAINTIME);    // let user see last words.
+
         try
         {
             in.close();
@@ -393,6 +761,32 @@ public abstract class SocketStream
     } // close
 
 
+        /**
+         *  Drop the connection, from any thread, without waiting on
+         *   anything: the real socket is closed out from under us, and
+         *   whoever's reading or writing gets a LostCarrierException, so
+         *   the session cleans up as if the user had hung up. (Closing
+         *   the TelnetSocket or WebSocketSocket instead could wait behind
+         *   a write to a stalled client.)
+         */
+    public void hangUp()
+    {
+        Socket s = socket;
+
+        while (s instanceof FilterSocket)   // telnet over WebSocket, etc.
+            s = ((FilterSocket) s).getRawSocket();
+
+        try
+        {
+            s.close();
+        } // try
+        catch (IOException e)
+        {
+            // don't care.
+        } // catch
+    } // hangUp
+
+
         /**
          *  These abstract members allow for terminal emulations.
          *
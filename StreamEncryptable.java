@@ -0,0 +1,34 @@
+/**
+ *  Interface for encryption of a stream of data, a buffer at a time.
+ *
+ *  Unlike Encryptable, nothing here hands back a new array: bytes are
+ *   encrypted where they sit, or into a buffer the caller supplies, so
+ *   a session can encrypt everything it sends and receives without
+ *   making garbage. Output is always the same length as input.
+ *
+ *  An instance handles one direction of one session, and may keep state
+ *   between calls (where a stream cipher is in its key stream, say), so
+ *   bytes must go through it once each, in the order they're sent. Use
+ *   EncryptableAdapter for an Encryptable that doesn't do this itself.
+ *
+ *   Copyright (c) Lighting and Sound Technologies, 1997.
+ *    Written by Ryan C. Gordon.
+ */
+
+import java.nio.ByteBuffer;
+
+public interface StreamEncryptable
+{
+    public void setEncryptKey(byte[] bytes);
+
+        // In place: the bytes from position to limit. Neither moves.
+    public void encrypt(ByteBuffer buf);
+    public void decrypt(ByteBuffer buf);
+
+        // From what's remaining in src, to dst; both positions advance.
+    public void encrypt(ByteBuffer src, ByteBuffer dst);
+    public void decrypt(ByteBuffer src, ByteBuffer dst);
+} // StreamEncryptable
+
+// end of StreamEncryptable.java ...
+
@@ -0,0 +1,152 @@
+/**
+ *  Listens for telnet over TLS. Each caller is handed to a CallerSetup,
+ *   which does the handshake on a thread of its own, then hands them to
+ *   OnlineSession on a TelnetSocket, like any other; past the handshake,
+ *   nothing knows the difference.
+ *
+ *  The certificate comes from a keystore file, JBBSConfig.tlsKeyStore
+ *   (PKCS12 or JKS; keytool's -genkeypair makes a self-signed one that
+ *   will do). The server remembers sessions, and hands out TLS 1.3
+ *   session tickets, so a caller who reconnects soon can resume,
+ *   skipping the expensive part of the handshake.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.net.*;
+import java.security.*;
+import javax.net.ssl.*;
+
+public class TLSListener implements Runnable
+{
+        // Constants...
+    public final static int HANDSHAKE_TIMEOUT = 10000;     // milliseconds.
+    public final static int SESSION_TIMEOUT = 24 * 60 * 60;  // seconds.
+    public final static int SESSIONS_PER_NODE = 16;    // remembered.
+
+        // Instance variables...
+    protected SSLServerSocket listener;
+    protected Thread listenThread;
+
+
+        /**
+         *  Load the keystore, and start listening.
+         *
+         *   @throw IOException if the keystore can't be loaded, or the port
+         *          can't be listened on.
+         */
+    public TLSListener() throws IOException
+    {
+        SSLContext context = createContext();
+
+        listener = (SSLServerSocket) context.getServerSocketFactory()
+                         .createServerSocket(JBBSConfig.tlsPortNum,
+                                             JBBSConfig.maxConnections);
+
+        listenThread = new Thread(this, "TLSListener");
+        listenThread.start();
+    } // Constructor
+
+
+        /**
+         *  Set up TLS with our certificate, remembering sessions so they
+         *   can be resumed.
+         */
+    protected static SSLContext createContext() throws IOException
+    {
+        SSLSessionContext sessions;
+        KeyManagerFactory kmf;
+        SSLContext retVal;
+        InputStream in;
+        KeyStore keys;
+        char[] password = JBBSConfig.tlsKeyStorePassword.toCharArray();
+
+            // TLS 1.3 tickets; older JDKs leave them off.
+        if (System.getProperty("jdk.tls.server.enableSessionTicketExtension")
+                == null)
+        {
+            System.setProperty("jdk.tls.server.enableSessionTicketExtension",
+                               "true");
+        } // if
+
+        try
+        {
+            keys = KeyStore.getInstance(KeyStore.getDefaultType());
+            in = new FileInputStream(JBBSConfig.tlsKeyStore);
+            try
+            {
+                keys.load(in, password);
+            } // try
+            finally
+            {
+                in.close();
+            } // finally
+
+            kmf = KeyManagerFactory.getInstance(
+                                    KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(keys, password);
+
+            retVal = SSLContext.getInstance("TLS");
+            retVal.init(kmf.getKeyManagers(), null, null);
+        } // try
+
+        catch (GeneralSecurityException e)
+        {
+            throw(new IOException("Bad keystore " + JBBSConfig.tlsKeyStore +
+                                  ": " + e.getMessage()));
+        } // catch
+
+        sessions = retVal.getServerSessionContext();
+        sessions.setSessionCacheSize(JBBSConfig.maxConnections *
+                                     SESSIONS_PER_NODE);
+        sessions.setSessionTimeout(SESSION_TIMEOUT);
+
+        return(retVal);
+    } // createContext
+
+
+    public void close()
+    {
+        try
+        {
+            listener.close();   // accept() throws, and the thread quits.
+        } // try
+        catch (IOException e)
+        {
+            // don't care...it's going in the trash anyway...
+        } // catch
+    } // close
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        while (!listener.isClosed())
+        {
+            try
+            {
+                CallerSetup.start(listener.accept(),
+                                  CallerSetup.TRANSPORT_TLS);
+            } // try
+
+            catch (IOException e)
+            {
+                if (listener.isClosed())
+                    return;
+
+                if (JBBSConfig.logIOExceptions)
+                {
+                    JBBSLog.add(JBBSLog.PRIORITY_INFO, "IOException",
+                                e.getMessage(), "TLSListener.run();");
+                } // if
+            } // catch (IOException)
+        } // while
+    } // run
+
+} // TLSListener
+
+// end of TLSListener.java ...
+
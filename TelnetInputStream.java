@@ -0,0 +1,321 @@
+/**
+ *  Input side of a TelnetSocket. Bytes from the client go through a
+ *   little state machine that takes out IAC commands (handing them to the
+ *   TelnetSocket) and undoes IAC IAC; what's left is what the user
+ *   typed, and sits in a buffer until somebody reads it.
+ *
+ *  Unless the client is sending BINARY, it sends Enter as CR LF or
+ *   CR NUL; either way, we pass on just the CR.
+ *
+ *  available() is exact: it counts only the user's bytes, never bytes
+ *   of telnet commands that happen to be waiting on the socket.
+ *
+ *  No more than MAX_BACKLOG bytes of the user's are buffered; once that
+ *   much is waiting, we stop reading the socket until some is read, and
+ *   TCP makes the client wait instead of us holding on to it all.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+
+public class TelnetInputStream extends InputStream
+{
+        // Constants...
+    public final static int LEN_BUFFER = 4096;
+    public final static int LEN_SUBNEG = 256;  // longer ones are cut short.
+    public final static int MAX_BACKLOG = LEN_BUFFER * 4;
+
+    protected final static int STATE_DATA   = 0;
+    protected final static int STATE_IAC    = 1;   // got IAC.
+    protected final static int STATE_OPTION = 2;   // got IAC and a verb.
+    protected final static int STATE_SB     = 3;   // got IAC SB.
+    protected final static int STATE_SBDATA = 4;   // in IAC SB option ...
+    protected final static int STATE_SBIAC  = 5;   // ... and got IAC.
+    protected final static int STATE_CR     = 6;   // got CR.
+
+        // Instance variables...
+    protected TelnetSocket telnet;
+    protected InputStream raw;
+    protected byte[] rawBuf = new byte[LEN_BUFFER];
+    protected byte[] data = new byte[LEN_BUFFER];
+    protected int dataStart = 0;
+    protected int dataEnd = 0;
+    protected int state = STATE_DATA;
+    protected int verb = 0;
+    protected int sbOption = 0;
+    protected byte[] sbData = new byte[LEN_SUBNEG];
+    protected int sbLen = 0;
+    protected long reads = 0;
+
+
+    public TelnetInputStream(TelnetSocket _telnet, InputStream _raw)
+    {
+        telnet = _telnet;
+        raw = _raw;
+    } // Constructor
+
+
+    public synchronized long getReads()
+    {
+        return(reads);
+    } // getReads
+
+
+        /**
+         *  Make room at the end of the data buffer.
+         */
+    protected void compact()
+    {
+        if (dataStart > 0)
+        {
+            System.arraycopy(data, dataStart, data, 0, dataEnd - dataStart);
+            dataEnd -= dataStart;
+            dataStart = 0;
+        } // if
+    } // compact
+
+
+    protected void addData(int b)
+    {
+        if (dataEnd == data.length)
+        {
+            byte[] bigger = new byte[data.length * 2];  // readRaw() caps it.
+            System.arraycopy(data, 0, bigger, 0, dataEnd);
+            data = bigger;
+        } // if
+
+        data[dataEnd++] = (byte) b;
+    } // addData
+
+
+        /**
+         *  Run bytes from the socket through the state machine.
+         */
+    protected void process(byte[] b, int len) throws IOException
+    {
+        boolean binary = telnet.isRemoteOn(TelnetSocket.OPT_BINARY);
+        int ch;
+        int i;
+
+        for (i = 0; i < len; i++)
+        {
+            ch = b[i] & 0xFF;
+
+            if (state == STATE_CR)      // CR LF or CR NUL: just CR.
+            {
+                state = STATE_DATA;     // otherwise, it's data.
+                if ((ch == 0) || (ch == SocketStream.ASCII_LF))
+                    continue;
+            } // if
+
+            switch (state)
+            {
+                case STATE_DATA:
+                    if (ch == TelnetSocket.IAC)
+                        state = STATE_IAC;
+                    else
+                    {
+                        addData(ch);
+                        if ((ch == SocketStream.ASCII_CR) && (!binary))
+                            state = STATE_CR;
+                    } // else
+                    break;
+
+                case STATE_IAC:
+                    if (ch == TelnetSocket.IAC)     // IAC IAC: one 255.
+                    {
+                        addData(ch);
+                        state = STATE_DATA;
+                    } // if
+                    else if ((ch >= TelnetSocket.WILL) &&
+                             (ch <= TelnetSocket.DONT))
+                    {
+                        verb = ch;
+                        state = STATE_OPTION;
+                    } // else if
+                    else if (ch == TelnetSocket.SB)
+                        state = STATE_SB;
+                    else
+                    {
+                        telnet.gotCommand(ch);
+                        state = STATE_DATA;
+                    } // else
+                    break;
+
+                case STATE_OPTION:
+                    telnet.gotOption(verb, ch);
+                    state = STATE_DATA;
+                    break;
+
+                case STATE_SB:
+                    sbOption = ch;
+                    sbLen = 0;
+                    state = STATE_SBDATA;
+                    break;
+
+                case STATE_SBDATA:
+                    if (ch == TelnetSocket.IAC)
+                        state = STATE_SBIAC;
+                    else if (sbLen < sbData.length)
+                        sbData[sbLen++] = (byte) ch;
+                    break;
+
+                case STATE_SBIAC:
+                    if (ch == TelnetSocket.SE)
+                    {
+                        telnet.gotSubnegotiation(sbOption, sbData, sbLen);
+                        state = STATE_DATA;
+                    } // if
+                    else
+                    {
+                        if (sbLen < sbData.length)
+                            sbData[sbLen++] = (byte) ch;    // IAC IAC.
+                        state = STATE_SBDATA;
+                    } // else
+                    break;
+            } // switch
+        } // for
+    } // process
+
+
+        /**
+         *  Read from the socket once, and process it, waiting no more
+         *   than timeout milliseconds for something to show up. This is
+         *   for negotiation, before anybody's reading.
+         *
+         *   @param timeout Milliseconds to wait; 0 waits forever.
+         */
+    public synchronized void fill(int timeout) throws IOException
+    {
+        int oldTimeout = telnet.getSoTimeout();
+
+        telnet.setSoTimeout(timeout);
+        try
+        {
+            if (readRaw(rawBuf.length) == -1)
+                throw(new EOFException("Connection closed."));
+        } // try
+        catch (InterruptedIOException e)
+        {
+            // timed out; that's fine.
+        } // catch
+        finally
+        {
+            telnet.setSoTimeout(oldTimeout);
+        } // finally
+    } // fill
+
+
+        /**
+         *  One read from the socket, run through the state machine. A
+         *   read never makes more data than it has bytes, so reading no
+         *   more than there's room for under MAX_BACKLOG keeps the
+         *   buffer from growing past it.
+         *
+         *   @param max Most bytes to read.
+         *  @return Bytes read, 0 if the backlog's full, -1 at end of
+         *          stream.
+         */
+    protected int readRaw(int max) throws IOException
+    {
+        int n;
+
+        max = Math.min(max, rawBuf.length);
+        max = Math.min(max, MAX_BACKLOG - (dataEnd - dataStart));
+        if (max <= 0)
+            return(0);
+
+        n = raw.read(rawBuf, 0, max);
+
+        if (n > 0)
+        {
+            reads++;
+            telnet.getStats().addBytesIn(n);
+            compact();
+            process(rawBuf, n);
+        } // if
+
+        return(n);
+    } // readRaw
+
+
+        /**
+         *  Wait until there's something for the user to read.
+         *
+         *  @return <em>false</em> at end of stream.
+         */
+    protected boolean waitForData() throws IOException
+    {
+        while (dataStart == dataEnd)
+        {
+            if (readRaw(rawBuf.length) == -1)
+                return(false);
+        } // while
+
+        return(true);
+    } // waitForData
+
+
+        // InputStream implementation...
+
+    public synchronized int read() throws IOException
+    {
+        if (!waitForData())
+            return(-1);
+
+        return(data[dataStart++] & 0xFF);
+    } // read (one byte)
+
+
+    public synchronized int read(byte[] b, int off, int len)
+                                              throws IOException
+    {
+        if (len == 0)
+            return(0);
+
+        if (!waitForData())
+            return(-1);
+
+        len = Math.min(len, dataEnd - dataStart);
+        System.arraycopy(data, dataStart, b, off, len);
+        dataStart += len;
+        return(len);
+    } // read (byte array range)
+
+
+        /**
+         *  How much can be read without waiting? What's on the socket is
+         *   processed first, so telnet commands aren't counted; but only
+         *   one buffer's worth per call, so a client that keeps sending
+         *   can't keep us in here.
+         */
+    public synchronized int available() throws IOException
+    {
+        int waiting = raw.available();
+
+        if (waiting > 0)
+            readRaw(waiting);       // won't block; it's already here.
+
+        return(dataEnd - dataStart);
+    } // available
+
+
+    public synchronized long skip(long n) throws IOException
+    {
+        n = Math.min(n, available());
+        dataStart += (int) n;
+        return(n);
+    } // skip
+
+
+    public void close() throws IOException
+    {
+        raw.close();
+    } // close
+
+} // TelnetInputStream
+
+// end of TelnetInputStream.java ...
+
@@ -0,0 +1,270 @@
+/**
+ *  Output side of a TelnetSocket. A 255 byte in the output would look
+ *   like the start of a telnet command, so it goes out doubled (IAC IAC).
+ *   Unless we're sending BINARY, a CR that isn't followed by LF goes out
+ *   as CR NUL, as telnet wants.
+ *
+ *  Each write() is one write to the socket, so OutputQueue's batching
+ *   still means one packet per batch. Telnet commands go through here,
+ *   too, so they never land in the middle of a write.
+ *
+ *  Once the client agrees to MCCP2 (telnet option 86), everything after
+ *   IAC SB COMPRESS2 IAC SE, commands included, goes through one zlib
+ *   stream for the rest of the session. Each write() ends with a
+ *   SYNC_FLUSH, so the client can draw everything it's been sent, and a
+ *   batch from OutputQueue (usually a whole screen) is still one packet.
+ *   The dictionary carries over between writes, which is where the
+ *   savings are: the next screen looks a lot like the last one.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.util.zip.Deflater;
+
+public class TelnetOutputStream extends OutputStream
+{
+        // Constants...
+    protected final static byte[] START_COMPRESS = {
+        (byte) TelnetSocket.IAC, (byte) TelnetSocket.SB,
+        (byte) TelnetSocket.OPT_COMPRESS2,
+        (byte) TelnetSocket.IAC, (byte) TelnetSocket.SE
+    };
+
+        // Instance variables...
+    protected TelnetSocket telnet;
+    protected OutputStream raw;
+    protected byte[] escaped = new byte[OutputQueue.LEN_STAGING * 2];
+    protected long writes = 0;
+
+    protected Deflater deflater = null;     // null == not compressing.
+    protected byte[] compressed = new byte[OutputQueue.LEN_STAGING];
+    protected volatile long bytesIn = 0;    // before compression...
+    protected volatile long bytesOut = 0;   //  ...and after.
+    protected volatile long compressNanos = 0;  // time spent compressing.
+
+
+    public TelnetOutputStream(TelnetSocket _telnet, OutputStream _raw)
+    {
+        telnet = _telnet;
+        raw = _raw;
+    } // Constructor
+
+
+    public synchronized long getWrites()
+    {
+        return(writes);
+    } // getWrites
+
+
+        /**
+         *  Send telnet commands, as they are.
+         */
+    public synchronized void writeCommand(byte[] b, int off, int len)
+                                                     throws IOException
+    {
+        writeRaw(b, off, len);
+        raw.flush();
+    } // writeCommand
+
+
+        /**
+         *  Start compressing everything sent from here on. Call this once
+         *   the client has said DO COMPRESS2.
+         *
+         *   @param level zlib compression level, 1 to 9.
+         */
+    public synchronized void startCompressing(int level) throws IOException
+    {
+        if (deflater != null)
+            return;
+
+        raw.write(START_COMPRESS);      // this much isn't compressed.
+        raw.flush();
+        writes++;
+        deflater = new Deflater(level);
+    } // startCompressing
+
+
+        /**
+         *  Finish the compressed stream; anything sent after this goes
+         *   out plain. For when the client says DONT COMPRESS2.
+         */
+    public synchronized void stopCompressing() throws IOException
+    {
+        Deflater finished = deflater;
+
+        if (finished == null)
+            return;
+
+        finished.finish();
+        deflater = null;
+        drain(finished, Deflater.NO_FLUSH);
+        raw.flush();
+        finished.end();
+    } // stopCompressing
+
+
+        // Statistics. These don't synchronize: the lock is held for as
+        //  long as a write to the client takes, and the console shouldn't
+        //  wait on a stalled client just to look at it.
+
+    public boolean isCompressing()
+    {
+        return(deflater != null);
+    } // isCompressing
+
+
+        /**
+         *  @return Bytes we've compressed, before compression.
+         */
+    public long getBytesIn()
+    {
+        return(bytesIn);
+    } // getBytesIn
+
+
+        /**
+         *  @return What those bytes compressed to.
+         */
+    public long getBytesOut()
+    {
+        return(bytesOut);
+    } // getBytesOut
+
+
+        /**
+         *  @return Milliseconds spent compressing.
+         */
+    public long getCompressMillis()
+    {
+        return(compressNanos / 1000000);
+    } // getCompressMillis
+
+
+        /**
+         *  Write bytes to the socket as one write, compressing them first
+         *   if we're doing that. Call this synchronized.
+         */
+    protected void writeRaw(byte[] b, int off, int len) throws IOException
+    {
+        long start;
+
+        if (deflater == null)
+        {
+            raw.write(b, off, len);
+            writes++;
+            return;
+        } // if
+
+        start = System.nanoTime();
+        deflater.setInput(b, off, len);
+        drain(deflater, Deflater.SYNC_FLUSH);
+        compressNanos += System.nanoTime() - start;
+        bytesIn += len;
+    } // writeRaw
+
+
+        /**
+         *  Take everything a Deflater has for us, and send it as one
+         *   write. Call this synchronized.
+         *
+         *   @param d Deflater to empty.
+         *   @param flush Deflater.SYNC_FLUSH, or NO_FLUSH if it's finishing.
+         */
+    protected void drain(Deflater d, int flush) throws IOException
+    {
+        int outLen = 0;
+
+        while (true)
+        {
+            outLen += d.deflate(compressed, outLen,
+                                compressed.length - outLen, flush);
+
+            if ((outLen < compressed.length) &&
+                ((flush == Deflater.SYNC_FLUSH) || (d.finished())))
+            {
+                break;      // room to spare, so it's all out.
+            } // if
+
+            if (outLen == compressed.length)
+            {
+                byte[] bigger = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, bigger, 0, outLen);
+                compressed = bigger;
+            } // if
+        } // while
+
+        raw.write(compressed, 0, outLen);
+        bytesOut += outLen;
+        writes++;
+    } // drain
+
+
+        // OutputStream implementation...
+
+    public void write(int b) throws IOException
+    {
+        byte[] one = new byte[1];
+
+        one[0] = (byte) b;
+        write(one, 0, 1);
+    } // write (one byte)
+
+
+    public synchronized void write(byte[] b, int off, int len)
+                                                  throws IOException
+    {
+        boolean binary = telnet.isLocalOn(TelnetSocket.OPT_BINARY);
+        int end = off + len;
+        int outLen = 0;
+        int i;
+
+        if (escaped.length < len * 2)       // worst case: all doubled.
+            escaped = new byte[len * 2];
+
+        for (i = off; i < end; i++)
+        {
+            escaped[outLen++] = b[i];
+
+            if (b[i] == (byte) TelnetSocket.IAC)
+                escaped[outLen++] = b[i];
+
+            else if ((b[i] == SocketStream.ASCII_CR) && (!binary) &&
+                     ((i + 1 == end) || (b[i + 1] != SocketStream.ASCII_LF)))
+            {
+                escaped[outLen++] = 0;
+            } // else if
+        } // for
+
+        writeRaw(escaped, 0, outLen);
+    } // write (byte array range)
+
+
+    public void flush() throws IOException
+    {
+        raw.flush();
+    } // flush
+
+
+        /**
+         *  Close the socket first; a write stuck on it holds our lock.
+         */
+    public void close() throws IOException
+    {
+        raw.close();
+
+        synchronized (this)
+        {
+            if (deflater != null)
+            {
+                deflater.end();
+                deflater = null;
+            } // if
+        } // synchronized
+    } // close
+
+} // TelnetOutputStream
+
+// end of TelnetOutputStream.java ...
@@ -0,0 +1,488 @@
+/**
+ *  A Socket that speaks telnet. Everything above it (SocketStream,
+ *   OutputQueue, the terminal probes) just sees a Socket with clean
+ *   streams: IAC sequences are taken out of the input and handled here,
+ *   and IAC bytes in the output are doubled on the way out.
+ *
+ *  When a session starts, negotiate() offers the options we know, all
+ *   in one packet, and waits a moment for the answers:
+ *
+ *   ECHO and SGA (we echo; no go-aheads), so keys come one at a time.
+ *   BINARY, both ways, for 8-bit screens and file transfers.
+ *   NAWS, so we know the user's screen size, and hear when it changes.
+ *   TTYPE, so we can pick an emulation by name instead of probing.
+ *   LINEMODE, so recvln() can let the client edit the line itself, and
+ *    send it whole, instead of a packet and an echo per keystroke.
+ *   COMPRESS2 (MCCP2), to zlib our output; see TelnetOutputStream. Only
+ *    offered if JBBSConfig.compressLevel isn't 0.
+ *
+ *  Anything else the client asks for, we politely refuse.
+ *
+ *  Reads and writes on the real socket are counted; each is about one
+ *   packet.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.net.*;
+
+public class TelnetSocket extends FilterSocket
+{
+        // Constants...
+    public final static int IAC  = 255;
+    public final static int DONT = 254;
+    public final static int DO   = 253;
+    public final static int WONT = 252;
+    public final static int WILL = 251;
+    public final static int SB   = 250;
+    public final static int AYT  = 246;
+    public final static int SE   = 240;
+
+    public final static int OPT_BINARY   = 0;
+    public final static int OPT_ECHO     = 1;
+    public final static int OPT_SGA      = 3;
+    public final static int OPT_TTYPE    = 24;
+    public final static int OPT_NAWS     = 31;
+    public final static int OPT_LINEMODE = 34;
+    public final static int OPT_COMPRESS2 = 86;
+
+    public final static int TTYPE_IS     = 0;
+    public final static int TTYPE_SEND   = 1;
+    public final static int LM_MODE      = 1;
+    public final static int LM_EDIT      = 1;
+    public final static int LM_TRAPSIG   = 2;
+
+    public final static int NEGOTIATE_TIMEOUT = 2000;   // milliseconds.
+
+        // Options we'll do, and options we'd like the client to do.
+    protected final static int[] LOCAL_OPTIONS = {
+        OPT_ECHO, OPT_SGA, OPT_BINARY, OPT_COMPRESS2
+    };
+    protected final static int[] REMOTE_OPTIONS = {
+        OPT_SGA, OPT_BINARY, OPT_NAWS, OPT_TTYPE, OPT_LINEMODE
+    };
+
+    protected final static byte[] AYT_REPLY = "\r\n[Yes]\r\n".getBytes();
+
+        // Instance variables...
+    protected TelnetInputStream in;
+    protected TelnetOutputStream out;
+    protected boolean[] localOn = new boolean[256];     // we WILL.
+    protected boolean[] remoteOn = new boolean[256];    // they WILL.
+    protected boolean[] localAsked = new boolean[256];  // waiting on them.
+    protected boolean[] remoteAsked = new boolean[256];
+    protected String termType = null;
+    protected int width = 0;
+    protected int height = 0;
+    protected SocketStream terminal = null;     // told when size changes.
+    protected boolean lineEditing = false;
+    protected SessionStats stats = new SessionStats();
+
+
+    public TelnetSocket(Socket _raw) throws IOException
+    {
+        super(_raw);
+        in = new TelnetInputStream(this, raw.getInputStream());
+        out = new TelnetOutputStream(this, raw.getOutputStream());
+    } // Constructor
+
+
+        // Negotiation...
+
+        /**
+         *  Offer our options, and wait for the client to answer, or for
+         *   NEGOTIATE_TIMEOUT to pass; clients that aren't telnet clients
+         *   won't answer at all. Anything the user types meanwhile is
+         *   kept for later.
+         */
+    public void negotiate() throws IOException
+    {
+        ByteArrayOutputStream offer = new ByteArrayOutputStream();
+        long giveUp = System.currentTimeMillis() + NEGOTIATE_TIMEOUT;
+        long now;
+        int i;
+
+        synchronized (this)
+        {
+            for (i = 0; i < LOCAL_OPTIONS.length; i++)
+            {
+                if (willDo(LOCAL_OPTIONS[i]))
+                {
+                    writeOption(offer, WILL, LOCAL_OPTIONS[i]);
+                    localAsked[LOCAL_OPTIONS[i]] = true;
+                } // if
+            } // for
+
+            for (i = 0; i < REMOTE_OPTIONS.length; i++)
+            {
+                writeOption(offer, DO, REMOTE_OPTIONS[i]);
+                remoteAsked[REMOTE_OPTIONS[i]] = true;
+            } // for
+        } // synchronized
+
+        sendCommand(offer.toByteArray());
+
+        while ((!isNegotiated()) &&
+               ((now = System.currentTimeMillis()) < giveUp))
+        {
+            in.fill((int) (giveUp - now));
+        } // while
+    } // negotiate
+
+
+        /**
+         *  Has the client answered everything we asked, and told us its
+         *   terminal type, if it's going to?
+         */
+    protected synchronized boolean isNegotiated()
+    {
+        int i;
+
+        for (i = 0; i < localAsked.length; i++)
+        {
+            if ((localAsked[i]) || (remoteAsked[i]))
+                return(false);
+        } // for
+
+        return((!remoteOn[OPT_TTYPE]) || (termType != null));
+    } // isNegotiated
+
+
+    protected static void writeOption(ByteArrayOutputStream to, int verb,
+                                      int option)
+    {
+        to.write(IAC);
+        to.write(verb);
+        to.write(option);
+    } // writeOption
+
+
+        /**
+         *  Send telnet commands to the client, as is; no doubling.
+         */
+    protected void sendCommand(byte[] cmd) throws IOException
+    {
+        out.writeCommand(cmd, 0, cmd.length);
+    } // sendCommand
+
+
+        /**
+         *  Will we do this option, if the client asks?
+         */
+    protected static boolean willDo(int option)
+    {
+        if (option == OPT_COMPRESS2)
+            return(JBBSConfig.compressLevel > 0);
+
+        return(contains(LOCAL_OPTIONS, option));
+    } // willDo
+
+
+    protected static boolean contains(int[] options, int option)
+    {
+        int i;
+
+        for (i = 0; i < options.length; i++)
+        {
+            if (options[i] == option)
+                return(true);
+        } // for
+
+        return(false);
+    } // contains
+
+
+        /**
+         *  The client sent IAC, verb, option. Answer it, unless it's the
+         *   answer to something we asked; that way, nobody loops. The
+         *   answer is sent after we let go of our lock, since writers
+         *   check our options while holding the output stream's.
+         */
+    protected void gotOption(int verb, int option) throws IOException
+    {
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        boolean wasOn = localOn[option];
+        boolean asked;
+
+        synchronized (this)
+        {
+            switch (verb)
+            {
+                case DO:
+                case DONT:
+                    asked = localAsked[option];
+                    localAsked[option] = false;
+                    if ((verb == DO) && (willDo(option)))
+                    {
+                        if ((!localOn[option]) && (!asked))
+                            writeOption(reply, WILL, option);
+                        localOn[option] = true;
+                    } // if
+                    else
+                    {
+                        if ((localOn[option]) || ((!asked) && (verb == DO)))
+                            writeOption(reply, WONT, option);
+                        localOn[option] = false;
+                    } // else
+                    break;
+
+                case WILL:
+                case WONT:
+                    asked = remoteAsked[option];
+                    remoteAsked[option] = false;
+                    if ((verb == WILL) && (contains(REMOTE_OPTIONS, option)))
+                    {
+                        if ((!remoteOn[option]) && (!asked))
+                            writeOption(reply, DO, option);
+                        if ((!remoteOn[option]) && (option == OPT_TTYPE))
+                            writeTermTypeRequest(reply);
+                        remoteOn[option] = true;
+                    } // if
+                    else
+                    {
+                        if ((remoteOn[option]) ||
+                            ((!asked) && (verb == WILL)))
+                        {
+                            writeOption(reply, DONT, option);
+                        } // if
+                        remoteOn[option] = false;
+                    } // else
+                    break;
+            } // switch
+
+            notifyAll();
+        } // synchronized
+
+        if (reply.size() > 0)
+            sendCommand(reply.toByteArray());
+
+        if ((option == OPT_COMPRESS2) && (localOn[option] != wasOn))
+        {
+            if (localOn[option])
+                out.startCompressing(JBBSConfig.compressLevel);
+            else
+                out.stopCompressing();
+        } // if
+    } // gotOption
+
+
+        /**
+         *  IAC SB TTYPE SEND IAC SE: "what are you?"
+         */
+    protected static void writeTermTypeRequest(ByteArrayOutputStream to)
+    {
+        to.write(IAC);
+        to.write(SB);
+        to.write(OPT_TTYPE);
+        to.write(TTYPE_SEND);
+        to.write(IAC);
+        to.write(SE);
+    } // writeTermTypeRequest
+
+
+        /**
+         *  The client sent IAC SB option ... IAC SE; data is the part in
+         *   the middle, after the option, with IAC IAC already undone.
+         */
+    protected void gotSubnegotiation(int option, byte[] data, int len)
+    {
+        SocketStream notify = null;
+        int w = 0;
+        int h = 0;
+
+        synchronized (this)
+        {
+            if ((option == OPT_NAWS) && (len >= 4))
+            {
+                width = ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+                height = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+                notify = terminal;
+                w = width;
+                h = height;
+            } // if
+
+            else if ((option == OPT_TTYPE) && (len >= 1) &&
+                     (data[0] == TTYPE_IS) && (termType == null))
+            {
+                termType = new String(data, 1, len - 1).trim();
+            } // else if
+
+            // LINEMODE's SLC and FORWARDMASK talk, we don't need.
+
+            notifyAll();
+        } // synchronized
+
+        if ((notify != null) && (w > 0) && (h > 0))
+            notify.setScreenSize(w, h);
+    } // gotSubnegotiation
+
+
+        /**
+         *  The client sent IAC and a command that isn't an option.
+         */
+    protected void gotCommand(int command) throws IOException
+    {
+        if (command == AYT)     // are you there?
+            out.writeCommand(AYT_REPLY, 0, AYT_REPLY.length);
+    } // gotCommand
+
+
+        // What we learned...
+
+        /**
+         *  @return The client's terminal type, or <em>null</em> if it
+         *          didn't say.
+         */
+    public synchronized String getTerminalType()
+    {
+        return(termType);
+    } // getTerminalType
+
+
+        /**
+         *  Tell a terminal the screen size now, and whenever it changes.
+         */
+    public void setTerminal(SocketStream _terminal)
+    {
+        int w;
+        int h;
+
+        synchronized (this)
+        {
+            terminal = _terminal;
+            w = width;
+            h = height;
+        } // synchronized
+
+        if ((w > 0) && (h > 0))
+            _terminal.setScreenSize(w, h);
+    } // setTerminal
+
+
+        /**
+         *  Are we doing this option? Not synchronized: the output stream
+         *   asks while holding its own lock, and a stale answer for one
+         *   write does no harm.
+         */
+    public boolean isLocalOn(int option)
+    {
+        return(localOn[option]);
+    } // isLocalOn
+
+
+    public boolean isRemoteOn(int option)
+    {
+        return(remoteOn[option]);
+    } // isRemoteOn
+
+
+        /**
+         *  Turn client-side line editing on or off. On, the client edits
+         *   and echoes the line itself, and sends it when it's done; off,
+         *   we're back to a key at a time, with us echoing.
+         *
+         *   @param edit <em>true</em> for line at a time.
+         *  @return <em>false</em> if the client can't edit lines.
+         */
+    public boolean setLineEditing(boolean edit)
+    {
+        ByteArrayOutputStream cmd = new ByteArrayOutputStream();
+
+        synchronized (this)
+        {
+            if ((!remoteOn[OPT_LINEMODE]) || (edit == lineEditing))
+                return(remoteOn[OPT_LINEMODE]);
+
+            cmd.write(IAC);
+            cmd.write(SB);
+            cmd.write(OPT_LINEMODE);
+            cmd.write(LM_MODE);
+            cmd.write(edit ? (LM_EDIT | LM_TRAPSIG) : LM_TRAPSIG);
+            cmd.write(IAC);
+            cmd.write(SE);
+            writeOption(cmd, edit ? WONT : WILL, OPT_ECHO);
+            localOn[OPT_ECHO] = !edit;
+            localAsked[OPT_ECHO] = true;
+            lineEditing = edit;
+        } // synchronized
+
+        try
+        {
+            sendCommand(cmd.toByteArray());     // one packet for both.
+        } // try
+        catch (IOException e)
+        {
+            return(false);      // the next read or write will say why.
+        } // catch
+
+        return(true);
+    } // setLineEditing
+
+
+        // Statistics...
+
+        /**
+         *  The accounting for whoever's on this connection; the streams
+         *   here count bytes in, SocketStream and OutputQueue the rest.
+         */
+    public SessionStats getStats()
+    {
+        return(stats);
+    } // getStats
+
+
+    public long getReads()
+    {
+        return(in.getReads());
+    } // getReads
+
+
+    public long getWrites()
+    {
+        return(out.getWrites());
+    } // getWrites
+
+
+        /**
+         *  @return Percent our output shrank by compression, or -1 if
+         *          we haven't compressed anything.
+         */
+    public int getCompressionSavings()
+    {
+        long in = out.getBytesIn();
+
+        if (in == 0)
+            return(-1);
+
+        return((int) (100 - ((out.getBytesOut() * 100) / in)));
+    } // getCompressionSavings
+
+
+        /**
+         *  @return Milliseconds spent compressing our output.
+         */
+    public long getCompressMillis()
+    {
+        return(out.getCompressMillis());
+    } // getCompressMillis
+
+
+        // Socket overrides...
+
+    public InputStream getInputStream() throws IOException
+    {
+        return(in);
+    } // getInputStream
+
+
+    public OutputStream getOutputStream() throws IOException
+    {
+        return(out);
+    } // getOutputStream
+
+} // TelnetSocket
+
+// end of TelnetSocket.java ...
+
@@ -0,0 +1,28 @@
+/**
+ *  Flight recorder event: one trip to the user database, waiting for
+ *   its lock included. This one keeps its stack trace, to show who's
+ *   asking.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import jdk.jfr.*;
+
+@Name("jbbs.UserDB")
+@Label("User Database Access")
+@Category({ "JBBS", "Storage" })
+public class UserDBEvent extends Event
+{
+    @Label("Operation")
+    @Description("retrieve, findNumber or write.")
+    public String operation;
+
+    @Label("Record")
+    @Description("Record number; -1 if none was found.")
+    public int record;
+
+} // UserDBEvent
+
+// end of UserDBEvent.java ...
+
@@ -0,0 +1,394 @@
+/**
+ *  An off-screen copy of the user's screen, for full-screen displays.
+ *
+ *  Draw into it with clear(), setColor() and put(), then call render().
+ *   The screen remembers what the user's screen looked like after the
+ *   last render(), and sends only the cells that changed since then:
+ *   a cursor move where one is needed, a color change where one is
+ *   needed, and the new characters. Going from one menu to another
+ *   costs about as many bytes as the menus differ by, instead of a
+ *   clear and a whole new screen.
+ *
+ *  Each cell is a character byte and an attribute byte; the attribute
+ *   holds the foreground color (0 - 15) in the low four bits and the
+ *   background color (0 - 7) in the high four.
+ *
+ *  If anything else is sent to the user between renders, call
+ *   invalidate(), and the next render() starts from a clear screen.
+ *   Lines delivered by other sessions (chat, broadcasts) are noticed
+ *   without being told, through SocketStream.getDeliveryCount().
+ *   Emulations that can't position the cursor get the whole screen as
+ *   lines of text, whenever anything in it changed.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+public class VirtualScreen
+{
+        // Constants...
+    public final static byte DEFAULT_ATTR = SocketStream.TERMCOLOR_WHITE;
+
+        // Moving the cursor costs four bytes, at least; retyping this
+        //  many unchanged characters instead is never worse.
+    public final static int MAX_RETYPE = 4;
+
+        // ESC[K is three bytes; don't bother for fewer cells than this.
+    public final static int MIN_CLEAR_EOL = 4;
+
+        // Instance variables...
+    protected int width;
+    protected int height;
+    protected byte[] chars;             // what we're drawing...
+    protected byte[] attrs;
+    protected byte[] sentChars;         // ...and what the user has.
+    protected byte[] sentAttrs;
+    protected boolean synced = false;   // does sent* match the user?
+    protected int deliveries = 0;       // io's count as of last render().
+    protected byte curAttr = DEFAULT_ATTR;
+    protected byte[] run;               // text waiting to be sent.
+    protected int runLen = 0;
+
+
+    public VirtualScreen(int _width, int _height)
+    {
+        width = _width;
+        height = _height;
+        chars = new byte[width * height];
+        attrs = new byte[width * height];
+        sentChars = new byte[width * height];
+        sentAttrs = new byte[width * height];
+        run = new byte[width];
+        clear();
+    } // Constructor
+
+
+    public int getWidth()
+    {
+        return(width);
+    } // getWidth
+
+
+    public int getHeight()
+    {
+        return(height);
+    } // getHeight
+
+
+        // Drawing...
+
+        /**
+         *  Blank the whole screen, white on black.
+         */
+    public void clear()
+    {
+        int i;
+
+        for (i = 0; i < chars.length; i++)
+        {
+            chars[i] = (byte) ' ';
+            attrs[i] = DEFAULT_ATTR;
+        } // for
+
+        curAttr = DEFAULT_ATTR;
+    } // clear
+
+
+        /**
+         *  Set the colors put() draws with.
+         *
+         *   @param fore One of SocketStream's TERMCOLOR_* constants.
+         *   @param back Background color; intensity is ignored.
+         */
+    public void setColor(int fore, int back)
+    {
+        curAttr = (byte) ((fore & 0x0F) | ((back % 8) << 4));
+    } // setColor
+
+
+        /**
+         *  Draw a string in the current colors. Whatever falls off the
+         *   right edge is lost; nothing wraps.
+         *
+         *   @param x 1-based column.
+         *   @param y 1-based row.
+         *   @param str What to draw.
+         */
+    public void put(int x, int y, String str)
+    {
+        int i;
+        int pos;
+
+        if ((y < 1) || (y > height))
+            return;
+
+        for (i = 0; i < str.length(); i++)
+        {
+            if ((x + i < 1) || (x + i > width))
+                continue;
+
+            pos = ((y - 1) * width) + (x + i - 1);
+            chars[pos] = (byte) str.charAt(i);
+            attrs[pos] = curAttr;
+        } // for
+    } // put
+
+
+        /**
+         *  Something else wrote to the user's screen; next render()
+         *   clears it and starts over.
+         */
+    public void invalidate()
+    {
+        synced = false;
+    } // invalidate
+
+
+        // Rendering...
+
+        /**
+         *  Bring the user's screen up to date.
+         *
+         *   @param io Where the user is.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public void render(SocketStream io) throws LostCarrierException
+    {
+        int count = io.getDeliveryCount();
+
+        if (count != deliveries)    // someone wrote over part of it.
+        {
+            deliveries = count;
+            synced = false;
+        } // if
+
+        if (io.doesPositioning())
+            renderDiff(io);
+        else
+            renderLines(io);
+    } // render
+
+
+        /**
+         *  Send the text waiting in run, if there is any.
+         */
+    protected void flushRun(SocketStream io) throws LostCarrierException
+    {
+        if (runLen > 0)
+        {
+            io.send(run, runLen);
+            runLen = 0;
+        } // if
+    } // flushRun
+
+
+        /**
+         *  For emulations without positioning: if anything changed, send
+         *   the whole screen, one line at a time, without the trailing
+         *   blanks.
+         */
+    protected void renderLines(SocketStream io) throws LostCarrierException
+    {
+        int row;
+        int len;
+
+        if ((synced) && (isSent(0, chars.length)))
+            return;
+
+        for (row = 0; row < height; row++)
+        {
+            for (len = width; len > 0; len--)
+            {
+                if (chars[(row * width) + len - 1] != ' ')
+                    break;
+            } // for
+
+            System.arraycopy(chars, row * width, run, 0, len);
+            runLen = len;
+            flushRun(io);
+            io.sendln();
+        } // for
+
+        markSent(0, chars.length);
+        synced = true;
+    } // renderLines
+
+
+        /**
+         *  Does the user already have cells start through end - 1?
+         */
+    protected boolean isSent(int start, int end)
+    {
+        int i;
+
+        for (i = start; i < end; i++)
+        {
+            if ((chars[i] != sentChars[i]) || (attrs[i] != sentAttrs[i]))
+                return(false);
+        } // for
+
+        return(true);
+    } // isSent
+
+
+    protected void markSent(int start, int end)
+    {
+        System.arraycopy(chars, start, sentChars, start, end - start);
+        System.arraycopy(attrs, start, sentAttrs, start, end - start);
+    } // markSent
+
+
+        /**
+         *  Where does the run of blanks at the end of a row start? The
+         *   blanks must all have the same background, so ESC[K can draw
+         *   them; foreground doesn't matter for a blank.
+         *
+         *  @return Column index (0-based) of the run, or width if none.
+         */
+    protected int blankTail(int row)
+    {
+        int rowStart = row * width;
+        int bg = attrs[rowStart + width - 1] & 0xF0;
+        int retVal = width;
+
+        while ((retVal > 0) &&
+               (chars[rowStart + retVal - 1] == ' ') &&
+               ((attrs[rowStart + retVal - 1] & 0xF0) == bg))
+        {
+            retVal--;
+        } // while
+
+        return(retVal);
+    } // blankTail
+
+
+        /**
+         *  For emulations with positioning: send what changed, row by
+         *   row. The cursor and colors are tracked here as we go, so
+         *   nothing is moved or recolored that doesn't need it. The
+         *   bottom right cell is never drawn; on many clients, that
+         *   scrolls the screen.
+         */
+    protected void renderDiff(SocketStream io) throws LostCarrierException
+    {
+        int curX = -1;          // where the cursor is; -1 == don't know.
+        int curY = -1;
+        int fg = -1;            // current colors; -1 == don't know.
+        int bg = -1;
+        int row;
+        int col;
+        int pos;
+        int tail;
+        int last;
+        int attr;
+
+        if (!synced)
+        {
+            io.setColors(SocketStream.TERMCOLOR_WHITE,
+                         SocketStream.TERMCOLOR_BLACK);
+            io.clearTerminal();
+            for (pos = 0; pos < sentChars.length; pos++)
+            {
+                sentChars[pos] = (byte) ' ';
+                sentAttrs[pos] = DEFAULT_ATTR;
+            } // for
+            fg = SocketStream.TERMCOLOR_WHITE;
+            bg = SocketStream.TERMCOLOR_BLACK;
+            curX = 0;
+            curY = 0;
+            synced = true;
+        } // if
+
+        for (row = 0; row < height; row++)
+        {
+            tail = blankTail(row);
+            last = (row == height - 1) ? width - 1 : width;
+
+            for (col = 0; col < last; col++)
+            {
+                pos = (row * width) + col;
+                if ((chars[pos] == sentChars[pos]) &&
+                    (attrs[pos] == sentAttrs[pos]))
+                {
+                    continue;
+                } // if
+
+                    // get the cursor here: retype a few cells, or move.
+                if ((curY == row) && (col >= curX) &&
+                    (col - curX <= MAX_RETYPE) &&
+                    (sameAttr(pos - (col - curX), pos, fg, bg)))
+                {
+                    System.arraycopy(chars, pos - (col - curX),
+                                     run, runLen, col - curX);
+                    runLen += col - curX;
+                } // if
+                else if ((curY != row) || (curX != col))
+                {
+                    flushRun(io);
+                    io.setPosXY(col + 1, row + 1);
+                } // else if
+
+                curX = col;
+                curY = row;
+
+                    // rest of the row is blank? Clear it in one go.
+                if ((col >= tail) && (last == width) &&
+                    (width - col >= MIN_CLEAR_EOL))
+                {
+                    attr = attrs[pos];
+                    flushRun(io);
+                    if ((attr >> 4) != bg)
+                    {
+                        bg = attr >> 4;
+                        io.setColors((fg == -1) ? DEFAULT_ATTR : fg, bg);
+                        fg = (fg == -1) ? DEFAULT_ATTR : fg;
+                    } // if
+
+                    if (io.clearToEndOfLine())
+                    {
+                        markSent(pos, (row + 1) * width);
+                        break;      // on to the next row.
+                    } // if
+                } // if
+
+                attr = attrs[pos];
+                if (((attr & 0x0F) != fg) || ((attr >> 4) != bg))
+                {
+                    flushRun(io);
+                    fg = attr & 0x0F;
+                    bg = attr >> 4;
+                    io.setColors(fg, bg);
+                } // if
+
+                run[runLen++] = chars[pos];
+                markSent(pos, pos + 1);
+                curX++;
+                if (curX >= width)  // wrap behavior varies; don't guess.
+                    curY = -1;
+            } // for
+
+            flushRun(io);
+        } // for
+    } // renderDiff
+
+
+        /**
+         *  Are cells start through end - 1 all in these colors?
+         */
+    protected boolean sameAttr(int start, int end, int fg, int bg)
+    {
+        int i;
+
+        for (i = start; i < end; i++)
+        {
+            if (((attrs[i] & 0x0F) != fg) || ((attrs[i] >> 4) != bg))
+                return(false);
+        } // for
+
+        return(true);
+    } // sameAttr
+
+} // VirtualScreen
+
+// end of VirtualScreen.java ...
+
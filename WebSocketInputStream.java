@@ -0,0 +1,494 @@
+/**
+ *  Input side of a WebSocketSocket. Frames from the client are taken
+ *   apart by a little state machine, a chunk of the socket at a time:
+ *   payloads are unmasked where they sit, inflated if the message is
+ *   compressed, and what's left is what the user sent, sitting in a
+ *   buffer until somebody reads it. Text and binary messages are both
+ *   just bytes to us.
+ *
+ *  Because it works a chunk at a time, a read that times out halfway
+ *   through a frame loses nothing; the next read carries on where it
+ *   left off. Pings are answered and a close is echoed as they arrive.
+ *
+ *  No more than MAX_BACKLOG bytes of the user's are buffered. Once that
+ *   much is waiting, inflating stops, and compressed bytes wait their
+ *   turn; the socket isn't read while those and the user's bytes fill
+ *   the backlog between them. A little compressed data can't make a
+ *   lot of memory go.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.util.zip.*;
+
+public class WebSocketInputStream extends InputStream
+{
+        // Constants...
+    public final static int LEN_BUFFER = 4096;
+    public final static int MAX_CONTROL = 125;     // control payload limit.
+    public final static int MAX_BACKLOG = LEN_BUFFER * 4;
+    public final static long MAX_FRAME = 1024 * 1024;  // longest payload.
+
+    protected final static int STATE_HEADER  = 0;  // reading a header.
+    protected final static int STATE_PAYLOAD = 1;  // reading its payload.
+    protected final static int STATE_CLOSED  = 2;  // client said goodbye.
+
+    protected final static byte[] TRAILER = { 0, 0, (byte) 0xFF, (byte) 0xFF };
+
+        // Instance variables...
+    protected InputStream raw;
+    protected WebSocketOutputStream out;        // for pongs and closes.
+    protected Inflater inflater;                // null == no compression.
+    protected byte[] deflated = new byte[LEN_BUFFER];  // not inflated yet.
+    protected int deflatedLen = 0;
+    protected byte[] rawBuf = new byte[LEN_BUFFER];
+    protected byte[] data = new byte[LEN_BUFFER];
+    protected int dataStart = 0;
+    protected int dataEnd = 0;
+    protected int state = STATE_HEADER;
+
+    protected byte[] header = new byte[14];     // longest: 64-bit, masked.
+    protected int headerLen = 0;
+    protected int opcode;
+    protected boolean fin;
+    protected boolean compressed = false;       // this message is.
+    protected byte[] mask = new byte[4];
+    protected int maskPos;
+    protected long payloadLeft;
+    protected byte[] control = new byte[MAX_CONTROL];
+    protected int controlLen;
+    protected long reads = 0;
+
+
+        /**
+         *  Constructor.
+         *
+         *   @param _raw Socket's input stream.
+         *   @param _out The other direction, to answer control frames.
+         *   @param inflate <em>true</em> if permessage-deflate was agreed.
+         */
+    public WebSocketInputStream(InputStream _raw, WebSocketOutputStream _out,
+                                boolean inflate)
+    {
+        raw = _raw;
+        out = _out;
+        inflater = (inflate) ? new Inflater(true) : null;
+    } // Constructor
+
+
+    public synchronized long getReads()
+    {
+        return(reads);
+    } // getReads
+
+
+    protected void compact()
+    {
+        if (dataStart > 0)
+        {
+            System.arraycopy(data, dataStart, data, 0, dataEnd - dataStart);
+            dataEnd -= dataStart;
+            dataStart = 0;
+        } // if
+    } // compact
+
+
+    protected void growData()
+    {
+        byte[] bigger = new byte[data.length * 2];  // backlog caps it.
+
+        System.arraycopy(data, 0, bigger, 0, dataEnd);
+        data = bigger;
+    } // growData
+
+
+        /**
+         *  How long the header is, once we've seen its first two bytes.
+         */
+    protected int headerLength()
+    {
+        int len = header[1] & 0x7F;
+        int retVal = 2 + 4;         // client frames are always masked.
+
+        if (len == 126)
+            retVal += 2;
+        else if (len == 127)
+            retVal += 8;
+
+        return(retVal);
+    } // headerLength
+
+
+        /**
+         *  The header's all here; get ready for the payload.
+         */
+    protected void startPayload() throws IOException
+    {
+        int len = header[1] & 0x7F;
+        int pos = 2;
+        int i;
+
+        fin = ((header[0] & WebSocketOutputStream.FIN) != 0);
+        opcode = header[0] & 0x0F;
+
+        if ((header[1] & 0x80) == 0)
+            throw(protocolError("unmasked frame"));
+
+        if (((opcode > WebSocketOutputStream.OP_BINARY) &&
+             (opcode < WebSocketOutputStream.OP_CLOSE)) ||
+            (opcode > WebSocketOutputStream.OP_PONG))
+        {
+            throw(protocolError("unknown opcode " + opcode));
+        } // if
+
+        if (len == 126)
+        {
+            payloadLeft = ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+            pos = 4;
+        } // if
+        else if (len == 127)
+        {
+            payloadLeft = 0;
+            for (i = 2; i < 10; i++)
+                payloadLeft = (payloadLeft << 8) | (header[i] & 0xFF);
+            pos = 10;
+        } // else if
+        else
+            payloadLeft = len;
+
+        if ((payloadLeft < 0) || (payloadLeft > MAX_FRAME))
+            throw(protocolError("frame too long"));
+
+        System.arraycopy(header, pos, mask, 0, 4);
+        maskPos = 0;
+
+        if (opcode >= WebSocketOutputStream.OP_CLOSE)     // control frame.
+        {
+            if ((!fin) || (payloadLeft > MAX_CONTROL))
+                throw(protocolError("bad control frame"));
+            controlLen = 0;
+        } // if
+        else if (opcode != WebSocketOutputStream.OP_CONTINUATION)
+        {
+            compressed = ((header[0] & WebSocketOutputStream.RSV1) != 0);
+            if ((compressed) && (inflater == null))
+                throw(protocolError("compressed, but not agreed"));
+        } // else if
+
+        state = STATE_PAYLOAD;
+        if (payloadLeft == 0)
+            endPayload();
+    } // startPayload
+
+
+        /**
+         *  Payload bytes have arrived, unmasked; take them.
+         */
+    protected void payload(byte[] b, int off, int len) throws IOException
+    {
+        if (opcode >= WebSocketOutputStream.OP_CLOSE)
+        {
+            System.arraycopy(b, off, control, controlLen, len);
+            controlLen += len;
+        } // if
+        else if (compressed)
+            inflate(b, off, len);
+        else
+        {
+            while (data.length - dataEnd < len)
+                growData();
+            System.arraycopy(b, off, data, dataEnd, len);
+            dataEnd += len;
+        } // else
+    } // payload
+
+
+        /**
+         *  Queue compressed bytes to be inflated, and inflate what
+         *   there's room for.
+         */
+    protected void inflate(byte[] b, int off, int len) throws IOException
+    {
+        byte[] bigger;
+
+        if (deflated.length - deflatedLen < len)
+        {
+            bigger = new byte[Math.max(deflated.length * 2, deflatedLen + len)];
+            System.arraycopy(deflated, 0, bigger, 0, deflatedLen);
+            deflated = bigger;
+        } // if
+
+        System.arraycopy(b, off, deflated, deflatedLen, len);
+        deflatedLen += len;
+        pump();
+    } // inflate
+
+
+        /**
+         *  Inflate waiting compressed bytes until they run out, or the
+         *   backlog's full. The inflater gets its own copy of its input,
+         *   since it holds on to what it hasn't used yet.
+         */
+    protected void pump() throws IOException
+    {
+        byte[] input;
+        int room;
+        int n;
+
+        if (inflater == null)
+            return;
+
+        try
+        {
+            while ((room = MAX_BACKLOG - (dataEnd - dataStart)) > 0)
+            {
+                if (inflater.needsInput())
+                {
+                    if (deflatedLen == 0)
+                        break;
+                    input = new byte[deflatedLen];
+                    System.arraycopy(deflated, 0, input, 0, deflatedLen);
+                    inflater.setInput(input);
+                    deflatedLen = 0;
+                } // if
+
+                compact();
+                while (data.length - dataEnd < Math.min(room, LEN_BUFFER))
+                    growData();
+
+                n = inflater.inflate(data, dataEnd,
+                                     Math.min(room, data.length - dataEnd));
+                dataEnd += n;
+
+                if (inflater.finished())    // client ended the stream.
+                    inflater.reset();
+                else if ((n == 0) && (!inflater.needsInput()))
+                    throw(protocolError("bad compressed data"));
+            } // while
+        } // try
+        catch (DataFormatException e)
+        {
+            throw(protocolError("bad compressed data"));
+        } // catch
+    } // pump
+
+
+        /**
+         *  Bytes of the backlog's room in use: data waiting to be read,
+         *   and compressed bytes waiting to be inflated.
+         */
+    protected int backlog()
+    {
+        int retVal = (dataEnd - dataStart) + deflatedLen;
+
+        if (inflater != null)
+            retVal += inflater.getRemaining();
+
+        return(retVal);
+    } // backlog
+
+
+        /**
+         *  The frame's payload is all here.
+         */
+    protected void endPayload() throws IOException
+    {
+        state = STATE_HEADER;
+        headerLen = 0;
+
+        switch (opcode)
+        {
+            case WebSocketOutputStream.OP_PING:
+                out.writeControl(WebSocketOutputStream.OP_PONG, control, 0,
+                                 controlLen);
+                break;
+
+            case WebSocketOutputStream.OP_CLOSE:
+                out.writeClose(WebSocketOutputStream.CLOSE_NORMAL);
+                state = STATE_CLOSED;
+                break;
+
+            case WebSocketOutputStream.OP_PONG:
+                break;          // don't care.
+
+            default:            // data: end of a compressed message?
+                if ((fin) && (compressed))
+                    inflate(TRAILER, 0, TRAILER.length);
+                break;
+        } // switch
+    } // endPayload
+
+
+    protected IOException protocolError(String why) throws IOException
+    {
+        state = STATE_CLOSED;
+        out.writeClose(WebSocketOutputStream.CLOSE_PROTOCOL);
+        return(new IOException("WebSocket protocol error: " + why + "."));
+    } // protocolError
+
+
+        /**
+         *  Run bytes from the socket through the state machine.
+         */
+    protected void process(byte[] b, int len) throws IOException
+    {
+        int pos = 0;
+        int n;
+        int i;
+
+        while ((pos < len) && (state != STATE_CLOSED))
+        {
+            if (state == STATE_HEADER)
+            {
+                header[headerLen++] = b[pos++];
+                if ((headerLen >= 2) && (headerLen == headerLength()))
+                    startPayload();
+            } // if
+
+            else    // STATE_PAYLOAD
+            {
+                n = (int) Math.min(len - pos, payloadLeft);
+                for (i = pos; i < pos + n; i++)
+                {
+                    b[i] ^= mask[maskPos];
+                    maskPos = (maskPos + 1) & 3;
+                } // for
+
+                payload(b, pos, n);
+                pos += n;
+                payloadLeft -= n;
+                if (payloadLeft == 0)
+                    endPayload();
+            } // else
+        } // while
+    } // process
+
+
+        /**
+         *  Inflate what's waiting, then one read from the socket, run
+         *   through the state machine. Raw bytes never make more data
+         *   than there are of them, so reading no more than there's
+         *   room for under MAX_BACKLOG keeps the buffers from growing
+         *   past it.
+         *
+         *   @param max Most bytes to read.
+         *  @return Bytes read, 0 if the backlog's full, -1 at end of
+         *          stream.
+         */
+    protected int readRaw(int max) throws IOException
+    {
+        int n;
+
+        pump();
+        if (state == STATE_CLOSED)
+            return(-1);
+
+        max = Math.min(max, rawBuf.length);
+        max = Math.min(max, MAX_BACKLOG - backlog());
+        if (max <= 0)
+            return(0);
+
+        n = raw.read(rawBuf, 0, max);
+        if (n > 0)
+        {
+            reads++;
+            compact();
+            process(rawBuf, n);
+        } // if
+
+        return(n);
+    } // readRaw
+
+
+    protected boolean waitForData() throws IOException
+    {
+        while (dataStart == dataEnd)
+        {
+            if (readRaw(rawBuf.length) == -1)
+                return(false);
+        } // while
+
+        return(true);
+    } // waitForData
+
+
+        // InputStream implementation...
+
+    public synchronized int read() throws IOException
+    {
+        if (!waitForData())
+            return(-1);
+
+        return(data[dataStart++] & 0xFF);
+    } // read (one byte)
+
+
+    public synchronized int read(byte[] b, int off, int len)
+                                              throws IOException
+    {
+        if (len == 0)
+            return(0);
+
+        if (!waitForData())
+            return(-1);
+
+        len = Math.min(len, dataEnd - dataStart);
+        System.arraycopy(data, dataStart, b, off, len);
+        dataStart += len;
+        return(len);
+    } // read (byte array range)
+
+
+        /**
+         *  How much can be read without waiting? What's on the socket is
+         *   processed first, so frame headers aren't counted; but only
+         *   one buffer's worth per call, so a client that keeps sending
+         *   can't keep us in here.
+         */
+    public synchronized int available() throws IOException
+    {
+        int waiting = 0;
+
+        if (state != STATE_CLOSED)
+            waiting = raw.available();
+
+        if (waiting > 0)
+            readRaw(waiting);       // won't block; it's already here.
+        else
+            pump();
+
+        return(dataEnd - dataStart);
+    } // available
+
+
+    public synchronized long skip(long n) throws IOException
+    {
+        n = Math.min(n, available());
+        dataStart += (int) n;
+        return(n);
+    } // skip
+
+
+        /**
+         *  Close the socket first; a read waiting on it holds our lock.
+         */
+    public void close() throws IOException
+    {
+        raw.close();
+
+        synchronized (this)
+        {
+            if (inflater != null)
+            {
+                inflater.end();
+                inflater = null;
+            } // if
+        } // synchronized
+    } // close
+
+} // WebSocketInputStream
+
+// end of WebSocketInputStream.java ...
+
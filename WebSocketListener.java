@@ -0,0 +1,325 @@
+/**
+ *  Listens for browser callers: HTTP connections that ask to be
+ *   upgraded to a WebSocket. Each one is handed to a CallerSetup, which
+ *   upgrades it on a thread of its own, then hands it to OnlineSession
+ *   on a TelnetSocket over a WebSocketSocket; past the upgrade, it's a
+ *   caller like any other, and every screen works the same.
+ *
+ *  If the client offers permessage-deflate (browsers all do), and
+ *   JBBSConfig.compressLevel isn't 0, we take it. If it offers
+ *   subprotocols, we pick "telnet" if it's there, and the first one if
+ *   it isn't; browser terminals call it different things, but it's
+ *   telnet either way.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.net.*;
+import java.security.*;
+import java.util.*;
+
+public class WebSocketListener implements Runnable
+{
+        // Constants...
+    public final static int UPGRADE_TIMEOUT = 10000;    // milliseconds.
+    public final static int MAX_HEADER_LINE = 4096;
+    public final static int MAX_HEADERS = 100;
+    public final static String MAGIC = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    public final static String PROTOCOL_TELNET = "telnet";
+    public final static String EXT_DEFLATE = "permessage-deflate";
+
+    protected final static String BAD_REQUEST =
+        "HTTP/1.1 400 Bad Request\r\nConnection: close\r\n" +
+        "Content-Type: text/plain\r\n\r\n" +
+        "This is a BBS. Connect with a WebSocket terminal.\r\n";
+
+        // Instance variables...
+    protected ServerSocket listener;
+    protected Thread listenThread;
+
+
+    public WebSocketListener() throws IOException
+    {
+        listener = new ServerSocket(JBBSConfig.webPortNum,
+                                    JBBSConfig.maxConnections);
+
+        listenThread = new Thread(this, "WebSocketListener");
+        listenThread.start();
+    } // Constructor
+
+
+    public void close()
+    {
+        try
+        {
+            listener.close();   // accept() throws, and the thread quits.
+        } // try
+        catch (IOException e)
+        {
+            // don't care...it's going in the trash anyway...
+        } // catch
+    } // close
+
+
+        // The upgrade...
+
+        /**
+         *  Read one line of the request, without its CR/LF.
+         *
+         *  @return The line, or <em>null</em> at end of stream.
+         */
+    protected static String readLine(InputStream in) throws IOException
+    {
+        StringBuffer line = new StringBuffer();
+        int ch;
+
+        while ((ch = in.read()) != '\n')
+        {
+            if (ch == -1)
+                return(null);
+
+            if (line.length() >= MAX_HEADER_LINE)
+                throw(new IOException("Request line too long."));
+
+            if (ch != '\r')
+                line.append((char) ch);
+        } // while
+
+        return(line.toString());
+    } // readLine
+
+
+        /**
+         *  Read the request's headers.
+         *
+         *  @return Header values, by lowercased name. A header that's
+         *          there more than once has its values joined with ", ".
+         */
+    protected static Hashtable readHeaders(InputStream in) throws IOException
+    {
+        Hashtable retVal = new Hashtable();
+        String line;
+        String name;
+        Object had;
+        int colon;
+        int i;
+
+        for (i = 0; i < MAX_HEADERS; i++)
+        {
+            line = readLine(in);
+            if (line == null)
+                throw(new EOFException("Connection closed."));
+
+            if (line.length() == 0)
+                return(retVal);
+
+            colon = line.indexOf(':');
+            if (colon == -1)
+                continue;
+
+            name = line.substring(0, colon).trim().toLowerCase();
+            had = retVal.get(name);
+            retVal.put(name, ((had == null) ? "" : had + ", ") +
+                             line.substring(colon + 1).trim());
+        } // for
+
+        throw(new IOException("Too many headers."));
+    } // readHeaders
+
+
+    protected static boolean hasToken(String list, String token)
+    {
+        StringTokenizer tokens;
+
+        if (list == null)
+            return(false);
+
+        tokens = new StringTokenizer(list, ",");
+        while (tokens.hasMoreTokens())
+        {
+            if (tokens.nextToken().trim().equalsIgnoreCase(token))
+                return(true);
+        } // while
+
+        return(false);
+    } // hasToken
+
+
+        /**
+         *  Pick a subprotocol from the client's offer.
+         *
+         *  @return The one we'll speak, or <em>null</em> if none offered.
+         */
+    protected static String chooseProtocol(String offered)
+    {
+        StringTokenizer tokens;
+
+        if (offered == null)
+            return(null);
+
+        if (hasToken(offered, PROTOCOL_TELNET))
+            return(PROTOCOL_TELNET);
+
+        tokens = new StringTokenizer(offered, ",");
+        return((tokens.hasMoreTokens()) ? tokens.nextToken().trim() : null);
+    } // chooseProtocol
+
+
+        /**
+         *  Find a permessage-deflate offer we can take. Java's Deflater
+         *   always uses a 32K window, so we can't take an offer that
+         *   limits ours (server_max_window_bits); anything the client
+         *   does to its own window, we can inflate.
+         *
+         *  @return What to answer with, or <em>null</em> for no deal.
+         */
+    protected static String chooseDeflate(String offered)
+    {
+        StringTokenizer offers;
+        StringTokenizer params;
+        String answer;
+        String param;
+        boolean ok;
+
+        if ((offered == null) || (JBBSConfig.compressLevel == 0))
+            return(null);
+
+        offers = new StringTokenizer(offered, ",");
+        while (offers.hasMoreTokens())
+        {
+            params = new StringTokenizer(offers.nextToken(), ";");
+            if (!params.nextToken().trim().equalsIgnoreCase(EXT_DEFLATE))
+                continue;
+
+            answer = EXT_DEFLATE;
+            ok = true;
+            while ((ok) && (params.hasMoreTokens()))
+            {
+                param = params.nextToken().trim().toLowerCase();
+                if (param.equals("server_no_context_takeover"))
+                    answer += "; server_no_context_takeover";
+                else if (param.startsWith("server_max_window_bits"))
+                    ok = param.endsWith("15");
+                else if ((!param.startsWith("client_max_window_bits")) &&
+                         (!param.equals("client_no_context_takeover")))
+                    ok = false;     // something we don't know.
+            } // while
+
+            if (ok)
+                return(answer);
+        } // while
+
+        return(null);
+    } // chooseDeflate
+
+
+        /**
+         *  Sec-WebSocket-Accept: proof we read the client's key.
+         */
+    protected static String acceptKey(String key) throws IOException
+    {
+        MessageDigest sha1;
+
+        try
+        {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        } // try
+        catch (NoSuchAlgorithmException e)
+        {
+            throw(new IOException("No SHA-1 here."));
+        } // catch
+
+        return(Base64.getEncoder().encodeToString(
+                   sha1.digest((key + MAGIC).getBytes("ISO-8859-1"))));
+    } // acceptKey
+
+
+        /**
+         *  Read the client's HTTP request, and upgrade the connection.
+         *
+         *   @param caller Connection, fresh from accept().
+         *  @return The connection, speaking WebSocket.
+         *   @throw IOException if it's not a WebSocket request.
+         */
+    protected static WebSocketSocket upgrade(Socket caller)
+                                             throws IOException
+    {
+        InputStream in = caller.getInputStream();
+        OutputStream out = caller.getOutputStream();
+        StringBuffer reply = new StringBuffer();
+        String request = readLine(in);
+        Hashtable headers;
+        String key;
+        String protocol;
+        String deflate;
+
+        if (request == null)
+            throw(new EOFException("Connection closed."));
+
+        headers = readHeaders(in);
+        key = (String) headers.get("sec-websocket-key");
+
+        if ((!request.startsWith("GET ")) || (key == null) ||
+            (!hasToken((String) headers.get("upgrade"), "websocket")))
+        {
+            out.write(BAD_REQUEST.getBytes());
+            throw(new IOException("Not a WebSocket request: " + request));
+        } // if
+
+        protocol = chooseProtocol(
+                          (String) headers.get("sec-websocket-protocol"));
+        deflate = chooseDeflate(
+                          (String) headers.get("sec-websocket-extensions"));
+
+        reply.append("HTTP/1.1 101 Switching Protocols\r\n");
+        reply.append("Upgrade: websocket\r\n");
+        reply.append("Connection: Upgrade\r\n");
+        reply.append("Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n");
+        if (protocol != null)
+            reply.append("Sec-WebSocket-Protocol: " + protocol + "\r\n");
+        if (deflate != null)
+            reply.append("Sec-WebSocket-Extensions: " + deflate + "\r\n");
+        reply.append("\r\n");
+
+        out.write(reply.toString().getBytes("ISO-8859-1"));
+        out.flush();
+
+        return(new WebSocketSocket(caller,
+                   (deflate == null) ? 0 : JBBSConfig.compressLevel,
+                   ((deflate != null) &&
+                    (deflate.indexOf("server_no_context_takeover") != -1))));
+    } // upgrade
+
+
+        // Runnable implementation...
+
+    public void run()
+    {
+        while (!listener.isClosed())
+        {
+            try
+            {
+                CallerSetup.start(listener.accept(),
+                                  CallerSetup.TRANSPORT_WEBSOCKET);
+            } // try
+
+            catch (IOException e)
+            {
+                if (listener.isClosed())
+                    return;
+
+                if (JBBSConfig.logIOExceptions)
+                {
+                    JBBSLog.add(JBBSLog.PRIORITY_INFO, "IOException",
+                                e.getMessage(), "WebSocketListener.run();");
+                } // if
+            } // catch (IOException)
+        } // while
+    } // run
+
+} // WebSocketListener
+
+// end of WebSocketListener.java ...
+
@@ -0,0 +1,297 @@
+/**
+ *  Output side of a WebSocketSocket. Each write() goes out as one binary
+ *   frame, in one write to the socket; the frame is built in a buffer
+ *   that gets reused, with room for the header in front of the payload,
+ *   so sending a frame makes no garbage.
+ *
+ *  With permessage-deflate, each frame is a whole message, compressed
+ *   with SYNC_FLUSH, less the 00 00 FF FF the flush ends with (the
+ *   client puts it back). Unless the client asked us not to, the
+ *   dictionary carries over from one message to the next, like MCCP's.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.util.zip.Deflater;
+
+public class WebSocketOutputStream extends OutputStream
+{
+        // Constants...
+    public final static int OP_CONTINUATION = 0x0;
+    public final static int OP_TEXT         = 0x1;
+    public final static int OP_BINARY       = 0x2;
+    public final static int OP_CLOSE        = 0x8;
+    public final static int OP_PING         = 0x9;
+    public final static int OP_PONG         = 0xA;
+
+    public final static int FIN  = 0x80;
+    public final static int RSV1 = 0x40;      // compressed message.
+
+    public final static int CLOSE_NORMAL   = 1000;
+    public final static int CLOSE_PROTOCOL = 1002;
+
+    protected final static int MAX_HEADER = 10;  // unmasked, 64-bit length.
+    protected final static int LEN_TRAILER = 4;  // 00 00 FF FF.
+
+        // Instance variables...
+    protected OutputStream raw;
+    protected Deflater deflater;            // null == not compressing.
+    protected boolean resetContext;         // server_no_context_takeover.
+    protected byte[] frame = new byte[MAX_HEADER + OutputQueue.LEN_STAGING];
+    protected boolean closeSent = false;
+    protected volatile boolean writing = false; // in a socket write.
+    protected volatile long writes = 0;
+    protected volatile long bytesIn = 0;    // before compression...
+    protected volatile long bytesOut = 0;   //  ...and after.
+
+
+        /**
+         *  Constructor.
+         *
+         *   @param _raw Socket's output stream.
+         *   @param level zlib level for permessage-deflate; 0 if the client
+         *                didn't ask for it.
+         *   @param _resetContext <em>true</em> to start each message with
+         *                        an empty dictionary.
+         */
+    public WebSocketOutputStream(OutputStream _raw, int level,
+                                 boolean _resetContext)
+    {
+        raw = _raw;
+        deflater = (level > 0) ? new Deflater(level, true) : null;
+        resetContext = _resetContext;
+    } // Constructor
+
+
+        // Statistics; unsynchronized, like TelnetOutputStream's.
+
+    public long getWrites()
+    {
+        return(writes);
+    } // getWrites
+
+
+    public boolean isCompressing()
+    {
+        return(deflater != null);
+    } // isCompressing
+
+
+    public long getBytesIn()
+    {
+        return(bytesIn);
+    } // getBytesIn
+
+
+    public long getBytesOut()
+    {
+        return(bytesOut);
+    } // getBytesOut
+
+
+        /**
+         *  Make sure the frame buffer holds a header and len more bytes.
+         *   Call this synchronized.
+         */
+    protected void ensureRoom(int len)
+    {
+        byte[] bigger;
+
+        if (frame.length - MAX_HEADER >= len)
+            return;
+
+        bigger = new byte[MAX_HEADER + Math.max(len, frame.length * 2)];
+        System.arraycopy(frame, 0, bigger, 0, frame.length);
+        frame = bigger;
+    } // ensureRoom
+
+
+        /**
+         *  Compress bytes into the frame buffer, after the header's room.
+         *   Call this synchronized.
+         *
+         *  @return Length of the compressed payload.
+         */
+    protected int compress(byte[] b, int off, int len)
+    {
+        int outLen = 0;
+
+        deflater.setInput(b, off, len);
+        while (true)
+        {
+            outLen += deflater.deflate(frame, MAX_HEADER + outLen,
+                                       frame.length - MAX_HEADER - outLen,
+                                       Deflater.SYNC_FLUSH);
+
+            if (MAX_HEADER + outLen < frame.length)
+                break;      // room to spare, so it's all out.
+
+            ensureRoom(frame.length);       // doubles it.
+        } // while
+
+        if (resetContext)
+            deflater.reset();
+
+        return(outLen - LEN_TRAILER);
+    } // compress
+
+
+        /**
+         *  Send one frame, FIN set. Call this synchronized.
+         *
+         *   @param opcode One of the OP_* constants.
+         *   @param b Payload.
+         *   @param off Where payload starts in b.
+         *   @param len Payload's length.
+         *   @param compressed <em>true</em> to compress it (data only).
+         */
+    protected void writeFrame(int opcode, byte[] b, int off, int len,
+                              boolean compressed) throws IOException
+    {
+        int payload;
+        int start;
+        int i;
+
+        if (closeSent)
+            throw(new IOException("WebSocket is closed."));
+
+        if (compressed)
+            payload = compress(b, off, len);
+        else
+        {
+            ensureRoom(len);
+            System.arraycopy(b, off, frame, MAX_HEADER, len);
+            payload = len;
+        } // else
+
+        if (payload < 126)
+        {
+            start = MAX_HEADER - 2;
+            frame[start + 1] = (byte) payload;
+        } // if
+        else if (payload < 65536)
+        {
+            start = MAX_HEADER - 4;
+            frame[start + 1] = 126;
+            frame[start + 2] = (byte) (payload >> 8);
+            frame[start + 3] = (byte) payload;
+        } // else if
+        else
+        {
+            start = 0;
+            frame[1] = 127;
+            for (i = 0; i < 8; i++)
+                frame[2 + i] = (byte) (((long) payload) >> (56 - (i * 8)));
+        } // else
+
+        frame[start] = (byte) (FIN | opcode | ((compressed) ? RSV1 : 0));
+        writing = true;
+        try
+        {
+            raw.write(frame, start, (MAX_HEADER - start) + payload);
+        } // try
+        finally
+        {
+            writing = false;
+        } // finally
+        writes++;
+        bytesIn += len;
+        bytesOut += payload;
+    } // writeFrame
+
+
+        /**
+         *  Send a control frame (close, ping, pong), right now.
+         */
+    public synchronized void writeControl(int opcode, byte[] b, int off,
+                                          int len) throws IOException
+    {
+        writeFrame(opcode, b, off, len, false);
+        raw.flush();
+
+        if (opcode == OP_CLOSE)
+            closeSent = true;
+    } // writeControl
+
+
+        /**
+         *  Send a close frame, if we haven't yet; nothing's sent after it.
+         *
+         *   @param status Why; one of the CLOSE_* constants.
+         */
+    public void writeClose(int status) throws IOException
+    {
+        byte[] why = new byte[2];
+
+        why[0] = (byte) (status >> 8);
+        why[1] = (byte) status;
+
+        synchronized (this)
+        {
+            if (!closeSent)
+                writeControl(OP_CLOSE, why, 0, why.length);
+        } // synchronized
+    } // writeClose
+
+
+        // OutputStream implementation...
+
+    public void write(int b) throws IOException
+    {
+        byte[] one = new byte[1];
+
+        one[0] = (byte) b;
+        write(one, 0, 1);
+    } // write (one byte)
+
+
+    public synchronized void write(byte[] b, int off, int len)
+                                                  throws IOException
+    {
+        if (len > 0)
+            writeFrame(OP_BINARY, b, off, len, (deflater != null));
+    } // write (byte array range)
+
+
+    public void flush() throws IOException
+    {
+        raw.flush();
+    } // flush
+
+
+        /**
+         *  Say goodbye properly, if we can, and close the socket. If a
+         *   write is stuck on a client that stopped reading, it holds our
+         *   lock, so we don't wait to say goodbye; closing the socket is
+         *   what unsticks it.
+         */
+    public void close() throws IOException
+    {
+        try
+        {
+            if (!writing)
+                writeClose(CLOSE_NORMAL);
+        } // try
+        catch (IOException e)
+        {
+            // they're gone already, then.
+        } // catch
+
+        raw.close();
+
+        synchronized (this)
+        {
+            if (deflater != null)
+            {
+                deflater.end();
+                deflater = null;
+            } // if
+        } // synchronized
+    } // close
+
+} // WebSocketOutputStream
+
+// end of WebSocketOutputStream.java ...
+
@@ -0,0 +1,98 @@
+/**
+ *  A Socket that carries its bytes in WebSocket frames, for callers
+ *   using a terminal in a web browser. Put a TelnetSocket on top, and
+ *   it's telnet over WebSocket, which is what browser terminals speak;
+ *   from there up, it's a caller like any other.
+ *
+ *  WebSocketListener does the HTTP upgrade, and decides whether the
+ *   connection gets permessage-deflate; this just does the frames.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.net.*;
+
+public class WebSocketSocket extends FilterSocket
+{
+        // Instance variables...
+    protected WebSocketInputStream in;
+    protected WebSocketOutputStream out;
+
+
+        /**
+         *  Constructor. The upgrade has to be done already.
+         *
+         *   @param _raw Upgraded connection.
+         *   @param level zlib level for permessage-deflate; 0 if it wasn't
+         *                agreed.
+         *   @param resetContext <em>true</em> if the client asked for
+         *                       server_no_context_takeover.
+         */
+    public WebSocketSocket(Socket _raw, int level, boolean resetContext)
+                                                       throws IOException
+    {
+        super(_raw);
+        out = new WebSocketOutputStream(raw.getOutputStream(), level,
+                                        resetContext);
+        in = new WebSocketInputStream(raw.getInputStream(), out,
+                                      (level > 0));
+    } // Constructor
+
+
+        // Statistics...
+
+    public long getReads()
+    {
+        return(in.getReads());
+    } // getReads
+
+
+    public long getWrites()
+    {
+        return(out.getWrites());
+    } // getWrites
+
+
+        /**
+         *  @return Percent permessage-deflate saved on our output, or -1
+         *          if we haven't compressed anything.
+         */
+    public int getCompressionSavings()
+    {
+        long bytesIn = out.getBytesIn();
+
+        if ((bytesIn == 0) || (!out.isCompressing()))
+            return(-1);
+
+        return((int) (100 - ((out.getBytesOut() * 100) / bytesIn)));
+    } // getCompressionSavings
+
+
+        // Socket overrides...
+
+    public InputStream getInputStream() throws IOException
+    {
+        return(in);
+    } // getInputStream
+
+
+    public OutputStream getOutputStream() throws IOException
+    {
+        return(out);
+    } // getOutputStream
+
+
+        /**
+         *  Send a close frame on the way out, if we can.
+         */
+    public void close() throws IOException
+    {
+        out.close();
+    } // close
+
+} // WebSocketSocket
+
+// end of WebSocketSocket.java ...
+
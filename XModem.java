@@ -0,0 +1,447 @@
+/**
+ *  XMODEM-1K file transfer, over a SocketStream. Uses 1024 byte blocks
+ *   and CRC-16 when the other side asks for CRC ('C'), and falls back to
+ *   plain XMODEM (128 byte blocks, checksum) when it NAKs instead.
+ *
+ *  XMODEM is stop-and-wait, so it's only here for terminals that can't
+ *   do ZMODEM.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+
+public class XModem
+{
+        // Constants...
+    public final static byte SOH = 0x01;      // 128 byte block follows.
+    public final static byte STX = 0x02;      // 1024 byte block follows.
+    public final static byte EOT = 0x04;
+    public final static byte ACK = 0x06;
+    public final static byte NAK = 0x15;
+    public final static byte CAN = 0x18;
+    public final static byte SUB = 0x1A;      // pads the last block.
+    public final static byte CRC_REQUEST = 'C';
+
+    public final static int LEN_BLOCK     = 128;
+    public final static int LEN_BLOCK1K   = 1024;
+    public final static int LEN_FILEBUF   = 32768;
+    public final static int TIMEOUT       = 10000;    // milliseconds.
+    public final static int INIT_TIMEOUT  = 60000;    // for user to start.
+    public final static int CRC_TIMEOUT   = 3000;     // between 'C's.
+    public final static int MAX_ERRORS    = 10;
+
+        // Instance variables...
+    protected SocketStream io;
+    protected byte[] block = new byte[LEN_BLOCK1K + 5];
+    protected byte[] held = new byte[LEN_BLOCK1K];   // last block received.
+    protected int heldLen = 0;
+    protected CRC16 crc16 = new CRC16();
+    protected long bytesMoved = 0;
+    protected long elapsedTime = 0;
+
+
+    public XModem(SocketStream _io)
+    {
+        io = _io;
+    } // Constructor
+
+
+        // Statistics...
+
+    public long getBytesMoved()
+    {
+        return(bytesMoved);
+    } // getBytesMoved
+
+
+    public long getElapsedTime()
+    {
+        return(elapsedTime);
+    } // getElapsedTime
+
+
+    protected void sendCancel() throws LostCarrierException
+    {
+        byte[] cancel = {CAN, CAN, CAN, CAN, CAN, CAN, CAN, CAN};
+        io.send(cancel);
+    } // sendCancel
+
+
+        /**
+         *  Read bytes, giving each one up to TIMEOUT to arrive.
+         *
+         *  @return <em>true</em> if len bytes were read, <em>false</em> if
+         *          the other side stopped sending.
+         */
+    protected boolean recvFully(byte[] buf, int off, int len)
+                                   throws LostCarrierException
+    {
+        int n;
+
+        while (len > 0)
+        {
+            n = io.recv(buf, off, len, TIMEOUT);
+            if (n == 0)
+                return(false);
+            off += n;
+            len -= n;
+        } // while
+
+        return(true);
+    } // recvFully
+
+
+        /**
+         *  Send a file.
+         *
+         *   @param file File to send.
+         *  @return <em>true</em> if the receiver got it, <em>false</em> if
+         *          the transfer failed.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public boolean send(File file) throws LostCarrierException
+    {
+        long startTime = System.currentTimeMillis();
+        BufferedInputStream in;
+        boolean retVal = false;
+
+        bytesMoved = 0;
+
+        try
+        {
+            in = new BufferedInputStream(new FileInputStream(file),
+                                         LEN_FILEBUF);
+        } // try
+        catch (IOException e)
+        {
+            return(false);
+        } // catch
+
+        io.holdDeliveries(true);
+
+        try
+        {
+            retVal = sendBlocks(in, file.length());
+            if (!retVal)
+                sendCancel();
+        } // try
+
+        catch (IOException e)       // trouble reading file.
+        {
+            sendCancel();
+        } // catch
+
+        finally
+        {
+            io.holdDeliveries(false);
+            elapsedTime = System.currentTimeMillis() - startTime;
+
+            try
+            {
+                in.close();
+            } // try
+            catch (IOException e)
+            {
+                // don't care.
+            } // catch
+        } // finally
+
+        return(retVal);
+    } // send
+
+
+    protected boolean sendBlocks(InputStream in, long remaining)
+                                 throws LostCarrierException, IOException
+    {
+        boolean useCRC = false;
+        boolean getOut = false;
+        int blockNum = 1;
+        int errors = 0;
+        int size;
+        int sum;
+        int len;
+        int n;
+        int c;
+        int i;
+
+            // wait for receiver to ask for CRC or checksum.
+        for (i = 0; (!getOut) && (i < INIT_TIMEOUT / TIMEOUT); i++)
+        {
+            c = io.recv(TIMEOUT);
+            if (c == CRC_REQUEST)
+            {
+                useCRC = true;
+                getOut = true;
+            } // if
+            else if (c == NAK)
+                getOut = true;
+            else if ((c == CAN) && (io.recv(TIMEOUT) == CAN))
+                return(false);
+        } // for
+
+        if (!getOut)
+            return(false);
+
+        while (remaining > 0)
+        {
+            size = (((useCRC) && (remaining > LEN_BLOCK)) ?
+                        LEN_BLOCK1K : LEN_BLOCK);
+
+            for (len = 0; len < size; len += n)
+            {
+                n = in.read(block, len + 3, size - len);
+                if (n == -1)
+                    break;
+            } // for
+
+            if (len == 0)
+                break;
+
+            for (i = len; i < size; i++)
+                block[i + 3] = SUB;
+
+            block[0] = ((size == LEN_BLOCK1K) ? STX : SOH);
+            block[1] = (byte) blockNum;
+            block[2] = (byte) ~blockNum;
+
+            if (useCRC)
+            {
+                crc16.reset();
+                crc16.update(block, 3, size);
+                block[size + 3] = (byte) (crc16.getValue() >>> 8);
+                block[size + 4] = (byte) crc16.getValue();
+                n = size + 5;
+            } // if
+            else
+            {
+                for (i = 3, sum = 0; i < size + 3; i++)
+                    sum += block[i];
+                block[size + 3] = (byte) sum;
+                n = size + 4;
+            } // else
+
+            getOut = false;
+            while (!getOut)
+            {
+                if (errors > MAX_ERRORS)
+                    return(false);
+
+                io.send(block, n);
+
+                    // skip anything that isn't an answer ('C's, noise)...
+                do
+                {
+                    c = io.recv(TIMEOUT);
+                } while ((c != -1) && (c != ACK) && (c != NAK) && (c != CAN));
+
+                if (c == ACK)
+                {
+                    getOut = true;
+                    errors = 0;
+                } // if
+                else if ((c == CAN) && (io.recv(TIMEOUT) == CAN))
+                    return(false);
+                else
+                    errors++;
+            } // while
+
+            bytesMoved += len;
+            remaining -= len;
+            blockNum++;
+        } // while
+
+        for (errors = 0; errors < MAX_ERRORS; errors++)
+        {
+            io.send(EOT);
+            if (io.recv(TIMEOUT) == ACK)
+                return(true);
+        } // for
+
+        return(false);
+    } // sendBlocks
+
+
+        /**
+         *  Receive a file. XMODEM doesn't send file names, so the caller
+         *   has to pick one.
+         *
+         *   @param file Where to put it.
+         *  @return <em>true</em> if the file arrived, <em>false</em> if the
+         *          transfer failed.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public boolean receive(File file) throws LostCarrierException
+    {
+        long startTime = System.currentTimeMillis();
+        BufferedOutputStream out;
+        boolean retVal = false;
+
+        bytesMoved = 0;
+
+        try
+        {
+            out = new BufferedOutputStream(new FileOutputStream(file),
+                                           LEN_FILEBUF);
+        } // try
+        catch (IOException e)
+        {
+            return(false);
+        } // catch
+
+        io.holdDeliveries(true);
+
+        try
+        {
+            retVal = recvBlocks(out);
+            if (!retVal)
+                sendCancel();
+        } // try
+
+        catch (IOException e)       // trouble writing file.
+        {
+            sendCancel();
+        } // catch
+
+        finally
+        {
+            io.holdDeliveries(false);
+            elapsedTime = System.currentTimeMillis() - startTime;
+
+            try
+            {
+                out.close();
+            } // try
+            catch (IOException e)
+            {
+                // don't care.
+            } // catch
+        } // finally
+
+        return(retVal);
+    } // receive
+
+
+    protected boolean recvBlocks(OutputStream out)
+                                 throws LostCarrierException, IOException
+    {
+        boolean useCRC = true;
+        boolean started = false;
+        int expected = 1;
+        int errors = 0;
+        int tries = 0;
+        int size;
+        int sum;
+        int c;
+        int i;
+
+        heldLen = 0;
+        io.send(CRC_REQUEST);
+
+        while (errors < MAX_ERRORS)
+        {
+            c = io.recv(started ? TIMEOUT : CRC_TIMEOUT);
+
+            if ((c == SOH) || (c == STX))
+            {
+                started = true;
+                size = ((c == STX) ? LEN_BLOCK1K : LEN_BLOCK);
+                if (!recvFully(block, 1, size + (useCRC ? 4 : 3)))
+                {
+                    errors++;
+                    io.send(NAK);
+                    continue;
+                } // if
+
+                if (block[1] != (byte) ~block[2])
+                    c = -1;
+                else if (useCRC)
+                {
+                    crc16.reset();
+                    crc16.update(block, 3, size);
+                    if ((((block[size + 3] & 0xFF) << 8) |
+                          (block[size + 4] & 0xFF)) != crc16.getValue())
+                        c = -1;
+                } // else if
+                else
+                {
+                    for (i = 3, sum = 0; i < size + 3; i++)
+                        sum += block[i];
+                    if ((byte) sum != block[size + 3])
+                        c = -1;
+                } // else
+
+                if (c == -1)            // bad block; ask again.
+                {
+                    errors++;
+                    io.clearBuffer();
+                    io.send(NAK);
+                }  // if
+
+                else if ((block[1] & 0xFF) == (expected & 0xFF))
+                {
+                        // Hold the block back, so that SUB padding can be
+                        //  trimmed off the last one when EOT comes.
+                    if (heldLen > 0)
+                        out.write(held, 0, heldLen);
+                    System.arraycopy(block, 3, held, 0, size);
+                    heldLen = size;
+                    bytesMoved += size;
+                    expected++;
+                    errors = 0;
+                    io.send(ACK);
+                } // else if
+
+                else if ((block[1] & 0xFF) == ((expected - 1) & 0xFF))
+                    io.send(ACK);       // our ACK got lost; a repeat.
+
+                else
+                    return(false);      // lost sync. Give up.
+            } // if
+
+            else if (c == EOT)
+            {
+                while ((heldLen > 0) && (held[heldLen - 1] == SUB))
+                {
+                    heldLen--;
+                    bytesMoved--;
+                } // while
+
+                out.write(held, 0, heldLen);
+                io.send(ACK);
+                return(true);
+            } // else if
+
+            else if ((c == CAN) && (io.recv(TIMEOUT) == CAN))
+                return(false);
+
+            else if ((!started) && (c != -1))
+            {
+                // line noise before the first block; ignore it.
+            } // else if
+
+            else if (!started)
+            {
+                    // no answer to 'C'? After a few, try checksum mode.
+                if (++tries >= INIT_TIMEOUT / CRC_TIMEOUT)
+                    return(false);
+                if (tries >= 3)
+                    useCRC = false;
+                io.send(useCRC ? CRC_REQUEST : NAK);
+            } // else if
+
+            else
+            {
+                errors++;
+                io.send(NAK);
+            } // else
+        } // while
+
+        return(false);
+    } // recvBlocks
+
+} // XModem
+
+// end of XModem.java ...
+
@@ -0,0 +1,1399 @@
+/**
+ *  ZMODEM file transfer, over a SocketStream.
+ *
+ *  Sending streams data subpackets back to back (ZCRCG), and asks the
+ *   receiver to acknowledge every half window (ZCRCQ), so the receiver's
+ *   ZACKs come back while we keep sending; we only stop to wait when a
+ *   whole window is out unacknowledged. Receivers that can't do full
+ *   duplex (they give a buffer size in ZRINIT) get stop-and-wait frames
+ *   (ZCRCW) instead. CRC-32 is used whenever the receiver can take it.
+ *   Nagle's algorithm is off while sending: otherwise the tail of each
+ *   ZCRCQ subpacket waits on the receiver's delayed ACK (40ms or so),
+ *   and streaming slows to a crawl.
+ *
+ *  Files are received as "<name>.part", and renamed to their real name
+ *   once they're complete. If a ".part" file is already there, it's
+ *   resumed (crash recovery): we ask the sender to start at its length.
+ *   Only subpackets that pass their CRC ever get written, so a partial
+ *   file left by a dropped carrier is always good up to its end. A file
+ *   that's already there under its real name is skipped, never written
+ *   to. Give receive() a directory of the uploader's own, so the only
+ *   partial files it can resume are theirs.
+ *
+ *  File data moves through big buffers that are allocated once per
+ *   ZModem instance, and both CRCs are table-driven.
+ *
+ *    Copyright (c) Lighting and Sound Technologies, 1997.
+ *     Written by Ryan C. Gordon.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Vector;
+import java.util.zip.CRC32;
+
+public class ZModem
+{
+        // Constants...
+    public final static int ZPAD   = '*';
+    public final static int ZDLE   = 0x18;        // also ASCII CAN.
+    public final static int ZBIN   = 'A';         // binary, CRC-16 header.
+    public final static int ZHEX   = 'B';         // hex, CRC-16 header.
+    public final static int ZBIN32 = 'C';         // binary, CRC-32 header.
+    public final static int XON    = 0x11;
+    public final static int XOFF   = 0x13;
+
+        // Frame types...
+    public final static int ZRQINIT    = 0;
+    public final static int ZRINIT     = 1;
+    public final static int ZSINIT     = 2;
+    public final static int ZACK       = 3;
+    public final static int ZFILE      = 4;
+    public final static int ZSKIP      = 5;
+    public final static int ZNAK       = 6;
+    public final static int ZABORT     = 7;
+    public final static int ZFIN       = 8;
+    public final static int ZRPOS      = 9;
+    public final static int ZDATA      = 10;
+    public final static int ZEOF       = 11;
+    public final static int ZFERR      = 12;
+    public final static int ZCRC       = 13;
+    public final static int ZCHALLENGE = 14;
+    public final static int ZCOMPL     = 15;
+    public final static int ZCAN       = 16;
+
+        // Ends of data subpackets...
+    public final static int ZCRCE = 'h';   // end of frame, no reply.
+    public final static int ZCRCG = 'i';   // more coming, no reply.
+    public final static int ZCRCQ = 'j';   // more coming, ZACK wanted.
+    public final static int ZCRCW = 'k';   // end of frame, ZACK wanted.
+    public final static int ZRUB0 = 'l';   // escaped 0x7F.
+    public final static int ZRUB1 = 'm';   // escaped 0xFF.
+
+        // ZRINIT capabilities, and ZFILE options...
+    public final static int CANFDX  = 0x01;
+    public final static int CANOVIO = 0x02;
+    public final static int CANFC32 = 0x20;
+    public final static int ZCBIN   = 1;
+
+        // Things we read that aren't frame types or bytes...
+    protected final static int GOT_TIMEOUT  = -1;
+    protected final static int GOT_CANCEL   = -2;
+    protected final static int GOT_ERROR    = -3;
+    protected final static int GOT_FRAMEEND = 0x100;  // or'd with ZCRC?.
+
+        // Tuning...
+    public final static int LEN_SUBPACKET = 1024;     // bytes we send.
+    public final static int MAX_SUBPACKET = 8192;     // bytes we accept.
+    public final static int LEN_FILEBUF   = 32768;
+    public final static String EXT_PARTIAL = ".part";
+    public final static int WINDOW        = 32768;    // unacked bytes.
+    public final static int TIMEOUT       = 10000;    // milliseconds.
+    public final static int POLL_TIMEOUT  = 100;      // while streaming.
+    public final static int MAX_ERRORS    = 10;
+    public final static int MAX_GARBAGE   = 2048;     // before a header.
+
+        // Static class variables...
+    protected static boolean[] mustEscape = new boolean[256];
+    protected static final byte[] hexDigits = "0123456789abcdef".getBytes();
+
+        // Instance variables...
+    protected SocketStream io;
+    protected byte[] rxRaw = new byte[LEN_FILEBUF];   // unread input...
+    protected int rxPos = 0;                          //  ...next byte...
+    protected int rxLen = 0;                          //  ...bytes in it.
+    protected byte[] txBuf = new byte[(LEN_SUBPACKET * 2) + 32];
+    protected int txLen = 0;
+    protected byte[] dataBuf = new byte[MAX_SUBPACKET];  // last subpacket.
+    protected int dataLen = 0;
+    protected byte[] fileBuf = new byte[LEN_FILEBUF];
+    protected long fileBufPos = 0;
+    protected int fileBufLen = 0;
+    protected int[] hdrBytes = new int[5];            // type, then ZP0-ZP3.
+    protected int[] hdr = new int[4];                 // last header's ZP0-3.
+    protected boolean rxFrame32 = false;              // data CRC size.
+    protected boolean txUse32 = true;
+    protected int rxBufSize = 0;                      // 0 == can stream.
+    protected CRC32 crc32 = new CRC32();
+    protected CRC16 crc16 = new CRC16();
+    protected long bytesMoved = 0;
+    protected long elapsedTime = 0;
+    protected Vector received = new Vector();        // file names.
+
+
+    static
+    {
+        mustEscape[ZDLE] = true;
+        mustEscape[0x10] = true;            // DLE.
+        mustEscape[XON] = true;
+        mustEscape[XOFF] = true;
+        mustEscape[0x0D] = true;            // CR; telnet clients eat these.
+        mustEscape[0x80 | 0x10] = true;
+        mustEscape[0x80 | XON] = true;
+        mustEscape[0x80 | XOFF] = true;
+        mustEscape[0x80 | 0x0D] = true;
+    } // static initializer
+
+
+    public ZModem(SocketStream _io)
+    {
+        io = _io;
+    } // Constructor
+
+
+        // Statistics...
+
+    public long getBytesMoved()
+    {
+        return(bytesMoved);
+    } // getBytesMoved
+
+
+    public long getElapsedTime()
+    {
+        return(elapsedTime);
+    } // getElapsedTime
+
+
+        /**
+         *  Names of the files the last receive() got, as created.
+         */
+    public String[] getReceivedFiles()
+    {
+        String[] retVal = new String[received.size()];
+
+        received.copyInto(retVal);
+        return(retVal);
+    } // getReceivedFiles
+
+
+        // Low-level output...
+
+    protected void putEscaped(int b)
+    {
+        b &= 0xFF;
+        if (mustEscape[b])
+        {
+            txBuf[txLen++] = (byte) ZDLE;
+            txBuf[txLen++] = (byte) (b ^ 0x40);
+        } // if
+        else
+            txBuf[txLen++] = (byte) b;
+    } // putEscaped
+
+
+    protected void putHex(int b)
+    {
+        txBuf[txLen++] = hexDigits[(b >>> 4) & 0x0F];
+        txBuf[txLen++] = hexDigits[b & 0x0F];
+    } // putHex
+
+
+    protected void sendHexHeader(int type, int p0, int p1, int p2, int p3)
+                                                throws LostCarrierException
+    {
+        int crc;
+
+        txLen = 0;
+        txBuf[txLen++] = (byte) ZPAD;
+        txBuf[txLen++] = (byte) ZPAD;
+        txBuf[txLen++] = (byte) ZDLE;
+        txBuf[txLen++] = (byte) ZHEX;
+
+        crc16.reset();
+        crc16.update(type);
+        crc16.update(p0);
+        crc16.update(p1);
+        crc16.update(p2);
+        crc16.update(p3);
+        crc = crc16.getValue();
+
+        putHex(type);
+        putHex(p0);
+        putHex(p1);
+        putHex(p2);
+        putHex(p3);
+        putHex(crc >>> 8);
+        putHex(crc);
+
+        txBuf[txLen++] = SocketStream.ASCII_CR;
+        txBuf[txLen++] = (byte) (0x80 | SocketStream.ASCII_LF);
+        if ((type != ZFIN) && (type != ZACK))
+            txBuf[txLen++] = (byte) XON;
+
+        io.send(txBuf, txLen);
+    } // sendHexHeader
+
+
+    protected void sendHexHeader(int type, long pos)
+                                   throws LostCarrierException
+    {
+        sendHexHeader(type, (int) (pos & 0xFF), (int) ((pos >>> 8) & 0xFF),
+                      (int) ((pos >>> 16) & 0xFF), (int) ((pos >>> 24) & 0xFF));
+    } // sendHexHeader (takes file position)
+
+
+    protected void sendBinHeader(int type, int p0, int p1, int p2, int p3)
+                                                throws LostCarrierException
+    {
+        long crc;
+        int crc16val;
+
+        txLen = 0;
+        txBuf[txLen++] = (byte) ZPAD;
+        txBuf[txLen++] = (byte) ZDLE;
+        txBuf[txLen++] = (byte) (txUse32 ? ZBIN32 : ZBIN);
+
+        putEscaped(type);
+        putEscaped(p0);
+        putEscaped(p1);
+        putEscaped(p2);
+        putEscaped(p3);
+
+        if (txUse32)
+        {
+            crc32.reset();
+            crc32.update(type);
+            crc32.update(p0);
+            crc32.update(p1);
+            crc32.update(p2);
+            crc32.update(p3);
+            crc = crc32.getValue();
+            putEscaped((int) crc);
+            putEscaped((int) (crc >>> 8));
+            putEscaped((int) (crc >>> 16));
+            putEscaped((int) (crc >>> 24));
+        } // if
+
+        else
+        {
+            crc16.reset();
+            crc16.update(type);
+            crc16.update(p0);
+            crc16.update(p1);
+            crc16.update(p2);
+            crc16.update(p3);
+            crc16val = crc16.getValue();
+            putEscaped(crc16val >>> 8);
+            putEscaped(crc16val);
+        } // else
+
+        io.send(txBuf, txLen);
+    } // sendBinHeader
+
+
+    protected void sendBinHeader(int type, long pos)
+                                   throws LostCarrierException
+    {
+        sendBinHeader(type, (int) (pos & 0xFF), (int) ((pos >>> 8) & 0xFF),
+                      (int) ((pos >>> 16) & 0xFF), (int) ((pos >>> 24) & 0xFF));
+    } // sendBinHeader (takes file position)
+
+
+        /**
+         *  Send a data subpacket. len must be no more than LEN_SUBPACKET.
+         */
+    protected void sendData(byte[] buf, int off, int len, int frameEnd)
+                                              throws LostCarrierException
+    {
+        long crc;
+        int crc16val;
+        int i;
+
+        txLen = 0;
+        for (i = off; i < off + len; i++)
+        {
+            if (mustEscape[buf[i] & 0xFF])
+            {
+                txBuf[txLen++] = (byte) ZDLE;
+                txBuf[txLen++] = (byte) (buf[i] ^ 0x40);
+            } // if
+            else
+                txBuf[txLen++] = buf[i];
+        } // for
+
+        txBuf[txLen++] = (byte) ZDLE;
+        txBuf[txLen++] = (byte) frameEnd;
+
+        if (txUse32)
+        {
+            crc32.reset();
+            crc32.update(buf, off, len);
+            crc32.update(frameEnd);
+            crc = crc32.getValue();
+            putEscaped((int) crc);
+            putEscaped((int) (crc >>> 8));
+            putEscaped((int) (crc >>> 16));
+            putEscaped((int) (crc >>> 24));
+        } // if
+
+        else
+        {
+            crc16.reset();
+            crc16.update(buf, off, len);
+            crc16.update(frameEnd);
+            crc16val = crc16.getValue();
+            putEscaped(crc16val >>> 8);
+            putEscaped(crc16val);
+        } // else
+
+        if (frameEnd == ZCRCW)
+            txBuf[txLen++] = (byte) XON;
+
+        io.send(txBuf, txLen);
+    } // sendData
+
+
+    protected void sendCancel() throws LostCarrierException
+    {
+        byte[] cancel = new byte[20];
+        int i;
+
+        for (i = 0; i < 10; i++)
+        {
+            cancel[i] = (byte) ZDLE;
+            cancel[i + 10] = SocketStream.ASCII_BACKSPACE;
+        } // for
+
+        io.send(cancel);
+    } // sendCancel
+
+
+        // Low-level input...
+
+    protected int readRaw(int timeout) throws LostCarrierException
+    {
+        if (rxPos == rxLen)
+        {
+            rxPos = 0;
+            rxLen = io.recv(rxRaw, 0, rxRaw.length, timeout);
+            if (rxLen == 0)
+                return(GOT_TIMEOUT);
+        } // if
+
+        return(rxRaw[rxPos++] & 0xFF);
+    } // readRaw
+
+
+    protected boolean inputWaiting() throws LostCarrierException
+    {
+        return((rxPos < rxLen) || (io.dataWaiting() > 0));
+    } // inputWaiting
+
+
+        /**
+         *  Read a byte, undoing ZDLE escapes.
+         *
+         *  @return The byte, a ZCRC? frame end or'd with GOT_FRAMEEND,
+         *          or one of the GOT_* errors.
+         */
+    protected int zdlRead() throws LostCarrierException
+    {
+        int cans = 1;
+        int c;
+
+        do
+        {
+            c = readRaw(TIMEOUT);
+            if ((c == XON) || (c == XOFF) ||
+                (c == (0x80 | XON)) || (c == (0x80 | XOFF)))
+                c = GOT_ERROR - 1;     // flow control noise; skip it.
+        } while (c == GOT_ERROR - 1);
+
+        if (c != ZDLE)
+            return(c);
+
+        c = readRaw(TIMEOUT);
+        while (c == ZDLE)       // five CANs in a row means cancel.
+        {
+            if (++cans >= 5)
+                return(GOT_CANCEL);
+            c = readRaw(TIMEOUT);
+        } // while
+
+        switch (c)
+        {
+            case GOT_TIMEOUT:
+                return(c);
+
+            case ZCRCE:
+            case ZCRCG:
+            case ZCRCQ:
+            case ZCRCW:
+                return(c | GOT_FRAMEEND);
+
+            case ZRUB0:
+                return(0x7F);
+
+            case ZRUB1:
+                return(0xFF);
+
+            default:
+                if ((c & 0x60) == 0x40)
+                    return(c ^ 0x40);
+                return(GOT_ERROR);
+        } // switch
+    } // zdlRead
+
+
+    protected int hexValue(int c)
+    {
+        if ((c >= '0') && (c <= '9'))
+            return(c - '0');
+        if ((c >= 'a') && (c <= 'f'))
+            return(c - 'a' + 10);
+        return(-1);
+    } // hexValue
+
+
+        /**
+         *  Wait for a header from the other side.
+         *
+         *   @param timeout Milliseconds to wait for it to start.
+         *  @return Frame type (header's ZP0-ZP3 go in hdr[]), or one of the
+         *          GOT_* errors.
+         */
+    protected int getHeader(int timeout) throws LostCarrierException
+    {
+        int garbage = 0;
+        int cans = 0;
+        int c;
+
+        while (true)       // look for ZPAD...ZDLE.
+        {
+            c = readRaw(timeout);
+            if (c == GOT_TIMEOUT)
+                return(c);
+
+            if (c == ZPAD)
+            {
+                do
+                {
+                    c = readRaw(TIMEOUT);
+                } while (c == ZPAD);
+
+                if (c == GOT_TIMEOUT)
+                    return(c);
+                if (c == ZDLE)
+                    break;
+            } // if
+
+            if (c == ZDLE)
+            {
+                if (++cans >= 5)
+                    return(GOT_CANCEL);
+            } // if
+            else
+                cans = 0;
+
+            if (++garbage > MAX_GARBAGE)
+                return(GOT_ERROR);
+        } // while
+
+        c = readRaw(TIMEOUT);
+        switch (c)
+        {
+            case ZBIN32:
+                return(getBinHeader(true));
+
+            case ZBIN:
+                return(getBinHeader(false));
+
+            case ZHEX:
+                return(getHexHeader());
+
+            case GOT_TIMEOUT:
+                return(c);
+
+            default:
+                return(GOT_ERROR);
+        } // switch
+    } // getHeader
+
+
+    protected int getHeader() throws LostCarrierException
+    {
+        return(getHeader(TIMEOUT));
+    } // getHeader (default timeout)
+
+
+    protected int getBinHeader(boolean is32) throws LostCarrierException
+    {
+        long crc = 0;
+        int c;
+        int i;
+
+        for (i = 0; i < hdrBytes.length; i++)
+        {
+            c = zdlRead();
+            if (c < 0)
+                return(c);
+            if ((c & GOT_FRAMEEND) != 0)
+                return(GOT_ERROR);
+            hdrBytes[i] = c;
+        } // for
+
+        crc32.reset();
+        crc16.reset();
+        for (i = 0; i < hdrBytes.length; i++)
+        {
+            crc32.update(hdrBytes[i]);
+            crc16.update(hdrBytes[i]);
+        } // for
+
+        for (i = 0; i < (is32 ? 4 : 2); i++)
+        {
+            c = zdlRead();
+            if (c < 0)
+                return(c);
+            if ((c & GOT_FRAMEEND) != 0)
+                return(GOT_ERROR);
+
+            if (is32)
+                crc |= (((long) c) << (i * 8));      // little-endian.
+            else
+                crc = (crc << 8) | c;               // big-endian.
+        } // for
+
+        if (crc != (is32 ? crc32.getValue() : crc16.getValue()))
+            return(GOT_ERROR);
+
+        for (i = 0; i < hdr.length; i++)
+            hdr[i] = hdrBytes[i + 1];
+
+        rxFrame32 = is32;
+        return(hdrBytes[0]);
+    } // getBinHeader
+
+
+    protected int getHexHeader() throws LostCarrierException
+    {
+        int[] bytes = new int[7];   // type, ZP0-ZP3, CRC high, CRC low.
+        int hi;
+        int lo;
+        int c;
+        int i;
+
+        for (i = 0; i < bytes.length; i++)
+        {
+            hi = readRaw(TIMEOUT);
+            lo = readRaw(TIMEOUT);
+            if ((hi == GOT_TIMEOUT) || (lo == GOT_TIMEOUT))
+                return(GOT_TIMEOUT);
+
+            hi = hexValue(hi);
+            lo = hexValue(lo);
+            if ((hi == -1) || (lo == -1))
+                return(GOT_ERROR);
+
+            bytes[i] = ((hi << 4) | lo);
+        } // for
+
+        crc16.reset();
+        for (i = 0; i < 5; i++)
+            crc16.update(bytes[i]);
+
+        if (crc16.getValue() != ((bytes[5] << 8) | bytes[6]))
+            return(GOT_ERROR);
+
+            // hex headers end in CR, LF. Eat them.
+        c = readRaw(TIMEOUT);
+        if ((c & 0x7F) == SocketStream.ASCII_CR)
+            readRaw(TIMEOUT);
+
+        for (i = 0; i < hdr.length; i++)
+            hdr[i] = bytes[i + 1];
+
+        rxFrame32 = false;
+        return(bytes[0]);
+    } // getHexHeader
+
+
+        /**
+         *  Read a data subpacket into dataBuf, and check its CRC.
+         *
+         *  @return The subpacket's frame end (ZCRCE, etc), or one of the
+         *          GOT_* errors.
+         */
+    protected int getData() throws LostCarrierException
+    {
+        long crc = 0;
+        int frameEnd;
+        int c;
+        int i;
+
+        dataLen = 0;
+        while (true)
+        {
+            c = zdlRead();
+            if (c < 0)
+                return(c);
+            if ((c & GOT_FRAMEEND) != 0)
+                break;
+            if (dataLen == dataBuf.length)
+                return(GOT_ERROR);
+            dataBuf[dataLen++] = (byte) c;
+        } // while
+
+        frameEnd = (c & 0xFF);
+
+        for (i = 0; i < (rxFrame32 ? 4 : 2); i++)
+        {
+            c = zdlRead();
+            if (c < 0)
+                return(c);
+            if ((c & GOT_FRAMEEND) != 0)
+                return(GOT_ERROR);
+
+            if (rxFrame32)
+                crc |= (((long) c) << (i * 8));
+            else
+                crc = (crc << 8) | c;
+        } // for
+
+        if (rxFrame32)
+        {
+            crc32.reset();
+            crc32.update(dataBuf, 0, dataLen);
+            crc32.update(frameEnd);
+            if (crc != crc32.getValue())
+                return(GOT_ERROR);
+        } // if
+        else
+        {
+            crc16.reset();
+            crc16.update(dataBuf, 0, dataLen);
+            crc16.update(frameEnd);
+            if (crc != crc16.getValue())
+                return(GOT_ERROR);
+        } // else
+
+        return(frameEnd);
+    } // getData
+
+
+    protected long hdrPos()
+    {
+        return(((long) hdr[0]) | (((long) hdr[1]) << 8) |
+               (((long) hdr[2]) << 16) | (((long) hdr[3]) << 24));
+    } // hdrPos
+
+
+        // Sending...
+
+        /**
+         *  Send a file.
+         *
+         *   @param file File to send.
+         *  @return <em>true</em> if the receiver got it (or already had it),
+         *          <em>false</em> if the transfer failed.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public boolean send(File file) throws LostCarrierException
+    {
+        long startTime = System.currentTimeMillis();
+        RandomAccessFile in;
+        boolean retVal = false;
+        boolean noDelay;
+
+        bytesMoved = 0;
+
+        try
+        {
+            in = new RandomAccessFile(file, "r");
+        } // try
+        catch (IOException e)
+        {
+            return(false);
+        } // catch
+
+        io.holdDeliveries(true);
+        noDelay = io.setNoDelay(true);
+
+        try
+        {
+            if ((sendInit()) && (sendFile(file, in)))
+            {
+                sendFinish();
+                retVal = true;
+            } // if
+            else
+                sendCancel();
+        } // try
+
+        catch (IOException e)       // trouble reading file.
+        {
+            sendCancel();
+        } // catch
+
+        finally
+        {
+            io.setNoDelay(noDelay);
+            io.holdDeliveries(false);
+            elapsedTime = System.currentTimeMillis() - startTime;
+
+            try
+            {
+                in.close();
+            } // try
+            catch (IOException e)
+            {
+                // don't care.
+            } // catch
+        } // finally
+
+        return(retVal);
+    } // send
+
+
+    protected boolean sendInit() throws LostCarrierException
+    {
+        int errors = 0;
+
+        io.send("rz\r");
+        sendHexHeader(ZRQINIT, 0, 0, 0, 0);
+
+        while (errors < MAX_ERRORS)
+        {
+            switch (getHeader())
+            {
+                case ZRINIT:
+                    txUse32 = ((hdr[3] & CANFC32) != 0);
+                    rxBufSize = (hdr[0] | (hdr[1] << 8));
+                    return(true);
+
+                case ZCHALLENGE:
+                    sendHexHeader(ZACK, hdr[0], hdr[1], hdr[2], hdr[3]);
+                    break;
+
+                case ZCAN:
+                case ZABORT:
+                case GOT_CANCEL:
+                    return(false);
+
+                default:
+                    errors++;
+                    sendHexHeader(ZRQINIT, 0, 0, 0, 0);
+                    break;
+            } // switch
+        } // while
+
+        return(false);
+    } // sendInit
+
+
+    protected boolean sendFile(File file, RandomAccessFile in)
+                                throws LostCarrierException, IOException
+    {
+        byte[] info;
+        boolean resend = true;
+        int errors = 0;
+        long crc;
+
+        info = (file.getName() + '\0' + in.length() + ' ' +
+                Long.toOctalString(file.lastModified() / 1000) + " 0 0 1 " +
+                in.length() + '\0').getBytes();
+
+        while (true)
+        {
+            if (resend)
+            {
+                if (errors++ >= MAX_ERRORS)
+                    return(false);
+                sendBinHeader(ZFILE, 0, 0, 0, ZCBIN);
+                sendData(info, 0, info.length, ZCRCW);
+                resend = false;
+            } // if
+
+            switch (getHeader())
+            {
+                case ZRPOS:
+                    return(sendFileData(in, hdrPos()));
+
+                case ZSKIP:
+                    return(true);
+
+                case ZCRC:                  // receiver checking for resume.
+                    crc = fileCRC(in, hdrPos());
+                    sendHexHeader(ZCRC, crc);
+                    break;
+
+                case ZRINIT:    // repeat from before our ZFILE arrived.
+                    break;
+
+                case ZCAN:
+                case ZABORT:
+                case ZFIN:
+                case GOT_CANCEL:
+                    return(false);
+
+                default:
+                    resend = true;
+                    break;
+            } // switch
+        } // while
+    } // sendFile
+
+
+        /**
+         *  CRC-32 of the first len bytes of a file (whole file if 0).
+         */
+    protected long fileCRC(RandomAccessFile in, long len) throws IOException
+    {
+        int n;
+
+        if ((len <= 0) || (len > in.length()))
+            len = in.length();
+
+        crc32.reset();
+        in.seek(0);
+        while (len > 0)
+        {
+            n = in.read(fileBuf, 0, (int) Math.min(len, fileBuf.length));
+            if (n <= 0)
+                break;
+            crc32.update(fileBuf, 0, n);
+            len -= n;
+        } // while
+
+        fileBufLen = 0;     // fileBuf no longer holds what it says.
+        return(crc32.getValue());
+    } // fileCRC
+
+
+        /**
+         *  Make sure fileBuf holds the file data at pos.
+         *
+         *  @return Where pos is in fileBuf.
+         */
+    protected int fillFileBuf(RandomAccessFile in, long pos)
+                                               throws IOException
+    {
+        if ((pos < fileBufPos) || (pos >= fileBufPos + fileBufLen))
+        {
+            in.seek(pos);
+            fileBufLen = Math.max(0, in.read(fileBuf, 0, fileBuf.length));
+            fileBufPos = pos;
+            if (fileBufLen == 0)
+                throw(new EOFException("File got shorter?"));
+        } // if
+
+        return((int) (pos - fileBufPos));
+    } // fillFileBuf
+
+
+    protected boolean sendFileData(RandomAccessFile in, long pos)
+                                   throws LostCarrierException, IOException
+    {
+        long length = in.length();
+        long ackPos = pos;          // receiver has everything before this.
+        long queryPos = pos;        // where we last asked for a ZACK.
+        int window = ((rxBufSize == 0) ? WINDOW : rxBufSize);
+        int errors = 0;
+        boolean restart;
+        boolean waitAck;
+        boolean mustWait;
+        int frameEnd;
+        int idx;
+        int n;
+
+        fileBufLen = 0;
+
+        while (true)    // once per ZDATA frame...
+        {
+            restart = false;
+            if (pos < length)
+                sendBinHeader(ZDATA, pos);
+
+            while ((pos < length) && (!restart))
+            {
+                idx = fillFileBuf(in, pos);
+                n = Math.min(LEN_SUBPACKET, fileBufLen - idx);
+                if (pos + n > length)
+                    n = (int) (length - pos);
+
+                if (pos + n >= length)
+                    frameEnd = ZCRCE;
+                else if ((rxBufSize != 0) && (pos + n - ackPos >= window))
+                    frameEnd = ZCRCW;
+                else if (pos + n - queryPos >= window / 2)
+                {
+                    frameEnd = ZCRCQ;
+                    queryPos = pos + n;
+                } // else if
+                else
+                    frameEnd = ZCRCG;
+
+                sendData(fileBuf, idx, n, frameEnd);
+                pos += n;
+                bytesMoved += n;
+
+                    // Take whatever the receiver said, and wait if we must.
+                waitAck = (frameEnd == ZCRCW);
+                while ((!restart) &&
+                       ((waitAck) || (pos - ackPos >= window) ||
+                        (inputWaiting())))
+                {
+                    mustWait = ((waitAck) || (pos - ackPos >= window));
+                    switch (getHeader(mustWait ? TIMEOUT : POLL_TIMEOUT))
+                    {
+                        case ZACK:
+                            if (hdrPos() > ackPos)
+                                ackPos = hdrPos();
+                            if ((waitAck) && (ackPos >= pos))
+                            {
+                                waitAck = false;
+                                restart = true;   // ZCRCW ended the frame.
+                            } // if
+                            break;
+
+                        case ZRPOS:
+                            if (++errors > MAX_ERRORS)
+                                return(false);
+                            pos = hdrPos();
+                            ackPos = pos;
+                            queryPos = pos;
+                            bytesMoved = pos;
+                            restart = true;
+                            break;
+
+                        case ZSKIP:
+                            return(true);
+
+                        case ZCAN:
+                        case ZABORT:
+                        case ZFIN:
+                        case GOT_CANCEL:
+                            return(false);
+
+                        case GOT_TIMEOUT:       // back up to last ack.
+                            if (!mustWait)
+                                break;      // just noise; keep sending.
+                            if (++errors > MAX_ERRORS)
+                                return(false);
+                            pos = ackPos;
+                            queryPos = pos;
+                            bytesMoved = pos;
+                            restart = true;
+                            break;
+
+                        default:            // line noise, ZNAK, etc.
+                            if (++errors > MAX_ERRORS)
+                                return(false);
+                            break;
+                    } // switch
+                } // while
+            } // while
+
+            if (restart)
+                continue;
+
+                // Everything's sent. Tell receiver, and see if they agree.
+            sendBinHeader(ZEOF, length);
+
+            restart = false;
+            while (!restart)
+            {
+                switch (getHeader())
+                {
+                    case ZRINIT:
+                        return(true);
+
+                    case ZACK:      // late ack; don't care.
+                        break;
+
+                    case ZRPOS:
+                        if (++errors > MAX_ERRORS)
+                            return(false);
+                        pos = hdrPos();
+                        ackPos = pos;
+                        queryPos = pos;
+                        bytesMoved = pos;
+                        restart = true;
+                        break;
+
+                    case ZSKIP:
+                        return(true);
+
+                    case ZCAN:
+                    case ZABORT:
+                    case ZFIN:
+                    case GOT_CANCEL:
+                        return(false);
+
+                    default:
+                        if (++errors > MAX_ERRORS)
+                            return(false);
+                        sendBinHeader(ZEOF, length);
+                        break;
+                } // switch
+            } // while
+        } // while
+    } // sendFileData
+
+
+    protected void sendFinish() throws LostCarrierException
+    {
+        int tries;
+
+        for (tries = 0; tries < 3; tries++)
+        {
+            sendHexHeader(ZFIN, 0, 0, 0, 0);
+            switch (getHeader())
+            {
+                case ZFIN:
+                    io.send("OO");
+                    return;
+
+                case ZCAN:
+                case GOT_CANCEL:
+                    return;
+            } // switch
+        } // for
+    } // sendFinish
+
+
+        // Receiving...
+
+        /**
+         *  Receive files into a directory. Partial files already there are
+         *   resumed, not started over; files already there are skipped.
+         *
+         *   @param dir Where to put received files. This should belong to
+         *              the uploader alone; see the top of the file.
+         *  @return Number of files received, -1 if the transfer failed.
+         *   @throw LostCarrierException if connection to user was lost.
+         */
+    public int receive(File dir) throws LostCarrierException
+    {
+        long startTime = System.currentTimeMillis();
+        int retVal;
+
+        bytesMoved = 0;
+        received.removeAllElements();
+        io.holdDeliveries(true);
+
+        try
+        {
+            retVal = receiveFiles(dir);
+            if (retVal == -1)
+                sendCancel();
+        } // try
+
+        finally
+        {
+            io.holdDeliveries(false);
+            elapsedTime = System.currentTimeMillis() - startTime;
+        } // finally
+
+        return(retVal);
+    } // receive
+
+
+    protected int receiveFiles(File dir) throws LostCarrierException
+    {
+        boolean sendInit = true;
+        int files = 0;
+        int errors = 0;
+        int result;
+
+        while (errors < MAX_ERRORS)
+        {
+            if (sendInit)
+                sendHexHeader(ZRINIT, 0, 0, 0, CANFDX | CANOVIO | CANFC32);
+            sendInit = true;
+
+            switch (getHeader())
+            {
+                case ZRQINIT:
+                    break;
+
+                case ZSINIT:
+                    if (getData() < 0)
+                        errors++;
+                    else
+                    {
+                        sendHexHeader(ZACK, 1, 0, 0, 0);
+                        sendInit = false;
+                    } // else
+                    break;
+
+                case ZFILE:
+                    if (getData() < 0)
+                    {
+                        errors++;
+                        break;
+                    } // if
+
+                    result = receiveFile(dir);
+                    if (result == -1)
+                        return(-1);
+                    files += result;
+                    errors = 0;
+                    break;
+
+                case ZFIN:
+                    sendHexHeader(ZFIN, 0, 0, 0, 0);
+                    readRaw(1000);      // the sender's "OO"...
+                    readRaw(1000);      //  ...if it bothers.
+                    return(files);
+
+                case ZCAN:
+                case ZABORT:
+                case GOT_CANCEL:
+                    return(-1);
+
+                default:
+                    errors++;
+                    break;
+            } // switch
+        } // while
+
+        return(-1);
+    } // receiveFiles
+
+
+        /**
+         *  Receive one file. The ZFILE subpacket is in dataBuf.
+         *
+         *  @return 1 if received, 0 if skipped, -1 on failure.
+         */
+    protected int receiveFile(File dir) throws LostCarrierException
+    {
+        RandomAccessFile out;
+        String name;
+        String info;
+        File file;
+        File partial;
+        long length = -1;
+        long pos;
+        int retVal;
+        int nul;
+
+        for (nul = 0; (nul < dataLen) && (dataBuf[nul] != 0); nul++)
+            ;    // find end of file name.
+
+        name = FileTransfer.safeFileName(new String(dataBuf, 0, nul));
+        info = new String(dataBuf, nul + 1, Math.max(0, dataLen - nul - 1));
+        info = info.trim();
+
+        try
+        {
+            if (info.indexOf(' ') != -1)
+                info = info.substring(0, info.indexOf(' '));
+            if (info.indexOf('\0') != -1)
+                info = info.substring(0, info.indexOf('\0'));
+            length = Long.parseLong(info);
+        } // try
+        catch (NumberFormatException e)
+        {
+            length = -1;      // don't know; that's okay.
+        } // catch
+
+        if (name == null)
+        {
+            sendHexHeader(ZSKIP, 0, 0, 0, 0);
+            return(0);
+        } // if
+
+        file = new File(dir, name);
+        if (file.exists())
+        {
+            sendHexHeader(ZSKIP, 0, 0, 0, 0);     // already got it.
+            return(0);
+        } // if
+
+        partial = new File(dir, name + EXT_PARTIAL);
+        pos = partial.length();         // crash recovery! (0 if none.)
+
+        try
+        {
+            out = new RandomAccessFile(partial, "rw");
+            if ((length >= 0) && (pos > length))
+            {
+                pos = 0;                // not the same file; start over.
+                out.setLength(0);
+            } // if
+            out.seek(pos);
+        } // try
+        catch (IOException e)
+        {
+            sendHexHeader(ZSKIP, 0, 0, 0, 0);
+            return(0);
+        } // catch
+
+        fileBufLen = 0;
+
+        try
+        {
+            retVal = receiveData(out, pos);
+        } // try
+
+        catch (IOException e)           // trouble writing file.
+        {
+            return(-1);
+        } // catch
+
+        finally
+        {
+            try
+            {
+                flushFileBuf(out);      // keep the good part, for resume.
+                out.close();
+            } // try
+            catch (IOException e)
+            {
+                // don't care.
+            } // catch
+        } // finally
+
+        if (retVal != 1)
+            return(retVal);
+
+        try
+        {
+            Files.move(partial.toPath(), file.toPath());  // won't replace.
+        } // try
+        catch (IOException e)     // something took its name meanwhile.
+        {
+            partial.delete();
+            return(0);
+        } // catch
+
+        received.addElement(name);
+        return(1);
+    } // receiveFile
+
+
+        /**
+         *  Receive one file's data, from our first ZRPOS to its ZEOF.
+         *
+         *   @param out Where it goes.
+         *   @param pos Where to start.
+         *  @return 1 if it all came, -1 on failure.
+         */
+    protected int receiveData(RandomAccessFile out, long pos)
+                                  throws LostCarrierException, IOException
+    {
+        int errors = 0;
+
+        sendHexHeader(ZRPOS, pos);
+        while (errors < MAX_ERRORS)
+        {
+            switch (getHeader())
+            {
+                case ZDATA:
+                        // Wrong place? Sender hasn't seen our ZRPOS
+                        //  yet. Asking again would just restart it
+                        //  again, so wait for it to catch up.
+                    if (hdrPos() != pos)
+                    {
+                        errors++;
+                        break;
+                    } // if
+
+                    pos = receiveFrame(out, pos);
+                    if (pos < 0)
+                        return(-1);
+                    if (pos != hdrPos())     // frame went wrong.
+                        errors++;
+                    break;
+
+                case ZEOF:
+                    if (hdrPos() == pos)
+                        return(1);
+                    break;          // stale; data's still coming.
+
+                case ZFILE:         // sender missed our ZRPOS.
+                    getData();
+                    sendHexHeader(ZRPOS, pos);
+                    break;
+
+                case ZCAN:
+                case ZABORT:
+                case ZFIN:
+                case GOT_CANCEL:
+                    return(-1);
+
+                default:
+                    errors++;
+                    sendHexHeader(ZRPOS, pos);
+                    break;
+            } // switch
+        } // while
+
+        return(-1);
+    } // receiveData
+
+
+        /**
+         *  Read the data subpackets following a ZDATA header.
+         *
+         *  @return New file position. It's left in hdr[] too, unless the
+         *          frame went wrong and we asked for a resend. Returns -1
+         *          if the sender cancelled.
+         */
+    protected long receiveFrame(RandomAccessFile out, long pos)
+                                  throws LostCarrierException, IOException
+    {
+        int frameEnd;
+
+        while (true)
+        {
+            frameEnd = getData();
+            if (frameEnd == GOT_CANCEL)
+                return(-1);
+
+            if (frameEnd < 0)
+            {
+                sendHexHeader(ZRPOS, pos);
+                hdr[0] = (int) ~pos;           // make sure caller notices.
+                return(pos);
+            } // if
+
+            if (fileBufLen + dataLen > fileBuf.length)
+                flushFileBuf(out);
+            System.arraycopy(dataBuf, 0, fileBuf, fileBufLen, dataLen);
+            fileBufLen += dataLen;
+            pos += dataLen;
+            bytesMoved += dataLen;
+
+            switch (frameEnd)
+            {
+                case ZCRCW:
+                    sendHexHeader(ZACK, pos);
+                    setHdrPos(pos);
+                    return(pos);
+
+                case ZCRCQ:
+                    sendHexHeader(ZACK, pos);
+                    break;
+
+                case ZCRCE:
+                    setHdrPos(pos);
+                    return(pos);
+            } // switch
+        } // while
+    } // receiveFrame
+
+
+    protected void setHdrPos(long pos)
+    {
+        hdr[0] = (int) (pos & 0xFF);
+        hdr[1] = (int) ((pos >>> 8) & 0xFF);
+        hdr[2] = (int) ((pos >>> 16) & 0xFF);
+        hdr[3] = (int) ((pos >>> 24) & 0xFF);
+    } // setHdrPos
+
+
+    protected void flushFileBuf(RandomAccessFile out) throws IOException
+    {
+        if (fileBufLen > 0)
+            out.write(fileBuf, 0, fileBufLen);
+        fileBufLen = 0;
+    } // flushFileBuf
+
+} // ZModem
+
+// end of ZModem.java ...
+